@@ -30,7 +30,7 @@ import java.net.UnknownHostException;
 import javax.swing.SwingUtilities;
 import javax.swing.event.EventListenerList;
 
-import org.mibNavigator.libmib.mibtree.MibTreeNode;
+import org.mibNavigator.libmib.mibtree.OidTranslator;
 import org.mibNavigator.libmib.oid.MibObjectType;
 import org.mibNavigator.snmp.SNMPBadValueException;
 import org.mibNavigator.snmp.SNMPGetException;
@@ -67,7 +67,7 @@ public class GetRequestWorker extends SwingWorker
     private int hostPort;
     private int hostTimeout;
     
-    private final MibTreeNode root;
+    private final OidTranslator oidTranslator;
     
     private static final int SNMP_VERSION = 0;
     private static final int DEFAULT_TIMEOUT = 4000;
@@ -81,18 +81,18 @@ public class GetRequestWorker extends SwingWorker
      * @param commString the SNMP community string for the target host device
      * @param oidString the starting OID for the GetRequest
      * @param address the <code>String</code> representation of the target host device's IP address
-     * @param rootNode the <code>MibTreeNode</code> root of the MIB tree
+     * @param translator the <code>OidTranslator</code> for the MIB tree, used to name the OIDs retrieved
      */
     public GetRequestWorker(final String commString, final String oidString, 
-            final String address, final MibTreeNode rootNode)
+            final String address, final OidTranslator translator)
     {
-        if(rootNode == null)
-            throw new IllegalArgumentException("Root node cannot be null.");
+        if(translator == null)
+            throw new IllegalArgumentException("OID translator cannot be null.");
         
         addressString = address;
         communityString = commString;
         oidInputString = oidString;
-        root = rootNode;
+        oidTranslator = translator;
         
         hostPort = SNMPv1Communicator.DEFAULT_SNMP_PORT;
         hostTimeout = DEFAULT_TIMEOUT;
@@ -199,13 +199,13 @@ public class GetRequestWorker extends SwingWorker
                     //with data models, and none of them are updated.  From what I've read,
                     //the single thread rule applies to UPDATING Swing VISUAL components.
                     
-                    MibTreeNode curNode = root.getNodeByOid(nextOid, true);
+                    OidTranslator.Translation translation = oidTranslator.translate((long[])receivedOid.getValue());
                     
                     String displayOid = nextOid;
                     
                     //If the OID or the nearest OID was found in the tree, resolve and format the OID for display.
-                    if(curNode != null)
-                        displayOid = this.formatDisplayOid(curNode, nextOid);
+                    if(translation != null)
+                        displayOid = this.formatDisplayOid(translation);
 
                     //Extract the returned value from the VarBindList and convert it to a String.
                     snmpValue = pair.getSNMPObjectAt(1);
@@ -214,9 +214,9 @@ public class GetRequestWorker extends SwingWorker
                     //There is a potential problem here because the closest node is returned if the exact
                     //match is not found.  However, it seems inefficient to do another search with the
                     //option to return the closest node set to false.
-                    if(curNode != null && (snmpValue instanceof SNMPInteger))
+                    if(translation != null && (snmpValue instanceof SNMPInteger))
                     {
-                        MibObjectType curObj = (MibObjectType)curNode.getUserObject();
+                        MibObjectType curObj = translation.getObject();
                         if(curObj.hasValueList())
                         {
                             int intValue = ((BigInteger)snmpValue.getValue()).intValue();
@@ -269,32 +269,24 @@ public class GetRequestWorker extends SwingWorker
     
     
     /**
-     * Replaces a portion of a numerical oid with its equivalent named OID
-     * as found in a MibTree and trims the beginning path.
+     * Replaces the numerical part of an oid that names an object in the MIB tree
+     * with the object's name path, and trims the beginning path.
      * For example: 1.3.6.1.2.1.1.1.0 will be converted to system.sysDescr.0
      * 
      * @return a resolved and formatted display OID String
      */
-    private String formatDisplayOid(MibTreeNode node, String oidString)
+    private String formatDisplayOid(OidTranslator.Translation translation)
     {
-        // Get the full name and number paths of the node.
-        String[] paths = node.getOidPaths(); 
-        String oidNumberPath = paths[0];
-        String oidNamePath = paths[1];
+        String oidString = translation.toString();
 
-        if(oidString.startsWith(oidNumberPath)) //make sure the OID number pattern isn't matched elsewhere in a really long OID
-        {
-            oidString = oidString.replaceFirst(oidNumberPath, oidNamePath);
-
-            //This is a bit of a hack since I'm trying to replicate the way GetIf displays
-            //OID names during a GET.
-            //All it does is chop off the beginning parts of the OID paths to improve
-            //display.
-            if(oidString.contains(STD_PREFIX))
-                oidString = oidString.substring(oidString.indexOf(STD_PREFIX) + STD_PREFIX.length());
-            else if(oidString.contains(ENT_PREFIX))
-                oidString = oidString.substring(oidString.indexOf(ENT_PREFIX) + ENT_PREFIX.length());
-        }
+        //This is a bit of a hack since I'm trying to replicate the way GetIf displays
+        //OID names during a GET.
+        //All it does is chop off the beginning parts of the OID paths to improve
+        //display.
+        if(oidString.contains(STD_PREFIX))
+            oidString = oidString.substring(oidString.indexOf(STD_PREFIX) + STD_PREFIX.length());
+        else if(oidString.contains(ENT_PREFIX))
+            oidString = oidString.substring(oidString.indexOf(ENT_PREFIX) + ENT_PREFIX.length());
         
         return oidString;
     }
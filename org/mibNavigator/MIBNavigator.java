@@ -36,16 +36,16 @@ import javax.swing.UIDefaults;
 import javax.swing.UIManager;
 import javax.swing.border.BevelBorder;
 import javax.swing.plaf.FontUIResource;
-import javax.xml.parsers.ParserConfigurationException;
 
+import org.mibNavigator.libmib.mibtree.AbstractMibTreeBuilder;
 import org.mibNavigator.libmib.mibtree.MibTreeBuilder;
-import org.mibNavigator.libmib.mibtree.MibTreeBuilderXml;
+import org.mibNavigator.libmib.mibtree.MibTreeBuilderXmlStream;
 
 import org.xml.sax.SAXException;
 
 /**
  * MIBNavigator is the main class for the application. It performs initial configuration and starts the user interface.
- * It can be easily modified to use regular SMI syntax MIBs by using MibTreeBuilderSmi in place of MibTreeBuilderXml 
+ * It can be easily modified to use regular SMI syntax MIBs by using MibTreeBuilderSmi in place of MibTreeBuilderXmlStream 
  * because they implement a common interface.
  * <br><br>
  * The application reads MIB files and presents them visually for navigation through MibBrowser. The OID hierarchy is 
@@ -188,8 +188,13 @@ public class MIBNavigator
             File schemaFile = new File("." + File.separator + "mib.xsd");
             if(schemaFile.exists())
             {    
-                final MibTreeBuilder treeBuilder = new MibTreeBuilderXml(schemaFile);
-                //final MibTreeBuilder treeBuilder = new MibTreeBuilderSmi();
+                final AbstractMibTreeBuilder treeBuilder = new MibTreeBuilderXmlStream(schemaFile);
+                //final AbstractMibTreeBuilder treeBuilder = new MibTreeBuilderSmi();
+                //The DOM based MibTreeBuilderXml may also be used, but it also throws ParserConfigurationException.
+                
+                //Keep the compiled MIB tree next to the mibs directory so it is only recompiled 
+                //when the MIB files change.
+                treeBuilder.setCacheFile(new File("." + File.separator + "mibs.cache"));
                 
                 //Create and configure the interface components in the EventDispatch 
                 //thread according to best practices for using Swing.
@@ -210,11 +215,6 @@ public class MIBNavigator
             JOptionPane.showMessageDialog(null, "An error occurred while parsing the schema file.", 
                     "MIB Tree Compiler Error", JOptionPane.ERROR_MESSAGE);
         }
-        catch(ParserConfigurationException e)
-        {
-            JOptionPane.showMessageDialog(null, "An error occurred configuring the XML parser.", 
-                    "MIB Tree Compiler Error", JOptionPane.ERROR_MESSAGE);
-        }
 
     }
 }
@@ -28,6 +28,7 @@ import org.mibNavigator.contextmenu.TextContextMenu;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -35,6 +36,8 @@ import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.tree.*;
 
+import org.mibNavigator.libmib.mibtree.MibDirectoryWatcher;
+import org.mibNavigator.libmib.mibtree.MibSymbolIndex;
 import org.mibNavigator.libmib.mibtree.MibTreeBuilder;
 import org.mibNavigator.libmib.mibtree.MibTreeNode;
 import org.mibNavigator.libmib.oid.MibObjectType;
@@ -72,6 +75,8 @@ public class MibBrowser implements ActionListener, TreeSelectionListener, ListSe
     
     private GetRequestWorker snmpGetWorker = null;
     
+    private MibDirectoryWatcher mibWatcher = null;
+    
     private static final String GET_START_LABEL = "Get Data";
     private static final String GET_STOP_LABEL = "Stop";
         
@@ -194,11 +199,19 @@ public class MibBrowser implements ActionListener, TreeSelectionListener, ListSe
         try
         {
             treeBuilder.addMIBDirectory(DEFAULT_MIB_DIR);
+            
+            //Recompile MIBs that are added to or changed in the directory while the browser runs.
+            mibWatcher = new MibDirectoryWatcher(treeBuilder, DEFAULT_MIB_DIR, SwingUtilities::invokeLater);
+            mibWatcher.start();
         }
         catch(IllegalArgumentException e) //if the default directory doesn't exist
         {
             System.out.print(e.getMessage());
         }
+        catch(IOException e) //if the directory can't be watched, the tree just isn't updated
+        {
+            System.out.println("Unable to watch the MIB directory: " + e.getMessage());
+        }
         
         //If the mibs directory wasn't found, this will return a tree model with only default nodes.
         mibModel = (DefaultTreeModel)treeBuilder.getMibTreeModel();
@@ -580,7 +593,7 @@ public class MibBrowser implements ActionListener, TreeSelectionListener, ListSe
                         int timeout = Integer.parseInt(timeoutField.getText().trim());
     
                         //try to scroll to the correct OID
-                        String oidInputString = trimCharacter(oidInputField.getText().trim(), '.');
+                        String oidInputString = trimCharacter(resolveSymbol(oidInputField.getText().trim(), false), '.');
                         String oidTreeNumberString = oidNumberField.getText();
                         
                         if(!oidInputString.equals(oidTreeNumberString))
@@ -591,7 +604,7 @@ public class MibBrowser implements ActionListener, TreeSelectionListener, ListSe
                         
                         //Initialize and start the GetRequest process in a different thread using a SwingWorker.
                         snmpGetWorker = new GetRequestWorker(communityString, oidInputString, addressString,
-                                (MibTreeNode)mibModel.getRoot());
+                                treeBuilder.getOidTranslator());
                         snmpGetWorker.addGetRequestListener(this);
                         snmpGetWorker.setPort(port);
                         snmpGetWorker.setTimeout(timeout);
@@ -710,7 +723,8 @@ public class MibBrowser implements ActionListener, TreeSelectionListener, ListSe
 
     /**
      * Action for performing a search of the MIB tree based on the OID string
-     * in the OID input field.
+     * in the OID input field.  The OID may start with an object name instead
+     * of numbers, or just the beginning of a name.
      */
 	private class OidTreeSearchAction extends AbstractAction
 	{
@@ -719,7 +733,7 @@ public class MibBrowser implements ActionListener, TreeSelectionListener, ListSe
         {
             try
             {
-                setVisibleNodeByOID(oidInputField.getText().trim(), MibTreeNode.MATCH_EXACT_PATH);
+                setVisibleNodeByOID(resolveSymbol(oidInputField.getText().trim(), true), MibTreeNode.MATCH_EXACT_PATH);
             }
             catch(NumberFormatException e)
             {
@@ -754,6 +768,43 @@ public class MibBrowser implements ActionListener, TreeSelectionListener, ListSe
     }
 
 
+    /**
+     * Replaces an object name at the start of an OID string, such as sysDescr.0
+     * or SNMPv2-MIB::sysDescr, with the object's OID number path.  OID strings
+     * that are already numerical, or whose names aren't found, are returned unchanged.
+     * 
+     * @param oidString the OID string to resolve
+     * @param matchPrefix whether a name may also be just the beginning of an object's name,
+     * in which case the first object whose name begins with it is used
+     * @return the numerical OID string
+     */
+    private String resolveSymbol(final String oidString, final boolean matchPrefix)
+    {
+        if(oidString.isEmpty() || Character.isDigit(oidString.charAt(0)) || oidString.charAt(0) == '.')
+            return oidString;
+        
+        //The name ends at the first dot after any module name, which may not contain dots.
+        int nameEnd = oidString.indexOf('.');
+        String symbol = nameEnd < 0 ? oidString : oidString.substring(0, nameEnd);
+        
+        MibSymbolIndex symbolIndex = treeBuilder.getSymbolIndex();
+        MibTreeNode node = symbolIndex.find(symbol);
+        if(node == null && matchPrefix)
+        {
+            List<String> names = symbolIndex.findNamesByPrefix(symbol, 1);
+            if(!names.isEmpty())
+                node = symbolIndex.find(names.get(0));
+        }
+        
+        if(node == null)
+            return oidString;
+        else if(nameEnd < 0)
+            return node.getOidNumberPath();
+        else
+            return node.getOidNumberPath() + oidString.substring(nameEnd);
+    }
+
+
     /**
      * Removes all leading and trailing instances of a character from a String.
      * 
@@ -38,6 +38,7 @@ public class SmiKeywords
     
     public static final String OID_SYNTAX = "SYNTAX";
     public static final String OID_ACCESS = "ACCESS";
+    public static final String OID_MAX_ACCESS = "MAX-ACCESS";
     public static final String OID_STATUS = "STATUS";
     public static final String OID_DESCRIPTION = "DESCRIPTION";
     public static final String OID_DEFAULT_VALUE = "DEFVAL";
@@ -53,6 +54,11 @@ public class SmiKeywords
     public static final String NOTIFS = "NOTIFICATIONS";
     
     public static final String MIB_BEGIN = "DEFINITIONS ::= BEGIN";
+    public static final String DEFINITIONS = "DEFINITIONS";
+    public static final String BEGIN = "BEGIN";
+    public static final String MACRO = "MACRO";
+    public static final String OBJECT = "OBJECT";
+    public static final String IDENTIFIER = "IDENTIFIER";
     public static final String MIB_END = "END";
     public static final String IMPORTS_BEGIN = "IMPORTS";
     public static final String IMPORT_FROM = "FROM";
@@ -0,0 +1,404 @@
+/**
+ * libmib - Java SNMP Management Information Base Library
+ *
+ * Copyright (C) 2005, Matt Hamilton <matthew.hamilton@washburn.edu>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package org.mibNavigator.libmib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+/**
+ * A tokenizer for SMI MIB module files.  The whole file is read into a CharBuffer at once
+ * and split into tokens in a single pass: identifiers and keywords (including hyphenated 
+ * ones such as OBJECT-TYPE), numbers, quoted strings, binary and hex strings ('01'B, 'ff'H), 
+ * braces, parentheses, the assignment operator ::= and other punctuation.  Comments 
+ * (from "--" to the end of the line) and whitespace are skipped.
+ * <br><br>
+ * Tokens are not copied out of the buffer; the text of the current token is only 
+ * created as a String when asked for, and keywords can be compared against it directly.
+ */
+public class SmiLexer
+{
+    /**
+     * The kinds of tokens in an SMI file.
+     */
+    public enum Token {IDENTIFIER, NUMBER, QUOTED_STRING, BINARY_STRING, ASSIGN, LEFT_BRACE, RIGHT_BRACE,
+        LEFT_PAREN, RIGHT_PAREN, COMMA, SEMICOLON, RANGE, SYMBOL, EOF};
+    
+    private final char[] text;
+    private final int end;
+    private int position;
+    private int line;
+    
+    // the file being read, if the lexer was given one
+    private SmiQuotedText.Source source;
+    
+    // the current token
+    private Token token;
+    private int tokenStart;
+    private int tokenEnd;
+    private int tokenLine;
+    private boolean pushedBack;
+    
+    
+    /**
+     * Reads an entire MIB file, decoded with the platform's default character set, ready 
+     * to be tokenized.
+     * 
+     * @param mibFile the MIB file to tokenize
+     * 
+     * @throws IOException if an error occurs reading the file
+     */
+    public SmiLexer(File mibFile) throws IOException
+    {
+        this(mibFile, mibFile.lastModified(), Files.readAllBytes(mibFile.toPath()));
+    }
+    
+    
+    private SmiLexer(File mibFile, long modified, byte[] contents)
+    {
+        this(Charset.defaultCharset().decode(ByteBuffer.wrap(contents)));
+        
+        boolean ascii = true;
+        for(int i = 0; i < contents.length && ascii; i++)
+            ascii = contents[i] >= 0;
+        
+        source = new SmiQuotedText.Source(mibFile, modified, ascii);
+    }
+    
+    
+    /**
+     * Prepares to tokenize the remaining contents of a CharBuffer.
+     * 
+     * @param buffer the text to tokenize
+     */
+    public SmiLexer(CharBuffer buffer)
+    {
+        if(buffer.hasArray())
+        {
+            text = buffer.array();
+            position = buffer.arrayOffset() + buffer.position();
+            end = buffer.arrayOffset() + buffer.limit();
+        }
+        else
+        {
+            text = new char[buffer.remaining()];
+            buffer.duplicate().get(text);
+            position = 0;
+            end = text.length;
+        }
+        
+        line = 1;
+        token = null;
+        source = null;
+    }
+    
+    
+    /**
+     * Advances to the next token in the file, or to the token that was pushed back.
+     * 
+     * @return the kind of token read; EOF once the end of the file is reached
+     */
+    public Token next()
+    {
+        if(pushedBack)
+        {
+            pushedBack = false;
+            return token;
+        }
+        
+        // skip whitespace and comments
+        while(position < end)
+        {
+            char c = text[position];
+            
+            if(c == '\n')
+            {
+                line++;
+                position++;
+            }
+            else if(c <= ' ')
+                position++;
+            else if(c == '-' && (position + 1 < end) && text[position + 1] == '-')
+            {
+                while(position < end && text[position] != '\n' && text[position] != '\r')
+                    position++;
+            }
+            else
+                break;
+        }
+        
+        tokenStart = position;
+        tokenLine = line;
+        
+        if(position >= end)
+        {
+            tokenEnd = position;
+            token = Token.EOF;
+            return token;
+        }
+        
+        char c = text[position++];
+        
+        if(isLetter(c))
+        {
+            // identifiers may contain single hyphens, but not end with one
+            while(position < end)
+            {
+                char d = text[position];
+                if(isLetter(d) || isDigit(d) || d == '_')
+                    position++;
+                else if(d == '-' && (position + 1 < end) && (isLetter(text[position + 1]) || isDigit(text[position + 1])))
+                    position++;
+                else
+                    break;
+            }
+            
+            token = Token.IDENTIFIER;
+        }
+        else if(isDigit(c) || (c == '-' && position < end && isDigit(text[position])))
+        {
+            while(position < end && isDigit(text[position]))
+                position++;
+            
+            token = Token.NUMBER;
+        }
+        else if(c == '"')
+        {
+            while(position < end && text[position] != '"')
+            {
+                if(text[position] == '\n')
+                    line++;
+                position++;
+            }
+            
+            position = Math.min(position + 1, end); //closing quote mark
+            token = Token.QUOTED_STRING;
+        }
+        else if(c == '\'')
+        {
+            while(position < end && text[position] != '\'')
+                position++;
+            
+            position = Math.min(position + 1, end); //closing quote mark
+            if(position < end && isLetter(text[position]))
+                position++; //B or H suffix
+            
+            token = Token.BINARY_STRING;
+        }
+        else if(c == ':' && (position + 1 < end) && text[position] == ':' && text[position + 1] == '=')
+        {
+            position += 2;
+            token = Token.ASSIGN;
+        }
+        else if(c == '.' && position < end && text[position] == '.')
+        {
+            position++;
+            token = Token.RANGE;
+        }
+        else if(c == '{')
+            token = Token.LEFT_BRACE;
+        else if(c == '}')
+            token = Token.RIGHT_BRACE;
+        else if(c == '(')
+            token = Token.LEFT_PAREN;
+        else if(c == ')')
+            token = Token.RIGHT_PAREN;
+        else if(c == ',')
+            token = Token.COMMA;
+        else if(c == ';')
+            token = Token.SEMICOLON;
+        else
+            token = Token.SYMBOL;
+        
+        tokenEnd = position;
+        return token;
+    }
+    
+    
+    /**
+     * Pushes the current token back, so the next call to next returns it again.  Only one 
+     * token can be pushed back at a time.
+     */
+    public void pushBack()
+    {
+        pushedBack = true;
+    }
+    
+    
+    /**
+     * Returns the kind of the current token.
+     * 
+     * @return the kind of the current token, or null if no token has been read yet
+     */
+    public Token getToken()
+    {
+        return token;
+    }
+    
+    
+    /**
+     * Returns the text of the current token, exactly as it appears in the file.
+     * 
+     * @return the text of the current token
+     */
+    public String getText()
+    {
+        return new String(text, tokenStart, tokenEnd - tokenStart);
+    }
+    
+    
+    /**
+     * Returns the contents of the current quoted string token, without the quote marks.
+     * 
+     * @return the text between the quote marks
+     */
+    public String getQuotedText()
+    {
+        return new String(text, this.getQuotedTextStart(), this.getQuotedTextEnd() - this.getQuotedTextStart());
+    }
+    
+    
+    /**
+     * Returns the position in the file of the start of the current quoted string token's 
+     * contents, following the opening quote mark.
+     * 
+     * @return the offset of the first character of the quoted text
+     */
+    public int getQuotedTextStart()
+    {
+        return tokenStart + 1;
+    }
+    
+    
+    /**
+     * Returns the position in the file of the end of the current quoted string token's
+     * contents, at the closing quote mark.
+     * 
+     * @return the offset following the last character of the quoted text
+     */
+    public int getQuotedTextEnd()
+    {
+        if(tokenEnd > tokenStart + 1 && text[tokenEnd - 1] == '"')
+            return tokenEnd - 1;
+        
+        return tokenEnd;
+    }
+    
+    
+    /**
+     * Returns the file being read, so that parts of it can be read again later, for example 
+     * by an SmiQuotedText.
+     * 
+     * @return the file the lexer was created with, or null if it was given a CharBuffer
+     */
+    public SmiQuotedText.Source getSource()
+    {
+        return source;
+    }
+    
+    
+    /**
+     * Returns whether the current token is the given identifier or keyword.  This is 
+     * cheaper than comparing against getText since no String is created.
+     * 
+     * @param identifier the identifier to compare against
+     * @return true if the current token is an identifier with exactly the given text
+     */
+    public boolean isIdentifier(String identifier)
+    {
+        if(token != Token.IDENTIFIER || tokenEnd - tokenStart != identifier.length())
+            return false;
+        
+        for(int i = 0; i < identifier.length(); i++)
+        {
+            if(text[tokenStart + i] != identifier.charAt(i))
+                return false;
+        }
+        
+        return true;
+    }
+    
+    
+    /**
+     * Returns the position in the file of the start of the current token, for use with 
+     * getSourceText.
+     * 
+     * @return the offset of the first character of the current token
+     */
+    public int getTokenStart()
+    {
+        return tokenStart;
+    }
+    
+    
+    /**
+     * Returns the position in the file just after the end of the current token, for use 
+     * with getSourceText.
+     * 
+     * @return the offset following the last character of the current token
+     */
+    public int getTokenEnd()
+    {
+        return tokenEnd;
+    }
+    
+    
+    /**
+     * Returns a section of the file's text, such as a run of tokens from the start of one 
+     * to the end of another.
+     * 
+     * @param start the offset of the first character
+     * @param stop the offset following the last character
+     * @return the text between the two offsets
+     */
+    public String getSourceText(int start, int stop)
+    {
+        return new String(text, start, stop - start);
+    }
+    
+    
+    /**
+     * Returns the line of the file the current token starts on, counting from 1.
+     * 
+     * @return the line number of the current token
+     */
+    public int getLine()
+    {
+        return tokenLine;
+    }
+    
+    
+    private static boolean isLetter(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c > 0x7F && Character.isLetter(c));
+    }
+    
+    
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+    
+}
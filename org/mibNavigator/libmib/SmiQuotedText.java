@@ -0,0 +1,208 @@
+/**
+ * libmib - Java SNMP Management Information Base Library
+ *
+ * Copyright (C) 2005, Matt Hamilton <matthew.hamilton@washburn.edu>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package org.mibNavigator.libmib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.mibNavigator.libmib.oid.MibText;
+
+/**
+ * SmiQuotedText is the text of one or more quoted sections of an SMI MIB file, such as an 
+ * object's DESCRIPTION, which is read from the file and formatted as 
+ * SmiStructureHandler.readQuotedSection would have formatted it only when it is asked for.
+ * Where there is more than one section, their texts are joined.
+ * <br><br>
+ * If the file has been modified since it was parsed, the text is no longer where it was 
+ * and an empty string is returned instead.
+ */
+public class SmiQuotedText extends MibText
+{
+    private final Source source;
+    
+    // the contents of the quoted section, between the quote marks
+    private final int start;
+    private final int end;
+    
+    // the following section of a text made up of more than one
+    private final SmiQuotedText next;
+    
+    
+    /**
+     * Creates a text made up of a range of a file.
+     * 
+     * @param newSource the file the text is in
+     * @param newRange the start and end offsets of the quoted section's contents, as 
+     *                 returned by SmiStructureHandler.readQuotedRange
+     */
+    public SmiQuotedText(Source newSource, int[] newRange)
+    {
+        this(newSource, newRange, null);
+    }
+    
+    
+    /**
+     * Creates a text made up of a range of a file followed by the sections of another text.
+     * 
+     * @param newSource the file the text is in
+     * @param newRange the start and end offsets of the quoted section's contents, as 
+     *                 returned by SmiStructureHandler.readQuotedRange
+     * @param newNext the text following the section, or null if there is none
+     */
+    public SmiQuotedText(Source newSource, int[] newRange, SmiQuotedText newNext)
+    {
+        source = newSource;
+        start = newRange[0];
+        end = newRange[1];
+        next = newNext;
+    }
+    
+    
+    /**
+     * Reads and formats the quoted sections.
+     * 
+     * @return the formatted text, or an empty string if it can no longer be read
+     */
+    @Override
+    protected String readText()
+    {
+        if(source.file.lastModified() != source.modified)
+            return "";
+        
+        try
+        {
+            StringBuilder text = new StringBuilder();
+            
+            if(source.ascii)
+            {
+                // each character is a byte, so only the sections themselves need to be read
+                try(FileChannel channel = FileChannel.open(source.file.toPath()))
+                {
+                    for(SmiQuotedText section = this; section != null; section = section.next)
+                    {
+                        ByteBuffer bytes = ByteBuffer.allocate(section.end - section.start);
+                        while(bytes.hasRemaining() && channel.read(bytes, section.start + bytes.position()) != -1)
+                            ;
+                        bytes.flip();
+                        
+                        text.append(SmiStructureHandler.formatQuotedText(Charset.defaultCharset().decode(bytes).toString()));
+                    }
+                }
+            }
+            else
+            {
+                CharBuffer chars = Charset.defaultCharset().decode(ByteBuffer.wrap(Files.readAllBytes(source.file.toPath())));
+                for(SmiQuotedText section = this; section != null; section = section.next)
+                    text.append(SmiStructureHandler.formatQuotedText(chars.subSequence(section.start, section.end).toString()));
+            }
+            
+            return text.toString();
+        }
+        catch(IOException | IndexOutOfBoundsException e)
+        {
+            return "";
+        }
+    }
+    
+    
+    /**
+     * Formats the quoted sections from the whole file, which is read once for all the texts 
+     * in it that are read with the same reader one after another.
+     * 
+     * @param reader the reader shared by the texts being read together
+     * @return the formatted text, or an empty string if it can no longer be read
+     */
+    @Override
+    public String readText(MibText.Reader reader)
+    {
+        String contents = (String)reader.getContents(source);
+        if(contents == null)
+        {
+            contents = source.readContents();
+            reader.setContents(source, contents);
+        }
+        
+        try
+        {
+            StringBuilder text = new StringBuilder();
+            for(SmiQuotedText section = this; section != null; section = section.next)
+                text.append(SmiStructureHandler.formatQuotedText(contents.substring(section.start, section.end)));
+            
+            return text.toString();
+        }
+        catch(IndexOutOfBoundsException e)
+        {
+            return "";
+        }
+    }
+    
+    
+    /**
+     * A MIB file that quoted texts are read from, as it was when it was parsed.
+     */
+    public static final class Source
+    {
+        private final File file;
+        private final long modified;
+        private final boolean ascii;
+        
+        /**
+         * Describes a file that has just been read.
+         * 
+         * @param newFile the file
+         * @param newModified the file's modification time when it was read
+         * @param newAscii whether the file's contents are plain ASCII, so that character 
+         *                 offsets are also byte offsets
+         */
+        public Source(File newFile, long newModified, boolean newAscii)
+        {
+            file = newFile;
+            modified = newModified;
+            ascii = newAscii;
+        }
+        
+        /**
+         * Reads and decodes the whole file, or returns an empty string if it has been modified 
+         * since it was parsed or can't be read.
+         */
+        private String readContents()
+        {
+            if(file.lastModified() != modified)
+                return "";
+            
+            try
+            {
+                return new String(Files.readAllBytes(file.toPath()), Charset.defaultCharset());
+            }
+            catch(IOException e)
+            {
+                return "";
+            }
+        }
+    }
+    
+}
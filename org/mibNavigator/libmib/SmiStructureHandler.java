@@ -21,270 +21,405 @@
 
 package org.mibNavigator.libmib;
 
-import java.io.BufferedReader;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.mibNavigator.libmib.SmiLexer.Token;
+import org.mibNavigator.libmib.oid.MibSyntax;
 import org.mibNavigator.libmib.oid.MibValueListItem;
 
 /**
  * Class that handles various block structure parsing when reading SMI format MIB files.
  * This includes extracting the text from single and multi-line quotes (surrounded by " and "), 
- * simple lists (surrounded by { and } with entries delimited by commas), and value list 
- * enumerations, which are simple lists with name-value pairs as entries.
+ * SYNTAX clauses, value list enumerations (name-value pairs enclosed in { and }), and
+ * object identifier values, as well as skipping over blocks that aren't of interest.
  * <br><br>
  * It also handles specific common tasks such as finding the start of the MIB definition.
+ * All reading is done from the tokens of an SmiLexer.
  */
 public class SmiStructureHandler 
 {
-    public static final String NEWLINE_REGEX = "\n|\r\n|\r"; //search for all types of line separators
-    
-    private final BufferedReader in;
+    private final SmiLexer lexer;
     
     
     /**
-     * Initializes the structure handler with a BufferedReader that has been given a MIB 
+     * Initializes the structure handler with an SmiLexer that has been given a MIB 
      * file to be parsed.
-	 * @param newReader
+     * 
+     * @param newLexer the lexer for the MIB file
      */
-    public SmiStructureHandler(final BufferedReader newReader)
+    public SmiStructureHandler(final SmiLexer newLexer)
     {
-        in = newReader;
+        lexer = newLexer;
     }
     
     
     /**
-     * Reads the stream in an attempt to find the start of a MIB module definition and return 
-     * its name.  The stream is scanned until a line containing "DEFINITIONS ::= BEGIN" is 
+     * Reads the file in an attempt to find the start of a MIB module definition and return 
+     * its name.  Tokens are read until the sequence "name DEFINITIONS ::= BEGIN" is 
      * found. If this BEGIN marker can't be found within 100 lines, the scan stops.
      * 
      * @return an empty string if the MIB definition could not be found, and the name 
      * of the MIB if it was found
-     * 
-     * @throws IOException if an error occurs when reading a line
      */
-    public String readMibName() throws IOException
-    {      
-        int lineCnt = 0;
-        String line;
-        String mibName = "";
+    public String readMibName()
+    {
+        String previous = "";
+        Token token = lexer.next();
         
-        while( ((line = in.readLine()) != null) && (lineCnt < 100) )
+        while(token != Token.EOF && lexer.getLine() <= 100)
         {
-            if(line.contains(SmiKeywords.MIB_BEGIN))
+            if(lexer.isIdentifier(SmiKeywords.DEFINITIONS))
             {
-                mibName = line.substring(0, line.indexOf(SmiKeywords.MIB_BEGIN) - 1).trim();
-                break;  // don't read any more lines
+                // skip any tagging defaults, such as "IMPLICIT TAGS", before the ::=
+                while((token = lexer.next()) == Token.IDENTIFIER)
+                    ;
+                
+                if(token == Token.ASSIGN && lexer.next() == Token.IDENTIFIER && lexer.isIdentifier(SmiKeywords.BEGIN))
+                    return previous;
+                
+                return "";
             }
-
-            lineCnt = lineCnt + 1;
+            
+            previous = (token == Token.IDENTIFIER) ? lexer.getText() : "";
+            token = lexer.next();
         }
         
-        return mibName;
+        return "";
     }
     
     
     /**
-     * Reads all text between quote marks.
-	 * @param line
-	 * @param keyword
-	 * @return 
-	 * @throws java.io.IOException
+     * Reads the rest of an IMPORTS section, whose keyword has just been read, up to and
+     * including the closing semicolon, and returns the names of the modules imported from.
+     * 
+     * @return the module name following each FROM, in order
      */
-    public String readQuotedSection(String line, String keyword) throws IOException
+    public List<String> readImports()
     {
-        StringBuilder quote = new StringBuilder("");
-        char c;
-        boolean isSingleLine = false;
+        List<String> moduleNames = new ArrayList<>();
         
-        //If the quoted portion starts on the same line as the given keyword,
-        //the line's contents following the quote mark must be collected.
-        line = line.trim();
-        if(!line.equals(keyword) && line.contains("\""))
+        Token token;
+        while((token = lexer.next()) != Token.SEMICOLON && token != Token.EOF)
         {
-            quote.append(line);
-            int firstQuoteMarkPos = quote.indexOf("\"");
-            quote.delete(0, firstQuoteMarkPos + 1);
-            
-            //strip comments
-            int commentPos = quote.indexOf("--");
-            if(commentPos > -1)
-                quote.delete(commentPos, quote.length());
-            
-            //check for a quote mark at the end of the line
-            int secondQuoteMarkPos = quote.indexOf("\"");
-            if(secondQuoteMarkPos > -1)
+            if(lexer.isIdentifier(SmiKeywords.IMPORT_FROM))
             {
-                isSingleLine = true;
-                quote.delete(secondQuoteMarkPos, quote.length());
-            }      
-            
-            //this gets trimmed off and must be re-added; it's a sloppy fix
-            quote.append(System.getProperty("line.separator"));
+                if(lexer.next() == Token.IDENTIFIER)
+                    moduleNames.add(lexer.getText());
+                else
+                    lexer.pushBack();
+            }
         }
-        else
+        
+        return moduleNames;
+    }
+    
+    
+    /**
+     * Reads a quoted section, such as the text following a DESCRIPTION keyword.  Leading
+     * and trailing whitespace is removed from each line, lines that are commented out are 
+     * dropped, and the remaining lines are joined with HTML line breaks.
+     * 
+     * @return the text of the quote, or an empty string if the next token isn't a quote
+     */
+    public String readQuotedSection()
+    {
+        if(lexer.next() != Token.QUOTED_STRING)
         {
-            //read the stream until the first quote mark is reached
-            c = 0;        
-            while((c != -1) && (c != '\"'))
-                c = (char)in.read();
+            lexer.pushBack();
+            return "";
         }
         
-        //don't read any further if the quote was a single line on the same line as the keyword
-        if(!isSingleLine)
+        return formatQuotedText(lexer.getQuotedText());
+    }
+    
+    
+    /**
+     * Reads a quoted section, such as the text following a DESCRIPTION keyword, without 
+     * creating its text.  The text can be read again later from the file, as an SmiQuotedText.
+     * 
+     * @return the start and end offsets of the contents of the quote, or null if the next 
+     *         token isn't a quote
+     */
+    public int[] readQuotedRange()
+    {
+        if(lexer.next() != Token.QUOTED_STRING)
         {
-            //read the entire quoted section into the StringBuilder
-            c = 0;        
-            while((c != -1) && (c != '\"'))
-            {
-                c = (char)in.read();
-                
-                if(c != '\"')
-                    quote.append(c);
-            }
-            
-            String[] quoteLines = quote.toString().trim().split(NEWLINE_REGEX);
-            quote.delete(0, quote.length());//clear builder for reuse
+            lexer.pushBack();
+            return null;
+        }
+        
+        return new int[] {lexer.getQuotedTextStart(), lexer.getQuotedTextEnd()};
+    }
+    
+    
+    /**
+     * Formats the contents of a quoted section.  Leading and trailing whitespace is removed
+     * from each line, lines that are commented out are dropped, and the remaining lines are 
+     * joined with HTML line breaks.
+     * 
+     * @param quotedText the text between the quote marks
+     * @return the formatted text
+     */
+    public static String formatQuotedText(String quotedText)
+    {
+        String quote = quotedText.trim();
+        StringBuilder formatted = new StringBuilder(quote.length() + 16);
+        
+        boolean firstLine = true;
+        int lineStart = 0;
+        while(lineStart <= quote.length())
+        {
+            int lineEnd = lineStart;
+            while(lineEnd < quote.length() && quote.charAt(lineEnd) != '\n' && quote.charAt(lineEnd) != '\r')
+                lineEnd++;
             
-            for(int i = 0; i < quoteLines.length; i++)
+            String curLine = quote.substring(lineStart, lineEnd).trim();
+            if(!curLine.startsWith("--"))    //ignore commented lines
             {
-                String curLine = quoteLines[i].trim();
-                
-                if(!curLine.trim().startsWith("--"))    //ignore commented lines
-                {
-                    if(i == (quoteLines.length - 1))
-                        quote.append(curLine.trim());   //last line needs no break at the end
-                    else
-                        quote.append(curLine.trim()).append("<br>");
-                }   
+                if(!firstLine)
+                    formatted.append("<br>");
+                formatted.append(curLine);
+                firstLine = false;
             }
             
-        } //end of block that applies to quotes that are not entirely on a single line with the given keyword
+            // treat \r\n as a single line break
+            if(lineEnd + 1 < quote.length() && quote.charAt(lineEnd) == '\r' && quote.charAt(lineEnd + 1) == '\n')
+                lineEnd++;
+            
+            lineStart = lineEnd + 1;
+        }
         
-        return quote.toString().trim();
+        return formatted.toString().trim();
     }
     
     
     /**
-     * Reads a comma delimited list enclosed in curly brackets: { and }.
-     * The process is very similar to reading text enclosed in quote marks, but there
-     * are also enough differences to warrant different methods.
-	 * @param line
-	 * @param keyword
-	 * @return 
-	 * @throws java.io.IOException 
+     * Reads the type following a SYNTAX keyword, and its list of named values if there is one.
+     * The type's name is kept along with any size or range restriction, for example
+     * "DisplayString (SIZE (0..255))", while "SEQUENCE OF" types keep the entry type's name.
+     * 
+     * @return the syntax, or null if no type could be read
      */
-    public List<String> readList(String line, String keyword) throws IOException
+    public MibSyntax readSyntax()
     {
-        StringBuilder listString = new StringBuilder("");
-        char c;
-        boolean isSingleLine = false;
+        if(lexer.next() != Token.IDENTIFIER)
+        {
+            lexer.pushBack();
+            return null;
+        }
         
-        //If the list starts on the same line as the given keyword,
-        //the line's contents following the left curly bracket must be collected.
-        line = line.trim();
-        if(!line.equals(keyword) && line.contains("{"))
+        int typeStart = lexer.getTokenStart();
+        int typeEnd = lexer.getTokenEnd();
+        
+        // two word types
+        if(lexer.isIdentifier("OCTET") || lexer.isIdentifier(SmiKeywords.OBJECT))
         {
-            listString.append(line);
-            
-            int leftBracketPos = listString.indexOf("{");
-            listString.delete(0, leftBracketPos + 1);
-            
-            //strip comments
-            int commentPos = listString.indexOf("--");
-            if(commentPos > -1)
-                listString.delete(commentPos, listString.length());
-            
-            //check for a right bracket at the end of the line
-            int rightBracketPos = listString.indexOf("}");
-            if(rightBracketPos > 0)
-            {
-                isSingleLine = true;
-                listString.delete(rightBracketPos, listString.length());
-            }      
-            
-            //this gets trimmed off and must be re-added; it's a sloppy fix
-            listString.append(System.getProperty("line.separator"));
+            if(lexer.next() == Token.IDENTIFIER)
+                typeEnd = lexer.getTokenEnd();
+            else
+                lexer.pushBack();
         }
+        else if(lexer.isIdentifier("SEQUENCE"))
+        {
+            // either SEQUENCE OF entryType, or a SEQUENCE { ... } definition
+            Token token = lexer.next();
+            if(lexer.isIdentifier("OF") && lexer.next() == Token.IDENTIFIER)
+                typeEnd = lexer.getTokenEnd();
+            else if(token == Token.LEFT_BRACE)
+                this.skipBlock();
+            else
+                lexer.pushBack();
+        }
+        
+        List<MibValueListItem> values = null;
+        
+        Token token = lexer.next();
+        if(token == Token.LEFT_PAREN)
+        {
+            this.skipBlock();
+            typeEnd = lexer.getTokenEnd();
+        }
+        else if(token == Token.LEFT_BRACE)
+            values = this.readValueListContents();
         else
+            lexer.pushBack();
+        
+        MibSyntax syntax = new MibSyntax(collapseWhitespace(lexer.getSourceText(typeStart, typeEnd)));
+        if(values != null)
+            syntax.setValuesList(values);
+        
+        return syntax;
+    }
+    
+    
+    /**
+     * Read a comma delimited list of name-value pairs enclosed in curly brackets, 
+     * essentially an enumeration.
+     * 
+     * @return a MibValueListItem List, empty if the next token isn't a left bracket
+     */
+    public List<MibValueListItem> readValueList()
+    {
+        if(lexer.next() != Token.LEFT_BRACE)
         {
-            //read the stream until the left bracket is reached
-            c = 0;        
-            while((c != -1) && (c != '{'))
-                c = (char)in.read();
+            lexer.pushBack();
+            return new ArrayList<>();
         }
         
-        //don't read any further if the list was a single line on the same line as the keyword
-        if(!isSingleLine)
+        return this.readValueListContents();
+    }
+    
+    
+    /**
+     * Reads the name-value pairs of a list whose opening bracket has just been read, up to 
+     * and including the closing bracket.
+     */
+    private List<MibValueListItem> readValueListContents()
+    {
+        List<MibValueListItem> valueList = new ArrayList<>();
+        
+        Token token = lexer.next();
+        while(token != Token.RIGHT_BRACE && token != Token.EOF)
         {
-            //read the entire list (until the '}') into the StringBuilder
-            c = 0;        
-            while((c != -1) && (c != '}'))
+            if(token == Token.IDENTIFIER)
             {
-                c = (char)in.read();
-
-                if(c != '}')
-                    listString.append(c);
+                String label = lexer.getText();
+                
+                if(lexer.next() == Token.LEFT_PAREN && lexer.next() == Token.NUMBER)
+                {
+                    //add the value list entry
+                    valueList.add(new MibValueListItem(label, Integer.parseInt(lexer.getText())));
+                    token = lexer.next(); //right parenthesis
+                }
+                else
+                    lexer.pushBack();
             }
+            else if(token == Token.LEFT_BRACE || token == Token.LEFT_PAREN)
+                this.skipBlock();
+            
+            token = lexer.next();
         }
         
-        String[] listLines = listString.toString().split(NEWLINE_REGEX + "|,");
+        return valueList;
+    }
+    
+    
+    /**
+     * Reads an object identifier value enclosed in curly brackets, such as { parentName 3 } 
+     * or { iso(1) org(3) dod(6) 1 }, and returns its last two components: the name of the 
+     * parent and the object's number.
+     * 
+     * @return a two element array of the parent's name and the object's number, or null if 
+     * the value isn't of this form
+     */
+    public String[] readOidValue()
+    {
+        if(lexer.next() != Token.LEFT_BRACE)
+        {
+            lexer.pushBack();
+            return null;
+        }
         
-        //loop through each item and add it to the list
-        ArrayList<String> returnList = new ArrayList<>();
+        String parentName = null;
+        String number = null;
         
-		for (String listLine : listLines) {
-			String curLine = listLine.trim();
-			if(!curLine.trim().equals("") && !curLine.trim().startsWith("--"))
-			{
-				int commentPos = curLine.indexOf("--");
-				if(commentPos > -1)
-					curLine = curLine.substring(0, commentPos).trim();
-				
-				returnList.add(curLine);
-			}
-		}
+        Token token = lexer.next();
+        while(token != Token.RIGHT_BRACE && token != Token.EOF)
+        {
+            if(token == Token.IDENTIFIER)
+            {
+                parentName = lexer.getText();
+                number = null;
+                
+                // skip a number in parentheses following a name
+                if(lexer.next() == Token.LEFT_PAREN)
+                    this.skipBlock();
+                else
+                    lexer.pushBack();
+            }
+            else if(token == Token.NUMBER)
+                number = lexer.getText();
+            else if(token == Token.LEFT_BRACE || token == Token.LEFT_PAREN)
+                this.skipBlock();
+            
+            token = lexer.next();
+        }
         
-        return returnList;
+        if(parentName == null || number == null)
+            return null;
+        
+        return new String[] {parentName, number};
     }
     
     
     /**
-     * Read comma delimited lists of name-value pairs, essentially enumerations.
-     * This method uses readList and further parses the returned List of Strings
-     * to extract the names and values.
-     * 
-	 * @param line
-	 * @param keyword
-     * @return a MibValueListItem ArrayList
-	 * @throws java.io.IOException
+     * Skips the rest of a block whose opening bracket or parenthesis has just been read, 
+     * including any nested blocks, up to and including the matching closing one.
      */
-    public List<MibValueListItem> readValueList(String line, String keyword) throws IOException
+    public void skipBlock()
     {
-        List<String> valueLines = readList(line, keyword);
+        int depth = 1;
+        Token token;
         
-        List<MibValueListItem> valueList = new ArrayList<>();
+        while(depth > 0 && (token = lexer.next()) != Token.EOF)
+        {
+            if(token == Token.LEFT_BRACE || token == Token.LEFT_PAREN)
+                depth++;
+            else if(token == Token.RIGHT_BRACE || token == Token.RIGHT_PAREN)
+                depth--;
+        }
+    }
+    
+    
+    /**
+     * Skips tokens up to and including the next token of the given kind.
+     * 
+     * @param stop the kind of token to stop after
+     */
+    public void skipPast(Token stop)
+    {
+        Token token;
+        while((token = lexer.next()) != stop && token != Token.EOF)
+            ;
+    }
+    
+    
+    /**
+     * Skips tokens up to and including the given identifier, such as the END of a macro definition.
+     * 
+     * @param identifier the identifier to stop after
+     */
+    public void skipPast(String identifier)
+    {
+        while(lexer.next() != Token.EOF && !lexer.isIdentifier(identifier))
+            ;
+    }
+    
+    
+    /**
+     * Replaces each run of whitespace, as found in a SYNTAX spread over several lines, with a single space.
+     */
+    private static String collapseWhitespace(String text)
+    {
+        StringBuilder collapsed = new StringBuilder(text.length());
+        boolean inWhitespace = false;
         
-		for (String valueLine : valueLines) {
-			String curLine = valueLine.trim();
-			if(curLine.contains("(") && curLine.contains(")"))
-			{
-				int commentPos = curLine.indexOf("--");
-				if(commentPos > -1)
-					curLine = curLine.substring(0, commentPos).trim();
-				
-				//extract the integer value and its label/alias/name
-				String label = curLine.substring(0, curLine.indexOf("(")).trim();
-				String number = curLine.substring(curLine.indexOf("(") + 1, curLine.lastIndexOf(")")).trim();
-				
-				//add the value list entry
-				MibValueListItem curValueItem = new MibValueListItem(label, Integer.parseInt(number));
-				valueList.add(curValueItem);
-			}
-		}
+        for(int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if(c <= ' ')
+                inWhitespace = true;
+            else
+            {
+                if(inWhitespace)
+                    collapsed.append(' ');
+                collapsed.append(c);
+                inWhitespace = false;
+            }
+        }
         
-        return valueList;
+        return collapsed.toString();
     }
 
 }
@@ -22,29 +22,65 @@
 package org.mibNavigator.libmib.mibtree;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreeNode;
 
 import org.mibNavigator.libmib.MibInvalidFormatException;
 import org.mibNavigator.libmib.oid.MibObjectType;
+import org.mibNavigator.libmib.oid.MibSyntax;
+import org.mibNavigator.libmib.oid.MibValueListItem;
 
 /**
  * AbstractMibTreeBuilder implements functionality that can be shared by different MIB parsers.  It 
  * conains most of the logic that does not pertain to the actual processing of a MIB file's structure 
  * and leaves the details of how to actually parse a MIB up to concrete subclasses.
+ * <br><br>
+ * Compiling a MIB is split into two phases.  Subclasses parse a file into a MibModule, a list of 
+ * object definitions, without touching the tree; this class then links the definitions into the 
+ * tree.  When a whole directory is added, the files are parsed in parallel and then linked one 
+ * after another, each module after the modules it imports from, so the resulting tree doesn't 
+ * depend on the parsing threads.
+ * <br><br>
+ * A node whose parent isn't in the tree yet waits in a map from the parent's name to its pending 
+ * children, and is added the moment the parent is, along with any children waiting for it in turn.
+ * Each node goes among its parent's children in order of its id, so the order of the children 
+ * doesn't depend on the order the modules were linked or relinked in.
+ * <br><br>
+ * If a cache file is set, the first directory added to an empty tree is compiled only when its 
+ * files have changed since the cache was written; otherwise the tree is read from the cache.
+ * <br><br>
+ * The builder keeps track of the nodes each file's module added, so a module can be removed from 
+ * the tree again.  Once the tree is in use, updateMIBDirectory recompiles only the files of a 
+ * directory that have changed, along with the modules that import from them, and the changes are 
+ * announced to the tree model's listeners node by node.
  */
 public abstract class AbstractMibTreeBuilder implements MibTreeBuilder
 {
     protected TreeModel mibTreeModel = null;
     
-    // contains nodes that couldn't be added to the MIB tree at creation time and their parents
-    // in small pairs of (lost node, parent name)
-    protected List<Object[]> lostChildren;
+    // contains nodes that couldn't be added to the MIB tree at creation time, by the name
+    // of the parent they are waiting for
+    protected Map<String, List<MibTreeNode>> pendingChildren;
     
     // This improves performance in searching for existing nodes with what seems to be 
     // relatively little memory cost.  According to JProfiler, the call to the very 
@@ -52,11 +88,36 @@ public abstract class AbstractMibTreeBuilder implements MibTreeBuilder
     // using the HashMap to search for existing nodes is an O(1) operation.
     protected HashMap<String, MibTreeNode> nodeMap;
     
+    // where the compiled tree is cached, or null to always compile
+    protected File cacheFile = null;
+    
+    // whether any module has been added to the tree, since a cache only holds a single directory
+    private boolean modulesLinked = false;
+    
+    // one copy of each of the data type and value names repeated throughout the tree
+    private final Map<String, String> sharedNames = new HashMap<>();
+    
+    // the modules linked into the tree, by the file they were read from
+    private Map<File, LinkedModule> linkedModules = new LinkedHashMap<>();
+    
+    // whether changes to the tree are announced to the model's listeners, as they are once
+    // the tree is being shown; while a tree is first built, they are not
+    private boolean fireTreeEvents = false;
+    
+    // counts the changes to the linked modules, so an update prepared before one isn't applied
+    private int linkChanges = 0;
+    
+    // a translator and a symbol index for the tree as it is, or null if the tree has changed 
+    // since they were made
+    private OidTranslator oidTranslator = null;
+    private MibSymbolIndex symbolIndex = null;
+    
     
     public AbstractMibTreeBuilder()
     {
         // Initialize the HashMap with 2000 entries to avoid rehashing early.
         nodeMap = new HashMap<>(2000); 
+        pendingChildren = new HashMap<>();
                 
         // Tree Initialization
         MibObjectType root = new MibObjectType("root", 0);
@@ -90,105 +151,775 @@ public abstract class AbstractMibTreeBuilder implements MibTreeBuilder
     /**
      * Adds all MIB files in the specified directory to the MIB tree if that directory 
      * exists and the files are valid.  Because potentially more than one MIB is being 
-     * added, the order in which the files are added is taken into account.
+     * added, the modules are linked in an order where each comes after the modules named
+     * in its IMPORTS, where they are in the same directory.
      * If a file in the directory is invalid, it is skipped and the next file is processed.
+     * <br><br>
+     * If a cache file is set and no MIBs have been added yet, the tree is read from the cache
+     * when the cache is current, and the cache is rewritten after compiling when it isn't.
      * 
      * @param mibDir the directory containing the MIB files
      * 
      * @throws IllegalArgumentException if mibDir is not a directory
      */
-	@Override
+    @Override
     public void addMIBDirectory(File mibDir)
     {
         // Make sure the file exists and is actually a directory.
         if(!mibDir.isDirectory())
             throw new IllegalArgumentException("\"" + mibDir.getName() + "\" is not a directory.");
 
+        // Sort the files so that modules with no dependency between them are always linked in the same order.
         File[] mibDirList = mibDir.listFiles();
+        Arrays.sort(mibDirList);
+        
+        boolean useCache = cacheFile != null && !modulesLinked;
+        if(useCache && this.loadCache(mibDir, mibDirList))
+            return;
 
-        // Organize MIB files for a more optimal compile order.
-        // This is really half-assed; a proper handling of dependencies is very much in order,
-        // but I am not sure how to do this the first time around.
-        // TODO: create a way of determining mib dependencies and organizing the file list
-        //       accordingly
-        File[] rfcList = new File[mibDirList.length];
-        File[] otherList = new File[mibDirList.length];
-
-        int rfcCnt = 0;
-        int otherCnt = 0;
-		for (File mibDirList1 : mibDirList) {
-			if (mibDirList1.getName().toLowerCase().startsWith("rfc")) {
-				rfcList[rfcCnt] = mibDirList1;
-				rfcCnt++;
-			} else {
-				otherList[otherCnt] = mibDirList1;
-				otherCnt++;
-			}
-		}
-        
-        Arrays.sort(rfcList, 0, rfcCnt); // RFC dependencies USUALLY tend to be in numerical order, though this just sorts lexicographically
-		System.arraycopy(rfcList, 0, mibDirList, 0, rfcCnt);
-        
-        int j = rfcCnt;
-        for(int i = 0; i < otherCnt; i++)
-        {
-            mibDirList[j] = otherList[i];
-            j++;
+        List<String> errors = this.compileFiles(mibDirList);
+        
+        if(useCache)
+            this.saveCache(mibDir, mibDirList, errors);
+    }
+    
+    
+    /**
+     * Parses MIB files in parallel and links the valid modules into the tree, each after the 
+     * modules it imports from.  Invalid files are reported and skipped.
+     * 
+     * @param mibFiles the files to compile, in sorted order
+     * @return the messages for the invalid files, in file order
+     */
+    private List<String> compileFiles(File[] mibFiles)
+    {
+        return this.linkFiles(this.parseFiles(mibFiles));
+    }
+    
+    
+    /**
+     * Parses MIB files in parallel, without touching the tree.
+     * 
+     * @param mibFiles the files to parse, in sorted order
+     * @return the parsed files, in the same order
+     */
+    private List<ParsedFile> parseFiles(File[] mibFiles)
+    {
+        return Arrays.stream(mibFiles)
+            .parallel()
+            .map(this::parseQuietly)
+            .collect(Collectors.toList());
+    }
+    
+    
+    /**
+     * Links the valid modules of parsed files into the tree, each after the modules it imports 
+     * from.  Invalid files are reported and skipped.
+     * 
+     * @param parsedFiles the parsed files, in sorted order
+     * @return the messages for the invalid files, in file order
+     */
+    private List<String> linkFiles(List<ParsedFile> parsedFiles)
+    {
+        List<MibModule> modules = new ArrayList<>(parsedFiles.size());
+        Map<MibModule, ParsedFile> parsedModules = new IdentityHashMap<>();
+        List<String> errors = new ArrayList<>();
+        for(ParsedFile parsedFile : parsedFiles)
+        {
+            if(parsedFile.module != null)
+            {
+                modules.add(parsedFile.module);
+                parsedModules.put(parsedFile.module, parsedFile);
+            }
+            else
+            {
+                System.out.println(parsedFile.error.getMessage());
+                errors.add(parsedFile.error.getMessage());
+                
+                // remember the invalid file, so it isn't read again until it changes
+                linkedModules.put(parsedFile.mibFile, 
+                        new LinkedModule(null, Collections.<String>emptyList(), parsedFile.lastModified, parsedFile.length));
+                linkChanges++;
+            }
         }
-
-        // this uses the lost children list on a global level between files
-        if(lostChildren == null)
-            lostChildren = new ArrayList<>();
         
-        // loop through all files in the mib directory and add them to the tree
+        // link the parsed modules into the tree, one at a time
+        for(MibModule module : orderByImports(modules))
+            this.linkModule(module, parsedModules.get(module).lastModified, parsedModules.get(module).length);
+        
+        return errors;
+    }
+    
+    
+    /**
+     * Brings the tree up to date with the MIB files in a directory that was added before.  Files 
+     * that have been added, changed or removed since they were compiled, going by their sizes and 
+     * modification times, are removed from the tree and compiled again, along with every module 
+     * that imports from them, directly or not.  The changes to the tree are announced to the 
+     * model's listeners as nodes are inserted and removed, so this must be called on the thread
+     * that uses the model.  To parse the files on another thread instead, use prepareUpdate 
+     * and applyUpdate.
+     * 
+     * @param mibDir the directory containing the MIB files
+     * 
+     * @throws IllegalArgumentException if mibDir is not a directory
+     */
+    @Override
+    public void updateMIBDirectory(File mibDir)
+    {
+        MibTreeUpdate update = this.prepareUpdate(mibDir);
+        if(update == null)
+            return;
+        
+        update.parse();
+        this.applyUpdate(update);
+    }
+    
+    
+    /**
+     * Finds the files of a directory that was added before that have been added, changed or 
+     * removed since they were compiled, along with the files of every module that imports from 
+     * them, directly or not.  Nothing is read or changed until the update is parsed and applied.
+     * 
+     * @param mibDir the directory containing the MIB files
+     * @return the update, or null if the tree is up to date with the directory
+     * 
+     * @throws IllegalArgumentException if mibDir is not a directory
+     */
+    @Override
+    public MibTreeUpdate prepareUpdate(File mibDir)
+    {
+        if(!mibDir.isDirectory())
+            throw new IllegalArgumentException("\"" + mibDir.getName() + "\" is not a directory.");
+        
+        File[] mibDirList = mibDir.listFiles();
+        Arrays.sort(mibDirList);
+        
+        Set<File> changed = new LinkedHashSet<>();
         for(File mibFile : mibDirList)
         {
-            try
+            LinkedModule module = linkedModules.get(mibFile);
+            if(module == null || module.lastModified != mibFile.lastModified() || module.length != mibFile.length())
+                changed.add(mibFile);
+        }
+        
+        Set<File> present = new HashSet<>(Arrays.asList(mibDirList));
+        for(File mibFile : linkedModules.keySet())
+        {
+            if(mibDir.equals(mibFile.getParentFile()) && !present.contains(mibFile))
+                changed.add(mibFile);
+        }
+        
+        if(changed.isEmpty())
+            return null;
+        
+        Set<File> affected = this.addDependents(changed);
+        
+        List<File> reloaded = new ArrayList<>();
+        for(File mibFile : affected)
+        {
+            if(mibFile.exists())
+                reloaded.add(mibFile);
+        }
+        Collections.sort(reloaded);
+        
+        return new DirectoryUpdate(affected, reloaded.toArray(new File[reloaded.size()]));
+    }
+    
+    
+    /**
+     * Removes the modules of a parsed update's files from the tree and links the newly parsed 
+     * ones in their place.  The changes are announced to the model's listeners as nodes are 
+     * inserted and removed.
+     * 
+     * @param update an update prepared by this builder and parsed since
+     * @return false if the tree has changed since the update was prepared, so it wasn't applied
+     * 
+     * @throws IllegalArgumentException if the update wasn't prepared by this builder
+     * @throws IllegalStateException if the update hasn't been parsed
+     */
+    @Override
+    public boolean applyUpdate(MibTreeUpdate update)
+    {
+        if(!(update instanceof DirectoryUpdate) || ((DirectoryUpdate)update).getBuilder() != this)
+            throw new IllegalArgumentException("The update was not prepared by this builder.");
+        
+        DirectoryUpdate directoryUpdate = (DirectoryUpdate)update;
+        if(directoryUpdate.parsedFiles == null)
+            throw new IllegalStateException("The update has not been parsed.");
+        
+        if(directoryUpdate.linkChangeCount != linkChanges)
+            return false;
+        
+        fireTreeEvents = true;
+        try
+        {
+            this.unloadModules(directoryUpdate.affected);
+            this.linkFiles(directoryUpdate.parsedFiles);
+        }
+        finally
+        {
+            fireTreeEvents = false;
+        }
+        
+        return true;
+    }
+    
+    
+    /**
+     * Removes the objects a MIB file added from the tree.  Objects of other modules below them 
+     * wait for their parents again, as if their modules had been linked first.  The changes are 
+     * announced to the model's listeners as nodes are removed.
+     * 
+     * @param mibFile the MIB file whose module is removed
+     */
+    @Override
+    public void removeMIBFile(File mibFile)
+    {
+        fireTreeEvents = true;
+        try
+        {
+            this.unloadModules(Collections.singleton(mibFile));
+        }
+        finally
+        {
+            fireTreeEvents = false;
+        }
+    }
+    
+    
+    /**
+     * Adds to a set of changed files the files of all of the modules that import from their 
+     * modules, directly or not, and of the modules that define objects the changed modules 
+     * added to the tree, so those definitions can take their place.
+     */
+    private Set<File> addDependents(Set<File> changed)
+    {
+        Set<File> affected = new LinkedHashSet<>(changed);
+        Deque<File> toVisit = new ArrayDeque<>(changed);
+        
+        while(!toVisit.isEmpty())
+        {
+            LinkedModule changedModule = linkedModules.get(toVisit.pop());
+            if(changedModule == null)
+                continue;
+            
+            Set<String> addedNames = new HashSet<>();
+            for(MibTreeNode node : changedModule.nodes)
+                addedNames.add(nameOf(node));
+            
+            for(Map.Entry<File, LinkedModule> entry : linkedModules.entrySet())
+            {
+                LinkedModule module = entry.getValue();
+                if(affected.contains(entry.getKey()))
+                    continue;
+                
+                boolean importer = changedModule.name != null && module.imports.contains(changedModule.name);
+                boolean shadowed = !Collections.disjoint(module.aliases, addedNames);
+                if(importer || shadowed)
+                {
+                    affected.add(entry.getKey());
+                    toVisit.push(entry.getKey());
+                }
+            }
+        }
+        
+        return affected;
+    }
+    
+    
+    /**
+     * Removes the nodes the modules of the given files added to the tree, or left waiting for 
+     * their parents, and forgets the modules.  Nodes of other modules below the removed nodes 
+     * are taken out of the tree with them, and wait for their parents again.
+     */
+    private void unloadModules(Collection<File> mibFiles)
+    {
+        linkChanges++;
+        
+        List<MibTreeNode> ownedNodes = new ArrayList<>();
+        for(File mibFile : mibFiles)
+        {
+            LinkedModule module = linkedModules.remove(mibFile);
+            if(module != null)
+                ownedNodes.addAll(module.nodes);
+        }
+        
+        Set<MibTreeNode> owned = Collections.newSetFromMap(new IdentityHashMap<MibTreeNode, Boolean>());
+        owned.addAll(ownedNodes);
+        
+        // nodes that are still waiting for their parents are simply dropped
+        for(List<MibTreeNode> waiting : pendingChildren.values())
+            waiting.removeIf(owned::contains);
+        pendingChildren.values().removeIf(List::isEmpty);
+        
+        // Removing the highest of the nodes from the tree takes the rest with them.
+        List<MibTreeNode> topNodes = new ArrayList<>();
+        for(MibTreeNode node : ownedNodes)
+        {
+            if(node.getParent() == null)
+                continue;
+            
+            boolean top = true;
+            for(TreeNode ancestor = node.getParent(); ancestor != null && top; ancestor = ancestor.getParent())
+                top = !owned.contains(ancestor);
+            
+            if(top)
+                topNodes.add(node);
+        }
+        
+        for(MibTreeNode topNode : topNodes)
+        {
+            if(fireTreeEvents)
+                ((DefaultTreeModel)mibTreeModel).removeNodeFromParent(topNode);
+            else
+                topNode.removeFromParent();
+            
+            this.releaseSubtree(topNode, owned);
+        }
+        
+        for(MibTreeNode node : ownedNodes)
+        {
+            String name = nameOf(node);
+            if(nodeMap.get(name) == node)
+                nodeMap.remove(name);
+        }
+        
+        this.treeChanged();
+    }
+    
+    
+    /**
+     * Takes apart the subtree of a node that has been removed from the tree.  Nodes in it that 
+     * aren't being unloaded are forgotten and wait for their parents again.
+     */
+    private void releaseSubtree(MibTreeNode topNode, Set<MibTreeNode> owned)
+    {
+        List<MibTreeNode> subtree = new ArrayList<>();
+        for(Enumeration<TreeNode> e = topNode.preorderEnumeration(); e.hasMoreElements(); )
+            subtree.add((MibTreeNode)e.nextElement());
+        
+        for(MibTreeNode node : subtree)
+        {
+            if(node != topNode && !owned.contains(node))
+            {
+                String name = nameOf(node);
+                if(nodeMap.get(name) == node)
+                    nodeMap.remove(name);
+                
+                String parentName = nameOf((MibTreeNode)node.getParent());
+                pendingChildren.computeIfAbsent(parentName, key -> new ArrayList<>()).add(node);
+            }
+        }
+        
+        for(MibTreeNode node : subtree)
+            node.removeAllChildren();
+    }
+    
+    
+    private static String nameOf(MibTreeNode node)
+    {
+        return ((MibObjectType)node.getUserObject()).getName();
+    }
+    
+    
+    /**
+     * Sets the file the compiled tree of the first MIB directory is cached in.
+     * 
+     * @param newCacheFile the cache file, or null to always compile the MIBs
+     */
+    public void setCacheFile(File newCacheFile)
+    {
+        cacheFile = newCacheFile;
+    }
+    
+    
+    /**
+     * Gets the file the compiled tree is cached in.
+     * 
+     * @return the cache file, or null if there is none
+     */
+    public File getCacheFile()
+    {
+        return cacheFile;
+    }
+    
+    
+    /**
+     * Replaces the tree with the one in the cache file, if the cache is current for the
+     * given files.
+     * 
+     * @return true if the tree was read from the cache
+     */
+    private boolean loadCache(File mibDir, File[] mibDirList)
+    {
+        MibTreeCache cache;
+        try
+        {
+            cache = MibTreeCache.read(cacheFile, this.getClass().getName(), mibDir, mibDirList);
+        }
+        catch(IOException e)
+        {
+            System.out.println("Unable to read the MIB cache: " + e.getMessage());
+            return false;
+        }
+        
+        if(cache == null)
+            return false;
+        
+        // repeat the messages for the invalid files, as compiling them would
+        for(String error : cache.getErrors())
+            System.out.println(error);
+        
+        this.treeChanged();
+        nodeMap.clear();
+        nodeMap.putAll(cache.getNodes());
+        pendingChildren = cache.getPendingChildren();
+        linkedModules = cache.getModules();
+        ((DefaultTreeModel)mibTreeModel).setRoot(cache.getRoot());
+        modulesLinked = true;
+        linkChanges++;
+        
+        return true;
+    }
+    
+    
+    /**
+     * Writes the tree to the cache file.  Failing to write it only means the MIBs will be 
+     * compiled again next time, so errors are reported but not thrown.
+     */
+    private void saveCache(File mibDir, File[] mibDirList, List<String> errors)
+    {
+        try
+        {
+            MibTreeCache.write(cacheFile, this.getClass().getName(), mibDir, mibDirList, 
+                    (MibTreeNode)mibTreeModel.getRoot(), pendingChildren, linkedModules, errors);
+        }
+        catch(IOException e)
+        {
+            System.out.println("Unable to write the MIB cache: " + e.getMessage());
+        }
+    }
+    
+    
+    /**
+     * Parses a MIB file, catching rather than throwing the exception for an invalid file, 
+     * so files can be parsed in a stream.
+     */
+    private ParsedFile parseQuietly(File mibFile)
+    {
+        // note the file's state before reading it, so a change made while it is read is noticed later
+        long lastModified = mibFile.lastModified();
+        long length = mibFile.length();
+        
+        try
+        {
+            return new ParsedFile(mibFile, lastModified, length, this.parseMIBFile(mibFile), null);
+        }
+        catch(MibInvalidFormatException e)
+        {
+            return new ParsedFile(mibFile, lastModified, length, null, e);
+        }
+    }
+    
+    
+    /**
+     * The outcome of parsing one file of a directory: either its module or the reason it was invalid.
+     */
+    private static final class ParsedFile
+    {
+        private final File mibFile;
+        private final long lastModified;
+        private final long length;
+        private final MibModule module;
+        private final MibInvalidFormatException error;
+        
+        private ParsedFile(File newMibFile, long newLastModified, long newLength, MibModule newModule, 
+                MibInvalidFormatException newError)
+        {
+            mibFile = newMibFile;
+            lastModified = newLastModified;
+            length = newLength;
+            module = newModule;
+            error = newError;
+        }
+    }
+    
+    
+    /**
+     * The files a directory update removes from the tree and links again, and once it has been 
+     * parsed, their parsed modules.  It only applies to the tree as it was when it was prepared.
+     */
+    private final class DirectoryUpdate implements MibTreeUpdate
+    {
+        private final int linkChangeCount = linkChanges;
+        private final Set<File> affected;
+        private final File[] reloaded;
+        private volatile List<ParsedFile> parsedFiles = null;
+        
+        private DirectoryUpdate(Set<File> newAffected, File[] newReloaded)
+        {
+            affected = newAffected;
+            reloaded = newReloaded;
+        }
+        
+        @Override
+        public void parse()
+        {
+            parsedFiles = AbstractMibTreeBuilder.this.parseFiles(reloaded);
+        }
+        
+        private AbstractMibTreeBuilder getBuilder()
+        {
+            return AbstractMibTreeBuilder.this;
+        }
+    }
+    
+    
+    /**
+     * A module that has been linked into the tree: its name and imports, the nodes it added, 
+     * whether they are in the tree or waiting for their parents, and the size and modification 
+     * time of its file when it was read.
+     */
+    static final class LinkedModule
+    {
+        // null for a file that couldn't be parsed
+        final String name;
+        final List<String> imports;
+        final List<MibTreeNode> nodes = new ArrayList<>();
+        // the names of the objects it defines that another module had already added
+        final List<String> aliases = new ArrayList<>();
+        long lastModified;
+        long length;
+        
+        LinkedModule(String newName, List<String> newImports, long newLastModified, long newLength)
+        {
+            name = newName;
+            imports = newImports;
+            lastModified = newLastModified;
+            length = newLength;
+        }
+    }
+    
+    
+    /**
+     * Sorts modules topologically by their imports, so each module comes after all of the 
+     * given modules it imports from.  Imports of modules that aren't in the list are ignored.
+     * Where there is a choice, and to break import cycles, modules are taken in their order 
+     * in the list.
+     * 
+     * @param modules the modules to sort
+     * @return the modules in dependency order
+     */
+    static List<MibModule> orderByImports(List<MibModule> modules)
+    {
+        int moduleCount = modules.size();
+        
+        // more than one file may define a module of the same name
+        Map<String, List<Integer>> modulesByName = new HashMap<>();
+        for(int i = 0; i < moduleCount; i++)
+            modulesByName.computeIfAbsent(modules.get(i).getName(), name -> new ArrayList<>()).add(i);
+        
+        // for each module, the modules importing from it and the number of its imports not yet placed
+        List<List<Integer>> importers = new ArrayList<>(moduleCount);
+        int[] unplacedImports = new int[moduleCount];
+        for(int i = 0; i < moduleCount; i++)
+            importers.add(new ArrayList<>());
+        
+        for(int i = 0; i < moduleCount; i++)
+        {
+            for(String importName : modules.get(i).getImports())
+            {
+                for(int j : modulesByName.getOrDefault(importName, new ArrayList<>()))
+                {
+                    if(j != i)
+                    {
+                        importers.get(j).add(i);
+                        unplacedImports[i]++;
+                    }
+                }
+            }
+        }
+        
+        PriorityQueue<Integer> ready = new PriorityQueue<>();
+        for(int i = 0; i < moduleCount; i++)
+        {
+            if(unplacedImports[i] == 0)
+                ready.add(i);
+        }
+        
+        List<MibModule> ordered = new ArrayList<>(moduleCount);
+        boolean[] placed = new boolean[moduleCount];
+        int nextUnplaced = 0;
+        
+        while(ordered.size() < moduleCount)
+        {
+            if(ready.isEmpty())
             {
-                this.addMIBToTree(mibFile);  
+                // every remaining module is part of, or waiting on, an import cycle; break it at the first one
+                while(placed[nextUnplaced])
+                    nextUnplaced++;
+                ready.add(nextUnplaced);
             }
-            catch(MibInvalidFormatException e)
+            
+            int i = ready.poll();
+            if(placed[i])
+                continue;
+            
+            placed[i] = true;
+            ordered.add(modules.get(i));
+            
+            for(int importer : importers.get(i))
             {
-                System.out.println(e.getMessage());
+                if(--unplacedImports[importer] == 0 && !placed[importer])
+                    ready.add(importer);
             }
         }
         
-        this.addLostChildren();  
+        return ordered;
     }
 
 
     /**
-     * Adds a single MIB file to the MIB tree.
+     * Adds a single MIB file to the MIB tree.  Nodes whose parents aren't in the tree
+     * yet are kept, and added once a later file defines their parents.
      * 
      * @param mibFile the File to add to the MIB Tree
      * 
      * @throws MibInvalidFormatException if the MIB file is invalid
      */
-	@Override
+    @Override
     public void addMIBFile(File mibFile) throws MibInvalidFormatException
     {
         // This method really is just a public wrapper for the internal implementation
-        // of the MIB adding process.  It uses the lost children list on a single file
-        // instead of across files.
-        if(lostChildren == null)
-            lostChildren = new ArrayList<>();
-         
+        // of the MIB adding process.
         this.addMIBToTree(mibFile);
-        
-        this.addLostChildren(); 
     }
     
     
     /**
      * Parses and validates a MIB file and adds its elements to the MIB tree model.
-     * This method should be implemented by subclasses and it is where the actual
-     * structure of the MIB file is handled.
      * 
      * @param mibFile the File to add to the MIB Tree
      * 
      * @throws MibInvalidFormatException if the MIB file is invalid
      */
-    abstract protected void addMIBToTree(File mibFile) throws MibInvalidFormatException;
+    protected void addMIBToTree(File mibFile) throws MibInvalidFormatException
+    {
+        long lastModified = mibFile.lastModified();
+        long length = mibFile.length();
+        
+        this.linkModule(this.parseMIBFile(mibFile), lastModified, length);
+    }
+    
+    
+    /**
+     * Parses and validates a MIB file, returning the object definitions it contains.
+     * This method should be implemented by subclasses and it is where the actual
+     * structure of the MIB file is handled.  It must not change the MIB tree, and it 
+     * may be called for several files at once from different threads.
+     * 
+     * @param mibFile the File to parse
+     * @return the parsed MIB module
+     * 
+     * @throws MibInvalidFormatException if the MIB file is invalid
+     */
+    abstract protected MibModule parseMIBFile(File mibFile) throws MibInvalidFormatException;
+    
+    
+    /**
+     * Adds the object definitions of a parsed MIB module to the tree, in the order they were 
+     * defined.  Objects whose names are already in the tree are skipped.
+     * 
+     * @param module the parsed MIB module
+     */
+    protected void linkModule(MibModule module)
+    {
+        this.linkModule(module, module.getMibFile().lastModified(), module.getMibFile().length());
+    }
+    
+    
+    /**
+     * Links a module into the tree and records the nodes it added under its file, along with 
+     * the file's state when it was read.
+     */
+    private void linkModule(MibModule module, long lastModified, long length)
+    {
+        modulesLinked = true;
+        linkChanges++;
+        
+        // a file added again without being removed keeps the nodes it added before
+        LinkedModule linked = linkedModules.get(module.getMibFile());
+        if(linked == null || linked.name == null)
+        {
+            linked = new LinkedModule(module.getName(), module.getImports(), lastModified, length);
+            linkedModules.put(module.getMibFile(), linked);
+        }
+        linked.lastModified = lastModified;
+        linked.length = length;
+        
+        for(MibDefinition definition : module.getDefinitions())
+        {
+            MibTreeNode existing = nodeMap.get(definition.getMibObject().getName());
+            if(existing == null)
+            {
+                this.shareSyntaxNames(definition.getMibObject().getSyntax());
+                linked.nodes.add(this.addMibObject(definition.getMibObject(), definition.getParentName()));
+            }
+            else if(definesSameObject(definition, existing))
+            {
+                // the object is in the tree under another module, but can be found under this one too
+                linked.aliases.add(definition.getMibObject().getName());
+                this.treeChanged();
+            }
+        }
+    }
+    
+    
+    /**
+     * Tells whether a definition gives an object already in the tree the same OID.
+     */
+    private static boolean definesSameObject(MibDefinition definition, MibTreeNode existing)
+    {
+        MibTreeNode parent = (MibTreeNode)existing.getParent();
+        
+        return parent != null && definition.getMibObject().getId() == ((MibObjectType)existing.getUserObject()).getId()
+            && nameOf(parent).equals(definition.getParentName());
+    }
+    
+    
+    /**
+     * Replaces the names in a syntax with the copies already in the tree.  Each file is parsed
+     * separately, so without this every object would have its own copy of names such as 
+     * "INTEGER" or "DisplayString".
+     */
+    private void shareSyntaxNames(MibSyntax syntax)
+    {
+        if(syntax == null)
+            return;
+        
+        syntax.setDataType(this.share(syntax.getDataType()));
+        syntax.setDefaultValue(this.share(syntax.getDefaultValue()));
+        
+        if(syntax.hasValueList())
+        {
+            synchronized(syntax.getValuesList())
+            {
+                for(MibValueListItem item : syntax.getValuesList())
+                    item.setValueName(this.share(item.getValueName()));
+            }
+        }
+    }
+    
+    
+    private String share(String name)
+    {
+        if(name == null)
+            return null;
+        
+        String shared = sharedNames.putIfAbsent(name, name);
+        return (shared != null) ? shared : name;
+    }
 
 
     /**
@@ -198,7 +929,7 @@ public abstract class AbstractMibTreeBuilder implements MibTreeBuilder
      * 
      * @return a TreeModel representing the MIB object structure
      */
-	@Override
+    @Override
     public TreeModel getMibTreeModel()
     {
         return mibTreeModel;
@@ -206,67 +937,144 @@ public abstract class AbstractMibTreeBuilder implements MibTreeBuilder
     
     
     /**
-     * Tries to add any nodes that could not be added at the time they were created because 
-     * their parents did not yet exist.
-     */
-    protected void addLostChildren()
-    {
-        // try to add the nodes whose parents may not have been added yet at the time they were created
-        // note: may cause visual ordering anomalies, but it is acceptable functionally
-        if(lostChildren != null && lostChildren.size() > 1)
-        {
-			//System.out.println("\nLOST CHILDREN:");
-			lostChildren.stream().forEach((lostChild) -> {
-				MibTreeNode curNode = (MibTreeNode)lostChild[0];
-				MibObjectType curMIBObject = (MibObjectType)curNode.getUserObject();
-				// check the HashMap for specified parent node
-				String parentName = (String)lostChild[1];
-				
-				//System.out.print("\n" + curMIBObject.getName() + " --> " + nodeParent);
-				
-				// test to see if this node already exists in the tree, lost children may have been added later due to duplication
-				if (!nodeMap.containsKey(curMIBObject.getName())) {
-					if (nodeMap.containsKey(parentName)) {
-						MibTreeNode parent = nodeMap.get(parentName);
-						parent.add(curNode);
-						nodeMap.put(curMIBObject.getName(), curNode);
-						//System.out.print(":    Added");
-					}
-				}
-			});
-
-            lostChildren.clear();  // reset lostChildren
+     * Gets a translator from numeric OIDs to the names of the objects in the tree.  The 
+     * translator is a snapshot that is kept until the tree changes, so this must be called on 
+     * the thread that changes the tree, but the translator itself can be used from any thread.
+     * 
+     * @return an OidTranslator for the tree as it is now
+     */
+    @Override
+    public OidTranslator getOidTranslator()
+    {
+        if(oidTranslator == null)
+            oidTranslator = new OidTranslator((MibTreeNode)mibTreeModel.getRoot());
+        
+        return oidTranslator;
+    }
+    
+    
+    /**
+     * Gets an index of the names of the objects in the tree, qualified by the modules that 
+     * define them.  Like the translator, the index is a snapshot that is kept until the tree 
+     * changes, so this must be called on the thread that changes the tree.
+     * 
+     * @return a MibSymbolIndex for the tree as it is now
+     */
+    @Override
+    public MibSymbolIndex getSymbolIndex()
+    {
+        if(symbolIndex == null)
+        {
+            List<MibSymbolIndex.Symbol> symbols = new ArrayList<>(nodeMap.size());
+            for(MibTreeNode node : nodeMap.values())
+                symbols.add(new MibSymbolIndex.Symbol(node));
+            
+            for(LinkedModule module : linkedModules.values())
+            {
+                for(String alias : module.aliases)
+                {
+                    MibTreeNode node = nodeMap.get(alias);
+                    if(node != null)
+                        symbols.add(new MibSymbolIndex.Symbol(alias, module.name, node));
+                }
+            }
+            
+            symbolIndex = new MibSymbolIndex(symbols);
         }
+        
+        return symbolIndex;
     }
     
     
+    /**
+     * Drops the translator and symbol index made for the tree as it was.
+     */
+    private void treeChanged()
+    {
+        oidTranslator = null;
+        symbolIndex = null;
+    }
+    
     
     /**
      * Checks whether a parent node with the given name exists in the tree
      * and adds the new MIB object to the parent if it does exist or adds it
-     * to the list of lost children if it doesn't.
+     * to the parent's pending children if it doesn't.
      * 
      * @param newObject the MIB object to add to the MIB tree
      * @param parentName the name of the MIB object's parent
+     * @return the new node
      */
-    protected void addMibObject(MibObjectType newObject, String parentName)
+    protected MibTreeNode addMibObject(MibObjectType newObject, String parentName)
     {
         MibTreeNode newNode = new MibTreeNode(newObject);
-        String name = newObject.getName();
         
         // check the HashMap for specified parent node
-        if(nodeMap.containsKey(parentName))
+        MibTreeNode parent = nodeMap.get(parentName);
+        if(parent != null)
+            this.addNode(parent, newNode);
+        else
+            pendingChildren.computeIfAbsent(parentName, name -> new ArrayList<>()).add(newNode);
+        
+        return newNode;
+    }
+    
+    
+    /**
+     * Adds a node to its parent, then any nodes that were waiting for it, and so on 
+     * down through their descendants.
+     */
+    private void addNode(MibTreeNode parent, MibTreeNode newNode)
+    {
+        Deque<MibTreeNode[]> toAdd = new ArrayDeque<>();
+        toAdd.push(new MibTreeNode[] {parent, newNode});
+        
+        while(!toAdd.isEmpty())
         {
-            MibTreeNode parent = nodeMap.get(parentName); 
-            parent.add(newNode);
-            nodeMap.put(name, newNode);
+            MibTreeNode[] pair = toAdd.pop();
+            String name = ((MibObjectType)pair[1].getUserObject()).getName();
+            
+            // a pending node may have been defined again, with a parent, while it waited
+            if(nodeMap.containsKey(name))
+                continue;
+            
+            this.treeChanged();
+            int position = childPosition(pair[0], ((MibObjectType)pair[1].getUserObject()).getId());
+            if(fireTreeEvents)
+                ((DefaultTreeModel)mibTreeModel).insertNodeInto(pair[1], pair[0], position);
+            else
+                pair[0].insert(pair[1], position);
+            nodeMap.put(name, pair[1]);
+            
+            List<MibTreeNode> waiting = pendingChildren.remove(name);
+            if(waiting != null)
+            {
+                // push in reverse so the children are added in the order they were defined
+                for(int i = waiting.size() - 1; i >= 0; i--)
+                    toAdd.push(new MibTreeNode[] {pair[1], waiting.get(i)});
+            }
         }
-        else
+    }
+    
+    
+    /**
+     * Finds where a child with the given id goes among a node's children, which are in order of 
+     * their ids: after the children with the same or lower ids.
+     */
+    private static int childPosition(MibTreeNode parent, int id)
+    {
+        int low = 0;
+        int high = parent.getChildCount();
+        while(low < high)
         {
-            Object[] noParentNode = new Object[] {newNode, parentName};
-            lostChildren.add(noParentNode);
-            //System.out.print("Error, " + nodeParent + " not found.");
+            int middle = (low + high) >>> 1;
+            if(((MibObjectType)((MibTreeNode)parent.getChildAt(middle)).getUserObject()).getId() <= id)
+                low = middle + 1;
+            else
+                high = middle;
         }
+        
+        return low;
     }
     
     
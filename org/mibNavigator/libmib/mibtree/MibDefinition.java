@@ -0,0 +1,69 @@
+/**
+ * libmib - Java SNMP Management Information Base Library
+ *
+ * Copyright (C) 2005, Matt Hamilton <matthew.hamilton@washburn.edu>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package org.mibNavigator.libmib.mibtree;
+
+import org.mibNavigator.libmib.oid.MibObjectType;
+
+/**
+ * A single object definition read from a MIB module: the MIB object itself and the name 
+ * of its parent in the OID tree.  Definitions are produced when a MIB file is parsed and
+ * linked into the MIB tree afterwards, once the parent can be looked up.
+ */
+public final class MibDefinition
+{
+    private final MibObjectType mibObject;
+    private final String parentName;
+    
+    
+    /**
+     * Constructs a new MibDefinition.
+     * 
+     * @param newMibObject the defined MIB object
+     * @param newParentName the name of the MIB object's parent
+     */
+    public MibDefinition(MibObjectType newMibObject, String newParentName)
+    {
+        mibObject = newMibObject;
+        parentName = newParentName;
+    }
+    
+    /**
+     * Gets the defined MIB object.
+     * 
+     * @return the MIB object
+     */
+    public MibObjectType getMibObject()
+    {
+        return mibObject;
+    }
+    
+    /**
+     * Gets the name of the MIB object's parent.
+     * 
+     * @return the parent's name
+     */
+    public String getParentName()
+    {
+        return parentName;
+    }
+    
+}
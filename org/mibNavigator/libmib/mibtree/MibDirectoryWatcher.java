@@ -0,0 +1,181 @@
+/**
+ * libmib - Java SNMP Management Information Base Library
+ *
+ * Copyright (C) 2005, Matt Hamilton <matthew.hamilton@washburn.edu>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package org.mibNavigator.libmib.mibtree;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MibDirectoryWatcher watches a MIB directory for files being added, changed or removed, and 
+ * brings a builder's tree up to date with them, so only the MIBs that changed are compiled again.  
+ * Saving or copying a file usually causes a burst of events, so the watcher waits until the 
+ * directory has been quiet for a moment before updating.
+ * <br><br>
+ * Updating changes the builder's tree model, so finding the changed files and linking them into 
+ * the tree are handed to an Executor chosen by the caller; for a model shown in a JTree, that is 
+ * SwingUtilities::invokeLater.  The files are parsed in between on the watcher's own thread, so 
+ * the thread that uses the model isn't held up by the parsing.  If the tree changes while the 
+ * files are parsed, the update is prepared again.  The watching is done by a daemon thread, which 
+ * stops when the watcher is closed.
+ */
+public class MibDirectoryWatcher implements Closeable
+{
+    // how long the directory has to be quiet before the tree is updated
+    private static final long QUIET_MILLIS = 250;
+    
+    private final MibTreeBuilder builder;
+    private final File mibDir;
+    private final Executor treeExecutor;
+    private final WatchService watchService;
+    private final Thread watchThread;
+    
+    
+    /**
+     * Creates a watcher for a directory whose MIBs have been added to a builder's tree.
+     * 
+     * @param newBuilder the builder whose tree is updated
+     * @param newMibDir the directory of MIB files to watch
+     * @param newTreeExecutor runs the changes to the tree on the thread that uses the tree model
+     * 
+     * @throws IOException if the directory can't be watched
+     */
+    public MibDirectoryWatcher(MibTreeBuilder newBuilder, File newMibDir, Executor newTreeExecutor) throws IOException
+    {
+        builder = newBuilder;
+        mibDir = newMibDir;
+        treeExecutor = newTreeExecutor;
+        
+        watchService = mibDir.toPath().getFileSystem().newWatchService();
+        mibDir.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, 
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        
+        watchThread = new Thread(this::watch, "MIB directory watcher");
+        watchThread.setDaemon(true);
+    }
+    
+    
+    /**
+     * Starts watching the directory.
+     */
+    public void start()
+    {
+        watchThread.start();
+    }
+    
+    
+    /**
+     * Stops watching the directory.  An update that is under way still finishes.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        watchService.close();
+    }
+    
+    
+    private void watch()
+    {
+        try
+        {
+            while(true)
+            {
+                WatchKey key = watchService.take();
+                
+                // Which files changed doesn't matter, as the builder compares the whole directory,
+                // so the events, including an overflow, are just drained until things settle.
+                do
+                {
+                    key.pollEvents();
+                    key.reset();
+                }
+                while((key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null);
+                
+                this.update();
+            }
+        }
+        catch(InterruptedException | ClosedWatchServiceException e)
+        {
+            // the watcher was closed
+        }
+    }
+    
+    
+    /**
+     * Updates the tree, parsing the changed files on this thread and doing the rest on the 
+     * thread that uses the tree model.
+     */
+    private void update() throws InterruptedException
+    {
+        try
+        {
+            while(true)
+            {
+                MibTreeUpdate update = this.onTreeThread(() -> builder.prepareUpdate(mibDir));
+                if(update == null)
+                    return;
+                
+                update.parse();
+                
+                if(this.onTreeThread(() -> builder.applyUpdate(update)))
+                    return;
+            }
+        }
+        catch(IllegalArgumentException e) //if the directory has been removed
+        {
+            System.out.println(e.getMessage());
+        }
+    }
+    
+    
+    /**
+     * Runs a task with the tree executor and waits for its result.  Unchecked exceptions the 
+     * task throws are thrown again here.
+     */
+    private <T> T onTreeThread(Callable<T> task) throws InterruptedException
+    {
+        FutureTask<T> future = new FutureTask<>(task);
+        treeExecutor.execute(future);
+        
+        try
+        {
+            return future.get();
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            if(e.getCause() instanceof Error)
+                throw (Error)e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * libmib - Java SNMP Management Information Base Library
+ *
+ * Copyright (C) 2005, Matt Hamilton <matthew.hamilton@washburn.edu>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package org.mibNavigator.libmib.mibtree;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of parsing a single MIB file: the module's name, the names of the modules it
+ * imports from, and the object definitions it contains, in the order they appear in the
+ * file.  A MibModule can't be changed once it is constructed, so modules can be parsed on
+ * several threads at once and handed to the thread that links them into the MIB tree.
+ */
+public final class MibModule
+{
+    private final String name;
+    private final File mibFile;
+    private final List<String> imports;
+    private final List<MibDefinition> definitions;
+    
+    
+    /**
+     * Constructs a new MibModule.
+     * 
+     * @param newName the name of the MIB module
+     * @param newMibFile the file the module was read from
+     * @param newImports the names of the modules this module imports from
+     * @param newDefinitions the module's object definitions, in file order
+     */
+    public MibModule(String newName, File newMibFile, List<String> newImports, List<MibDefinition> newDefinitions)
+    {
+        name = newName;
+        mibFile = newMibFile;
+        imports = Collections.unmodifiableList(new ArrayList<>(newImports));
+        definitions = Collections.unmodifiableList(new ArrayList<>(newDefinitions));
+    }
+    
+    /**
+     * Gets the name of the MIB module.
+     * 
+     * @return the module name
+     */
+    public String getName()
+    {
+        return name;
+    }
+    
+    /**
+     * Gets the file the module was read from.
+     * 
+     * @return the MIB file
+     */
+    public File getMibFile()
+    {
+        return mibFile;
+    }
+    
+    /**
+     * Gets the names of the modules this module imports from.
+     * 
+     * @return an unmodifiable list of module names
+     */
+    public List<String> getImports()
+    {
+        return imports;
+    }
+    
+    /**
+     * Gets the module's object definitions, in the order they appear in the file.
+     * 
+     * @return an unmodifiable list of definitions
+     */
+    public List<MibDefinition> getDefinitions()
+    {
+        return definitions;
+    }
+    
+}
@@ -0,0 +1,256 @@
+/**
+ * libmib - Java SNMP Management Information Base Library
+ *
+ * Copyright (C) 2005, Matt Hamilton <matthew.hamilton@washburn.edu>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package org.mibNavigator.libmib.mibtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.mibNavigator.libmib.oid.MibObjectType;
+
+/**
+ * MibSymbolIndex finds the nodes of a MIB tree by the names of their objects.  Names can be 
+ * looked up exactly, ignoring case, or qualified by the module that defines them, as in 
+ * SNMPv2-MIB::sysDescr, and the names beginning with a prefix can be listed for completing 
+ * what a user has typed.
+ * <br><br>
+ * An object defined by more than one module, such as sysDescr in both RFC1213-MIB and 
+ * SNMPv2-MIB, appears in the tree once, under the module that was linked first.  The other 
+ * modules' definitions are indexed as well when they give the object the same OID, so the 
+ * name can be qualified by any of the modules.
+ * <br><br>
+ * The symbols are kept in one array sorted by name, ignoring case, so every lookup is a binary 
+ * search and the names with a common prefix are next to each other.  An index is a snapshot of 
+ * the tree and doesn't change once it is built, so it can be used from any thread; a new one 
+ * has to be taken when the tree changes.
+ */
+public final class MibSymbolIndex
+{
+    /**
+     * Separates a module name from an object name in a qualified name.
+     */
+    public static final String MODULE_SEPARATOR = "::";
+    
+    // by name ignoring case, then by name and module, so the names that differ only in case 
+    // are next to each other
+    private static final Comparator<Symbol> SYMBOL_ORDER = (first, second) -> {
+        int order = String.CASE_INSENSITIVE_ORDER.compare(first.name, second.name);
+        if(order == 0)
+            order = first.name.compareTo(second.name);
+        if(order == 0 && first.module != second.module)
+        {
+            if(first.module == null || second.module == null)
+                order = first.module == null ? -1 : 1;
+            else
+                order = first.module.compareTo(second.module);
+        }
+        return order;
+    };
+    
+    private final Symbol[] symbols;
+    
+    
+    /**
+     * Creates an index of the given symbols.
+     */
+    MibSymbolIndex(List<Symbol> symbolList)
+    {
+        symbols = symbolList.toArray(new Symbol[symbolList.size()]);
+        Arrays.sort(symbols, SYMBOL_ORDER);
+    }
+    
+    
+    /**
+     * Finds a node by a symbol as a user would type it: an object name, which is matched 
+     * exactly if possible and otherwise ignoring case, or a name qualified by its module.
+     * 
+     * @param symbol the name, for example sysDescr, sysdescr or SNMPv2-MIB::sysDescr
+     * @return the node, or null if the symbol isn't in the tree
+     */
+    public MibTreeNode find(String symbol)
+    {
+        int separator = symbol.indexOf(MODULE_SEPARATOR);
+        if(separator >= 0)
+            return this.findQualified(symbol.substring(0, separator), symbol.substring(separator + MODULE_SEPARATOR.length()));
+        
+        MibTreeNode node = this.findExact(symbol);
+        return node != null ? node : this.findIgnoreCase(symbol);
+    }
+    
+    
+    /**
+     * Finds a node by the exact name of its object.
+     * 
+     * @param name the object name
+     * @return the node, or null if no object has the name
+     */
+    public MibTreeNode findExact(String name)
+    {
+        for(int i = this.firstIgnoringCase(name); i < symbols.length && symbols[i].name.equalsIgnoreCase(name); i++)
+        {
+            if(symbols[i].name.equals(name))
+                return symbols[i].node;
+        }
+        
+        return null;
+    }
+    
+    
+    /**
+     * Finds a node by the name of its object, ignoring case.  Where names differ only in case, 
+     * the node whose name sorts first is returned.
+     * 
+     * @param name the object name
+     * @return the node, or null if no object has the name
+     */
+    public MibTreeNode findIgnoreCase(String name)
+    {
+        int i = this.firstIgnoringCase(name);
+        if(i < symbols.length && symbols[i].name.equalsIgnoreCase(name))
+            return symbols[i].node;
+        
+        return null;
+    }
+    
+    
+    /**
+     * Finds a node by the name of its object and the module that defines it.  Module names 
+     * are matched exactly, and object names exactly if possible and otherwise ignoring case.
+     * 
+     * @param module the name of the module
+     * @param name the object name
+     * @return the node, or null if the module doesn't define an object with the name
+     */
+    public MibTreeNode findQualified(String module, String name)
+    {
+        MibTreeNode match = null;
+        for(int i = this.firstIgnoringCase(name); i < symbols.length && symbols[i].name.equalsIgnoreCase(name); i++)
+        {
+            if(module.equals(symbols[i].module))
+            {
+                if(symbols[i].name.equals(name))
+                    return symbols[i].node;
+                else if(match == null)
+                    match = symbols[i].node;
+            }
+        }
+        
+        return match;
+    }
+    
+    
+    /**
+     * Lists the object names beginning with a prefix, ignoring case, for completing a name as 
+     * it is typed.  A qualified prefix, such as IF-MIB::ifIn, lists the qualified names of the 
+     * module's objects.
+     * 
+     * @param prefix the beginning of the names
+     * @param limit the most names to return
+     * @return the matching names, in order ignoring case, without repeats
+     */
+    public List<String> findNamesByPrefix(String prefix, int limit)
+    {
+        String module = null;
+        String namePrefix = prefix;
+        
+        int separator = prefix.indexOf(MODULE_SEPARATOR);
+        if(separator >= 0)
+        {
+            module = prefix.substring(0, separator);
+            namePrefix = prefix.substring(separator + MODULE_SEPARATOR.length());
+        }
+        
+        List<String> names = new ArrayList<>();
+        String lastName = null;
+        for(int i = this.firstIgnoringCase(namePrefix); i < symbols.length && names.size() < limit; i++)
+        {
+            Symbol symbol = symbols[i];
+            if(!symbol.name.regionMatches(true, 0, namePrefix, 0, namePrefix.length()))
+                break;
+            
+            if(module == null && !symbol.name.equals(lastName))
+                names.add(symbol.name);
+            else if(module != null && module.equals(symbol.module))
+                names.add(module + MODULE_SEPARATOR + symbol.name);
+            
+            lastName = symbol.name;
+        }
+        
+        return names;
+    }
+    
+    
+    /**
+     * Gets the number of symbols in the index.
+     * 
+     * @return the number of indexed names, counting each module's definition of a shared object
+     */
+    public int size()
+    {
+        return symbols.length;
+    }
+    
+    
+    /**
+     * Finds the first symbol whose name is not before the given name, ignoring case.
+     */
+    private int firstIgnoringCase(String name)
+    {
+        int low = 0;
+        int high = symbols.length;
+        while(low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if(String.CASE_INSENSITIVE_ORDER.compare(symbols[mid].name, name) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        
+        return low;
+    }
+    
+    
+    /**
+     * A name in the index: the object name, the module that defines it and the node it names.
+     */
+    static final class Symbol
+    {
+        private final String name;
+        private final String module;
+        private final MibTreeNode node;
+        
+        Symbol(String newName, String newModule, MibTreeNode newNode)
+        {
+            name = newName;
+            module = newModule;
+            node = newNode;
+        }
+        
+        Symbol(MibTreeNode newNode)
+        {
+            this(((MibObjectType)newNode.getUserObject()).getName(), 
+                    ((MibObjectType)newNode.getUserObject()).getMibName(), newNode);
+        }
+    }
+}
@@ -55,6 +55,67 @@ public interface MibTreeBuilder
     public void addMIBFile(File mibFile) throws MibInvalidFormatException;
     
     
+    /**
+     * Brings the MIB tree up to date with the MIB files in a directory that was added 
+     * before, compiling again only the files that were added or changed and the MIBs that 
+     * depend on them, and removing the objects of files that were removed.
+     * 
+     * @param mibDir the File object representing a directory containing
+     *               MIB files that were added to the MIB tree.
+     */
+    public void updateMIBDirectory(File mibDir);
+    
+    
+    /**
+     * Prepares the update updateMIBDirectory would make, finding the files to compile again 
+     * without parsing them, so they can be parsed on another thread.  This must be called on 
+     * the thread that uses the tree model.
+     * 
+     * @param mibDir the File object representing a directory containing
+     *               MIB files that were added to the MIB tree.
+     * @return the update, or null if the tree is already up to date
+     */
+    public MibTreeUpdate prepareUpdate(File mibDir);
+    
+    
+    /**
+     * Applies a prepared update whose files have been parsed, removing the objects of the 
+     * files it covers from the MIB tree and linking their modules again.  This must be called 
+     * on the thread that uses the tree model.
+     * 
+     * @param update an update prepared by this builder
+     * @return true if the update was applied, or false if the MIB tree has changed since it 
+     *         was prepared, so it has to be prepared again
+     */
+    public boolean applyUpdate(MibTreeUpdate update);
+    
+    
+    /**
+     * Removes the objects of an individual MIB file from the MIB tree.
+     * 
+     * @param mibFile the File object representing the MIB to remove from the MIB tree.
+     */
+    public void removeMIBFile(File mibFile);
+    
+    
+    /**
+     * Retrieves a translator from numeric OIDs to the names of the objects in the MIB tree,
+     * for use by threads other than the one that changes the tree.
+     * 
+     * @return an OidTranslator for the tree as it is now
+     */
+    public OidTranslator getOidTranslator();
+    
+    
+    /**
+     * Retrieves an index of the names of the objects in the MIB tree, for finding 
+     * objects by name, by module-qualified name or by the beginning of their names.
+     * 
+     * @return a MibSymbolIndex for the tree as it is now
+     */
+    public MibSymbolIndex getSymbolIndex();
+    
+    
     /**
      * Retrieves the TreeModel used by the builder.
 	 * @return 
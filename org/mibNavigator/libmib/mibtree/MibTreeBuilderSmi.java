@@ -21,19 +21,20 @@
 
 package org.mibNavigator.libmib.mibtree;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import org.mibNavigator.libmib.MibInvalidSmiFormatException;
 import org.mibNavigator.libmib.SmiKeywords;
+import org.mibNavigator.libmib.SmiLexer;
+import org.mibNavigator.libmib.SmiLexer.Token;
+import org.mibNavigator.libmib.SmiQuotedText;
 import org.mibNavigator.libmib.SmiStructureHandler;
 import org.mibNavigator.libmib.oid.MibObjectType;
 import org.mibNavigator.libmib.oid.MibSyntax;
-import org.mibNavigator.libmib.oid.MibValueListItem;
 import org.mibNavigator.libmib.oid.MibObjectType.Access;
 import org.mibNavigator.libmib.oid.MibObjectType.Status;
 
@@ -44,359 +45,258 @@ import org.mibNavigator.libmib.oid.MibObjectType.Status;
  * Thus, it compiles the SMI MIB modules into a DefaultTreeModel. It in no way attempts to 
  * implement the entire SMI syntax, only a small subset.
  * Nodes in the tree are indexed by a HashMap that maps MIB object names to MIBTreeNodes.
+ * <br><br>
+ * Files are tokenized by an SmiLexer in a single pass, and the parser works on the tokens,
+ * so definitions may be laid out over lines in any way.  All parsing state is local to a 
+ * file, so several files can be parsed at once.
+ * <br><br>
+ * Descriptions and references are not kept in memory; objects only keep where they are in 
+ * the file, and the text is read from there when it is asked for.
  */
 public class MibTreeBuilderSmi extends AbstractMibTreeBuilder
 {
-    private SmiStructureHandler handler;
-    
     
     /**
-     * Parses an SMI MIB module text file and adds its elements to the MIB tree model.
+     * Parses an SMI MIB module text file into a list of the object definitions it contains.
      * 
-     * @param mibFile the File to add to the MIB Tree
+     * @param mibFile the File to parse
+     * @return the parsed MIB module
      * 
      * @throws MibInvalidSmiFormatException if the MIB file is not in a valid format
      */
-	@Override
-    protected void addMIBToTree(File mibFile) throws MibInvalidSmiFormatException
+    @Override
+    protected MibModule parseMIBFile(File mibFile) throws MibInvalidSmiFormatException
     { 
+        List<MibDefinition> definitions = new ArrayList<>();
+        List<String> imports = new ArrayList<>();
+        String mibName = "";
+        
         try
         {
-            BufferedReader in = new BufferedReader(new FileReader(mibFile));
-            handler = new SmiStructureHandler(in);
-            String line;
+            SmiLexer lexer = new SmiLexer(mibFile);
+            SmiStructureHandler handler = new SmiStructureHandler(lexer);
 
             // If the file does not contain the correct MIB 'header', throw an exception.
             // it's game over, man
-            String mibName = handler.readMibName();
+            mibName = handler.readMibName();
             if(mibName.equals(""))
                 throw new MibInvalidSmiFormatException(mibFile);
             
-
-            //System.out.println(mibFile.getName() + ": valid");
-            while ( ((line = in.readLine()) != null) && !line.trim().equals(SmiKeywords.MIB_END))
+            Token token = lexer.next();
+            while(token != Token.EOF && !lexer.isIdentifier(SmiKeywords.MIB_END))
             {
-                // Strip comments.
-                if (line.contains("--"))
-                {
-                    int commentIndex = line.indexOf("--");
-                    line = line.substring(0, commentIndex).trim();
-                }
+                // Read the names of the modules in the 'IMPORTS' section.
+                if(lexer.isIdentifier(SmiKeywords.IMPORTS_BEGIN))
+                    imports.addAll(handler.readImports());
                 
-                // Ignore empty lines.
-                if (line.trim().equals(""))
-                    continue;
-                    
-                // Skip the 'IMPORTS' section.
-                if (line.contains(SmiKeywords.IMPORTS_BEGIN))               
-                {
-                    char c = 0;
-                    while( (c != -1) && (c != ';'))
-                        c = (char)in.read();
-                    
-                    continue;
-                }
-                
-                
-                // Skip 'MACRO' definitions.
-                if (line.contains("MACRO ::="))
-                {
-                    while ( (line = in.readLine()) != null )
-                    {
-                        if (line.trim().equals(SmiKeywords.MIB_END))
-                            break;
-                    }
-                    continue;
-                }
+                // Skip bracketed blocks outside of object definitions, such as the 
+                // contents of SEQUENCE and CHOICE type definitions.
+                else if(token == Token.LEFT_BRACE)
+                    handler.skipBlock();
                 
-                // Special case for basic MIB objects consisting of only a name, parent, and OID index.
-                if ( line.contains(SmiKeywords.OBJECT_ID) && !line.contains(SmiKeywords.OID_SYNTAX) && !line.contains(",") 
-                        && !line.contains(SmiKeywords.IMPORT_FROM) && !line.trim().startsWith(SmiKeywords.OBJECT_ID))
+                else if(token == Token.IDENTIFIER)
                 {
-                    StringBuilder oidDef = new StringBuilder();
-                    oidDef.append(line);
-
-                    // Check whether the entire definition is on this line.
-                    if (oidDef.indexOf("}") < 0) 
-                    {
-                        char c = ' ';  
-                        do
-                        {
-                            c = (char)in.read();
-                            oidDef.append(c);
-                        } while (c != '}');
-                    }
-                    String oidString = oidDef.toString().replaceAll("\\s+", " ").trim(); //simplify whitespace
+                    String nodeName = lexer.getText();
+                    token = lexer.next();
                     
-                    if (oidString.contains("::=") && oidString.contains("{"))
+                    // Skip 'MACRO' definitions.
+                    if(lexer.isIdentifier(SmiKeywords.MACRO))
+                        handler.skipPast(SmiKeywords.MIB_END);
+                    
+                    // Basic MIB objects consisting of only a name, parent, and OID index.
+                    else if(lexer.isIdentifier(SmiKeywords.OBJECT))
                     {
-                        String nodeName = "";    
-                        
-                        // Get the mib object name.
-                        int index = oidString.indexOf(SmiKeywords.OBJECT_ID);
-                        nodeName = oidString.substring(0, index).trim();
-                        //System.out.println(nodeName);
-
-                        // Check the HashMap to see if this node already exists in the tree.
-                        if (!nodeMap.containsKey(nodeName)) 
+                        if(lexer.next() == Token.IDENTIFIER && lexer.isIdentifier(SmiKeywords.IDENTIFIER))
                         {
-                            // initializations
-                            String nodeInfo = "";
-                            String nodeParentName = "";
-                            String nodeIndex = "";;  
-                            
-                            nodeInfo = oidString.substring(index + SmiKeywords.OBJECT_ID.length());
-                            nodeInfo = nodeInfo.substring(nodeInfo.indexOf("{") + 1, nodeInfo.indexOf("}")).trim();
-
-                            String parents = "";
-                            if (nodeInfo.contains("(") && nodeInfo.contains(")"))
-                            {   // these have the form ':= {test(1) test2(6) test3(2) 1}'
-                                
-                                parents = nodeInfo.substring(nodeInfo.indexOf(" "), nodeInfo.lastIndexOf(")"));
-                                parents = parents.substring(parents.lastIndexOf(" "), parents.lastIndexOf("("));
-                                nodeParentName = parents.trim();
-                            }
+                            if(lexer.next() == Token.ASSIGN)
+                                this.readObjectIdentifier(handler, nodeName, mibName, definitions);
                             else
-                            {   // these have the regular form ':= {test 1}'
-                                index = nodeInfo.indexOf(" ");
-                                nodeParentName = nodeInfo.substring(0, index);
-                            }
-                            
-                            int index2 = nodeInfo.lastIndexOf(" ") + 1;
-                            nodeIndex = nodeInfo.substring(index2, nodeInfo.length());
-                            
-                            //if(nodeIndex.equals(""))
-                            //    System.out.println("what");
-                            
-                            if ( !nodeName.equals("") && !nodeParentName.equals("") && !nodeIndex.equals("") )
                             {
-                                MibObjectType curMIBObject = new MibObjectType(nodeName, Integer.parseInt(nodeIndex));
-                                curMIBObject.setMibName(mibName);
-                                
-                                this.addMibObject(curMIBObject, nodeParentName);
-                                
-                                /*MibTreeNode curNode = new MibTreeNode(curMIBObject);
-    
-                                // Check the HashMap for the specified parent node.
-                                if (nodeMap.containsKey(nodeParentName))
-                                {
-                                    MibTreeNode parent = nodeMap.get(nodeParentName); 
-                                    parent.add(curNode);
-                                    nodeMap.put(nodeName, curNode);
-                                }
-                                else
-                                {
-                                    Object[] noParentNode = new Object[] {curNode, nodeParentName};
-                                    lostChildren.add(noParentNode);
-                                }*/
-                                
-                            } // make sure parent and index exist since some data type definitions can look like OIDs
-                        } // check if this node already exists
-                    }
-                }
-                
-                else
-                {
-                    // Test for object type.
-                    String objectType = "";
-                    if (line.contains(SmiKeywords.OBJECT_TYPE))
-                        objectType = SmiKeywords.OBJECT_TYPE;
-                    else if (line.contains(SmiKeywords.OBJECT_GRP))
-                        objectType = SmiKeywords.OBJECT_GRP;
-                    else if (line.contains(SmiKeywords.NOTIF))
-                        objectType = SmiKeywords.NOTIF;
-                    else if (line.contains(SmiKeywords.MODULE_COMP))
-                        objectType = SmiKeywords.MODULE_COMP;
-                    else if (line.contains(SmiKeywords.MODULE_ID))
-                        objectType = SmiKeywords.MODULE_ID;
-                    else if (line.contains(SmiKeywords.NOTIF_GRP))
-                        objectType = SmiKeywords.NOTIF_GRP;
-                                            
-                    // Read other object types.
-                    if ( !objectType.equals("") && !line.trim().equalsIgnoreCase(objectType) 
-                            && !line.contains(SmiKeywords.IMPORT_FROM) && !line.contains(",") )
-                    {
-                        MibObjectType mibObject = new MibObjectType();
-                        mibObject.setMibName(mibName);
-                        
-                        line = readMIBObject(in, mibObject, line, objectType);
+                                token = lexer.getToken();
+                                continue; // not a definition; look at this token again
+                            }
+                        }
+                        else
+                        {
+                            token = lexer.getToken();
+                            continue;
+                        }
                     }
+                    
+                    // Other object types.
+                    else if(token == Token.IDENTIFIER && isObjectType(lexer))
+                        this.readMIBObject(lexer, handler, nodeName, lexer.getText(), mibName, definitions);
+                    
+                    else
+                        continue; // look at the token following the name again
                 }
                 
+                token = lexer.next();
             } // loop until EOF or the END marker is reached
-
-            in.close();  // close the input file
         }
         catch(IOException e)
         {
             System.out.println(e.getMessage());
         }
+        
+        return new MibModule(mibName, mibFile, imports, definitions);
+    }
+    
+    
+    /**
+     * Returns whether the current token is the name of one of the object definition
+     * macros handled by readMIBObject.
+     */
+    private static boolean isObjectType(SmiLexer lexer)
+    {
+        return lexer.isIdentifier(SmiKeywords.OBJECT_TYPE) || lexer.isIdentifier(SmiKeywords.OBJECT_GRP) 
+            || lexer.isIdentifier(SmiKeywords.NOTIF) || lexer.isIdentifier(SmiKeywords.MODULE_COMP)
+            || lexer.isIdentifier(SmiKeywords.MODULE_ID) || lexer.isIdentifier(SmiKeywords.NOTIF_GRP);
+    }
+    
+    
+    /**
+     * Reads the value of a basic "name OBJECT IDENTIFIER ::= { parent id }" definition, 
+     * whose ::= has just been read, and adds the object to the module's definitions.
+     * 
+     * @param handler the structure handler for the current MIB file
+     * @param nodeName the name of the object
+     * @param mibName the name of the MIB module being read
+     * @param definitions the module's definitions read so far
+     */
+    private void readObjectIdentifier(SmiStructureHandler handler, String nodeName, String mibName, List<MibDefinition> definitions)
+    {
+        String[] oidValue = handler.readOidValue();
+        
+        // make sure parent and index exist since some data type definitions can look like OIDs
+        if(oidValue != null)
+        {
+            MibObjectType curMIBObject = new MibObjectType(nodeName, Integer.parseInt(oidValue[1]));
+            curMIBObject.setMibName(mibName);
+            
+            definitions.add(new MibDefinition(curMIBObject, oidValue[0]));
+        }
     }
     
     
     /**
      * Reads and parses information about a MIB Object from a MIB file, puts it into a 
-     * MIB Object and MibTreeNode, and adds the node to the tree if the parent exists 
-     * and the node does not already exist in the tree.
+     * MIB Object, and adds it to the module's definitions.  The object's type keyword has 
+     * just been read; reading stops after the object's OID value.
      * 
-     * @param in the BufferedReader for the current MIB file
-     * @param mibObject the current MIB Object
-     * @param line the most recently read line in the file
+     * @param lexer the lexer for the current MIB file
+     * @param handler the structure handler for the current MIB file
+     * @param nodeName the name of the MIB Object
      * @param objectType the type of the MIB Object
-     * 
-     * @return the line in the file that was last read before returning
-     * 
-     * @throws IOException if an error occurs reading a line from the BufferedReader
+     * @param mibName the name of the MIB module being read
+     * @param definitions the module's definitions read so far
      */
-    private String readMIBObject(final BufferedReader in, MibObjectType mibObject, String line, String objectType) throws IOException
+    private void readMIBObject(SmiLexer lexer, SmiStructureHandler handler, String nodeName, String objectType, 
+            String mibName, List<MibDefinition> definitions)
     { 
-        // get the node name
-        String nodeName = "";
-        int index = line.indexOf(objectType);
-        nodeName = line.substring(0, index).trim();
+        boolean isCompliance = objectType.equals(SmiKeywords.MODULE_COMP);
         
-        // check the HashMap to see if this node already exists in the tree
-        if(!nodeMap.containsKey(nodeName)) 
+        // initialize properties
+        MibSyntax nodeSyntax = null;
+        String nodeAccess = "";
+        String nodeStatus = "";
+        List<int[]> descRanges = new ArrayList<>(1);
+        List<int[]> refRanges = new ArrayList<>(1);
+
+        // read until the end of the object definition, retrieving relevant information
+        Token token;
+        while((token = lexer.next()) != Token.ASSIGN && token != Token.EOF)
         {
-            // initialize properties
-            String nodeDataType = "";
-            String nodeAccess = "";
-            String nodeStatus = "";
+            if(token == Token.LEFT_BRACE || token == Token.LEFT_PAREN)
+                handler.skipBlock();
             
-            StringBuffer nodeDesc = new StringBuffer();
-            List<MibValueListItem> nodeValues = null;
-    
-            // read until the end of the object definition, retrieving relevant information
-            line = in.readLine().trim();
-            while(!line.startsWith("::=") && line != null)
+            // SYNTAX
+            else if(lexer.isIdentifier(SmiKeywords.OID_SYNTAX) && !isCompliance)
+                nodeSyntax = handler.readSyntax();
+            
+            // ACCESS
+            else if((lexer.isIdentifier(SmiKeywords.OID_ACCESS) || lexer.isIdentifier(SmiKeywords.OID_MAX_ACCESS)) && !isCompliance)
             {
-                // strip comments
-                if(line.contains("--"))
-                {
-                    int commentIndex = line.indexOf("--");
-                    line = line.substring(0, commentIndex).trim();
-                }
-    
-                if(!line.trim().equals(""))
-                {
-                    // SYNTAX
-                    if(line.contains(SmiKeywords.OID_SYNTAX) && !objectType.equals(SmiKeywords.MODULE_COMP))
-                    {
-                        if(line.trim().equals(SmiKeywords.OID_SYNTAX))
-                            line = in.readLine();
-    
-                        // if the OID has a list of specific integer values
-                        if(line.contains("{"))
-                        {
-                            index = line.indexOf("{");
-                            nodeDataType = line.substring(SmiKeywords.OID_SYNTAX.length(), index).trim();
-                            
-                            nodeValues = handler.readValueList(line, SmiKeywords.OID_SYNTAX);
-                        }
-                        else
-                            nodeDataType = line.substring(SmiKeywords.OID_SYNTAX.length()).trim();
-                    }
-                    
-                    // ACCESS
-                    else if(line.contains(SmiKeywords.OID_ACCESS) && !objectType.equals(SmiKeywords.MODULE_COMP))
-                    {
-                        index = line.indexOf(SmiKeywords.OID_ACCESS) + SmiKeywords.OID_ACCESS.length();
-                        nodeAccess = line.substring(index).trim();
-                    }
-                    
-                    // STATUS
-                    else if(line.contains(SmiKeywords.OID_STATUS))
-                    {
-                        index = line.indexOf(SmiKeywords.OID_STATUS) + SmiKeywords.OID_STATUS.length();
-                        nodeStatus = line.substring(index).trim();
-                    }
-    
-                    // DESCRIPTION
-                    else if(line.contains(SmiKeywords.OID_DESCRIPTION))
-                    {
-                        nodeDesc.append(handler.readQuotedSection(line, SmiKeywords.OID_DESCRIPTION));
-                    }
-
-                    line = in.readLine().trim();
-                }
+                if(lexer.next() == Token.IDENTIFIER)
+                    nodeAccess = lexer.getText();
                 else
-                {
-                    line = in.readLine().trim();
-                }
+                    lexer.pushBack();
             }
-    
-            // the line with ::= should be processed here
-            String nodeInfo = line.substring(line.indexOf("{") + 1, line.indexOf("}")).trim();
-            String nodeParentName = "";
-            
-            if(nodeInfo.contains("(") && nodeInfo.contains(")"))
-            {   // these have the form ':= {test(1) test2(6) test3(2) 1}'
-                
-                String parents = "";
-                parents = nodeInfo.substring(nodeInfo.indexOf(" "), nodeInfo.lastIndexOf(")"));
-                parents = parents.substring(parents.lastIndexOf(" "), parents.lastIndexOf("("));
-                nodeParentName = parents.trim();
-            }
-            else
-            {   // these have the regular form ':= {test 1}'
-                index = nodeInfo.indexOf(" ");
-                nodeParentName = nodeInfo.substring(0, index);
-            }
-            
-            int index2 = nodeInfo.lastIndexOf(" ") + 1;
-            String nodeIndex = "";
-            nodeIndex = nodeInfo.substring(index2, nodeInfo.length());
-    
-            //System.out.println(nodeParent + " " + nodeIndex);
-
-            // set basic properties
-            mibObject.setName(nodeName);
-            mibObject.setId(Integer.parseInt(nodeIndex));
-            
-            mibObject.setDescription(nodeDesc.toString());
-            
-            if(!nodeAccess.equals(""))
-                mibObject.setAccess(Access.valueOf(nodeAccess.toUpperCase().replaceAll("-", "_")));
-            
-            if(!nodeStatus.equals(""))
-                mibObject.setStatus(Status.valueOf(nodeStatus.toUpperCase()));
             
-            // construct the Syntax object
-            // -the object's type is the only thing required for the existence of a syntax element
-            if(!nodeDataType.equals("")) 
+            // STATUS
+            else if(lexer.isIdentifier(SmiKeywords.OID_STATUS))
             {
-                MibSyntax nodeSyntax = new MibSyntax(nodeDataType);
-                if(nodeValues != null)
-                    nodeSyntax.setValuesList(Collections.synchronizedList(nodeValues)); //synchronize because there MAY be 
-                                                                                        //simultaneous access
-                mibObject.setSyntax(nodeSyntax);
+                if(lexer.next() == Token.IDENTIFIER)
+                    nodeStatus = lexer.getText();
+                else
+                    lexer.pushBack();
             }
             
-            this.addMibObject(mibObject, nodeParentName);
+            // DESCRIPTION
+            else if(lexer.isIdentifier(SmiKeywords.OID_DESCRIPTION))
+                addRange(descRanges, handler.readQuotedRange());
             
-           /* MibTreeNode curNode = new MibTreeNode(mibObject);
-
-            // check the HashMap for specified parent node
-            if(nodeMap.containsKey(nodeParentName))
-            {
-                MibTreeNode parent = nodeMap.get(nodeParentName); 
-                parent.add(curNode);
-                nodeMap.put(nodeName, curNode);
-            }
-            else
-            {
-                Object[] noParentNode = new Object[] {curNode, nodeParentName};
-                lostChildren.add(noParentNode);
-                //System.out.print("Error, " + nodeParent + " not found.");
-            }*/
-        }
-        else // if it already exists, read past it's data
-        { 
-            while(!line.contains("::=") && (line != null))
-                line = in.readLine();
+            // REFERENCE
+            else if(lexer.isIdentifier(SmiKeywords.OID_REFERENCE))
+                addRange(refRanges, handler.readQuotedRange());
         }
 
-        return line;
+        // the OID value follows the ::=
+        String[] oidValue = handler.readOidValue();
+        if(oidValue == null)
+            return;
+
+        // set basic properties
+        MibObjectType mibObject = new MibObjectType();
+        mibObject.setMibName(mibName);
+        mibObject.setName(nodeName);
+        mibObject.setId(Integer.parseInt(oidValue[1]));
+        
+        if(!descRanges.isEmpty())
+            mibObject.setDescription(toQuotedText(lexer, descRanges));
+        
+        if(!refRanges.isEmpty())
+            mibObject.setReference(toQuotedText(lexer, refRanges));
+        
+        if(!nodeAccess.equals(""))
+            mibObject.setAccess(Access.valueOf(nodeAccess.toUpperCase().replace('-', '_')));
+        
+        if(!nodeStatus.equals(""))
+            mibObject.setStatus(Status.valueOf(nodeStatus.toUpperCase()));
+        
+        // the object's type is the only thing required for the existence of a syntax element
+        if(nodeSyntax != null) 
+        {
+            if(nodeSyntax.hasValueList())
+                nodeSyntax.setValuesList(Collections.synchronizedList(nodeSyntax.getValuesList())); //synchronize because there MAY be 
+                                                                                                    //simultaneous access
+            mibObject.setSyntax(nodeSyntax);
+        }
+        
+        definitions.add(new MibDefinition(mibObject, oidValue[0]));
+    }
+    
+    
+    /**
+     * Adds the range of a quoted section to a list of ranges, unless there was no quote.
+     */
+    private static void addRange(List<int[]> ranges, int[] range)
+    {
+        if(range != null)
+            ranges.add(range);
+    }
+    
+    
+    /**
+     * Creates the text made up of the quoted sections at the given ranges of the file being read.
+     */
+    private static SmiQuotedText toQuotedText(SmiLexer lexer, List<int[]> ranges)
+    {
+        SmiQuotedText text = null;
+        for(int i = ranges.size() - 1; i >= 0; i--)
+            text = new SmiQuotedText(lexer.getSource(), ranges.get(i), text);
+        
+        return text;
     }
     
 }
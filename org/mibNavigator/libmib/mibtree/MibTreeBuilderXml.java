@@ -26,15 +26,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Source;
 import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 
 import org.mibNavigator.libmib.MibInvalidXmlFormatException;
@@ -63,11 +59,17 @@ import org.xml.sax.SAXParseException;
  * of the XML MIB schema definition because not all information is currently used.
  * Nodes in the tree are indexed by a HashMap that maps MIB object names to
  * MIBTreeNodes.
+ * <br><br>
+ * Neither XML parsers nor validators can be used by more than one thread at a time, so
+ * each thread parsing files gets its own, all created from the same compiled schema.
  */
 public class MibTreeBuilderXml extends AbstractMibTreeBuilder
 {
-    private final DocumentBuilder docBuilder; //XML parser
-    private final Validator mibValidator;     //Validator based on the schema
+    private final DocumentBuilderFactory docBuilderFactory;
+    private final Schema mibSchema;
+    
+    private final ThreadLocal<DocumentBuilder> docBuilder; //XML parser
+    private final ThreadLocal<Validator> mibValidator;     //Validator based on the schema
 
     /**
      * Constructs a new MibTreeBuilderXml that reads XML MIB files.  The tree data 
@@ -84,31 +86,54 @@ public class MibTreeBuilderXml extends AbstractMibTreeBuilder
     public MibTreeBuilderXml(File newMIBSchemaFile) throws ParserConfigurationException, SAXException
     {
         // Configure the parser.
-        DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
+        docBuilderFactory = DocumentBuilderFactory.newInstance();
         docBuilderFactory.setIgnoringElementContentWhitespace(true);
         docBuilderFactory.setIgnoringComments(true);
         
-        docBuilder = docBuilderFactory.newDocumentBuilder();
-        docBuilder.setErrorHandler(new BasicXmlErrorHandler());
+        // Create a parser now so any configuration problem is reported here rather than while parsing.
+        final DocumentBuilder firstDocBuilder = this.createDocBuilder();
+        docBuilder = ThreadLocal.withInitial(() -> {
+            try
+            {
+                return this.createDocBuilder();
+            }
+            catch(ParserConfigurationException e)
+            {
+                // can't happen; the same configuration succeeded in the constructor
+                throw new IllegalStateException(e);
+            }
+        });
+        docBuilder.set(firstDocBuilder);
         
-        // Create a Validator based on the schema file.
-        SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-        Source schemaSource = new StreamSource(newMIBSchemaFile);
-        Schema mibSchema = factory.newSchema(schemaSource);
-        mibValidator = mibSchema.newValidator();
+        // The compiled schema is shared with other builders; Validators based on it are created per thread.
+        mibSchema = XmlSchemaCache.getSchema(newMIBSchemaFile);
+        mibValidator = ThreadLocal.withInitial(mibSchema::newValidator);
+    }
+    
+    
+    private DocumentBuilder createDocBuilder() throws ParserConfigurationException
+    {
+        DocumentBuilder newDocBuilder = docBuilderFactory.newDocumentBuilder();
+        newDocBuilder.setErrorHandler(new BasicXmlErrorHandler());
+        return newDocBuilder;
     }
     
     
     /**
-     * Parses and validates XML MIB files and adds their elements to the MIB tree model.
+     * Parses and validates an XML MIB file into a list of the object definitions it contains.
      * 
-     * @param mibFile the File to add to the MIB Tree
+     * @param mibFile the File to parse
+     * @return the parsed MIB module
      * 
      * @throws MibInvalidXmlFormatException if the MIB file is invalid
      */
 	@Override
-    protected void addMIBToTree(File mibFile) throws MibInvalidXmlFormatException
+    protected MibModule parseMIBFile(File mibFile) throws MibInvalidXmlFormatException
     {
+        List<MibDefinition> definitions = new ArrayList<>();
+        List<String> imports = new ArrayList<>();
+        String mibName = "";
+        
         // The following parsing and validation code uses the new validation API introduced in Java 1.5.  This
         // separates parsing and validating.  This functionality is available through JAXP 1.3 included with
         // the latest Java release or with Java 1.4 combined with a separate JAXP 1.3 release. The GNU CLASSPATH
@@ -119,10 +144,10 @@ public class MibTreeBuilderXml extends AbstractMibTreeBuilder
             try
             {
                 // parse the XML file to construct a document
-                doc = docBuilder.parse(mibFile);
+                doc = docBuilder.get().parse(mibFile);
                 
                 // validate the document against the schema
-                mibValidator.validate(new DOMSource(doc));
+                mibValidator.get().validate(new DOMSource(doc));
             }
             catch(SAXParseException e)
             {
@@ -142,12 +167,17 @@ public class MibTreeBuilderXml extends AbstractMibTreeBuilder
             // This code will be reached if the MIB is a valid XML file, conforms to the schema, and validates.
             doc.getDocumentElement().normalize();
             
-            String mibName = doc.getDocumentElement().getAttribute("definition").trim();
+            mibName = doc.getDocumentElement().getAttribute("definition").trim();
+
+            // get the names of the modules imported from
+            NodeList sourceMibList = doc.getElementsByTagName("sourceMib");
+            for(int i = 0; i < sourceMibList.getLength(); i++)
+                imports.add(sourceMibList.item(i).getTextContent().trim());
 
             // get the list of all MIB objects and loop through them
             NodeList mibObjectList = doc.getElementsByTagName("mibObject");
             for(int i = 0; i < mibObjectList.getLength(); i++)
-                this.handleMIBObjectNode(mibObjectList.item(i), mibName);
+                this.handleMIBObjectNode(mibObjectList.item(i), mibName, definitions);
 
         }
         catch(IOException e)
@@ -155,18 +185,20 @@ public class MibTreeBuilderXml extends AbstractMibTreeBuilder
             System.out.println(e.getMessage());
         }
 
+        return new MibModule(mibName, mibFile, imports, definitions);
     }
     
     
     /**
      * Reads the information in a &lt;mibObject&gt; element and puts that
-     * information into a new MibObjectType. This MibObjectType is
-     * added to the TreeModel if its name does not match an
-     * existing node.
+     * information into a new MibObjectType, which is added to the module's
+     * definitions.
      * 
      * @param mibObjectNode the Node to extract data from
+     * @param mibName the name of the MIB module being read
+     * @param definitions the module's definitions read so far
      */
-    private void handleMIBObjectNode(final Node newMibObjectNode, String mibName)
+    private void handleMIBObjectNode(final Node newMibObjectNode, String mibName, List<MibDefinition> definitions)
     {
         Node mibObjectNode = newMibObjectNode;
         
@@ -180,9 +212,9 @@ public class MibTreeBuilderXml extends AbstractMibTreeBuilder
             // get the MIB object's name
             String name = extractSubElementText(mibObjectElement, "objectName");
 
-            // Check to see if this node is already in the tree or if the name is empty.
-            // If either occur, do not attempt to construct a node and add it to the tree.
-            if(!name.equals("") && !nodeMap.containsKey(name)) //check the HashMap
+            // If the name is empty, do not attempt to construct a node; names already in
+            // the tree are skipped when the module is linked.
+            if(!name.equals(""))
             {
                 MibObjectType curMIBObject = new MibObjectType();
                 curMIBObject.setName(name);
@@ -232,26 +264,9 @@ public class MibTreeBuilderXml extends AbstractMibTreeBuilder
                 NodeList parentText = parentElement.getChildNodes();
                 String parentName = ((Node)parentText.item(0)).getNodeValue().trim();
 
-                this.addMibObject(curMIBObject, parentName);
-                
-               /* // add the current MIB object to a new tree node
-                MibTreeNode curNode = new MibTreeNode(curMIBObject);
-
-                // check the HashMap for specified parent node
-                if(nodeMap.containsKey(parentName))
-                {
-                    MibTreeNode parentNode = nodeMap.get(parentName);
-                    parentNode.add(curNode);
-                    nodeMap.put(name, curNode);
-                }
-                else
-                {
-                    Object[] noParentNode = new Object[] {curNode, parentName};
-                    lostChildren.add(noParentNode);
-                    //System.out.print("Error, " + nodeParent + " not found.");
-                }*/
+                definitions.add(new MibDefinition(curMIBObject, parentName));
 
-            } //if the node didn't already exist and it had a valid name element
+            } //if it had a valid name element
         } //if the object node is an element
     }
     
@@ -0,0 +1,400 @@
+/**
+ * libmib - Java SNMP Management Information Base Library
+ *
+ * Copyright (C) 2005, Matt Hamilton <matthew.hamilton@washburn.edu>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package org.mibNavigator.libmib.mibtree;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+
+import org.mibNavigator.libmib.MibInvalidXmlFormatException;
+import org.mibNavigator.libmib.oid.MibObjectType;
+import org.mibNavigator.libmib.oid.MibSyntax;
+import org.mibNavigator.libmib.oid.MibValueListItem;
+import org.mibNavigator.libmib.oid.MibObjectType.Access;
+import org.mibNavigator.libmib.oid.MibObjectType.Status;
+
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+
+
+/**
+ * This class reads XML files that conform to the mib XML schema definition, like 
+ * MibTreeBuilderXml, but without building a DOM tree for each file.  Each file is read
+ * once, from start to end, with a StAX stream reader.  Every event read is passed on to a
+ * validator for the schema as well as used to fill in the MIB object being read, so a file 
+ * is validated while it is read rather than afterwards.
+ * <br><br>
+ * The fields of a &lt;mibObject&gt; are gathered as its elements end, and the object is
+ * created when the &lt;mibObject&gt; element itself ends.  As with MibTreeBuilderXml, only 
+ * the first of each kind of element in an object is used.
+ * <br><br>
+ * The schema file is compiled once and shared by all builders using it.  Stream readers and 
+ * validators can't be used by more than one thread at a time, so each thread parsing files 
+ * gets its own.
+ */
+public class MibTreeBuilderXmlStream extends AbstractMibTreeBuilder
+{
+    private final Schema mibSchema;
+    
+    private final ThreadLocal<XMLInputFactory> inputFactory;
+    private final ThreadLocal<ValidatorHandler> mibValidator;
+    
+    
+    /**
+     * Constructs a new MibTreeBuilderXmlStream that reads XML MIB files.  The tree data 
+     * structure that will contain the MIB objects is initialized with a basic set 
+     * of nodes.
+     * 
+     * @param newMIBSchemaFile the XML schema file that will be used to validate 
+     *        XML MIB files
+     * 
+     * @throws SAXException if a SAX error occurs when parsing the schema file
+     */
+    public MibTreeBuilderXmlStream(File newMIBSchemaFile) throws SAXException
+    {
+        mibSchema = XmlSchemaCache.getSchema(newMIBSchemaFile);
+        
+        inputFactory = ThreadLocal.withInitial(() -> {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            return factory;
+        });
+        
+        mibValidator = ThreadLocal.withInitial(() -> {
+            ValidatorHandler validator = mibSchema.newValidatorHandler();
+            validator.setErrorHandler(new BasicXmlErrorHandler());
+            return validator;
+        });
+    }
+    
+    
+    /**
+     * Parses and validates an XML MIB file into a list of the object definitions it contains.
+     * 
+     * @param mibFile the File to parse
+     * @return the parsed MIB module
+     * 
+     * @throws MibInvalidXmlFormatException if the MIB file is invalid
+     */
+    @Override
+    protected MibModule parseMIBFile(File mibFile) throws MibInvalidXmlFormatException
+    {
+        ModuleReader moduleReader = new ModuleReader();
+        
+        try(InputStream in = new BufferedInputStream(new FileInputStream(mibFile), 65536))
+        {
+            XMLStreamReader reader = inputFactory.get().createXMLStreamReader(mibFile.toURI().toString(), in);
+            try
+            {
+                moduleReader.read(reader, mibValidator.get());
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch(SAXParseException e)
+        {
+            // A validator that stopped part way through a file is not used again.
+            mibValidator.remove();
+            
+            // If the file does not validate, throw an exception with the file that failed and 
+            // line and column details from the validation exception.
+            String errorMsg = "\nFailed at line: " + e.getLineNumber() + ", column: " + e.getColumnNumber() 
+                + "\nCause: " + e.getMessage();
+            throw new MibInvalidXmlFormatException(errorMsg, mibFile);
+        }
+        catch(SAXException e)
+        {
+            mibValidator.remove();
+            throw new MibInvalidXmlFormatException("\nCause: " + e.getMessage(), mibFile);
+        }
+        catch(XMLStreamException e)
+        {
+            mibValidator.remove();
+            
+            // If a parsing error occurs, report where it happened along with the reader's message.
+            String errorMsg = "";
+            if(e.getLocation() != null)
+                errorMsg = "\nFailed at line: " + e.getLocation().getLineNumber() + ", column: " + e.getLocation().getColumnNumber();
+            throw new MibInvalidXmlFormatException(errorMsg + "\nCause: " + e.getMessage(), mibFile);
+        }
+        catch(IOException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        
+        return new MibModule(moduleReader.mibName, mibFile, moduleReader.imports, moduleReader.definitions);
+    }
+    
+    
+    /**
+     * Reads a single XML MIB file, passing each event to a validator and collecting the 
+     * module's name, imports and object definitions.
+     */
+    private static final class ModuleReader
+    {
+        private String mibName = "";
+        private final List<String> imports = new ArrayList<>();
+        private final List<MibDefinition> definitions = new ArrayList<>();
+        
+        // the text of the current element, and whether it has any child elements
+        private final StringBuilder text = new StringBuilder();
+        private boolean hasChildren = false;
+        
+        // the text of the elements of the MIB object being read, by element name
+        private boolean inMibObject = false;
+        private final Map<String, String> fields = new HashMap<>();
+        
+        // the value list of the MIB object being read, and the label and value of the current item
+        private List<MibValueListItem> values = null;
+        private String valueLabel = null;
+        private String valueNumber = null;
+        
+        
+        /**
+         * Reads the whole file.
+         * 
+         * @throws XMLStreamException if the file is not well formed XML
+         * @throws SAXException if the file does not validate
+         */
+        private void read(final XMLStreamReader reader, ValidatorHandler validator) throws XMLStreamException, SAXException
+        {
+            validator.setContentHandler(null);
+            validator.setDocumentLocator(new Locator()
+            {
+                @Override
+                public String getPublicId()
+                {
+                    return reader.getLocation().getPublicId();
+                }
+                
+                @Override
+                public String getSystemId()
+                {
+                    return reader.getLocation().getSystemId();
+                }
+                
+                @Override
+                public int getLineNumber()
+                {
+                    return reader.getLocation().getLineNumber();
+                }
+                
+                @Override
+                public int getColumnNumber()
+                {
+                    return reader.getLocation().getColumnNumber();
+                }
+            });
+            
+            validator.startDocument();
+            
+            while(reader.hasNext())
+            {
+                switch(reader.next())
+                {
+                    case XMLStreamConstants.START_ELEMENT:
+                        for(int i = 0; i < reader.getNamespaceCount(); i++)
+                            validator.startPrefixMapping(emptyIfNull(reader.getNamespacePrefix(i)), emptyIfNull(reader.getNamespaceURI(i)));
+                        
+                        validator.startElement(emptyIfNull(reader.getNamespaceURI()), reader.getLocalName(), 
+                                qualifiedName(reader.getPrefix(), reader.getLocalName()), attributes(reader));
+                        this.startElement(reader);
+                        break;
+                        
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        validator.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        break;
+                        
+                    case XMLStreamConstants.END_ELEMENT:
+                        validator.endElement(emptyIfNull(reader.getNamespaceURI()), reader.getLocalName(), 
+                                qualifiedName(reader.getPrefix(), reader.getLocalName()));
+                        for(int i = 0; i < reader.getNamespaceCount(); i++)
+                            validator.endPrefixMapping(emptyIfNull(reader.getNamespacePrefix(i)));
+                        
+                        this.endElement(reader.getLocalName());
+                        break;
+                        
+                    default:
+                        break;
+                }
+            }
+            
+            validator.endDocument();
+        }
+        
+        
+        private void startElement(XMLStreamReader reader)
+        {
+            String name = reader.getLocalName();
+            
+            if(name.equals("mib"))
+            {
+                String definition = reader.getAttributeValue(null, "definition");
+                if(definition != null)
+                    mibName = definition.trim();
+            }
+            else if(name.equals("mibObject"))
+            {
+                inMibObject = true;
+                fields.clear();
+                values = null;
+            }
+            else if(name.equals("valueList") && inMibObject && values == null)
+                values = new ArrayList<>();
+            else if(name.equals("valueItem"))
+            {
+                valueLabel = null;
+                valueNumber = null;
+            }
+            
+            text.setLength(0);
+            hasChildren = false;
+        }
+        
+        
+        private void endElement(String name)
+        {
+            // only elements that contain text, and no other elements, hold a field
+            if(!hasChildren)
+            {
+                String contents = text.toString().trim();
+                
+                if(name.equals("sourceMib"))
+                    imports.add(contents);
+                else if(name.equals("label"))
+                    valueLabel = contents;
+                else if(name.equals("val"))
+                    valueNumber = contents;
+                else if(inMibObject)
+                    fields.putIfAbsent(name, contents);
+            }
+            
+            if(name.equals("valueItem") && values != null && valueLabel != null && valueNumber != null)
+                values.add(new MibValueListItem(valueLabel, Integer.parseInt(valueNumber)));
+            else if(name.equals("mibObject"))
+            {
+                this.addMibObject();
+                inMibObject = false;
+            }
+            
+            text.setLength(0);
+            hasChildren = true; // the element that contains this one
+        }
+        
+        
+        /**
+         * Creates the MIB object from the fields of the &lt;mibObject&gt; element that has just ended.
+         */
+        private void addMibObject()
+        {
+            // ***only valid MIB object types will be accepted due to validation***
+            
+            // If the name is empty, do not attempt to construct a node; names already in
+            // the tree are skipped when the module is linked.
+            String name = fields.getOrDefault("objectName", "");
+            if(name.equals(""))
+                return;
+            
+            MibObjectType curMIBObject = new MibObjectType();
+            curMIBObject.setName(name);
+            curMIBObject.setId(Integer.parseInt(fields.get("objectId")));
+            
+            // the syntax holds either a data type or a sequence
+            MibSyntax objSyntax = null;
+            if(fields.containsKey("type"))
+                objSyntax = new MibSyntax(fields.get("type"));
+            else if(fields.containsKey("sequence"))
+                objSyntax = new MibSyntax("Sequence of " + fields.get("sequence"));
+            
+            if(objSyntax != null)
+            {
+                if(values != null)
+                    objSyntax.setValuesList(values);
+                curMIBObject.setSyntax(objSyntax);
+            }
+            
+            String access = fields.getOrDefault("access", "");
+            if(!access.equals(""))
+                curMIBObject.setAccess(Access.valueOf(access.toUpperCase().replace('-', '_')));
+            
+            String status = fields.getOrDefault("status", "");
+            if(!status.equals(""))
+                curMIBObject.setStatus(Status.valueOf(status.toUpperCase()));
+            
+            String description = fields.getOrDefault("description", "");
+            if(!description.equals(""))
+                curMIBObject.setDescription(description);
+            
+            curMIBObject.setMibName(mibName);
+            
+            definitions.add(new MibDefinition(curMIBObject, fields.get("parent")));
+        }
+        
+        
+        private static AttributesImpl attributes(XMLStreamReader reader)
+        {
+            AttributesImpl attributes = new AttributesImpl();
+            for(int i = 0; i < reader.getAttributeCount(); i++)
+            {
+                attributes.addAttribute(emptyIfNull(reader.getAttributeNamespace(i)), reader.getAttributeLocalName(i), 
+                        qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), 
+                        reader.getAttributeType(i), reader.getAttributeValue(i));
+            }
+            
+            return attributes;
+        }
+        
+        
+        private static String qualifiedName(String prefix, String localName)
+        {
+            return (prefix == null || prefix.isEmpty()) ? localName : prefix + ":" + localName;
+        }
+        
+        
+        private static String emptyIfNull(String value)
+        {
+            return (value == null) ? "" : value;
+        }
+    }
+    
+}
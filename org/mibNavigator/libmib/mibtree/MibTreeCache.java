@@ -0,0 +1,857 @@
+/**
+ * libmib - Java SNMP Management Information Base Library
+ *
+ * Copyright (C) 2005, Matt Hamilton <matthew.hamilton@washburn.edu>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package org.mibNavigator.libmib.mibtree;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mibNavigator.libmib.oid.MibObjectType;
+import org.mibNavigator.libmib.oid.MibSyntax;
+import org.mibNavigator.libmib.oid.MibText;
+import org.mibNavigator.libmib.oid.MibValueListItem;
+
+/**
+ * MibTreeCache stores a compiled MIB tree in a binary file, so a directory of MIBs only has to 
+ * be parsed again when its files change.
+ * <br><br>
+ * The cache begins, after its length, with a manifest of the source files: the name, size, modification time and 
+ * SHA-256 hash of each, and the name and imports of its module if it could be parsed, along with 
+ * the names of the objects it shares with modules linked before it.  A cache is current if the 
+ * directory holds the same files with the same sizes and either the same modification times or, 
+ * where a time differs, the same hash, so touching a file doesn't force a recompile but editing 
+ * it does.
+ * <br><br>
+ * After the manifest come a table of all the distinct strings, a table of syntaxes with their 
+ * enumerated values, a blob of description and reference text and then the nodes as parallel 
+ * arrays, in preorder so each node comes after its parent.  Nodes refer to strings and syntaxes 
+ * by index and to their text by offset and length into the blob, and to the source file whose 
+ * module added them by its place in the manifest.  The tree's nodes are followed 
+ * by the pending nodes, still waiting for their parents, and the messages for the files that 
+ * couldn't be parsed.  The manifest is checked with plain reads, so a stale cache is never 
+ * mapped and can be replaced straight away even on Windows; a current one is memory mapped 
+ * from the end of the manifest to read it back, and the descriptions and references are left 
+ * in the mapped file until they are asked for.
+ */
+final class MibTreeCache
+{
+    private static final int MAGIC = 0x4D494243; // "MIBC"
+    private static final int VERSION = 5;
+    
+    // the magic number, version and manifest length
+    private static final int HEADER_LENGTH = 12;
+    
+    private static final int HASH_LENGTH = 32;
+    
+    // stands for a missing string, syntax or list
+    private static final int NONE = -1;
+    
+    private final MibTreeNode root;
+    private final Map<String, MibTreeNode> nodes;
+    private final Map<String, List<MibTreeNode>> pendingChildren;
+    private final Map<File, AbstractMibTreeBuilder.LinkedModule> modules;
+    private final List<String> errors;
+    
+    
+    private MibTreeCache(MibTreeNode newRoot, Map<String, MibTreeNode> newNodes, 
+            Map<String, List<MibTreeNode>> newPending, Map<File, AbstractMibTreeBuilder.LinkedModule> newModules, 
+            List<String> newErrors)
+    {
+        root = newRoot;
+        nodes = newNodes;
+        pendingChildren = newPending;
+        modules = newModules;
+        errors = newErrors;
+    }
+    
+    
+    /**
+     * Gets the root of the cached tree.
+     * 
+     * @return the root node
+     */
+    MibTreeNode getRoot()
+    {
+        return root;
+    }
+    
+    
+    /**
+     * Gets the nodes of the cached tree, other than the root, by name.
+     * 
+     * @return a map from node names to nodes
+     */
+    Map<String, MibTreeNode> getNodes()
+    {
+        return nodes;
+    }
+    
+    
+    /**
+     * Gets the cached nodes that were waiting for their parents, by the name of the parent.
+     * 
+     * @return a map from parent names to pending nodes
+     */
+    Map<String, List<MibTreeNode>> getPendingChildren()
+    {
+        return pendingChildren;
+    }
+    
+    
+    /**
+     * Gets the modules of the source files, with the nodes each added, by source file.
+     * 
+     * @return a map from source files to their modules, in file order
+     */
+    Map<File, AbstractMibTreeBuilder.LinkedModule> getModules()
+    {
+        return modules;
+    }
+    
+    
+    /**
+     * Gets the messages for the source files that couldn't be parsed when the cache was written.
+     * 
+     * @return the error messages, in file order
+     */
+    List<String> getErrors()
+    {
+        return errors;
+    }
+    
+    
+    /**
+     * Reads a cached tree, if the cache was written by the same kind of builder for the same 
+     * source files.
+     * 
+     * @param cacheFile the cache file
+     * @param builderType the class name of the builder reading the cache
+     * @param mibDir the directory holding the source files
+     * @param sourceFiles the source files, in sorted order
+     * @return the cached tree, or null if there is no cache or it isn't current
+     * 
+     * @throws IOException if the cache file can't be read or is corrupt
+     */
+    static MibTreeCache read(File cacheFile, String builderType, File mibDir, File[] sourceFiles) throws IOException
+    {
+        if(!cacheFile.isFile())
+            return null;
+        
+        try(FileChannel channel = FileChannel.open(cacheFile.toPath()))
+        {
+            ByteBuffer header = readBytes(channel, 0, HEADER_LENGTH);
+            if(header.getInt() != MAGIC || header.getInt() != VERSION)
+                return null;
+            
+            int manifestLength = header.getInt();
+            ByteBuffer manifest = readBytes(channel, HEADER_LENGTH, manifestLength);
+            
+            if(!getString(manifest).equals(builderType) || !getString(manifest).equals(mibDir.getCanonicalPath()))
+                return null;
+            
+            List<AbstractMibTreeBuilder.LinkedModule> modules = new ArrayList<>(sourceFiles.length);
+            if(!isCurrent(manifest, sourceFiles, modules))
+                return null;
+            
+            // only now that the cache is known to be current is the rest of it mapped
+            long manifestEnd = HEADER_LENGTH + (long)manifestLength;
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, manifestEnd, channel.size() - manifestEnd);
+            
+            return readTree(buffer, sourceFiles, modules);
+        }
+        catch(BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e)
+        {
+            throw new IOException("The MIB cache " + cacheFile.getName() + " is corrupt.", e);
+        }
+    }
+    
+    
+    /**
+     * Reads up to the given number of bytes from the channel, starting at the given position; 
+     * fewer are read if the file ends first, so reading past them fails as a corrupt cache would.
+     */
+    private static ByteBuffer readBytes(FileChannel channel, long position, int length) throws IOException
+    {
+        ByteBuffer bytes = ByteBuffer.allocate((int)Math.min(length, Math.max(0, channel.size() - position)));
+        while(bytes.hasRemaining())
+        {
+            if(channel.read(bytes, position + bytes.position()) == -1)
+                break;
+        }
+        
+        bytes.flip();
+        return bytes;
+    }
+    
+    
+    /**
+     * Compares the manifest at the buffer's position against the source files, collecting 
+     * the files' modules as it goes.
+     */
+    private static boolean isCurrent(ByteBuffer buffer, File[] sourceFiles, 
+            List<AbstractMibTreeBuilder.LinkedModule> modules) throws IOException
+    {
+        int fileCount = buffer.getInt();
+        if(fileCount != sourceFiles.length)
+            return false;
+        
+        byte[] hash = new byte[HASH_LENGTH];
+        for(File sourceFile : sourceFiles)
+        {
+            String name = getString(buffer);
+            long size = buffer.getLong();
+            long modified = buffer.getLong();
+            buffer.get(hash);
+            
+            // a file that couldn't be parsed has no module
+            String moduleName = null;
+            List<String> imports = Collections.emptyList();
+            List<String> aliases = Collections.emptyList();
+            int importCount = buffer.getInt();
+            if(importCount != NONE)
+            {
+                moduleName = getString(buffer);
+                imports = new ArrayList<>(importCount);
+                for(int i = 0; i < importCount; i++)
+                    imports.add(getString(buffer));
+                
+                int aliasCount = buffer.getInt();
+                aliases = new ArrayList<>(aliasCount);
+                for(int i = 0; i < aliasCount; i++)
+                    aliases.add(getString(buffer));
+            }
+            
+            if(!name.equals(sourceFile.getName()) || size != sourceFile.length())
+                return false;
+            
+            // a file that was only touched is still current
+            if(modified != sourceFile.lastModified() && !Arrays.equals(hash, hashFile(sourceFile)))
+                return false;
+            
+            AbstractMibTreeBuilder.LinkedModule module = new AbstractMibTreeBuilder.LinkedModule(moduleName, imports, 
+                    sourceFile.lastModified(), sourceFile.length());
+            module.aliases.addAll(aliases);
+            modules.add(module);
+        }
+        
+        return true;
+    }
+    
+    
+    /**
+     * Rebuilds the tree from the tables following the manifest.
+     */
+    private static MibTreeCache readTree(ByteBuffer buffer, File[] sourceFiles, 
+            List<AbstractMibTreeBuilder.LinkedModule> moduleList)
+    {
+        String[] strings = new String[buffer.getInt()];
+        for(int i = 0; i < strings.length; i++)
+            strings[i] = getString(buffer);
+        
+        MibSyntax[] syntaxes = new MibSyntax[buffer.getInt()];
+        for(int i = 0; i < syntaxes.length; i++)
+        {
+            MibSyntax syntax = new MibSyntax(lookUp(strings, buffer.getInt()));
+            syntax.setDefaultValue(lookUp(strings, buffer.getInt()));
+            
+            int valueCount = buffer.getInt();
+            if(valueCount != NONE)
+            {
+                List<MibValueListItem> values = Collections.synchronizedList(new ArrayList<MibValueListItem>(valueCount));
+                for(int j = 0; j < valueCount; j++)
+                    values.add(new MibValueListItem(strings[buffer.getInt()], buffer.getInt()));
+                syntax.setValuesList(values);
+            }
+            
+            syntaxes[i] = syntax;
+        }
+        
+        int[] indexLists = getInts(buffer, buffer.getInt());
+        
+        // the text stays in the mapped file until it is asked for
+        int textLength = buffer.getInt();
+        ByteBuffer text = buffer.duplicate();
+        text.limit(buffer.position() + textLength);
+        text = text.slice();
+        buffer.position(buffer.position() + textLength);
+        
+        int treeNodeCount = buffer.getInt();
+        int nodeCount = buffer.getInt();
+        
+        int[] parents = getInts(buffer, nodeCount);
+        int[] ids = getInts(buffer, nodeCount);
+        int[] names = getInts(buffer, nodeCount);
+        int[] mibNames = getInts(buffer, nodeCount);
+        int[] accessLevels = getInts(buffer, nodeCount);
+        int[] statuses = getInts(buffer, nodeCount);
+        int[] syntaxIndexes = getInts(buffer, nodeCount);
+        int[] indexStarts = getInts(buffer, nodeCount);
+        int[] descOffsets = getInts(buffer, nodeCount);
+        int[] descLengths = getInts(buffer, nodeCount);
+        int[] refOffsets = getInts(buffer, nodeCount);
+        int[] refLengths = getInts(buffer, nodeCount);
+        int[] owners = getInts(buffer, nodeCount);
+        int[] pendingParents = getInts(buffer, nodeCount - treeNodeCount);
+        
+        MibObjectType.Access[] accessValues = MibObjectType.Access.values();
+        MibObjectType.Status[] statusValues = MibObjectType.Status.values();
+        
+        MibTreeNode[] treeNodes = new MibTreeNode[nodeCount];
+        Map<String, MibTreeNode> nodes = new HashMap<>(Math.max(2000, treeNodeCount * 4 / 3 + 1));
+        Map<String, List<MibTreeNode>> pendingChildren = new HashMap<>();
+        
+        for(int i = 0; i < nodeCount; i++)
+        {
+            MibObjectType mibObject = new MibObjectType(strings[names[i]], ids[i]);
+            mibObject.setMibName(strings[mibNames[i]]);
+            
+            if(accessLevels[i] != NONE)
+                mibObject.setAccess(accessValues[accessLevels[i]]);
+            if(statuses[i] != NONE)
+                mibObject.setStatus(statusValues[statuses[i]]);
+            if(syntaxIndexes[i] != NONE)
+                mibObject.setSyntax(syntaxes[syntaxIndexes[i]]);
+            
+            if(indexStarts[i] != NONE)
+            {
+                int start = indexStarts[i];
+                List<String> indices = new ArrayList<>(indexLists[start]);
+                for(int j = 1; j <= indexLists[start]; j++)
+                    indices.add(strings[indexLists[start + j]]);
+                mibObject.setIndices(indices);
+            }
+            
+            if(descLengths[i] == NONE)
+                mibObject.setDescription((String)null);
+            else if(descLengths[i] > 0)
+                mibObject.setDescription(new CachedText(text, descOffsets[i], descLengths[i]));
+            
+            if(refLengths[i] == NONE)
+                mibObject.setReference((String)null);
+            else if(refLengths[i] > 0)
+                mibObject.setReference(new CachedText(text, refOffsets[i], refLengths[i]));
+            
+            MibTreeNode node = new MibTreeNode(mibObject);
+            treeNodes[i] = node;
+            
+            if(owners[i] != NONE)
+                moduleList.get(owners[i]).nodes.add(node);
+            
+            if(i >= treeNodeCount)
+            {
+                pendingChildren.computeIfAbsent(strings[pendingParents[i - treeNodeCount]], 
+                        name -> new ArrayList<>()).add(node);
+            }
+            else if(i > 0)
+            {
+                // preorder, so the parent has already been created
+                treeNodes[parents[i]].add(node);
+                nodes.put(mibObject.getName(), node);
+            }
+        }
+        
+        List<String> errors = new ArrayList<>();
+        int errorCount = buffer.getInt();
+        for(int i = 0; i < errorCount; i++)
+            errors.add(getString(buffer));
+        
+        Map<File, AbstractMibTreeBuilder.LinkedModule> modules = new LinkedHashMap<>();
+        for(int i = 0; i < sourceFiles.length; i++)
+            modules.put(sourceFiles[i], moduleList.get(i));
+        
+        return new MibTreeCache(treeNodes[0], nodes, pendingChildren, modules, errors);
+    }
+    
+    
+    /**
+     * Writes a compiled tree to a cache file.  The file is written under a temporary name and 
+     * then moved into place, so a cache that is being written is never read.
+     * 
+     * @param cacheFile the cache file
+     * @param builderType the class name of the builder writing the cache
+     * @param mibDir the directory holding the source files
+     * @param sourceFiles the source files the tree was compiled from, in sorted order
+     * @param root the root of the compiled tree
+     * @param pendingChildren the nodes still waiting for their parents, by the parent's name
+     * @param modules the modules of the source files, with the nodes each added
+     * @param errors the messages for the source files that couldn't be parsed
+     * 
+     * @throws IOException if the cache file can't be written
+     */
+    static void write(File cacheFile, String builderType, File mibDir, File[] sourceFiles, MibTreeNode root, 
+            Map<String, List<MibTreeNode>> pendingChildren, Map<File, AbstractMibTreeBuilder.LinkedModule> modules, 
+            List<String> errors) throws IOException
+    {
+        // collect the tree's nodes in preorder, then the pending nodes
+        List<MibTreeNode> nodeList = new ArrayList<>();
+        List<Integer> parentList = new ArrayList<>();
+        Deque<MibTreeNode> toVisit = new ArrayDeque<>();
+        Map<MibTreeNode, Integer> nodeIndexes = new HashMap<>();
+        toVisit.push(root);
+        
+        while(!toVisit.isEmpty())
+        {
+            MibTreeNode node = toVisit.pop();
+            MibTreeNode parent = (MibTreeNode)node.getParent();
+            
+            nodeIndexes.put(node, nodeList.size());
+            nodeList.add(node);
+            parentList.add(parent == null ? NONE : nodeIndexes.get(parent));
+            
+            // push in reverse so the children are visited in order
+            List<MibTreeNode> children = new ArrayList<>();
+            for(Enumeration<?> e = node.children(); e.hasMoreElements(); )
+                children.add((MibTreeNode)e.nextElement());
+            for(int i = children.size() - 1; i >= 0; i--)
+                toVisit.push(children.get(i));
+        }
+        
+        int treeNodeCount = nodeList.size();
+        List<String> pendingParentNames = new ArrayList<>();
+        for(Map.Entry<String, List<MibTreeNode>> entry : pendingChildren.entrySet())
+        {
+            for(MibTreeNode node : entry.getValue())
+            {
+                nodeList.add(node);
+                parentList.add(NONE);
+                pendingParentNames.add(entry.getKey());
+            }
+        }
+        
+        int nodeCount = nodeList.size();
+        StringTable strings = new StringTable();
+        List<MibSyntax> syntaxList = new ArrayList<>();
+        Map<MibSyntax, Integer> syntaxIndexes = new HashMap<>();
+        IntList indexLists = new IntList();
+        TextBlob text = new TextBlob();
+        
+        Map<MibTreeNode, Integer> owningFiles = new IdentityHashMap<>();
+        for(int i = 0; i < sourceFiles.length; i++)
+        {
+            AbstractMibTreeBuilder.LinkedModule module = modules.get(sourceFiles[i]);
+            if(module != null)
+            {
+                for(MibTreeNode node : module.nodes)
+                    owningFiles.put(node, i);
+            }
+        }
+        
+        int[][] columns = new int[13][nodeCount];
+        int[] parents = columns[0], ids = columns[1], names = columns[2], mibNames = columns[3];
+        int[] accessLevels = columns[4], statuses = columns[5], syntaxes = columns[6], indexStarts = columns[7];
+        int[] descOffsets = columns[8], descLengths = columns[9], refOffsets = columns[10], refLengths = columns[11];
+        int[] owners = columns[12];
+        
+        for(int i = 0; i < nodeCount; i++)
+        {
+            MibObjectType mibObject = (MibObjectType)nodeList.get(i).getUserObject();
+            
+            parents[i] = parentList.get(i);
+            ids[i] = mibObject.getId();
+            names[i] = strings.indexOf(mibObject.getName());
+            mibNames[i] = strings.indexOf(mibObject.getMibName());
+            accessLevels[i] = mibObject.getAccess() == null ? NONE : mibObject.getAccess().ordinal();
+            statuses[i] = mibObject.getStatus() == null ? NONE : mibObject.getStatus().ordinal();
+            
+            // syntaxes are shared between objects that use the same syntax object
+            MibSyntax syntax = mibObject.getSyntax();
+            if(syntax == null)
+                syntaxes[i] = NONE;
+            else
+            {
+                syntaxes[i] = syntaxIndexes.computeIfAbsent(syntax, s -> {
+                    syntaxList.add(s);
+                    return syntaxList.size() - 1;
+                });
+            }
+            
+            if(!mibObject.hasIndices())
+                indexStarts[i] = NONE;
+            else
+            {
+                indexStarts[i] = indexLists.size();
+                indexLists.add(mibObject.getIndices().size());
+                for(String index : mibObject.getIndices())
+                    indexLists.add(strings.indexOf(index));
+            }
+            
+            owners[i] = owningFiles.getOrDefault(nodeList.get(i), NONE);
+        }
+        
+        // read the texts a source file at a time, so each file is read only once, and the files in parallel
+        String[] descriptions = new String[nodeCount];
+        String[] references = new String[nodeCount];
+        Arrays.stream(groupByOwner(owners, sourceFiles.length)).parallel().forEach(group -> {
+            MibText.Reader textReader = new MibText.Reader();
+            for(int i : group)
+            {
+                MibObjectType mibObject = (MibObjectType)nodeList.get(i).getUserObject();
+                descriptions[i] = mibObject.readDescription(textReader);
+                references[i] = mibObject.readReference(textReader);
+            }
+        });
+        
+        for(int i = 0; i < nodeCount; i++)
+        {
+            descOffsets[i] = text.size();
+            descLengths[i] = text.add(descriptions[i]);
+            refOffsets[i] = text.size();
+            refLengths[i] = text.add(references[i]);
+        }
+        
+        // syntaxes and pending parents refer to strings, so index them before the string table is written
+        int[][] syntaxRecords = new int[syntaxList.size()][];
+        for(int i = 0; i < syntaxRecords.length; i++)
+        {
+            MibSyntax syntax = syntaxList.get(i);
+            List<MibValueListItem> values = syntax.getValuesList();
+            
+            int[] record = new int[3 + (values == null ? 0 : values.size() * 2)];
+            record[0] = strings.indexOf(syntax.getDataType());
+            record[1] = strings.indexOf(syntax.getDefaultValue());
+            record[2] = values == null ? NONE : values.size();
+            
+            if(values != null)
+            {
+                synchronized(values)
+                {
+                    for(int j = 0; j < values.size(); j++)
+                    {
+                        record[3 + j * 2] = strings.indexOf(values.get(j).getValueName());
+                        record[4 + j * 2] = values.get(j).getValueNumber();
+                    }
+                }
+            }
+            
+            syntaxRecords[i] = record;
+        }
+        
+        int[] pendingParents = new int[pendingParentNames.size()];
+        for(int i = 0; i < pendingParents.length; i++)
+            pendingParents[i] = strings.indexOf(pendingParentNames.get(i));
+        
+        // the manifest is written ahead so its length can go before it
+        ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+        try(DataOutputStream manifest = new DataOutputStream(manifestBytes))
+        {
+            putString(manifest, builderType);
+            putString(manifest, mibDir.getCanonicalPath());
+            
+            manifest.writeInt(sourceFiles.length);
+            for(File sourceFile : sourceFiles)
+            {
+                putString(manifest, sourceFile.getName());
+                manifest.writeLong(sourceFile.length());
+                manifest.writeLong(sourceFile.lastModified());
+                manifest.write(hashFile(sourceFile));
+                
+                AbstractMibTreeBuilder.LinkedModule module = modules.get(sourceFile);
+                if(module == null || module.name == null)
+                    manifest.writeInt(NONE);
+                else
+                {
+                    manifest.writeInt(module.imports.size());
+                    putString(manifest, module.name);
+                    for(String imported : module.imports)
+                        putString(manifest, imported);
+                    
+                    manifest.writeInt(module.aliases.size());
+                    for(String alias : module.aliases)
+                        putString(manifest, alias);
+                }
+            }
+        }
+        
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536)))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(manifestBytes.size());
+            manifestBytes.writeTo(out);
+            
+            out.writeInt(strings.size());
+            for(String string : strings.strings)
+                putString(out, string);
+            
+            out.writeInt(syntaxRecords.length);
+            for(int[] record : syntaxRecords)
+                putInts(out, record, record.length);
+            
+            out.writeInt(indexLists.size());
+            putInts(out, indexLists.values, indexLists.size());
+            
+            out.writeInt(text.size());
+            out.write(text.bytes, 0, text.size());
+            
+            out.writeInt(treeNodeCount);
+            out.writeInt(nodeCount);
+            for(int[] column : columns)
+                putInts(out, column, nodeCount);
+            putInts(out, pendingParents, pendingParents.length);
+            
+            out.writeInt(errors.size());
+            for(String error : errors)
+                putString(out, error);
+        }
+        
+        try
+        {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e)
+        {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    
+    /**
+     * Groups the nodes by the source file that owns them, in order, with the nodes no file 
+     * owns in the first group.
+     */
+    private static int[][] groupByOwner(int[] owners, int fileCount)
+    {
+        int[] counts = new int[fileCount + 1];
+        for(int owner : owners)
+            counts[owner + 1]++;
+        
+        int[][] groups = new int[fileCount + 1][];
+        for(int i = 0; i < groups.length; i++)
+            groups[i] = new int[counts[i]];
+        
+        Arrays.fill(counts, 0);
+        for(int i = 0; i < owners.length; i++)
+        {
+            int group = owners[i] + 1;
+            groups[group][counts[group]++] = i;
+        }
+        
+        return groups;
+    }
+    
+    
+    /**
+     * Computes the SHA-256 hash of a file's contents.
+     */
+    private static byte[] hashFile(File sourceFile) throws IOException
+    {
+        // a subdirectory has no contents to hash; it fails to parse all the same
+        if(!sourceFile.isFile())
+            return new byte[HASH_LENGTH];
+        
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        
+        byte[] chunk = new byte[65536];
+        try(InputStream in = new FileInputStream(sourceFile))
+        {
+            int count;
+            while((count = in.read(chunk)) != -1)
+                digest.update(chunk, 0, count);
+        }
+        
+        return digest.digest();
+    }
+    
+    
+    private static String lookUp(String[] strings, int index)
+    {
+        return index == NONE ? null : strings[index];
+    }
+    
+    
+    private static String getString(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    
+    private static void putString(DataOutputStream out, String string) throws IOException
+    {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    
+    private static int[] getInts(ByteBuffer buffer, int count)
+    {
+        int[] values = new int[count];
+        IntBuffer ints = buffer.asIntBuffer();
+        ints.get(values);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+    
+    
+    private static void putInts(DataOutputStream out, int[] values, int count) throws IOException
+    {
+        for(int i = 0; i < count; i++)
+            out.writeInt(values[i]);
+    }
+    
+    
+    /**
+     * A description or reference in the text of a mapped cache file.
+     */
+    private static final class CachedText extends MibText
+    {
+        private final ByteBuffer text;
+        private final int offset;
+        private final int length;
+        
+        private CachedText(ByteBuffer newText, int newOffset, int newLength)
+        {
+            text = newText;
+            offset = newOffset;
+            length = newLength;
+        }
+        
+        @Override
+        protected String readText()
+        {
+            byte[] bytes = new byte[length];
+            ByteBuffer source = text.duplicate();
+            source.position(offset);
+            source.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+    
+    
+    /**
+     * Assigns each distinct string an index, in the order they are first seen.
+     */
+    private static final class StringTable
+    {
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> indexes = new HashMap<>();
+        
+        private int indexOf(String string)
+        {
+            if(string == null)
+                return NONE;
+            
+            return indexes.computeIfAbsent(string, s -> {
+                strings.add(s);
+                return strings.size() - 1;
+            });
+        }
+        
+        private int size()
+        {
+            return strings.size();
+        }
+    }
+    
+    
+    /**
+     * A growable array of ints.
+     */
+    private static final class IntList
+    {
+        private int[] values = new int[256];
+        private int size = 0;
+        
+        private void add(int value)
+        {
+            if(size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+        
+        private int size()
+        {
+            return size;
+        }
+    }
+    
+    
+    /**
+     * The UTF-8 text of the descriptions and references, one after another.
+     */
+    private static final class TextBlob
+    {
+        private byte[] bytes = new byte[65536];
+        private int size = 0;
+        
+        /**
+         * Appends a string, returning its length in bytes, or NONE for null.
+         */
+        private int add(String string)
+        {
+            if(string == null)
+                return NONE;
+            
+            byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+            if(size + encoded.length > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + encoded.length));
+            
+            System.arraycopy(encoded, 0, bytes, size, encoded.length);
+            size += encoded.length;
+            return encoded.length;
+        }
+        
+        private int size()
+        {
+            return size;
+        }
+    }
+    
+}
@@ -21,25 +21,36 @@
 
 package org.mibNavigator.libmib.mibtree;
 
+import java.util.Arrays;
 import java.util.Enumeration;
 
 import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.MutableTreeNode;
 import javax.swing.tree.TreeNode;
 
 import org.mibNavigator.libmib.oid.MibObjectIdentifier;
 import org.mibNavigator.libmib.oid.MibObjectType;
-import org.mibNavigator.snmp.SNMPBadValueException;
 
 /**
  * This extension of DefaultMutableTreeNode includes some MIB specific methods
  * for searching, as well as a more specific constructor for using a MibObjectType as the node's
  * user object.
+ * <br><br>
+ * Each node keeps an index of its children by id, so an OID is resolved with one binary search 
+ * per arc.  The index is built the first time it is needed and dropped whenever children are 
+ * inserted or removed; a child's id must not be changed once it is in the tree.
  */
 public class MibTreeNode extends DefaultMutableTreeNode 
 {
     public static final boolean MATCH_NEAREST_PATH = true;
     public static final boolean MATCH_EXACT_PATH = false;
     
+    // the index of the children by id, and the count of changes to the children, which tells 
+    // whether the index is up to date; the tree may be searched from threads other than the 
+    // one that changes it
+    private transient volatile ChildIndex idIndex;
+    private transient volatile int childChanges;
+    
     /**
      * Constructs a new default MibTreeNode.
      */
@@ -61,6 +72,7 @@ public class MibTreeNode extends DefaultMutableTreeNode
     /**
      * Searches for a node by it's name starting the search
      * at this node.  A breadth first enumeration is used.
+     * To search a whole tree, a MibSymbolIndex is much faster.
      * 
      * @param nodeName the name of the node to search for
      * @return the node if it is found
@@ -89,6 +101,45 @@ public class MibTreeNode extends DefaultMutableTreeNode
     }
     
     
+    @Override
+    public void insert(MutableTreeNode newChild, int childIndex)
+    {
+        super.insert(newChild, childIndex);
+        childChanges++;
+    }
+    
+    
+    @Override
+    public void remove(int childIndex)
+    {
+        super.remove(childIndex);
+        childChanges++;
+    }
+    
+    
+    /**
+     * Gets the child of this node with the given id.  If more than one child has the id, 
+     * the first is returned.
+     * 
+     * @param id the id of the child to search for
+     * @return the child, or null if no child has the id
+     */
+    public MibTreeNode getChildById(int id)
+    {
+        ChildIndex index = idIndex;
+        int changes = childChanges;
+        
+        if(index == null || index.changes != changes)
+        {
+            // Vector.toArray copies the children atomically, even while they are being changed
+            index = new ChildIndex(children == null ? new Object[0] : children.toArray(), changes);
+            idIndex = index;
+        }
+        
+        return index.find(id);
+    }
+    
+    
     /**
      * Searches for a node by its OID string path starting at this node.
      * The search goes through the children at each successive node until the
@@ -104,78 +155,124 @@ public class MibTreeNode extends DefaultMutableTreeNode
      * For example, if 1.3.6.1.2.1.1.1.0 was searched for, than 1.3.6.1.2.1.1.1 (system.sysDescr)
      * will be returned.
      * @return the node if it is found or null if it is not
-     * @throws SNMPBadValueException 
+     * @throws NumberFormatException if the OID isn't a dotted sequence of numbers
      */
     public MibTreeNode getNodeByOid(String oid, boolean matchType) throws NumberFormatException
     {    
-        String[] oidArray = oid.split("\\.");
-
-        int curElement = 0;
-        int treeDepth = 0;
-
-        boolean oidFound = false;
-        boolean indexFound = false;
+        return this.getNodeByOid(parseOid(oid), matchType);
+    }
+    
+    
+    /**
+     * Searches for a node by the arcs of its OID, starting at this node, as getNodeByOid does 
+     * for an OID string.  Each arc is looked up in the index of the current node's children.
+     * 
+     * @param oid the arcs of the OID of the node to search for
+     * @param matchType a flag indicating whether the nearest node should be returned
+     * even though the exact node was not found
+     * @return the node if it is found or null if it is not
+     */
+    public MibTreeNode getNodeByOid(int[] oid, boolean matchType)
+    {
+        MibTreeNode curNode = this;
+        int depth = 0;
         
-        StringBuffer constructedOID = new StringBuffer();
-        MibTreeNode curNode = null;
-        MibTreeNode foundNode = null;
-        MibObjectType curOID = null;
-
-        Enumeration children = this.children();
-
-        try
+        while(depth < oid.length)
         {
-            while( (treeDepth < oidArray.length) && !oidFound )
-            {
-                indexFound = false;
-                while(children.hasMoreElements() && !indexFound)
-                {
-                    curNode = (MibTreeNode)children.nextElement();
-                    curOID = (MibObjectType)curNode.getUserObject();
-                    //System.out.print("\n\n" + curNode);
+            MibTreeNode child = curNode.getChildById(oid[depth]);
+            if(child == null)
+                break;
+            
+            curNode = child;
+            depth++;
+        }
+        
+        return foundNode(curNode, depth, oid.length, matchType);
+    }
     
-                    //compare the current object's id to the desired next number in the OID
-                    if(curOID.getId() == Integer.parseInt(oidArray[curElement]))
-                    {
-                        indexFound = true;
-                        constructedOID.append("." + curOID.getId());
-                        
-                        foundNode = curNode;
-                        curElement++;
     
-                        //System.out.print(" " + constructedOID.toString() + " " + foundNode);
-                    }
+    /**
+     * Searches for a node by the arcs of its OID, starting at this node, as getNodeByOid does 
+     * for an OID string.  This takes the arcs as an SNMPObjectIdentifier holds them.
+     * 
+     * @param oid the arcs of the OID of the node to search for
+     * @param matchType a flag indicating whether the nearest node should be returned
+     * even though the exact node was not found
+     * @return the node if it is found or null if it is not
+     */
+    public MibTreeNode getNodeByOid(long[] oid, boolean matchType)
+    {
+        MibTreeNode curNode = this;
+        int depth = 0;
+        
+        //ids are ints, so the search ends at an arc outside their range
+        while(depth < oid.length && oid[depth] == (int)oid[depth])
+        {
+            MibTreeNode child = curNode.getChildById((int)oid[depth]);
+            if(child == null)
+                break;
+            
+            curNode = child;
+            depth++;
+        }
+        
+        return foundNode(curNode, depth, oid.length, matchType);
+    }
     
-                    //System.out.print("\n" + found);
-                }
     
-                int dotIndex = constructedOID.indexOf("."); //just to be on the safe side, instead of just assuming the first '.' is at index 1
-                if(constructedOID.toString().substring(dotIndex + 1).equals(oid))
-                    oidFound = true;
-                
-                //System.out.print("\n" + constructedOID.toString().substring(dotIndex + 1));
-                
-                //This ensures that if all children of a node have been checked and no index match was found,
-                //then the search has gone as deep as it should go, and thus it should break out
-                if(!indexFound)
-                    break; 
-                
-                children = curNode.children();
+    private MibTreeNode foundNode(MibTreeNode curNode, int depth, int oidLength, boolean matchType)
+    {
+        if(depth == 0)
+            return null;
+        else if(depth == oidLength || matchType == MibTreeNode.MATCH_NEAREST_PATH)
+            return curNode;
+        else
+            return null;
+    }
     
-                treeDepth++;
-            }
     
-            if(oidFound || matchType == MibTreeNode.MATCH_NEAREST_PATH)
-                return foundNode;
-            else
-                return null;
+    /**
+     * Splits a dotted OID string into its arcs.  Trailing dots are ignored.
+     */
+    static long[] parseOid(String oid) throws NumberFormatException
+    {
+        int end = oid.length();
+        while(end > 0 && oid.charAt(end - 1) == '.')
+            end--;
+        
+        int arcCount = 1;
+        for(int i = 0; i < end; i++)
+        {
+            if(oid.charAt(i) == '.')
+                arcCount++;
         }
-        catch(NumberFormatException e)
+        
+        long[] arcs = new long[arcCount];
+        int arc = 0;
+        int digits = 0;
+        for(int i = 0; i <= end; i++)
         {
-            throw new NumberFormatException("Object Identifier: " + oid + " is invalid.");
+            if(i == end || oid.charAt(i) == '.')
+            {
+                if(digits == 0)
+                    throw new NumberFormatException("Object Identifier: " + oid + " is invalid.");
+                
+                arc++;
+                digits = 0;
+            }
+            else
+            {
+                char c = oid.charAt(i);
+                
+                //no arc is anywhere near 18 digits, so that many is as good as invalid
+                if(c < '0' || c > '9' || ++digits > 18)
+                    throw new NumberFormatException("Object Identifier: " + oid + " is invalid.");
+                
+                arcs[arc] = arcs[arc] * 10 + (c - '0');
+            }
         }
-            
-            
+        
+        return arcs;
     }
     
     /**
@@ -253,4 +350,59 @@ public class MibTreeNode extends DefaultMutableTreeNode
         return paths;
     }
     
+    
+    /**
+     * The children of a node sorted by id, for finding a child by binary search.
+     */
+    private static final class ChildIndex
+    {
+        private final int changes;
+        private final int[] ids;
+        private final MibTreeNode[] nodes;
+        
+        private ChildIndex(Object[] children, int newChanges)
+        {
+            changes = newChanges;
+            
+            // Sort the children's ids together with their positions, so the first child with an 
+            // id comes first among those with the same id.
+            long[] keys = new long[children.length];
+            for(int i = 0; i < children.length; i++)
+                keys[i] = ((long)idOf(children[i]) << 32) | i;
+            Arrays.sort(keys);
+            
+            int distinct = 0;
+            for(int i = 0; i < keys.length; i++)
+            {
+                if(i == 0 || (int)(keys[i] >> 32) != (int)(keys[i - 1] >> 32))
+                    distinct++;
+            }
+            
+            ids = new int[distinct];
+            nodes = new MibTreeNode[distinct];
+            int next = 0;
+            for(int i = 0; i < keys.length; i++)
+            {
+                int id = (int)(keys[i] >> 32);
+                if(i == 0 || id != ids[next - 1])
+                {
+                    ids[next] = id;
+                    nodes[next] = (MibTreeNode)children[(int)keys[i]];
+                    next++;
+                }
+            }
+        }
+        
+        private MibTreeNode find(int id)
+        {
+            int i = Arrays.binarySearch(ids, id);
+            return i < 0 ? null : nodes[i];
+        }
+        
+        private static int idOf(Object child)
+        {
+            return ((MibObjectType)((MibTreeNode)child).getUserObject()).getId();
+        }
+    }
+    
 }
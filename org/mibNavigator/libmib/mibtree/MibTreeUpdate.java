@@ -0,0 +1,40 @@
+/**
+ * libmib - Java SNMP Management Information Base Library
+ *
+ * Copyright (C) 2005, Matt Hamilton <matthew.hamilton@washburn.edu>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package org.mibNavigator.libmib.mibtree;
+
+/**
+ * An update of a builder's MIB tree that has been prepared but not yet applied: the files of a 
+ * directory that have to be compiled again to bring the tree up to date.  It is prepared by 
+ * MibTreeBuilder.prepareUpdate and applied by MibTreeBuilder.applyUpdate, both on the thread that 
+ * uses the tree model, but its files are parsed by parse, which can be called on any thread, so 
+ * the slow part of an update doesn't hold up the thread showing the tree.
+ */
+public interface MibTreeUpdate
+{
+    /**
+     * Parses the files to be compiled again.  This may be called on any thread, but must be 
+     * called once before the update is applied, and the update must be handed back to the tree 
+     * model's thread in a way that makes the parsed files visible there, such as through an 
+     * Executor.
+     */
+    public void parse();
+}
@@ -0,0 +1,294 @@
+/**
+ * libmib - Java SNMP Management Information Base Library
+ *
+ * Copyright (C) 2005, Matt Hamilton <matthew.hamilton@washburn.edu>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package org.mibNavigator.libmib.mibtree;
+
+import java.util.Arrays;
+
+import org.mibNavigator.libmib.oid.MibObjectType;
+
+/**
+ * OidTranslator translates numeric OIDs into the names of the MIB objects they belong to, such 
+ * as 1.3.6.1.2.1.1.1.0 into iso.org.dod.internet.mgmt.mib-2.system.sysDescr with the instance 
+ * suffix 0.  It matches the longest prefix of an OID that is in the tree, so OIDs of table rows 
+ * and scalar instances are translated through the objects that define them.
+ * <br><br>
+ * A translator is a snapshot of a MIB tree, held in a trie of OID arcs where each node keeps its 
+ * children's arcs in a sorted array, so each arc is matched by a binary search.  Every arc in a 
+ * MIB tree belongs to an object, so there are no chains of empty arcs to collapse.  The snapshot 
+ * doesn't change once it is taken and none of the Swing tree classes are used to translate, so a 
+ * translator can be shared by any number of threads, such as walk workers, trap decoders and 
+ * exporters.  The name and number paths of each object are built the first time they are needed 
+ * and kept.  A translator has to be created on the thread that changes the tree, and a new one 
+ * taken when the tree changes.
+ */
+public final class OidTranslator
+{
+    private final Entry root;
+    
+    
+    /**
+     * Creates a translator for the MIB tree below a root node.
+     * 
+     * @param rootNode the invisible root of a MIB tree, whose children are the top level objects
+     */
+    public OidTranslator(MibTreeNode rootNode)
+    {
+        root = new Entry(null, 0, null);
+        root.addChildren(rootNode);
+    }
+    
+    
+    /**
+     * Translates a dotted OID string.
+     * 
+     * @param oid the OID, for example 1.3.6.1.2.1.1.1.0
+     * @return the translation, or null if not even the OID's first arc is in the tree
+     * @throws NumberFormatException if the OID isn't a dotted sequence of numbers
+     */
+    public Translation translate(String oid) throws NumberFormatException
+    {
+        return this.translate(MibTreeNode.parseOid(oid));
+    }
+    
+    
+    /**
+     * Translates the arcs of an OID.
+     * 
+     * @param oid the arcs of the OID
+     * @return the translation, or null if not even the OID's first arc is in the tree
+     */
+    public Translation translate(int[] oid)
+    {
+        long[] arcs = new long[oid.length];
+        for(int i = 0; i < oid.length; i++)
+            arcs[i] = oid[i];
+        
+        return this.translate(arcs);
+    }
+    
+    
+    /**
+     * Translates the arcs of an OID, as an SNMPObjectIdentifier holds them.
+     * 
+     * @param oid the arcs of the OID
+     * @return the translation, or null if not even the OID's first arc is in the tree
+     */
+    public Translation translate(long[] oid)
+    {
+        Entry entry = root;
+        int depth = 0;
+        
+        //ids are ints, so the match ends at an arc outside their range
+        while(depth < oid.length && oid[depth] == (int)oid[depth])
+        {
+            Entry child = entry.getChild((int)oid[depth]);
+            if(child == null)
+                break;
+            
+            entry = child;
+            depth++;
+        }
+        
+        if(depth == 0)
+            return null;
+        
+        StringBuilder suffix = new StringBuilder();
+        for(int i = depth; i < oid.length; i++)
+        {
+            if(i > depth)
+                suffix.append('.');
+            suffix.append(oid[i]);
+        }
+        
+        return new Translation(entry, suffix.toString());
+    }
+    
+    
+    /**
+     * The result of translating an OID: the MIB object whose OID is the longest prefix of the 
+     * translated OID that is in the tree, and the arcs that follow it.
+     */
+    public static final class Translation
+    {
+        private final Entry entry;
+        private final String suffix;
+        
+        private Translation(Entry newEntry, String newSuffix)
+        {
+            entry = newEntry;
+            suffix = newSuffix;
+        }
+        
+        /**
+         * Gets the MIB object the OID belongs to.
+         * 
+         * @return the object whose OID is the matched prefix
+         */
+        public MibObjectType getObject()
+        {
+            return entry.object;
+        }
+        
+        /**
+         * Gets the full name path of the matched object.
+         * 
+         * @return the name path, for example iso.org.dod.internet.mgmt.mib-2.system.sysDescr
+         */
+        public String getNamePath()
+        {
+            return entry.getNamePath();
+        }
+        
+        /**
+         * Gets the full number path of the matched object.
+         * 
+         * @return the number path, for example 1.3.6.1.2.1.1.1
+         */
+        public String getNumberPath()
+        {
+            return entry.getNumberPath();
+        }
+        
+        /**
+         * Gets the arcs of the OID that follow the matched object, such as the instance of a 
+         * scalar or the index of a table row.
+         * 
+         * @return the dotted suffix without a leading dot, or an empty string if the whole OID matched
+         */
+        public String getSuffix()
+        {
+            return suffix;
+        }
+        
+        /**
+         * Tells whether the whole OID matched an object.
+         * 
+         * @return true if there is no suffix
+         */
+        public boolean isExact()
+        {
+            return suffix.isEmpty();
+        }
+        
+        /**
+         * Returns the name path of the matched object followed by the suffix.
+         * 
+         * @return the symbolic form of the OID, for example iso.org.dod.internet.mgmt.mib-2.system.sysDescr.0
+         */
+        @Override
+        public String toString()
+        {
+            return suffix.isEmpty() ? entry.getNamePath() : entry.getNamePath() + "." + suffix;
+        }
+    }
+    
+    
+    /**
+     * A node of the trie: a MIB object, the arc it was reached by and its children, sorted by arc.
+     */
+    private static final class Entry
+    {
+        private final Entry parent;
+        private final int arc;
+        private final MibObjectType object;
+        
+        private int[] childArcs;
+        private Entry[] children;
+        
+        // built when first asked for; a thread that sees null just builds the same string again
+        private String namePath;
+        private String numberPath;
+        
+        private Entry(Entry newParent, int newArc, MibObjectType newObject)
+        {
+            parent = newParent;
+            arc = newArc;
+            object = newObject;
+        }
+        
+        /**
+         * Copies the subtree below a tree node.  Where children share an id, the first of them 
+         * is kept, as MibTreeNode.getChildById finds it.
+         */
+        private void addChildren(MibTreeNode node)
+        {
+            int count = node.getChildCount();
+            
+            long[] keys = new long[count];
+            for(int i = 0; i < count; i++)
+                keys[i] = ((long)objectOf(node.getChildAt(i)).getId() << 32) | i;
+            Arrays.sort(keys);
+            
+            int[] arcs = new int[count];
+            Entry[] entries = new Entry[count];
+            int distinct = 0;
+            for(long key : keys)
+            {
+                int id = (int)(key >> 32);
+                if(distinct == 0 || arcs[distinct - 1] != id)
+                {
+                    MibTreeNode child = (MibTreeNode)node.getChildAt((int)key);
+                    arcs[distinct] = id;
+                    entries[distinct] = new Entry(this, id, objectOf(child));
+                    entries[distinct].addChildren(child);
+                    distinct++;
+                }
+            }
+            
+            childArcs = Arrays.copyOf(arcs, distinct);
+            children = Arrays.copyOf(entries, distinct);
+        }
+        
+        private Entry getChild(int childArc)
+        {
+            int i = Arrays.binarySearch(childArcs, childArc);
+            return i < 0 ? null : children[i];
+        }
+        
+        private String getNamePath()
+        {
+            String path = namePath;
+            if(path == null)
+            {
+                path = parent.object == null ? object.getName() : parent.getNamePath() + "." + object.getName();
+                namePath = path;
+            }
+            return path;
+        }
+        
+        private String getNumberPath()
+        {
+            String path = numberPath;
+            if(path == null)
+            {
+                path = parent.object == null ? String.valueOf(arc) : parent.getNumberPath() + "." + arc;
+                numberPath = path;
+            }
+            return path;
+        }
+        
+        private static MibObjectType objectOf(Object node)
+        {
+            return (MibObjectType)((MibTreeNode)node).getUserObject();
+        }
+    }
+}
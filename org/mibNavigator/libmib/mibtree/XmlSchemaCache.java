@@ -0,0 +1,88 @@
+/**
+ * libmib - Java SNMP Management Information Base Library
+ *
+ * Copyright (C) 2005, Matt Hamilton <matthew.hamilton@washburn.edu>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package org.mibNavigator.libmib.mibtree;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.xml.sax.SAXException;
+
+/**
+ * XmlSchemaCache compiles each XML MIB schema file once and shares the compiled Schema
+ * between all of the XML builders that use it.  A compiled Schema is immutable and safe to 
+ * use from any number of threads; only the Validators created from it are not.  A schema 
+ * file is compiled again if it has been modified since it was last compiled.
+ */
+final class XmlSchemaCache
+{
+    // compiled schemas by the path and modification time of the schema file
+    private static final Map<String, Schema> compiledSchemas = new ConcurrentHashMap<>();
+    
+    
+    private XmlSchemaCache()
+    {
+    }
+    
+    
+    /**
+     * Gets the compiled form of a schema file, compiling it if it hasn't been already.
+     * 
+     * @param schemaFile the XML schema file
+     * @return the compiled schema
+     * 
+     * @throws SAXException if a SAX error occurs when parsing the schema file
+     */
+    static Schema getSchema(File schemaFile) throws SAXException
+    {
+        String key;
+        try
+        {
+            key = schemaFile.getCanonicalPath() + "@" + schemaFile.lastModified();
+        }
+        catch(IOException e)
+        {
+            key = schemaFile.getAbsolutePath() + "@" + schemaFile.lastModified();
+        }
+        
+        Schema schema = compiledSchemas.get(key);
+        if(schema == null)
+        {
+            // Two threads may both compile a new schema; only one of the results is kept.
+            SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            schema = factory.newSchema(new StreamSource(schemaFile));
+            
+            Schema existing = compiledSchemas.putIfAbsent(key, schema);
+            if(existing != null)
+                schema = existing;
+        }
+        
+        return schema;
+    }
+    
+}
@@ -41,13 +41,17 @@ import java.util.List;
  *   ::= { parentName id }
  * </code>
  * </pre>
+ * The description and reference may be given as MibTexts, so they are only read from where 
+ * they are kept when they are asked for.
  */
 public class MibObjectType extends MibObjectIdentifier
 {
     private Status status;
     private Access accessLevel;
     private String description;
+    private MibText deferredDescription;
     private String reference;
+    private MibText deferredReference;
     private List<String> indices;
     private MibSyntax syntax;
     
@@ -108,9 +112,27 @@ public class MibObjectType extends MibObjectIdentifier
      */
     public String getDescription()
     {
+        if(deferredDescription != null)
+            return deferredDescription.getText();
+        
     	return description;
     }
     
+    /**
+     * Reads the MIB object description with a reader shared with other texts, without going 
+     * through the recently read texts.
+     * 
+     * @param reader the reader shared by the texts being read together
+     * @return the MIB object description
+     */
+    public String readDescription(MibText.Reader reader)
+    {
+        if(deferredDescription != null)
+            return deferredDescription.readText(reader);
+        
+        return description;
+    }
+    
     /**
      * Sets the MIB object description.
      * 
@@ -119,6 +141,19 @@ public class MibObjectType extends MibObjectIdentifier
     public void setDescription(String newDesc)
     {
     	description = newDesc;
+        deferredDescription = null;
+    }
+    
+    /**
+     * Sets the MIB object description to text that is read each time it is asked for, 
+     * rather than kept in memory.
+     * 
+     * @param newDesc the description of this MIB object
+     */
+    public void setDescription(MibText newDesc)
+    {
+        description = "";
+        deferredDescription = newDesc;
     }
     
     
@@ -213,6 +248,19 @@ public class MibObjectType extends MibObjectIdentifier
     public void setReference(String newRef)
     {
         reference = newRef;
+        deferredReference = null;
+    }
+    
+    /**
+     * Sets the reference string of this object to text that is read each time it is 
+     * asked for, rather than kept in memory.
+     * 
+     * @param newRef the reference string of this object
+     */
+    public void setReference(MibText newRef)
+    {
+        reference = "";
+        deferredReference = newRef;
     }
     
     /**
@@ -222,6 +270,24 @@ public class MibObjectType extends MibObjectIdentifier
      */
     public String getReference()
     {
+        if(deferredReference != null)
+            return deferredReference.getText();
+        
+        return reference;
+    }
+    
+    /**
+     * Reads the reference string of this object with a reader shared with other texts, 
+     * without going through the recently read texts.
+     * 
+     * @param reader the reader shared by the texts being read together
+     * @return the reference string of this object
+     */
+    public String readReference(MibText.Reader reader)
+    {
+        if(deferredReference != null)
+            return deferredReference.readText(reader);
+        
         return reference;
     }
     
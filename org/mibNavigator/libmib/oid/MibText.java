@@ -0,0 +1,145 @@
+/**
+ * libmib - Java SNMP Management Information Base Library
+ *
+ * Copyright (C) 2005, Matt Hamilton <matthew.hamilton@washburn.edu>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package org.mibNavigator.libmib.oid;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * MibText is a piece of MIB text, such as an object's description, that is left where it was 
+ * found, in a MIB file or a compiled tree cache, and only read when it is asked for.  Since 
+ * descriptions take up most of the memory of a loaded MIB tree but are only viewed one at a 
+ * time, this keeps large trees small.  The most recently read texts are kept in a small cache 
+ * shared by all MibTexts.
+ */
+public abstract class MibText 
+{
+    private static final int RECENT_TEXT_COUNT = 64;
+    
+    // the most recently read texts, least recently used first
+    private static final Map<MibText, String> recentTexts = new LinkedHashMap<MibText, String>(RECENT_TEXT_COUNT * 2, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MibText, String> eldest)
+        {
+            return size() > RECENT_TEXT_COUNT;
+        }
+    };
+    
+    
+    /**
+     * Gets the text, reading it if it isn't one of the recently read texts.
+     * 
+     * @return the text
+     */
+    public final String getText()
+    {
+        synchronized(recentTexts)
+        {
+            String text = recentTexts.get(this);
+            if(text != null)
+                return text;
+        }
+        
+        // read outside the lock, so a slow read doesn't hold up other threads
+        String text = this.readText();
+        
+        synchronized(recentTexts)
+        {
+            recentTexts.put(this, text);
+        }
+        
+        return text;
+    }
+    
+    
+    /**
+     * Reads the text from wherever it is kept.  This is called each time the text is asked for 
+     * and isn't one of the recently read texts, so it shouldn't keep the text itself.
+     * 
+     * @return the text, or an empty String if it can no longer be read
+     */
+    protected abstract String readText();
+    
+    
+    /**
+     * Reads the text without looking in or adding to the recently read texts, for reading 
+     * many texts once each, such as when a whole tree is written to a cache.  The reader 
+     * holds on to what was last read of the place the text is kept, so reading the texts 
+     * kept in one file one after another only reads the file once.  By default the text is 
+     * read by readText.
+     * 
+     * @param reader the reader shared by the texts being read together
+     * @return the text, or an empty String if it can no longer be read
+     */
+    public String readText(Reader reader)
+    {
+        return this.readText();
+    }
+    
+    
+    /**
+     * Returns the text.
+     * 
+     * @return the text
+     */
+    @Override
+    public String toString()
+    {
+        return this.getText();
+    }
+    
+    
+    /**
+     * Holds the contents of the place the last text was read from, such as a whole MIB file, 
+     * for the texts read after it.
+     */
+    public static final class Reader
+    {
+        private Object source;
+        private Object contents;
+        
+        /**
+         * Gets the contents last read, if they were read from the given source.
+         * 
+         * @param fromSource the place the contents are kept
+         * @return the contents, or null if the last contents came from somewhere else
+         */
+        public Object getContents(Object fromSource)
+        {
+            return fromSource == source ? contents : null;
+        }
+        
+        /**
+         * Keeps the contents just read from a source, in place of those last kept.
+         * 
+         * @param fromSource the place the contents were read from
+         * @param newContents the contents
+         */
+        public void setContents(Object fromSource, Object newContents)
+        {
+            source = fromSource;
+            contents = newContents;
+        }
+    }
+    
+}
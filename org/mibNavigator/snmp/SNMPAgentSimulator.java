@@ -0,0 +1,413 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+
+/**
+ *  The class SNMPAgentSimulator serves any number of SNMPSimulatedDevices from a single JVM, as a stand-in
+ *  for a fleet of real devices when testing or benchmarking managers and pollers. Devices can be given a
+ *  port each, or share a port and be told apart by community name, or both:
+ *
+ *  <pre>
+ *      SNMPValueStore recording = SNMPWalkFileReader.read("router.walk");
+ *      SNMPAgentSimulator simulator = new SNMPAgentSimulator(1);
+ *
+ *      // 2000 routers on ports 20000 to 21999, answering to community "public"
+ *      for (int i = 0; i < 2000; i++)
+ *          simulator.addDevice(20000 + i, new SNMPSimulatedDevice(recording, "public"));
+ *
+ *      // 500 routers on port 1161, answering to communities "router0" to "router499"
+ *      for (int i = 0; i < 500; i++)
+ *          simulator.addDevice(1161, new SNMPSimulatedDevice(recording, "router" + i));
+ *
+ *      simulator.startReceiving();
+ *  </pre>
+ *
+ *  Requests are answered by the same code as in SNMPv1SimpleAgent, including get-bulk. All ports are
+ *  watched by a single receive thread through a selector, which passes each request to a pool of worker
+ *  threads; these decode it, pick the device by port and community name, apply the device's loss and
+ *  latency models, and send the response. Requests for a community no device on the port answers to are
+ *  ignored, as a real agent would.
+ */
+public class SNMPAgentSimulator implements Runnable
+{
+    // largest UDP payload, so no request is ever truncated
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+
+    private int version;
+
+    private Selector selector;
+    private ConcurrentHashMap<Integer,SimulatedPort> ports;
+    private ConcurrentLinkedQueue<SimulatedPort> pendingPorts;
+
+    private Thread receiveThread;
+    private ScheduledExecutorService workerPool;
+    private int workerThreadCount = Runtime.getRuntime().availableProcessors();
+
+    private PrintWriter errorLogger;
+
+
+    /**
+     *  A bound port and the devices answering on it.
+     */
+    private static class SimulatedPort
+    {
+        DatagramChannel channel;
+        ConcurrentHashMap<String,SNMPv1SimpleAgent> communityAgents = new ConcurrentHashMap<String,SNMPv1SimpleAgent>();
+        ConcurrentHashMap<SNMPv1SimpleAgent,SNMPSimulatedDevice> devices = new ConcurrentHashMap<SNMPv1SimpleAgent,SNMPSimulatedDevice>();
+        volatile SNMPv1SimpleAgent anyCommunityAgent;
+    }
+
+
+    /**
+     *  Construct a new simulator, whose devices answer with messages of the given version (except for
+     *  get-bulk responses, which are always version 2c).
+     *
+     *  @throws IOException Indicates the selector couldn't be opened.
+     */
+    public SNMPAgentSimulator(int version)
+        throws IOException
+    {
+        this(version, new PrintWriter(System.out));
+    }
+
+
+    /**
+     *  Construct a new simulator, whose devices answer with messages of the given version, and which sends
+     *  error messages to the specified PrintWriter.
+     *
+     *  @throws IOException Indicates the selector couldn't be opened.
+     */
+    public SNMPAgentSimulator(int version, PrintWriter errorReceiver)
+        throws IOException
+    {
+        this.version = version;
+        selector = Selector.open();
+        ports = new ConcurrentHashMap<Integer,SimulatedPort>();
+        pendingPorts = new ConcurrentLinkedQueue<SimulatedPort>();
+        errorLogger = errorReceiver;
+    }
+
+
+    /**
+     *  Set the specified PrintWriter to receive error messages.
+     */
+    public void setErrorReceiver(PrintWriter errorReceiver)
+    {
+        errorLogger = errorReceiver;
+    }
+
+
+    /**
+     *  Adds a device answering on the supplied UDP port, binding the port if no other device uses it yet.
+     *  The device answers requests with its community name, or all requests on the port if its community
+     *  name is null; it replaces any device already answering to that community on the port.
+     *
+     *  @throws IOException Indicates the port couldn't be bound.
+     */
+    public synchronized void addDevice(int port, SNMPSimulatedDevice device)
+        throws IOException
+    {
+        SimulatedPort simulatedPort = ports.get(port);
+
+        if (simulatedPort == null)
+        {
+            simulatedPort = new SimulatedPort();
+            simulatedPort.channel = DatagramChannel.open();
+            simulatedPort.channel.bind(new InetSocketAddress(port));
+            simulatedPort.channel.configureBlocking(false);
+
+            ports.put(port, simulatedPort);
+
+            // registration has to happen on the receive thread, or it would block while that waits in select
+            pendingPorts.add(simulatedPort);
+            selector.wakeup();
+        }
+
+        // each device gets an agent of its own, serving the device under every top-level arc
+        SNMPSubtreeRegistry registry = new SNMPSubtreeRegistry();
+        try
+        {
+            for (int arc = 0; arc <= 2; arc++)
+                registry.register(new SNMPObjectIdentifier(new long[] {arc}), device);
+        }
+        catch (SNMPBadValueException e)
+        {
+            // can't happen! arcs are non-negative
+        }
+
+        SNMPv1SimpleAgent agent = new SNMPv1SimpleAgent(version, registry, errorLogger);
+
+        SNMPv1SimpleAgent replacedAgent;
+        if (device.getCommunityName() == null)
+        {
+            replacedAgent = simulatedPort.anyCommunityAgent;
+            simulatedPort.anyCommunityAgent = agent;
+        }
+        else
+            replacedAgent = simulatedPort.communityAgents.put(device.getCommunityName(), agent);
+
+        simulatedPort.devices.put(agent, device);
+        if (replacedAgent != null)
+            simulatedPort.devices.remove(replacedAgent);
+    }
+
+
+    /**
+     *  Removes the device from the supplied port, closing the port once no device answers on it.
+     *
+     *  @throws IOException Indicates the port couldn't be closed.
+     */
+    public synchronized void removeDevice(int port, SNMPSimulatedDevice device)
+        throws IOException
+    {
+        SimulatedPort simulatedPort = ports.get(port);
+
+        if (simulatedPort == null)
+            return;
+
+        for (Map.Entry<SNMPv1SimpleAgent,SNMPSimulatedDevice> entry : simulatedPort.devices.entrySet())
+        {
+            if (entry.getValue() != device)
+                continue;
+
+            SNMPv1SimpleAgent agent = entry.getKey();
+            simulatedPort.devices.remove(agent);
+
+            if (simulatedPort.anyCommunityAgent == agent)
+                simulatedPort.anyCommunityAgent = null;
+            else
+                simulatedPort.communityAgents.remove(device.getCommunityName(), agent);
+        }
+
+        if (simulatedPort.devices.isEmpty())
+        {
+            ports.remove(port);
+
+            // closing the channel also cancels its selection key
+            simulatedPort.channel.close();
+        }
+    }
+
+
+    /**
+     *  Start answering requests.
+     */
+    public synchronized void startReceiving()
+    {
+        // if receive thread not already running, start it
+        if ((receiveThread == null) || !receiveThread.isAlive())
+        {
+            workerPool = Executors.newScheduledThreadPool(workerThreadCount);
+
+            receiveThread = new Thread(this);
+            receiveThread.start();
+        }
+    }
+
+
+    /**
+     *  Stop answering requests. The ports stay bound, so answering can be resumed with startReceiving.
+     */
+    public synchronized void stopReceiving()
+    {
+        // interrupt receive thread so it will die a natural death
+        if (receiveThread != null)
+            receiveThread.interrupt();
+
+        if (workerPool != null)
+            workerPool.shutdown();
+    }
+
+
+    /**
+     *  Waits for requests on all ports, handing each to the worker pool. The thread started by
+     *  startReceiving runs this loop.
+     */
+    public void run()
+    {
+        // capture the pool used for this run, since a later start may replace the field
+        ScheduledExecutorService workers = workerPool;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+
+        while (!Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                // register any ports added since the last pass; keys of previously-registered ports remain
+                SimulatedPort pendingPort;
+                while ((pendingPort = pendingPorts.poll()) != null)
+                {
+                    if (pendingPort.channel.isOpen())
+                        pendingPort.channel.register(selector, SelectionKey.OP_READ, pendingPort);
+                }
+
+                selector.select();
+
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext())
+                {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+
+                    if (!key.isValid())
+                        continue;
+
+                    final SimulatedPort simulatedPort = (SimulatedPort)key.attachment();
+
+                    // drain everything waiting on the port
+                    while (true)
+                    {
+                        buffer.clear();
+                        final SocketAddress requester = simulatedPort.channel.receive(buffer);
+                        if (requester == null)
+                            break;
+
+                        buffer.flip();
+                        final byte[] encodedMessage = new byte[buffer.remaining()];
+                        buffer.get(encodedMessage);
+
+                        workers.execute(new Runnable()
+                        {
+                            public void run()
+                            {
+                                processRequest(simulatedPort, encodedMessage, (InetSocketAddress)requester);
+                            }
+                        });
+                    }
+                }
+            }
+            catch (ClosedChannelException e)
+            {
+                // the port was removed while being read; nothing to do
+            }
+            catch (RejectedExecutionException e)
+            {
+                // the simulator is being stopped; nothing left to hand the request to
+                break;
+            }
+            catch (IOException e)
+            {
+                // just report the problem
+                errorLogger.println("IOException during request processing: " + e.getMessage());
+                errorLogger.flush();
+            }
+        }
+    }
+
+
+    /**
+     *  Decodes and answers a single request received on the supplied port. Called on a worker thread.
+     */
+    private void processRequest(final SimulatedPort simulatedPort, byte[] encodedMessage, final InetSocketAddress requester)
+    {
+        try
+        {
+            SNMPRequestContext context = new SNMPRequestContext(encodedMessage, requester.getAddress(), requester.getPort());
+
+            if (!SNMPv1SimpleAgent.isAnswerable(context))
+                return;
+
+            SNMPv1SimpleAgent agent = simulatedPort.communityAgents.get(context.getCommunityName());
+            if (agent == null)
+                agent = simulatedPort.anyCommunityAgent;
+
+            // no device answers to this community on this port
+            if (agent == null)
+                return;
+
+            SNMPSimulatedDevice device = simulatedPort.devices.get(agent);
+            if ((device == null) || device.nextRequestLost())
+                return;
+
+            final ByteBuffer response = ByteBuffer.wrap(agent.answerRequest(context));
+            long latency = device.nextLatency();
+
+            if (latency <= 0)
+            {
+                simulatedPort.channel.send(response, requester);
+                return;
+            }
+
+            workerPool.schedule(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        simulatedPort.channel.send(response, requester);
+                    }
+                    catch (IOException e)
+                    {
+                        // just report the problem
+                        errorLogger.println("IOException during request processing: " + e.getMessage());
+                        errorLogger.flush();
+                    }
+                }
+            }, latency, TimeUnit.MILLISECONDS);
+        }
+        catch (IOException e)
+        {
+            // just report the problem
+            errorLogger.println("IOException during request processing: " + e.getMessage());
+            errorLogger.flush();
+        }
+        catch (SNMPBadValueException e)
+        {
+            // just report the problem
+            errorLogger.println("SNMPBadValueException during request processing: " + e.getMessage());
+            errorLogger.flush();
+        }
+        catch (RejectedExecutionException e)
+        {
+            // the simulator is being stopped; the delayed response is dropped
+        }
+    }
+
+
+    /**
+     *  Sets the number of worker threads decoding and answering requests; takes effect the next time
+     *  startReceiving is called. The default is the number of available processors.
+     */
+    public void setWorkerThreadCount(int workerThreadCount)
+    {
+        this.workerThreadCount = Math.max(workerThreadCount, 1);
+    }
+
+
+    /**
+     *  Returns the number of worker threads decoding and answering requests.
+     */
+    public int getWorkerThreadCount()
+    {
+        return workerThreadCount;
+    }
+
+}
@@ -123,6 +123,9 @@ public class SNMPBERCodec
             case SNMP_SET_REQUEST:
                 return new SNMPPDU(theTLV.value, theTLV.tag);
             
+            case SNMPv2_BULK_REQUEST:
+                return new SNMPv2BulkRequestPDU(theTLV.value, theTLV.tag);
+            
             case SNMP_TRAP:
                 return new SNMPv1TrapPDU(theTLV.value);
             
@@ -132,6 +135,9 @@ public class SNMPBERCodec
             case SNMPv2_INFORM_REQUEST:
                 return new SNMPv2InformRequestPDU(theTLV.value);
             
+            case SNMPv2_END_OF_MIB_VIEW:
+                return new SNMPEndOfMibView();
+            
             //fall through
             case SNMP_NULL: 
             case SNMP_OPAQUE:
@@ -48,6 +48,9 @@ public enum SNMPBERType
     SNMP_NSAPADDRESS((byte)0x45),
     SNMP_COUNTER64((byte)0x46),
     SNMP_UINTEGER32((byte)0x47),
+    
+    //SNMPv2 variable binding exception values
+    SNMPv2_END_OF_MIB_VIEW((byte)0x82),
 
     //BER PDU Message types
     SNMP_GET_REQUEST((byte)0xA0),
@@ -137,6 +140,9 @@ public enum SNMPBERType
             case 0x47:
                 return SNMP_UINTEGER32;
                 
+            case (byte) 0x82:
+                return SNMPv2_END_OF_MIB_VIEW;
+                
             case (byte) 0xA0:
                 return SNMP_GET_REQUEST;
             case (byte) 0xA1:
@@ -0,0 +1,44 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.util.*;
+
+
+
+/**
+ *  SNMPBatchTrapListener is an interface that must be implemented by any class which wishes to receive
+ *  traps and inform requests from an SNMPTrapReceiver in batches rather than one call per message, such as
+ *  listeners storing traps in files or databases, which can then write each batch at once. A batch is
+ *  delivered once it reaches the maximum size given when the listener was added, or once its oldest trap
+ *  has waited for the maximum latency, whichever comes first.
+ *
+ *  Each dispatch thread of the receiver collects its own batches, so with more than one dispatch thread
+ *  this method may be called concurrently. Within a batch, traps from the same source are in the order
+ *  they arrived.
+ */
+public interface SNMPBatchTrapListener
+{
+
+    public void processTrapBatch(List<SNMPReceivedTrap> traps);
+
+}
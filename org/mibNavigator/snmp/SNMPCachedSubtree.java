@@ -0,0 +1,306 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+
+
+/**
+ *  The class SNMPCachedSubtree is an SNMPSubtreeHandler which serves a subtree from a snapshot of the values
+ *  of a slower source - another SNMPSubtreeHandler, or an SNMPRequestListener - rather than asking the source
+ *  on every request. The whole subtree is walked once, and the snapshot is then used for gets, get-nexts and
+ *  get-bulks until its time-to-live expires. Register one instance per subtree with the agent, each with
+ *  whatever time-to-live suits its data:
+ *
+ *  <pre>
+ *      agent.registerSubtree(ifTableOID, new SNMPCachedSubtree(ifTableOID, ifTableListener, "public", 5000));
+ *  </pre>
+ *
+ *  Refreshes are single-flight: when the snapshot expires, one request thread walks the source while any
+ *  other concurrent requests keep being answered from the expired snapshot, so a burst of walks costs a
+ *  single refresh. Only the very first load makes other threads wait. If a refresh fails, the old snapshot
+ *  stays in use and the refresh is retried on a later request.
+ *
+ *  The source is always walked with the community name given to the constructor, and the snapshot is served
+ *  to requests for any community; community-based access control must be done before the cache. Sets are
+ *  passed straight to the source, after which the snapshot is discarded.
+ */
+public class SNMPCachedSubtree implements SNMPSubtreeHandler
+{
+    private SNMPObjectIdentifier subtreeRoot;
+    private SNMPSubtreeHandler sourceHandler;
+    private SNMPRequestListener sourceListener;
+    private String sourceCommunityName;
+
+    private volatile long timeToLive;
+
+    private volatile SNMPValueStore snapshot;
+    private volatile long snapshotTime;
+
+    // bumped by invalidate; a snapshot is only current if no invalidation happened since its walk began
+    private AtomicInteger generation = new AtomicInteger();
+    private volatile int snapshotGeneration;
+    private ReentrantLock refreshLock = new ReentrantLock();
+
+
+    /**
+     *  Create a cache of the subtree rooted at the supplied OID, taking its values from the supplied handler.
+     *  The time-to-live is in milliseconds.
+     */
+    public SNMPCachedSubtree(SNMPObjectIdentifier subtreeRoot, SNMPSubtreeHandler source, String communityName, long timeToLive)
+    {
+        this.subtreeRoot = subtreeRoot;
+        this.sourceHandler = source;
+        this.sourceCommunityName = communityName;
+        this.timeToLive = timeToLive;
+    }
+
+
+    /**
+     *  Create a cache of the subtree rooted at the supplied OID, taking its values from the supplied listener
+     *  through get-next requests. The time-to-live is in milliseconds.
+     */
+    public SNMPCachedSubtree(SNMPObjectIdentifier subtreeRoot, SNMPRequestListener source, String communityName, long timeToLive)
+    {
+        this.subtreeRoot = subtreeRoot;
+        this.sourceListener = source;
+        this.sourceCommunityName = communityName;
+        this.timeToLive = timeToLive;
+    }
+
+
+    /**
+     *  Sets how long, in milliseconds, a snapshot is used before the source is walked again.
+     */
+    public void setTimeToLive(long timeToLive)
+    {
+        this.timeToLive = timeToLive;
+    }
+
+
+    /**
+     *  Returns how long, in milliseconds, a snapshot is used before the source is walked again.
+     */
+    public long getTimeToLive()
+    {
+        return timeToLive;
+    }
+
+
+    /**
+     *  Discards the current snapshot, so that the next request walks the source again.
+     */
+    public void invalidate()
+    {
+        generation.incrementAndGet();
+    }
+
+
+    /**
+     *  Returns the value of the supplied OID from the snapshot, or null if it has no such instance.
+     */
+    public SNMPObject get(SNMPObjectIdentifier oid, String communityName)
+        throws SNMPGetException
+    {
+        return this.getSnapshot().get(oid, communityName);
+    }
+
+
+    /**
+     *  Returns the pair following the supplied OID in the snapshot, or null if there is none.
+     */
+    public SNMPVariablePair getNext(SNMPObjectIdentifier oid, String communityName)
+        throws SNMPGetException
+    {
+        return this.getSnapshot().getNext(oid, communityName);
+    }
+
+
+    /**
+     *  Passes the set on to the source and discards the snapshot, so the new value is seen by the next request.
+     */
+    public boolean set(SNMPObjectIdentifier oid, SNMPObject newValue, String communityName)
+        throws SNMPSetException
+    {
+        boolean handled = false;
+
+        if (sourceHandler != null)
+        {
+            handled = sourceHandler.set(oid, newValue, sourceCommunityName);
+        }
+        else
+        {
+            try
+            {
+                SNMPSequence varList = new SNMPSequence();
+                varList.addSNMPObject(new SNMPVariablePair(oid, newValue));
+                SNMPPDU setPDU = new SNMPPDU(SNMPBERType.SNMP_SET_REQUEST, 0, SNMPRequestException.NO_ERROR, 0, varList);
+
+                SNMPSequence handledVarList = sourceListener.processRequest(setPDU, sourceCommunityName);
+                handled = (handledVarList.size() > 0);
+            }
+            catch (SNMPBadValueException e)
+            {
+                throw new SNMPSetException(e.getMessage(), 0, SNMPRequestException.BAD_VALUE);
+            }
+            catch (SNMPGetException e)
+            {
+                throw new SNMPSetException(e.getMessage(), 0, e.errorStatus);
+            }
+        }
+
+        this.invalidate();
+        return handled;
+    }
+
+
+    /**
+     *  Returns the current snapshot, refreshing it first if it has expired and no other thread is already
+     *  doing so.
+     */
+    private SNMPValueStore getSnapshot()
+        throws SNMPGetException
+    {
+        SNMPValueStore current = snapshot;
+
+        if ((current != null) && !this.isExpired())
+            return current;
+
+        if (current == null)
+        {
+            // nothing to serve yet; wait for whichever thread is loading
+            refreshLock.lock();
+        }
+        else if (!refreshLock.tryLock())
+        {
+            // someone else is already refreshing; keep serving the expired snapshot meanwhile
+            return current;
+        }
+
+        try
+        {
+            // another thread may have refreshed while this one was waiting
+            if ((snapshot == null) || this.isExpired())
+            {
+                try
+                {
+                    // A refresh already under way when invalidate is called walked the source too early; its
+                    // snapshot is still served, but counts as expired.
+                    int loadGeneration = generation.get();
+                    long loadTime = System.currentTimeMillis();
+                    snapshot = this.walkSource();
+                    snapshotTime = loadTime;
+                    snapshotGeneration = loadGeneration;
+                }
+                catch (SNMPGetException e)
+                {
+                    // keep the old snapshot if there is one, and try again next time
+                    if (snapshot == null)
+                        throw e;
+                }
+            }
+
+            return snapshot;
+        }
+        finally
+        {
+            refreshLock.unlock();
+        }
+    }
+
+
+    private boolean isExpired()
+    {
+        return (snapshotGeneration != generation.get()) || ((System.currentTimeMillis() - snapshotTime) >= timeToLive);
+    }
+
+
+    /**
+     *  Walks the whole subtree in the source, collecting its values into a new value store.
+     */
+    private SNMPValueStore walkSource()
+        throws SNMPGetException
+    {
+        SNMPValueStore values = new SNMPValueStore();
+
+        SNMPObject rootValue = (sourceHandler != null) ? sourceHandler.get(subtreeRoot, sourceCommunityName) : null;
+        if (rootValue != null)
+            values.put(subtreeRoot, rootValue);
+
+        SNMPObjectIdentifier oid = subtreeRoot;
+        while (true)
+        {
+            SNMPVariablePair nextPair = this.sourceGetNext(oid);
+            if (nextPair == null)
+                break;
+
+            SNMPObjectIdentifier nextOID = (SNMPObjectIdentifier)nextPair.getSNMPObjectAt(0);
+
+            // stop at the end of the subtree, or if the source fails to move forward
+            if (!nextOID.startsWith(subtreeRoot) || (nextOID.compareTo(oid) <= 0))
+                break;
+
+            values.put(nextOID, nextPair.getSNMPObjectAt(1));
+            oid = nextOID;
+        }
+
+        return values;
+    }
+
+
+    /**
+     *  Returns the pair following the supplied OID in the source, or null if there is none.
+     */
+    private SNMPVariablePair sourceGetNext(SNMPObjectIdentifier oid)
+        throws SNMPGetException
+    {
+        if (sourceHandler != null)
+            return sourceHandler.getNext(oid, sourceCommunityName);
+
+        try
+        {
+            SNMPSequence varList = new SNMPSequence();
+            varList.addSNMPObject(new SNMPVariablePair(oid, new SNMPNull()));
+            SNMPPDU getNextPDU = new SNMPPDU(SNMPBERType.SNMP_GET_NEXT_REQUEST, 0, SNMPRequestException.NO_ERROR, 0, varList);
+
+            // Return value is a sequence of (supplied OID, (following OID, value)) nested variable pairs.
+            SNMPSequence handledVarList = sourceListener.processGetNextRequest(getNextPDU, sourceCommunityName);
+
+            for (int j = 0; j < handledVarList.size(); j++)
+            {
+                SNMPSequence handledPair = (SNMPSequence)handledVarList.getSNMPObjectAt(j);
+
+                if (oid.equals(handledPair.getSNMPObjectAt(0)))
+                    return (SNMPVariablePair)handledPair.getSNMPObjectAt(1);
+            }
+
+            return null;
+        }
+        catch (SNMPBadValueException e)
+        {
+            throw new SNMPGetException(e.getMessage(), 0, SNMPRequestException.FAILED);
+        }
+    }
+
+}
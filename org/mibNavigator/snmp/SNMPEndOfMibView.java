@@ -0,0 +1,95 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+
+/**
+ *  Object representing the SNMPv2 endOfMibView exception value, returned in place of a value by get-next 
+ *  and get-bulk requests when there is no OID following the requested one. Like SNMPNull, it carries no data.
+ */
+public class SNMPEndOfMibView extends SNMPObject
+{
+    
+    protected SNMPBERType tag = SNMPBERType.SNMPv2_END_OF_MIB_VIEW;
+    
+    /**
+     *  Returns Java null reference.
+     */
+    public Object getValue()
+    {
+        return null;
+    }
+    
+    
+    /**
+     *  Always throws SNMPBadValueException (there is no value to set).
+     */
+    public void setValue(Object o)
+        throws SNMPBadValueException
+    {
+        throw new SNMPBadValueException(" EndOfMibView: attempt to set value ");
+    }
+    
+
+    /**
+     *  Return BER encoding for an endOfMibView: two bytes, tag and length of 0.
+     */
+    protected byte[] getBEREncoding()
+    {
+        byte[] encoding = new byte[2];
+        
+        // set tag byte
+        encoding[0] = SNMPBERType.SNMPv2_END_OF_MIB_VIEW.getByte();
+            
+        // len = 0 since no payload!
+        encoding[1] = 0;
+        
+        return encoding;
+    }
+    
+    
+    /**
+     *  Checks just that both are instances of SNMPEndOfMibView (no embedded value to check).
+     */
+    public boolean equals(Object other)
+    {
+        // false if other is null
+        if (other == null)
+            return false;
+        
+        // check that they're both of the same class
+        if (this.getClass().equals(other.getClass()))
+            return true;
+        else
+            return false;
+    }
+    
+
+    /**
+     *  Returns String "endOfMibView".
+     */
+    public String toString()
+    {
+        return new String("endOfMibView");
+    }
+    
+}
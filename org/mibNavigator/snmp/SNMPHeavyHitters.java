@@ -0,0 +1,133 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.util.*;
+
+
+
+/**
+ *  The class SNMPHeavyHitters finds the most frequent keys in a stream using the space-saving algorithm
+ *  (Metwally, Agrawal and El Abbadi): only a fixed number of keys are counted, and a key not among them
+ *  takes over the counter with the smallest count, inheriting that count. Any key occurring more often
+ *  than (total / capacity) times is certain to be counted, and each count overstates the key's true count
+ *  by at most the count it inherited.
+ *
+ *  Not thread-safe; callers synchronize.
+ */
+class SNMPHeavyHitters<K>
+{
+    private static class Counter<K>
+    {
+        K key;
+        long count;
+        long order;
+    }
+
+    private int capacity;
+    private long nextOrder = 0;
+    private HashMap<K,Counter<K>> counters = new HashMap<K,Counter<K>>();
+
+    // counters by ascending count, ties broken by age, so the first is the one to replace
+    private TreeSet<Counter<K>> countersByCount = new TreeSet<Counter<K>>(new Comparator<Counter<K>>()
+    {
+        public int compare(Counter<K> first, Counter<K> second)
+        {
+            if (first.count != second.count)
+                return (first.count < second.count) ? -1 : 1;
+
+            return Long.compare(first.order, second.order);
+        }
+    });
+
+
+    /**
+     *  Create a tracker counting at most the supplied number of keys.
+     */
+    SNMPHeavyHitters(int capacity)
+    {
+        this.capacity = Math.max(capacity, 1);
+    }
+
+
+    /**
+     *  Counts one occurrence of the key.
+     */
+    void add(K key)
+    {
+        Counter<K> counter = counters.get(key);
+
+        if (counter == null)
+        {
+            if (counters.size() < capacity)
+            {
+                counter = new Counter<K>();
+            }
+            else
+            {
+                // take over the smallest counter
+                counter = countersByCount.pollFirst();
+                counters.remove(counter.key);
+            }
+
+            counter.key = key;
+            counter.order = nextOrder++;
+            counters.put(key, counter);
+        }
+        else
+        {
+            countersByCount.remove(counter);
+        }
+
+        counter.count++;
+        countersByCount.add(counter);
+    }
+
+
+    /**
+     *  Returns up to the supplied number of the most frequent keys and their counts, most frequent first.
+     */
+    LinkedHashMap<K,Long> top(int count)
+    {
+        LinkedHashMap<K,Long> top = new LinkedHashMap<K,Long>();
+        Iterator<Counter<K>> iterator = countersByCount.descendingIterator();
+
+        while (iterator.hasNext() && (top.size() < count))
+        {
+            Counter<K> counter = iterator.next();
+            top.put(counter.key, counter.count);
+        }
+
+        return top;
+    }
+
+
+    /**
+     *  Discards all counts.
+     */
+    void clear()
+    {
+        counters.clear();
+        countersByCount.clear();
+    }
+
+}
@@ -23,6 +23,9 @@ package org.mibNavigator.snmp;
 
 import java.io.*;
 import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 
 
@@ -30,11 +33,54 @@ import java.net.*;
  *  The class SNMPInformRequestSender implements a method for sending SNMPv2 inform request messages to a remote SNMP manager. 
  *  The approach is that from version 2c of SNMP, using no encryption of data. Communication occurs via UDP, using port 162, 
  *  the standard SNMP trap and inform request port, as the destination port.
+ *
+ *  The sendInformRequest methods just send the message, like a trap. The sendAcknowledgedInformRequest
+ *  methods wait for the receiving manager to acknowledge each inform request with a response, resending it
+ *  if none arrives in time, and return a future which completes with the response - or with an exception,
+ *  if the retries run out. Many inform requests can be outstanding to each destination at once, up to the
+ *  window size; the sender doesn't wait for one to be acknowledged before sending the next, so reliable
+ *  notifications go out as fast as the network and manager can take them. Those beyond the window wait
+ *  their turn. Responses are matched to requests by request ID, and are read by a background thread.
  */
 public class SNMPInformRequestSender
 {  
     private DatagramSocket dSocket;
     
+    
+    /*
+     *  An acknowledged inform request, from when it's sent until it's acknowledged or its retries run out.
+     */
+    private static class PendingInform
+    {
+        int requestID;
+        InetSocketAddress destination;
+        byte[] messageEncoding;
+        CompletableFuture<SNMPPDU> future = new CompletableFuture<SNMPPDU>();
+        int attempts = 0;
+        ScheduledFuture<?> timeoutTask;
+    }
+    
+    
+    /*
+     *  The inform requests outstanding to one destination, and those waiting for room in its window.
+     */
+    private static class DestinationWindow
+    {
+        int outstanding = 0;
+        ArrayDeque<PendingInform> backlog = new ArrayDeque<PendingInform>();
+    }
+    
+    private volatile int timeout = 1000;
+    private volatile int retries = 3;
+    private volatile int windowSize = 64;
+    
+    private AtomicInteger nextRequestID = new AtomicInteger(new Random().nextInt(Integer.MAX_VALUE));
+    private ConcurrentHashMap<Integer,PendingInform> pendingInforms = new ConcurrentHashMap<Integer,PendingInform>();
+    private HashMap<InetSocketAddress,DestinationWindow> windows = new HashMap<InetSocketAddress,DestinationWindow>();
+    private ScheduledExecutorService retransmitter;
+    private Thread responseThread;
+    
+    
     /**
      *  Construct a new inform request sender object to send inform requests to remote SNMP hosts.
      */
@@ -104,6 +150,333 @@ public class SNMPInformRequestSender
     }
     
     
+    /**
+     *  Send the supplied SNMPv2 inform request pdu to the specified host and port, using the supplied version
+     *  number and community name, and wait in the background for it to be acknowledged. The request ID of
+     *  the pdu is replaced by one unique to this sender. Returns a future which completes with the response
+     *  pdu once it arrives, or exceptionally with a SocketTimeoutException if there's no response after the
+     *  configured number of retries, an SNMPRequestException if the response reports an error, or an
+     *  IOException if the request couldn't be sent.
+     */
+    public CompletableFuture<SNMPPDU> sendAcknowledgedInformRequest(int version, InetAddress hostAddress, int port, String community, SNMPv2InformRequestPDU pdu)
+    {
+        this.startResponseThread();
+        
+        PendingInform inform = new PendingInform();
+        inform.destination = new InetSocketAddress(hostAddress, port);
+        
+        // find a request ID not in use; the counter would have to wrap around to find one that is
+        do
+        {
+            inform.requestID = nextRequestID.getAndIncrement() & Integer.MAX_VALUE;
+        }
+        while (pendingInforms.putIfAbsent(inform.requestID, inform) != null);
+        
+        try
+        {
+            SNMPPDU numberedPDU = new SNMPPDU(SNMPBERType.SNMPv2_INFORM_REQUEST, inform.requestID, 0, 0, pdu.getVarBindList());
+            inform.messageEncoding = new SNMPMessage(version, community, numberedPDU).getBEREncoding();
+        }
+        catch (SNMPBadValueException e)
+        {
+            // can't happen! the request ID and error fields are plain integers
+            this.finish(inform, null, e);
+            return inform.future;
+        }
+        
+        // send now if the window has room, otherwise wait for a slot
+        boolean sendNow;
+        
+        synchronized(windows)
+        {
+            DestinationWindow window = windows.get(inform.destination);
+            if (window == null)
+            {
+                window = new DestinationWindow();
+                windows.put(inform.destination, window);
+            }
+            
+            sendNow = (window.outstanding < windowSize);
+            
+            if (sendNow)
+                window.outstanding++;
+            else
+                window.backlog.add(inform);
+        }
+        
+        if (sendNow)
+            this.transmit(inform);
+        
+        return inform.future;
+    }
+    
+    
+    /**
+     *  Send the supplied inform request pdu to the specified host on the standard trap port, using the
+     *  supplied community name and 1 for the version field in the SNMP message, and wait in the background
+     *  for it to be acknowledged; see the general form of this method.
+     */
+    public CompletableFuture<SNMPPDU> sendAcknowledgedInformRequest(InetAddress hostAddress, String community, SNMPv2InformRequestPDU pdu)
+    {
+        return sendAcknowledgedInformRequest(1, hostAddress, SNMPTrapSender.SNMP_TRAP_PORT, community, pdu);
+    }
+    
+    
+    /**
+     *  Sets how long to wait for each inform request to be acknowledged before sending it again, in
+     *  milliseconds. The default is 1000.
+     */
+    public void setTimeout(int timeout)
+    {
+        this.timeout = timeout;
+    }
+    
+    
+    /**
+     *  Returns how long to wait for each inform request to be acknowledged before sending it again, in
+     *  milliseconds.
+     */
+    public int getTimeout()
+    {
+        return this.timeout;
+    }
+    
+    
+    /**
+     *  Sets how many times an unacknowledged inform request is sent again before giving up on it. The
+     *  default is 3.
+     */
+    public void setRetries(int retries)
+    {
+        this.retries = retries;
+    }
+    
+    
+    /**
+     *  Returns how many times an unacknowledged inform request is sent again before giving up on it.
+     */
+    public int getRetries()
+    {
+        return this.retries;
+    }
+    
+    
+    /**
+     *  Sets how many inform requests may be awaiting acknowledgement from each destination at once. The
+     *  default is 64; 1 gives stop-and-wait delivery.
+     */
+    public void setWindowSize(int windowSize)
+    {
+        this.windowSize = Math.max(windowSize, 1);
+    }
+    
+    
+    /**
+     *  Returns how many inform requests may be awaiting acknowledgement from each destination at once.
+     */
+    public int getWindowSize()
+    {
+        return this.windowSize;
+    }
+    
+    
+    /**
+     *  Returns the number of acknowledged inform requests sent or waiting to be sent, and not yet
+     *  acknowledged or given up on.
+     */
+    public int getPendingCount()
+    {
+        return pendingInforms.size();
+    }
+    
+    
+    /**
+     *  Closes the socket and stops the background threads. Inform requests still awaiting acknowledgement
+     *  complete exceptionally with a SocketException.
+     */
+    public void close()
+    {
+        synchronized(this)
+        {
+            if (retransmitter != null)
+                retransmitter.shutdownNow();
+            
+            dSocket.close();
+        }
+        
+        for (PendingInform inform : pendingInforms.values())
+            this.finish(inform, null, new SocketException("Inform request sender closed"));
+    }
+    
+    
+    /**
+     *  Starts the thread which reads responses, and the retransmission timer, if not already running.
+     */
+    private synchronized void startResponseThread()
+    {
+        if (responseThread != null)
+            return;
+        
+        // daemon threads, so an idle sender doesn't keep the application running
+        retransmitter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        
+        responseThread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                receiveResponses();
+            }
+        });
+        responseThread.setDaemon(true);
+        responseThread.start();
+    }
+    
+    
+    /**
+     *  Sends (or resends) the inform request, and schedules a check for its acknowledgement.
+     */
+    private void transmit(final PendingInform inform)
+    {
+        // already acknowledged or given up on
+        if (pendingInforms.get(inform.requestID) != inform)
+            return;
+        
+        inform.attempts++;
+        
+        try
+        {
+            dSocket.send(new DatagramPacket(inform.messageEncoding, inform.messageEncoding.length, inform.destination));
+            
+            inform.timeoutTask = retransmitter.schedule(new Runnable()
+            {
+                public void run()
+                {
+                    timedOut(inform);
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (IOException e)
+        {
+            this.finish(inform, null, e);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // sender closed
+            this.finish(inform, null, new SocketException("Inform request sender closed"));
+        }
+    }
+    
+    
+    /**
+     *  Resends the inform request if it's still unacknowledged and has retries left, otherwise gives up.
+     */
+    private void timedOut(PendingInform inform)
+    {
+        if (inform.future.isDone())
+            return;
+        
+        if (inform.attempts <= retries)
+            this.transmit(inform);
+        else
+            this.finish(inform, null, new SocketTimeoutException("No response to inform request " + inform.requestID + " from " + inform.destination + " after " + inform.attempts + " attempts"));
+    }
+    
+    
+    /**
+     *  Completes the inform request's future, if nothing else has yet, and lets the next waiting inform
+     *  request to the same destination be sent.
+     */
+    private void finish(PendingInform inform, SNMPPDU response, Exception exception)
+    {
+        if (!pendingInforms.remove(inform.requestID, inform))
+            return;
+        
+        if (inform.timeoutTask != null)
+            inform.timeoutTask.cancel(false);
+        
+        if (exception != null)
+            inform.future.completeExceptionally(exception);
+        else
+            inform.future.complete(response);
+        
+        if (inform.messageEncoding == null)
+            return;
+        
+        PendingInform next = null;
+        
+        synchronized(windows)
+        {
+            DestinationWindow window = windows.get(inform.destination);
+            
+            if (window != null)
+            {
+                next = window.backlog.poll();
+                
+                if (next == null)
+                    window.outstanding--;
+                
+                // forget idle destinations
+                if (window.outstanding == 0)
+                    windows.remove(inform.destination);
+            }
+        }
+        
+        if (next != null)
+            this.transmit(next);
+    }
+    
+    
+    /**
+     *  Reads responses and completes the matching inform requests, until the socket is closed.
+     */
+    private void receiveResponses()
+    {
+        byte[] buffer = new byte[65535];
+        
+        while (!dSocket.isClosed())
+        {
+            try
+            {
+                DatagramPacket inPacket = new DatagramPacket(buffer, buffer.length);
+                dSocket.receive(inPacket);
+                
+                byte[] encodedMessage = Arrays.copyOfRange(buffer, inPacket.getOffset(), inPacket.getOffset() + inPacket.getLength());
+                SNMPMessage receivedMessage = new SNMPMessage(SNMPBERCodec.extractNextTLV(encodedMessage, 0).value);
+                SNMPPDU receivedPDU = receivedMessage.getPDU();
+                
+                if (receivedPDU.getPDUType() != SNMPBERType.SNMP_GET_RESPONSE)
+                    continue;
+                
+                // only accept the response from the host the request went to
+                PendingInform inform = pendingInforms.get(receivedPDU.getRequestID());
+                if ((inform == null) || !inform.destination.getAddress().equals(inPacket.getAddress()))
+                    continue;
+                
+                if (receivedPDU.getErrorStatus() != SNMPRequestException.NO_ERROR)
+                    this.finish(inform, null, new SNMPRequestException("Inform request rejected", receivedPDU.getErrorIndex(), receivedPDU.getErrorStatus()));
+                else
+                    this.finish(inform, receivedPDU, null);
+            }
+            catch (SNMPBadValueException e)
+            {
+                // not a valid response; ignore it
+            }
+            catch (IOException e)
+            {
+                // socket closed, or a transient error; the loop condition tells which
+            }
+        }
+    }
+    
+    
    /* private String hexByte(byte b)
     {
         int pos = b;
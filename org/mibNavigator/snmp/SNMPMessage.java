@@ -21,6 +21,7 @@
 
 package org.mibNavigator.snmp;
 
+import java.math.*;
 import java.util.*;
 
 
@@ -171,7 +172,7 @@ public class SNMPMessage extends SNMPSequence
             throw new SNMPBadValueException("Bad SNMP message: bad community name");
         
         if (!(contents.get(2) instanceof SNMPPDU) && !(contents.get(2) instanceof SNMPv1TrapPDU) 
-                && !(contents.get(2) instanceof SNMPv2TrapPDU))
+                && !(contents.get(2) instanceof SNMPv2TrapPDU) && !(contents.get(2) instanceof SNMPv2BulkRequestPDU))
             throw new SNMPBadValueException("Bad SNMP message: bad PDU");
         
     }
@@ -207,6 +208,23 @@ public class SNMPMessage extends SNMPSequence
     }
     
     
+    /** 
+     *  Utility method which returns the PDU contained in the SNMP message as an SNMPv2BulkRequestPDU. The pdu 
+     *  is the third component of the sequence, after the version and community name.
+     */
+    public SNMPv2BulkRequestPDU getBulkRequestPDU()
+        throws SNMPBadValueException
+    {
+        Vector contents = (Vector)(this.getValue());
+        Object pdu = contents.get(2);
+        
+        if (!(pdu instanceof SNMPv2BulkRequestPDU))
+            throw new SNMPBadValueException("Wrong PDU type in message: expected SNMPv2BulkRequestPDU, have " + pdu.getClass().toString());
+        
+        return (SNMPv2BulkRequestPDU)pdu;
+    }
+    
+    
     /** 
      *  Utility method which returns the PDU contained in the SNMP message as an SNMPv1TrapPDU. The pdu is the 
      *  third component of the sequence, after the version and community name.
@@ -242,6 +260,24 @@ public class SNMPMessage extends SNMPSequence
     
     
     
+    /** 
+     *  Utility method which returns the version contained in the SNMP message: 0 for SNMP version 1, 
+     *  1 for version 2c. The version is the first component of the sequence.
+     */
+    public int getVersion()
+        throws SNMPBadValueException
+    {
+        Vector contents = (Vector)(this.getValue());
+        Object version = contents.get(0);
+        
+        if (!(version instanceof SNMPInteger))
+            throw new SNMPBadValueException("Wrong SNMP type for version in message: expected SNMPInteger, have " 
+                    + version.getClass().toString());
+        
+        return ((BigInteger)((SNMPInteger)version).getValue()).intValue();
+    }
+    
+    
     /** 
      *  Utility method which returns the community name contained in the SNMP message. The community name is the 
      *  second component of the sequence, after the version.
@@ -25,9 +25,11 @@ import java.io.*;
 
 /**
  *  Class representing ASN.1 object identifiers. These are unbounded sequences (arrays) of
- *  natural numbers, written as dot-separated strings.
+ *  natural numbers, written as dot-separated strings. Object identifiers are ordered lexicographically
+ *  by component, which is the order in which an agent walks its MIB.
  */
 public class SNMPObjectIdentifier extends SNMPObject
+                                  implements Comparable<SNMPObjectIdentifier>
 {
     private long[] digits;    // array of longs
 
@@ -445,6 +447,46 @@ public class SNMPObjectIdentifier extends SNMPObject
     }
 
 
+    /**
+     *  Compares two object identifiers component by component, so that an identifier sorts
+     *  before any longer identifier it is a prefix of; e.g., 1.3.6 &lt; 1.3.6.1 &lt; 1.3.7.
+     */
+    public int compareTo(SNMPObjectIdentifier other)
+    {
+        long[] otherDigits = other.digits;
+        int commonLength = Math.min(digits.length, otherDigits.length);
+
+        for (int i = 0; i < commonLength; i++)
+        {
+            if (digits[i] != otherDigits[i])
+                return (digits[i] < otherDigits[i]) ? -1 : 1;
+        }
+
+        return digits.length - otherDigits.length;
+    }
+
+
+    /**
+     *  Returns true if the supplied identifier is a prefix of (or equal to) this one, i.e., if this
+     *  identifier lies in the subtree rooted at prefix.
+     */
+    public boolean startsWith(SNMPObjectIdentifier prefix)
+    {
+        long[] prefixDigits = prefix.digits;
+
+        if (prefixDigits.length > digits.length)
+            return false;
+
+        for (int i = 0; i < prefixDigits.length; i++)
+        {
+            if (digits[i] != prefixDigits[i])
+                return false;
+        }
+
+        return true;
+    }
+
+
     /**
      *  Return dot-separated sequence of decimal values.
      */
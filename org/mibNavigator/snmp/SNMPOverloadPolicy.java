@@ -0,0 +1,49 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+
+
+/**
+ *  The policies an SNMPTrapReceiver can follow when traps arrive faster than its listeners handle them and
+ *  the queue for a priority class fills up.
+ */
+public enum SNMPOverloadPolicy
+{
+    /**
+     *  Discard arriving traps while the queue is full; the traps already waiting are kept.
+     */
+    DROP_NEWEST,
+
+    /**
+     *  Discard the oldest waiting trap to make room for each arriving one, so listeners see the most recent
+     *  traps.
+     */
+    DROP_OLDEST,
+
+    /**
+     *  Once the queue is half full, keep only one in every so many traps from each source (see
+     *  SNMPTrapReceiver.setSampleRate), so a few storming sources are thinned out while traps from quiet
+     *  sources still get through; arriving traps are discarded if the queue fills up all the same.
+     */
+    SAMPLE_PER_SOURCE;
+}
@@ -0,0 +1,104 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+
+
+/**
+ *  The class SNMPRawElement locates one BER element - its tag, and where its contents lie - within an
+ *  encoded message, without copying or decoding anything. It is for code that must look at a few fields
+ *  of many datagrams cheaply (see SNMPTrapFilter and SNMPTrapRelay); SNMPBERCodec.extractNextTLV is the
+ *  general-purpose equivalent. An instance is reused for each element read.
+ */
+class SNMPRawElement
+{
+    int tag;
+    int headerStart;
+    int start;
+    int length;
+    int end;
+
+
+    /**
+     *  Reads the tag and length of the element at the supplied position, checking that it fits before the
+     *  limit. Returns false if it doesn't, or isn't a form SNMP uses.
+     */
+    boolean read(byte[] bytes, int position, int limit)
+    {
+        if ((position < 0) || (position + 2 > limit))
+            return false;
+
+        headerStart = position;
+        tag = bytes[position] & 0xFF;
+        int lengthByte = bytes[position + 1] & 0xFF;
+        position += 2;
+
+        // multi-byte tags aren't used by SNMP
+        if ((tag & 0x1F) == 0x1F)
+            return false;
+
+        int contentLength = lengthByte;
+
+        if (lengthByte > 0x80)
+        {
+            int lengthBytes = lengthByte & 0x7F;
+            if ((lengthBytes > 3) || (position + lengthBytes > limit))
+                return false;
+
+            contentLength = 0;
+            for (int i = 0; i < lengthBytes; i++)
+                contentLength = (contentLength << 8) | (bytes[position++] & 0xFF);
+        }
+        else if (lengthByte == 0x80)
+        {
+            // indefinite length isn't allowed
+            return false;
+        }
+
+        if (contentLength > limit - position)
+            return false;
+
+        start = position;
+        length = contentLength;
+        end = position + contentLength;
+        return true;
+    }
+
+
+    /**
+     *  Returns the contents of the element read last as a signed integer; only meaningful for integers of
+     *  up to 8 bytes.
+     */
+    long readInteger(byte[] bytes)
+    {
+        if (length == 0)
+            return 0;
+
+        // sign-extend the first byte
+        long value = bytes[start];
+        for (int i = 1; i < length; i++)
+            value = (value << 8) | (bytes[start + i] & 0xFF);
+
+        return value;
+    }
+
+}
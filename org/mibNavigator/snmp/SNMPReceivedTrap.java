@@ -0,0 +1,141 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.net.*;
+
+
+
+/**
+ *  The class SNMPReceivedTrap is a decoded trap or inform request message, together with the datagram it
+ *  arrived in. It is what SNMPBatchTrapListeners receive, so a single list can hold SNMPv1 traps, SNMPv2
+ *  traps and inform requests alike; use getPDU, or the accessor for the expected PDU type, to get at the
+ *  contents.
+ */
+public class SNMPReceivedTrap
+{
+    private SNMPTrapDatagram datagram;
+    private SNMPMessage message;
+    private String communityName;
+    private Object pdu;
+
+
+    /**
+     *  Create a received trap from the datagram it arrived in and the message decoded from it.
+     *
+     *  @throws SNMPBadValueException Indicates the message doesn't hold a community name and a trap or
+     *  inform request PDU.
+     */
+    public SNMPReceivedTrap(SNMPTrapDatagram datagram, SNMPMessage message)
+        throws SNMPBadValueException
+    {
+        this.datagram = datagram;
+        this.message = message;
+        this.communityName = message.getCommunityName();
+        this.pdu = message.getPDUAsObject();
+
+        if ( !(pdu instanceof SNMPv1TrapPDU) && !(pdu instanceof SNMPv2TrapPDU) && !(pdu instanceof SNMPv2InformRequestPDU) )
+            throw new SNMPBadValueException("PDU received that's not a v1 or v2 trap or inform request; message payload of type " + pdu.getClass().toString());
+    }
+
+
+    /**
+     *  Returns the datagram the trap arrived in.
+     */
+    public SNMPTrapDatagram getDatagram()
+    {
+        return datagram;
+    }
+
+
+    /**
+     *  Returns the decoded message.
+     */
+    public SNMPMessage getMessage()
+    {
+        return message;
+    }
+
+
+    /**
+     *  Returns the address the trap was sent from.
+     */
+    public InetAddress getSourceAddress()
+    {
+        return datagram.getSourceAddress();
+    }
+
+
+    /**
+     *  Returns the time the trap was received, in milliseconds since the epoch.
+     */
+    public long getReceiveTime()
+    {
+        return datagram.getReceiveTime();
+    }
+
+
+    /**
+     *  Returns the community name of the message.
+     */
+    public String getCommunityName()
+    {
+        return communityName;
+    }
+
+
+    /**
+     *  Returns the PDU: an SNMPv1TrapPDU, SNMPv2TrapPDU or SNMPv2InformRequestPDU.
+     */
+    public Object getPDU()
+    {
+        return pdu;
+    }
+
+
+    /**
+     *  Returns the PDU if it's an SNMPv1 trap, or null otherwise.
+     */
+    public SNMPv1TrapPDU getv1TrapPDU()
+    {
+        return (pdu instanceof SNMPv1TrapPDU) ? (SNMPv1TrapPDU)pdu : null;
+    }
+
+
+    /**
+     *  Returns the PDU if it's an SNMPv2 trap, or null otherwise.
+     */
+    public SNMPv2TrapPDU getv2TrapPDU()
+    {
+        return (pdu instanceof SNMPv2TrapPDU) ? (SNMPv2TrapPDU)pdu : null;
+    }
+
+
+    /**
+     *  Returns the PDU if it's an SNMPv2 inform request, or null otherwise.
+     */
+    public SNMPv2InformRequestPDU getv2InformRequestPDU()
+    {
+        return (pdu instanceof SNMPv2InformRequestPDU) ? (SNMPv2InformRequestPDU)pdu : null;
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.net.*;
+import java.util.*;
+
+
+
+/**
+ *  The class SNMPRequestContext holds everything that belongs to a single request received by an
+ *  SNMPv1SimpleAgent: where it came from, the decoded message, and the response being assembled for it.
+ *  Each received datagram gets its own context, so any number of requests can be processed at the same
+ *  time by the agent's worker threads without sharing state.
+ */
+public class SNMPRequestContext
+{
+    private InetAddress requesterAddress;
+    private int requesterPort;
+
+    private int version;
+    private String communityName;
+    private SNMPPDU requestPDU;
+    private SNMPv2BulkRequestPDU bulkRequestPDU;
+    private SNMPBERType requestPDUType;
+    private int requestID;
+
+    private SNMPSequence requestedVarList;
+    private SNMPSequence responseVarList;
+    private Hashtable<SNMPObjectIdentifier,SNMPObject> variablePairs;
+    private int errorIndex = 0;
+    private int errorStatus = SNMPRequestException.NO_ERROR;
+
+
+    /**
+     *  Construct a new request context by decoding the supplied datagram payload, as received from
+     *  the given requester.
+     *
+     *  @throws SNMPBadValueException Indicates the payload is not a valid SNMP request message.
+     */
+    public SNMPRequestContext(byte[] encodedMessage, InetAddress requesterAddress, int requesterPort)
+        throws SNMPBadValueException
+    {
+        this.requesterAddress = requesterAddress;
+        this.requesterPort = requesterPort;
+
+        SNMPMessage receivedMessage = new SNMPMessage(SNMPBERCodec.extractNextTLV(encodedMessage,0).value);
+        version = receivedMessage.getVersion();
+        communityName = receivedMessage.getCommunityName();
+
+        // get-bulk PDUs have their own layout, so aren't SNMPPDUs
+        if (receivedMessage.getPDUAsObject() instanceof SNMPv2BulkRequestPDU)
+        {
+            bulkRequestPDU = receivedMessage.getBulkRequestPDU();
+            requestPDUType = bulkRequestPDU.getPDUType();
+            requestID = bulkRequestPDU.getRequestID();
+            requestedVarList = bulkRequestPDU.getVarBindList();
+        }
+        else
+        {
+            requestPDU = receivedMessage.getPDU();
+            requestPDUType = requestPDU.getPDUType();
+            requestID = requestPDU.getRequestID();
+            requestedVarList = requestPDU.getVarBindList();
+        }
+
+        variablePairs = new Hashtable<SNMPObjectIdentifier,SNMPObject>();
+        responseVarList = new SNMPSequence();
+    }
+
+
+    /**
+     *  Returns the address of the manager that sent the request.
+     */
+    public InetAddress getRequesterAddress()
+    {
+        return requesterAddress;
+    }
+
+
+    /**
+     *  Returns the UDP port of the manager that sent the request.
+     */
+    public int getRequesterPort()
+    {
+        return requesterPort;
+    }
+
+
+    /**
+     *  Returns the version field of the request message: 0 for SNMP version 1, 1 for version 2c.
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+
+    /**
+     *  Returns the community name supplied with the request.
+     */
+    public String getCommunityName()
+    {
+        return communityName;
+    }
+
+
+    /**
+     *  Returns the received request PDU, or null if the request is a get-bulk request.
+     */
+    public SNMPPDU getRequestPDU()
+    {
+        return requestPDU;
+    }
+
+
+    /**
+     *  Returns the received get-bulk request PDU, or null if the request is of another type.
+     */
+    public SNMPv2BulkRequestPDU getBulkRequestPDU()
+    {
+        return bulkRequestPDU;
+    }
+
+
+    /**
+     *  Returns the PDU type of the received request.
+     */
+    public SNMPBERType getRequestPDUType()
+    {
+        return requestPDUType;
+    }
+
+
+    /**
+     *  Returns the request ID of the received request, which must be echoed in the response.
+     */
+    public int getRequestID()
+    {
+        return requestID;
+    }
+
+
+    /**
+     *  Returns the variable binding list supplied in the request.
+     */
+    public SNMPSequence getRequestedVarList()
+    {
+        return requestedVarList;
+    }
+
+
+    /**
+     *  Returns the variable binding list assembled so far for the response.
+     */
+    public SNMPSequence getResponseVarList()
+    {
+        return responseVarList;
+    }
+
+
+    /**
+     *  Returns the table of (OID, value) pairs that listeners have handled for this request.
+     */
+    Hashtable<SNMPObjectIdentifier,SNMPObject> getVariablePairs()
+    {
+        return variablePairs;
+    }
+
+
+    /**
+     *  Returns the error index to be reported in the response; 0 if no error.
+     */
+    public int getErrorIndex()
+    {
+        return errorIndex;
+    }
+
+
+    /**
+     *  Returns the error status to be reported in the response.
+     */
+    public int getErrorStatus()
+    {
+        return errorStatus;
+    }
+
+
+    /**
+     *  Marks the request as failed with the given error status and index. As required for an
+     *  error response, the request variable list is returned as the response variable list.
+     */
+    public void setError(int errorStatus, int errorIndex)
+    {
+        this.errorStatus = errorStatus;
+        this.errorIndex = errorIndex;
+
+        // just return request variable list as response variable list
+        responseVarList = requestedVarList;
+    }
+
+
+    /**
+     *  Builds the response message for this request, using the supplied message version.
+     *
+     *  @throws SNMPBadValueException
+     */
+    public SNMPMessage getResponseMessage(int version)
+        throws SNMPBadValueException
+    {
+        SNMPPDU pdu = new SNMPPDU(SNMPBERType.SNMP_GET_RESPONSE, this.getRequestID(), errorStatus, errorIndex, responseVarList);
+        return new SNMPMessage(version, communityName, pdu);
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.util.*;
+
+
+
+/**
+ *  The class SNMPReusePortSockets opens groups of UDP sockets all bound to the same port, for receivers
+ *  that read the port from several threads at once. Each socket is bound with SO_REUSEPORT, so the kernel
+ *  spreads incoming datagrams across the group (on Linux, by hashing the source and destination address and
+ *  port, so all datagrams from one sender reach the same socket).
+ *
+ *  SO_REUSEPORT and the DatagramSocket methods that set options only exist from Java 9 on, so they are
+ *  looked up reflectively; on Java 8 a single socket is always returned.
+ */
+class SNMPReusePortSockets
+{
+    private static final SocketOption<?> SO_REUSEPORT = findReusePortOption();
+    private static final Method SUPPORTED_OPTIONS = findSocketMethod("supportedOptions");
+    private static final Method SET_OPTION = findSocketMethod("setOption", SocketOption.class, Object.class);
+
+
+    /**
+     *  Opens the requested number of sockets bound to the supplied port. A single socket is bound normally;
+     *  if more are requested but the platform doesn't support SO_REUSEPORT, a single socket is returned.
+     *
+     *  @throws SocketException Indicates a socket couldn't be opened or bound.
+     */
+    static DatagramSocket[] open(int localPort, int socketCount)
+        throws SocketException
+    {
+        if (socketCount <= 1)
+            return new DatagramSocket[] {new DatagramSocket(localPort)};
+
+        DatagramSocket first = new DatagramSocket(null);
+
+        if (!supportsReusePort(first))
+        {
+            first.bind(new InetSocketAddress(localPort));
+            return new DatagramSocket[] {first};
+        }
+
+        DatagramSocket[] sockets = new DatagramSocket[socketCount];
+        sockets[0] = first;
+
+        try
+        {
+            for (int i = 0; i < socketCount; i++)
+            {
+                if (sockets[i] == null)
+                    sockets[i] = new DatagramSocket(null);
+
+                setReusePort(sockets[i]);
+                sockets[i].bind(new InetSocketAddress(localPort));
+            }
+        }
+        catch (SocketException e)
+        {
+            close(sockets);
+            throw e;
+        }
+
+        return sockets;
+    }
+
+
+    /**
+     *  Returns true if SO_REUSEPORT can be set on the supplied socket.
+     */
+    private static boolean supportsReusePort(DatagramSocket socket)
+    {
+        if ((SO_REUSEPORT == null) || (SUPPORTED_OPTIONS == null) || (SET_OPTION == null))
+            return false;
+
+        try
+        {
+            return ((Set<?>)SUPPORTED_OPTIONS.invoke(socket)).contains(SO_REUSEPORT);
+        }
+        catch (IllegalAccessException | InvocationTargetException e)
+        {
+            return false;
+        }
+    }
+
+
+    /**
+     *  Sets SO_REUSEPORT on the supplied socket, which must not be bound yet.
+     *
+     *  @throws SocketException Indicates the option couldn't be set.
+     */
+    private static void setReusePort(DatagramSocket socket)
+        throws SocketException
+    {
+        try
+        {
+            SET_OPTION.invoke(socket, SO_REUSEPORT, Boolean.TRUE);
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new SocketException(e.getMessage());
+        }
+        catch (InvocationTargetException e)
+        {
+            // setOption is declared to throw IOException, though only socket errors are expected
+            Throwable cause = e.getCause();
+            if (cause instanceof SocketException)
+                throw (SocketException)cause;
+
+            throw new SocketException(String.valueOf(cause.getMessage()));
+        }
+    }
+
+
+    /**
+     *  Returns StandardSocketOptions.SO_REUSEPORT, or null on Java versions without it.
+     */
+    private static SocketOption<?> findReusePortOption()
+    {
+        try
+        {
+            return (SocketOption<?>)StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        }
+        catch (NoSuchFieldException | IllegalAccessException e)
+        {
+            return null;
+        }
+    }
+
+
+    /**
+     *  Returns the public DatagramSocket method with the supplied name and parameters, or null on Java
+     *  versions without it.
+     */
+    private static Method findSocketMethod(String name, Class<?>... parameterTypes)
+    {
+        try
+        {
+            return DatagramSocket.class.getMethod(name, parameterTypes);
+        }
+        catch (NoSuchMethodException e)
+        {
+            return null;
+        }
+    }
+
+
+    /**
+     *  Closes all the supplied sockets; null entries are skipped.
+     */
+    static void close(DatagramSocket[] sockets)
+    {
+        for (DatagramSocket socket : sockets)
+        {
+            if (socket != null)
+                socket.close();
+        }
+    }
+
+}
@@ -0,0 +1,258 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.math.*;
+import java.util.concurrent.*;
+
+
+
+/**
+ *  The class SNMPSimulatedDevice is a virtual device served by an SNMPAgentSimulator, answering from a
+ *  sorted store of recorded values, typically read from a walk file with SNMPWalkFileReader. The store is
+ *  only read, so any number of devices may share one store, which keeps the memory needed for thousands of
+ *  devices recorded from the same kind of hardware small.
+ *
+ *  To look alive to pollers, a device can model:
+ *  <ul>
+ *  <li>counters: with a non-zero counter rate, every Counter32 and Counter64 value grows from its recorded
+ *  value at about that many units per second, each at a slightly different rate, and sysUpTime advances
+ *  with the time since the device was created;</li>
+ *  <li>latency: each response is delayed by a random time between the minimum and maximum latency;</li>
+ *  <li>loss: each request is ignored with the given probability, as if the datagram had been lost.</li>
+ *  </ul>
+ *
+ *  A device answers only requests with its own community name, unless its community name is null, in which
+ *  case it answers all requests reaching it.
+ */
+public class SNMPSimulatedDevice implements SNMPSubtreeHandler
+{
+    private static SNMPObjectIdentifier sysUpTimeOID;
+
+    static
+    {
+        try
+        {
+            sysUpTimeOID = new SNMPObjectIdentifier("1.3.6.1.2.1.1.3.0");
+        }
+        catch (SNMPBadValueException e)
+        {
+            // can't happen! the OID string is well-formed
+        }
+    }
+
+    private SNMPValueStore values;
+    private String communityName;
+    private long startTime;
+
+    private volatile long counterRate = 0;
+    private volatile long minLatency = 0;
+    private volatile long maxLatency = 0;
+    private volatile double lossRate = 0;
+
+
+    /**
+     *  Create a device answering from the supplied store, for requests with the given community name
+     *  (or for all requests, if the community name is null).
+     */
+    public SNMPSimulatedDevice(SNMPValueStore values, String communityName)
+    {
+        this.values = values;
+        this.communityName = communityName;
+        this.startTime = System.currentTimeMillis();
+    }
+
+
+    /**
+     *  Returns the community name this device answers to, or null if it answers to any.
+     */
+    public String getCommunityName()
+    {
+        return communityName;
+    }
+
+
+    /**
+     *  Returns the store of recorded values.
+     */
+    public SNMPValueStore getValueStore()
+    {
+        return values;
+    }
+
+
+    /**
+     *  Sets the average rate, in units per second, at which counters grow; 0 (the default) leaves them at
+     *  their recorded values.
+     */
+    public void setCounterRate(long counterRate)
+    {
+        this.counterRate = counterRate;
+    }
+
+
+    /**
+     *  Returns the average rate, in units per second, at which counters grow.
+     */
+    public long getCounterRate()
+    {
+        return counterRate;
+    }
+
+
+    /**
+     *  Sets the range, in milliseconds, of the delay before each response is sent. The default is no delay.
+     */
+    public void setLatency(long minLatency, long maxLatency)
+    {
+        this.minLatency = minLatency;
+        this.maxLatency = Math.max(minLatency, maxLatency);
+    }
+
+
+    /**
+     *  Sets the probability, between 0 and 1, that a request is ignored. The default is 0.
+     */
+    public void setLossRate(double lossRate)
+    {
+        this.lossRate = lossRate;
+    }
+
+
+    /**
+     *  Returns the probability that a request is ignored.
+     */
+    public double getLossRate()
+    {
+        return lossRate;
+    }
+
+
+    /**
+     *  Returns a delay, in milliseconds, drawn from the latency range.
+     */
+    public long nextLatency()
+    {
+        if (maxLatency <= minLatency)
+            return minLatency;
+
+        return ThreadLocalRandom.current().nextLong(minLatency, maxLatency + 1);
+    }
+
+
+    /**
+     *  Returns true if the next request is to be treated as lost, according to the loss rate.
+     */
+    public boolean nextRequestLost()
+    {
+        return (lossRate > 0) && (ThreadLocalRandom.current().nextDouble() < lossRate);
+    }
+
+
+    /**
+     *  Returns the current value of the supplied OID, or null if the device has no such instance.
+     */
+    public SNMPObject get(SNMPObjectIdentifier oid, String communityName)
+    {
+        SNMPObject value = values.get(oid, communityName);
+
+        if (value == null)
+            return null;
+
+        return this.currentValue(oid, value);
+    }
+
+
+    /**
+     *  Returns the current value of the OID following the supplied one, or null if there is none.
+     */
+    public SNMPVariablePair getNext(SNMPObjectIdentifier oid, String communityName)
+    {
+        SNMPVariablePair next = values.getNext(oid, communityName);
+
+        if (next == null)
+            return null;
+
+        SNMPObjectIdentifier nextOID = (SNMPObjectIdentifier)next.getSNMPObjectAt(0);
+        SNMPObject value = next.getSNMPObjectAt(1);
+        SNMPObject currentValue = this.currentValue(nextOID, value);
+
+        if (currentValue == value)
+            return next;
+
+        try
+        {
+            return new SNMPVariablePair(nextOID, currentValue);
+        }
+        catch (SNMPBadValueException e)
+        {
+            // can't happen! both components are SNMPObjects
+            return next;
+        }
+    }
+
+
+    /**
+     *  Passes the set on to the value store, which accepts it only if it has been made writable.
+     */
+    public boolean set(SNMPObjectIdentifier oid, SNMPObject newValue, String communityName)
+        throws SNMPSetException
+    {
+        return values.set(oid, newValue, communityName);
+    }
+
+
+    /**
+     *  Applies the counter model to a recorded value; values it doesn't apply to are returned unchanged.
+     */
+    private SNMPObject currentValue(SNMPObjectIdentifier oid, SNMPObject value)
+    {
+        long elapsed = System.currentTimeMillis() - startTime;
+
+        try
+        {
+            if (oid.equals(sysUpTimeOID) && (value instanceof SNMPTimeTicks))
+            {
+                // timeticks are hundredths of a second, and wrap at 32 bits
+                return new SNMPTimeTicks(((BigInteger)value.getValue()).longValue() + elapsed / 10);
+            }
+
+            long rate = counterRate;
+            if ((rate == 0) || !((value instanceof SNMPCounter32) || (value instanceof SNMPCounter64)))
+                return value;
+
+            // vary the rate between half and one and a half times the average, fixed for each OID
+            long oidRate = rate / 2 + (rate * (oid.hashCode() & 0xFF)) / 256;
+            BigInteger increment = BigInteger.valueOf(oidRate).multiply(BigInteger.valueOf(elapsed)).divide(BigInteger.valueOf(1000));
+
+            SNMPObject counter = (value instanceof SNMPCounter32) ? new SNMPCounter32() : new SNMPCounter64();
+            counter.setValue(((BigInteger)value.getValue()).add(increment));
+            return counter;
+        }
+        catch (SNMPBadValueException e)
+        {
+            // can't happen! counters accept any BigInteger, wrapping as needed
+            return value;
+        }
+    }
+
+}
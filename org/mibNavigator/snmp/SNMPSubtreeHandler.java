@@ -0,0 +1,66 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+
+
+/**
+ *  SNMPSubtreeHandler is an interface implemented by classes which supply the values for one subtree of
+ *  an agent's MIB. Handlers are registered under the root OID of their subtree with an SNMPSubtreeRegistry
+ *  (usually through SNMPv1SimpleAgent.registerSubtree), which routes each requested OID only to the handler
+ *  owning it. Unlike an SNMPRequestListener, a handler is asked about one OID at a time and never sees OIDs
+ *  outside its subtree.
+ *
+ *  Errors are reported by throwing an SNMPGetException or SNMPSetException carrying an error status; the
+ *  error index is filled in by the agent, since a handler doesn't know the position of the OID in the request.
+ *  The community name should be used to determine if a request is valid for the supplied community name.
+ *
+ *  @see org.mibNavigator.snmp.SNMPValueStore
+ */
+public interface SNMPSubtreeHandler
+{
+
+    /**
+     *   Returns the value of the supplied OID, or null if this handler has no such object instance.
+     */
+    public SNMPObject get(SNMPObjectIdentifier oid, String communityName)
+        throws SNMPGetException;
+
+
+    /**
+     *   Returns the (OID, value) pair following the supplied OID in lexicographic order, i.e., the pair with
+     *   the smallest OID strictly greater than the supplied one. Only OIDs inside the handler's subtree may be
+     *   returned; if the handler has no such OID, null is returned.
+     */
+    public SNMPVariablePair getNext(SNMPObjectIdentifier oid, String communityName)
+        throws SNMPGetException;
+
+
+    /**
+     *   Sets the value of the supplied OID. Returns false if this handler has no such object instance, in
+     *   which case the agent reports it as not handled; throws an SNMPSetException if the object exists but
+     *   can't be set, e.g. because it is read-only or the value has the wrong type.
+     */
+    public boolean set(SNMPObjectIdentifier oid, SNMPObject newValue, String communityName)
+        throws SNMPSetException;
+
+}
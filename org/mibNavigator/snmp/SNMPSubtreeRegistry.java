@@ -0,0 +1,293 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+
+
+/**
+ *  The class SNMPSubtreeRegistry maps OID subtrees to the SNMPSubtreeHandlers that serve them. Registrations
+ *  are kept in a sorted map keyed by root OID, so the handler owning an OID - the one registered under the
+ *  longest root that is a prefix of the OID - is found with a logarithmic lookup, and the lexicographic
+ *  successor of an OID is resolved by asking only the owning handler and, when it runs out, the handler of
+ *  the next registered subtree.
+ *
+ *  Subtrees may be nested: a handler registered below another handler's root takes over that part of the
+ *  outer handler's subtree, and the outer handler's values inside it are never returned.
+ *
+ *  Registration and lookup may be performed concurrently from any number of threads.
+ */
+public class SNMPSubtreeRegistry
+{
+    private ConcurrentSkipListMap<SNMPObjectIdentifier,SNMPSubtreeHandler> handlers;
+
+
+    /**
+     *  Create a new, empty registry.
+     */
+    public SNMPSubtreeRegistry()
+    {
+        handlers = new ConcurrentSkipListMap<SNMPObjectIdentifier,SNMPSubtreeHandler>();
+    }
+
+
+    /**
+     *  Registers the handler as the source of all values in the subtree rooted at the supplied OID,
+     *  replacing any handler previously registered under the same root.
+     *
+     *  @throws IllegalArgumentException if the root OID is empty
+     */
+    public void register(SNMPObjectIdentifier subtreeRoot, SNMPSubtreeHandler handler)
+    {
+        if (((long[])subtreeRoot.getValue()).length == 0)
+            throw new IllegalArgumentException("Subtree root OID must have at least one component.");
+
+        handlers.put(subtreeRoot, handler);
+    }
+
+
+    /**
+     *  Removes the handler registered under the supplied root OID, if any.
+     */
+    public void unregister(SNMPObjectIdentifier subtreeRoot)
+    {
+        handlers.remove(subtreeRoot);
+    }
+
+
+    /**
+     *  Returns true if no handlers are registered.
+     */
+    public boolean isEmpty()
+    {
+        return handlers.isEmpty();
+    }
+
+
+    /**
+     *  Returns the handler owning the supplied OID, or null if the OID is outside all registered subtrees.
+     */
+    public SNMPSubtreeHandler getHandler(SNMPObjectIdentifier oid)
+    {
+        Map.Entry<SNMPObjectIdentifier,SNMPSubtreeHandler> owner = this.findOwner(oid);
+
+        if (owner == null)
+            return null;
+
+        return owner.getValue();
+    }
+
+
+    /**
+     *  Returns the value of the supplied OID from the handler owning it, or null if there is no owning
+     *  handler or the handler has no such instance.
+     */
+    public SNMPObject get(SNMPObjectIdentifier oid, String communityName)
+        throws SNMPGetException
+    {
+        SNMPSubtreeHandler handler = this.getHandler(oid);
+
+        if (handler == null)
+            return null;
+
+        return handler.get(oid, communityName);
+    }
+
+
+    /**
+     *  Sets the value of the supplied OID through the handler owning it. Returns false if there is no
+     *  owning handler or the handler has no such instance.
+     */
+    public boolean set(SNMPObjectIdentifier oid, SNMPObject newValue, String communityName)
+        throws SNMPSetException
+    {
+        SNMPSubtreeHandler handler = this.getHandler(oid);
+
+        if (handler == null)
+            return false;
+
+        return handler.set(oid, newValue, communityName);
+    }
+
+
+    /**
+     *  Returns the (OID, value) pair following the supplied OID across all registered subtrees, or null
+     *  if there is none (the end of the MIB view has been reached).
+     */
+    public SNMPVariablePair getNext(SNMPObjectIdentifier oid, String communityName)
+        throws SNMPGetException
+    {
+        SNMPObjectIdentifier position = oid;
+        boolean inclusive = false;   // whether position itself may be returned
+
+        // Each pass either returns, or moves position forward to the root of a following registration or to
+        // just past the end of the current owner's subtree; so the loop runs at most twice per registration,
+        // and normally just once.
+        while (true)
+        {
+            Map.Entry<SNMPObjectIdentifier,SNMPSubtreeHandler> owner = this.findOwner(position);
+            SNMPObjectIdentifier nextRoot = handlers.higherKey(position);
+
+            if (owner == null)
+            {
+                // in a gap between registered subtrees; skip ahead to the next one
+                if (nextRoot == null)
+                    return null;
+
+                position = nextRoot;
+                inclusive = true;
+                continue;
+            }
+
+            SNMPVariablePair candidate = this.first(owner.getValue(), position, inclusive, communityName);
+            SNMPObjectIdentifier candidateOID = null;
+            if (candidate != null)
+            {
+                candidateOID = (SNMPObjectIdentifier)candidate.getSNMPObjectAt(0);
+
+                // ignore anything a misbehaving handler returns from outside its subtree
+                if (!candidateOID.startsWith(owner.getKey()))
+                    candidate = null;
+            }
+
+            if ((candidate != null) && ((nextRoot == null) || (candidateOID.compareTo(nextRoot) < 0)))
+                return candidate;
+
+            // Either another registration starts before the candidate, and owns everything under its root,
+            // or the owner has nothing further; in the latter case continue just past the end of its subtree,
+            // where an enclosing registration or the next one takes over - unless a nested registration
+            // comes first.
+            SNMPObjectIdentifier ownerEnd = this.subtreeEnd(owner.getKey());
+
+            if ((nextRoot != null) && ((candidate != null) || (nextRoot.compareTo(ownerEnd) < 0)))
+                position = nextRoot;
+            else
+                position = ownerEnd;
+
+            inclusive = true;
+        }
+    }
+
+
+    /**
+     *  Finds the registration whose root is the longest prefix of the supplied OID. The greatest root not
+     *  greater than the OID is tried first; if it isn't a prefix, the owner must be registered under a prefix
+     *  of what the two have in common, so the search continues from there.
+     */
+    private Map.Entry<SNMPObjectIdentifier,SNMPSubtreeHandler> findOwner(SNMPObjectIdentifier oid)
+    {
+        Map.Entry<SNMPObjectIdentifier,SNMPSubtreeHandler> entry = handlers.floorEntry(oid);
+
+        while (entry != null)
+        {
+            SNMPObjectIdentifier root = entry.getKey();
+
+            if (oid.startsWith(root))
+                return entry;
+
+            SNMPObjectIdentifier commonPrefix = this.commonPrefix(root, oid);
+            if (commonPrefix == null)
+                return null;
+
+            entry = handlers.floorEntry(commonPrefix);
+        }
+
+        return null;
+    }
+
+
+    /**
+     *  Returns the first pair in the handler at or after (if inclusive) or strictly after the position.
+     */
+    private SNMPVariablePair first(SNMPSubtreeHandler handler, SNMPObjectIdentifier position, boolean inclusive, String communityName)
+        throws SNMPGetException
+    {
+        if (inclusive)
+        {
+            SNMPObject value = handler.get(position, communityName);
+            if (value != null)
+            {
+                try
+                {
+                    return new SNMPVariablePair(position, value);
+                }
+                catch (SNMPBadValueException e)
+                {
+                    // can't happen! both components are SNMPObjects
+                }
+            }
+        }
+
+        return handler.getNext(position, communityName);
+    }
+
+
+    /**
+     *  Returns the longest common prefix of the two identifiers, or null if they have no component in common.
+     */
+    private SNMPObjectIdentifier commonPrefix(SNMPObjectIdentifier first, SNMPObjectIdentifier second)
+    {
+        long[] firstDigits = (long[])first.getValue();
+        long[] secondDigits = (long[])second.getValue();
+
+        int length = 0;
+        while ((length < firstDigits.length) && (length < secondDigits.length) && (firstDigits[length] == secondDigits[length]))
+            length++;
+
+        if (length == 0)
+            return null;
+
+        try
+        {
+            return new SNMPObjectIdentifier(Arrays.copyOf(firstDigits, length));
+        }
+        catch (SNMPBadValueException e)
+        {
+            // can't happen! components come from a valid identifier
+            return null;
+        }
+    }
+
+
+    /**
+     *  Returns the smallest identifier greater than every identifier in the subtree rooted at root, obtained
+     *  by incrementing the root's last component.
+     */
+    private SNMPObjectIdentifier subtreeEnd(SNMPObjectIdentifier root)
+    {
+        long[] endDigits = ((long[])root.getValue()).clone();
+        endDigits[endDigits.length - 1]++;
+
+        try
+        {
+            return new SNMPObjectIdentifier(endDigits);
+        }
+        catch (SNMPBadValueException e)
+        {
+            // can't happen! components come from a valid identifier
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.math.*;
+import java.net.*;
+import java.util.*;
+
+
+
+/**
+ *  The class SNMPTrapDatagram holds a message received by an SNMPTrapReceiver as it came off the network:
+ *  the undecoded message bytes, where they came from and when. The receive threads do nothing more than
+ *  copy each datagram into one of these; decoding is left to the receiver's dispatch threads. The trap OID
+ *  can be had without a full decode, for decisions that must be made before then (see getTrapOID).
+ */
+public class SNMPTrapDatagram
+{
+    private byte[] encodedMessage;
+    private InetAddress sourceAddress;
+    private int sourcePort;
+    private long receiveTime;
+
+    private volatile SNMPObjectIdentifier trapOID;
+    private volatile boolean trapOIDExtracted = false;
+
+
+    /**
+     *  Create a datagram holding the supplied message bytes, received from the given source at the given
+     *  time (in milliseconds, as returned by System.currentTimeMillis).
+     */
+    public SNMPTrapDatagram(byte[] encodedMessage, InetAddress sourceAddress, int sourcePort, long receiveTime)
+    {
+        this.encodedMessage = encodedMessage;
+        this.sourceAddress = sourceAddress;
+        this.sourcePort = sourcePort;
+        this.receiveTime = receiveTime;
+    }
+
+
+    /**
+     *  Returns the undecoded message bytes; the array holds exactly the datagram payload.
+     */
+    public byte[] getEncodedMessage()
+    {
+        return encodedMessage;
+    }
+
+
+    /**
+     *  Returns the address the datagram was sent from.
+     */
+    public InetAddress getSourceAddress()
+    {
+        return sourceAddress;
+    }
+
+
+    /**
+     *  Returns the UDP port the datagram was sent from.
+     */
+    public int getSourcePort()
+    {
+        return sourcePort;
+    }
+
+
+    /**
+     *  Returns the time the datagram was received, in milliseconds since the epoch.
+     */
+    public long getReceiveTime()
+    {
+        return receiveTime;
+    }
+
+
+    /**
+     *  Decodes the message bytes.
+     *
+     *  @throws SNMPBadValueException Indicates the bytes aren't a valid SNMP message.
+     */
+    public SNMPMessage decode()
+        throws SNMPBadValueException
+    {
+        return new SNMPMessage(SNMPBERCodec.extractNextTLV(encodedMessage,0).value);
+    }
+
+
+    /**
+     *  Returns the trap OID of the message, found by stepping over the encoded fields preceding it rather
+     *  than decoding the whole message: the snmpTrapOID.0 value of an SNMPv2 trap or inform request or,
+     *  for an SNMPv1 trap, the equivalent OID defined in RFC 3584 - snmpTraps.(generic trap + 1) for the
+     *  generic traps, enterprise.0.(specific trap) for enterprise-specific ones. Returns null if the
+     *  message isn't a well-formed trap or inform request.
+     */
+    public SNMPObjectIdentifier getTrapOID()
+    {
+        // no harm if two threads both extract it
+        if (!trapOIDExtracted)
+        {
+            trapOID = this.extractTrapOID();
+            trapOIDExtracted = true;
+        }
+
+        return trapOID;
+    }
+
+
+    /**
+     *  Returns the encoded contents of the variable binding list of the trap or inform request - the
+     *  bindings one after another, each a complete (name, value) sequence - found in the same way as the
+     *  trap OID, or null if the message isn't a well-formed trap or inform request.
+     */
+    byte[] getEncodedVarBinds()
+    {
+        try
+        {
+            SNMPTLV pdu = this.extractPDU();
+
+            // v1 trap: enterprise, agent address, generic trap, specific trap, timestamp, bindings;
+            // v2 trap or inform: request ID, error status, error index, bindings
+            int precedingFields;
+            if (pdu.tag == SNMPBERType.SNMP_TRAP)
+                precedingFields = 5;
+            else if ((pdu.tag == SNMPBERType.SNMPv2_TRAP) || (pdu.tag == SNMPBERType.SNMPv2_INFORM_REQUEST))
+                precedingFields = 3;
+            else
+                return null;
+
+            int position = 0;
+            for (int i = 0; i < precedingFields; i++)
+                position += SNMPBERCodec.extractNextTLV(pdu.value, position).totalLength;
+
+            return SNMPBERCodec.extractNextTLV(pdu.value, position).value;
+        }
+        catch (SNMPBadValueException e)
+        {
+            // not a well-formed trap
+            return null;
+        }
+    }
+
+
+    private SNMPTLV extractPDU()
+        throws SNMPBadValueException
+    {
+        // message: version, community, PDU
+        byte[] messageFields = SNMPBERCodec.extractNextTLV(encodedMessage, 0).value;
+        int position = SNMPBERCodec.extractNextTLV(messageFields, 0).totalLength;
+        position += SNMPBERCodec.extractNextTLV(messageFields, position).totalLength;
+        return SNMPBERCodec.extractNextTLV(messageFields, position);
+    }
+
+
+    private SNMPObjectIdentifier extractTrapOID()
+    {
+        try
+        {
+            SNMPTLV pdu = this.extractPDU();
+            int position;
+
+            if (pdu.tag == SNMPBERType.SNMP_TRAP)
+            {
+                // v1 trap: enterprise, agent address, generic trap, specific trap, ...
+                SNMPTLV enterprise = SNMPBERCodec.extractNextTLV(pdu.value, 0);
+                position = enterprise.totalLength;
+                position += SNMPBERCodec.extractNextTLV(pdu.value, position).totalLength;
+                SNMPTLV genericTrap = SNMPBERCodec.extractNextTLV(pdu.value, position);
+                position += genericTrap.totalLength;
+                SNMPTLV specificTrap = SNMPBERCodec.extractNextTLV(pdu.value, position);
+
+                long generic = ((BigInteger)new SNMPInteger(genericTrap.value).getValue()).longValue();
+                long specific = ((BigInteger)new SNMPInteger(specificTrap.value).getValue()).longValue();
+
+                if (generic == 6)
+                {
+                    long[] enterpriseDigits = (long[])new SNMPObjectIdentifier(enterprise.value).getValue();
+                    long[] digits = Arrays.copyOf(enterpriseDigits, enterpriseDigits.length + 2);
+                    digits[enterpriseDigits.length + 1] = specific;
+                    return new SNMPObjectIdentifier(digits);
+                }
+
+                return new SNMPObjectIdentifier(new long[] {1, 3, 6, 1, 6, 3, 1, 1, 5, generic + 1});
+            }
+
+            if ((pdu.tag == SNMPBERType.SNMPv2_TRAP) || (pdu.tag == SNMPBERType.SNMPv2_INFORM_REQUEST))
+            {
+                // v2 trap or inform: request ID, error status, error index, variable bindings
+                position = SNMPBERCodec.extractNextTLV(pdu.value, 0).totalLength;
+                position += SNMPBERCodec.extractNextTLV(pdu.value, position).totalLength;
+                position += SNMPBERCodec.extractNextTLV(pdu.value, position).totalLength;
+                byte[] varBinds = SNMPBERCodec.extractNextTLV(pdu.value, position).value;
+
+                // the second binding is (snmpTrapOID.0, trap OID)
+                int secondBinding = SNMPBERCodec.extractNextTLV(varBinds, 0).totalLength;
+                byte[] binding = SNMPBERCodec.extractNextTLV(varBinds, secondBinding).value;
+                int valuePosition = SNMPBERCodec.extractNextTLV(binding, 0).totalLength;
+                SNMPTLV value = SNMPBERCodec.extractNextTLV(binding, valuePosition);
+
+                if (value.tag == SNMPBERType.SNMP_OBJECT_IDENTIFIER)
+                    return new SNMPObjectIdentifier(value.value);
+            }
+        }
+        catch (SNMPBadValueException e)
+        {
+            // not a well-formed trap
+        }
+
+        return null;
+    }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+
+
+/**
+ *  SNMPTrapDatagramListener is an interface that must be implemented by any class which wishes to receive
+ *  traps and inform requests from an SNMPTrapReceiver as they came off the network, before they are decoded,
+ *  such as relays forwarding them elsewhere (see SNMPTrapRelay). Datagrams rejected by the receiver's filter
+ *  or deduplicator aren't passed on. If the receiver has no other listeners, it doesn't decode the datagrams
+ *  at all.
+ *
+ *  With more than one dispatch thread, this method may be called concurrently.
+ */
+public interface SNMPTrapDatagramListener
+{
+
+    public void processTrapDatagram(SNMPTrapDatagram datagram);
+
+}
@@ -0,0 +1,424 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+
+/**
+ *  The class SNMPTrapDeduplicator suppresses repeated traps, such as the thousands of identical linkDown
+ *  and linkUp traps a flapping link can produce. Set one on an SNMPTrapReceiver (see setTrapDeduplicator)
+ *  and it is consulted before each trap is decoded: only the first trap with a given key in each window is
+ *  decoded and passed to the listeners, and the rest are dropped. The key is made up of the source address,
+ *  the trap OID and the values of any variable bindings named with addKeyVarBind (e.g., ifIndex, so that
+ *  traps for different interfaces aren't taken as duplicates). It is found from the undecoded datagram, and
+ *  only a 64-bit hash of it is kept, so a window's worth of keys takes little memory; on the rare hash
+ *  collision, a trap is wrongly taken as a duplicate.
+ *
+ *  The deduplicator also tracks which sources and trap OIDs send the most traps. Each summary interval in
+ *  which any duplicates were suppressed ends with an SNMPTrapStormSummary being passed to the registered
+ *  SNMPTrapStormListeners, so a storm reaches them as one event per interval rather than one per trap.
+ *  Intervals are measured in trap receive times, so a summary is delivered with the first trap received
+ *  after the interval ends. Traps from several receiving threads can arrive slightly out of order; one
+ *  received before the current window or interval started is simply counted as part of it.
+ */
+public class SNMPTrapDeduplicator
+{
+    // the key tables are striped, to let several dispatch threads in at once
+    private static final int STRIPES = 16;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+
+    /*
+     *  The hashes of the keys seen in one stripe's current window, in an open-addressed table; 0 marks
+     *  an empty slot.
+     */
+    private static class KeyTable
+    {
+        long[] keys;
+        int size;
+        long windowStart = 0;
+    }
+
+
+    private volatile long window;
+    private KeyTable[] keyTables = new KeyTable[STRIPES];
+    private int maxKeysPerStripe;
+    private CopyOnWriteArrayList<byte[]> keyVarBindPrefixes = new CopyOnWriteArrayList<byte[]>();
+    private AtomicLong suppressedCount = new AtomicLong();
+
+    // storm tracking, guarded by stormTracking
+    private Object stormTracking = new Object();
+    private volatile long summaryInterval = 60000;
+    private volatile int topCount = 10;
+    private SNMPHeavyHitters<InetAddress> sourceCounts = new SNMPHeavyHitters<InetAddress>(100);
+    private SNMPHeavyHitters<SNMPObjectIdentifier> trapOIDCounts = new SNMPHeavyHitters<SNMPObjectIdentifier>(100);
+    private long intervalStart = 0;
+    private long intervalTrapCount = 0;
+    private long intervalSuppressedCount = 0;
+
+    private CopyOnWriteArrayList<SNMPTrapStormListener> stormListeners = new CopyOnWriteArrayList<SNMPTrapStormListener>();
+
+
+
+    /**
+     *  Create a deduplicator suppressing traps whose key was already seen in the same window of the supplied
+     *  length (in milliseconds), remembering up to 65536 keys per window.
+     */
+    public SNMPTrapDeduplicator(long window)
+    {
+        this(window, 65536);
+    }
+
+
+    /**
+     *  Create a deduplicator suppressing traps whose key was already seen in the same window of the supplied
+     *  length (in milliseconds), remembering about the supplied number of keys per window. Once that many
+     *  distinct keys have been seen in a window, further new keys aren't remembered, so their repeats aren't
+     *  suppressed until the next window.
+     */
+    public SNMPTrapDeduplicator(long window, int maxKeys)
+    {
+        this.window = window;
+        this.maxKeysPerStripe = Math.max(maxKeys / STRIPES, 1);
+
+        // keep the tables no more than half full
+        int tableSize = Integer.highestOneBit(maxKeysPerStripe * 2 - 1) << 1;
+
+        for (int i = 0; i < STRIPES; i++)
+        {
+            keyTables[i] = new KeyTable();
+            keyTables[i].keys = new long[tableSize];
+        }
+    }
+
+
+
+    /**
+     *  Sets the length of the window, in milliseconds, within which repeats of a trap are suppressed.
+     */
+    public void setWindow(long window)
+    {
+        this.window = window;
+    }
+
+
+    /**
+     *  Returns the length of the window, in milliseconds, within which repeats of a trap are suppressed.
+     */
+    public long getWindow()
+    {
+        return window;
+    }
+
+
+    /**
+     *  Adds the values of the variable bindings whose names start with the supplied OID to the key, so that
+     *  traps differing in those values aren't taken as duplicates; e.g., ifIndex (1.3.6.1.2.1.2.2.1.1) for
+     *  linkDown and linkUp traps.
+     */
+    public void addKeyVarBind(SNMPObjectIdentifier namePrefix)
+    {
+        // kept as the encoded identifier contents, which prefix those of the names in the subtree
+        try
+        {
+            keyVarBindPrefixes.add(SNMPBERCodec.extractNextTLV(namePrefix.getBEREncoding(), 0).value);
+        }
+        catch (SNMPBadValueException e)
+        {
+            // can't happen! the identifier's own encoding is well-formed
+        }
+    }
+
+
+    /**
+     *  Sets the length of the interval, in milliseconds, covered by each storm summary. The default is one
+     *  minute.
+     */
+    public void setSummaryInterval(long summaryInterval)
+    {
+        this.summaryInterval = summaryInterval;
+    }
+
+
+    /**
+     *  Returns the length of the interval, in milliseconds, covered by each storm summary.
+     */
+    public long getSummaryInterval()
+    {
+        return summaryInterval;
+    }
+
+
+    /**
+     *  Sets how many of the top sources and trap OIDs are named in each storm summary; the default is 10,
+     *  and at most 100 are tracked.
+     */
+    public void setTopCount(int topCount)
+    {
+        this.topCount = topCount;
+    }
+
+
+    /**
+     *  Returns how many of the top sources and trap OIDs are named in each storm summary.
+     */
+    public int getTopCount()
+    {
+        return topCount;
+    }
+
+
+    public synchronized void addStormListener(SNMPTrapStormListener listener)
+    {
+        // see if the listener's already been added; if not, add it
+        if (!stormListeners.contains(listener))
+            stormListeners.add(listener);
+    }
+
+
+    public synchronized void removeStormListener(SNMPTrapStormListener listener)
+    {
+        stormListeners.remove(listener);
+    }
+
+
+    /**
+     *  Returns the number of traps suppressed since the deduplicator was created.
+     */
+    public long getSuppressedCount()
+    {
+        return suppressedCount.get();
+    }
+
+
+
+    /**
+     *  Returns true if the trap's key was already seen in the current window, in which case the trap should
+     *  be discarded. Datagrams which aren't well-formed traps or inform requests are never duplicates.
+     */
+    public boolean isDuplicate(SNMPTrapDatagram datagram)
+    {
+        SNMPObjectIdentifier trapOID = datagram.getTrapOID();
+        if (trapOID == null)
+            return false;
+
+        long key = this.hashKey(datagram, trapOID);
+        long now = datagram.getReceiveTime();
+        boolean duplicate;
+
+        KeyTable table = keyTables[(int)(key >>> 60) & (STRIPES - 1)];
+
+        synchronized(table)
+        {
+            if (now - table.windowStart >= window)
+            {
+                Arrays.fill(table.keys, 0);
+                table.size = 0;
+                table.windowStart = now;
+            }
+
+            duplicate = !this.addKey(table, key);
+        }
+
+        if (duplicate)
+            suppressedCount.incrementAndGet();
+
+        this.trackStorm(datagram.getSourceAddress(), trapOID, duplicate, now);
+
+        return duplicate;
+    }
+
+
+    /**
+     *  Adds the key to the table, returning false if it was already there. When the table has as many keys
+     *  as it may hold, new ones are reported as added but not remembered.
+     */
+    private boolean addKey(KeyTable table, long key)
+    {
+        int mask = table.keys.length - 1;
+        int slot = (int)key & mask;
+
+        while (table.keys[slot] != 0)
+        {
+            if (table.keys[slot] == key)
+                return false;
+
+            slot = (slot + 1) & mask;
+        }
+
+        if (table.size < maxKeysPerStripe)
+        {
+            table.keys[slot] = key;
+            table.size++;
+        }
+
+        return true;
+    }
+
+
+    /**
+     *  Hashes the source address, trap OID and key variable binding values of the datagram, with 64-bit
+     *  FNV-1a followed by a final mix so all bits of the result are usable. Never returns 0.
+     */
+    private long hashKey(SNMPTrapDatagram datagram, SNMPObjectIdentifier trapOID)
+    {
+        long hash = FNV_OFFSET_BASIS;
+
+        hash = hashBytes(hash, datagram.getSourceAddress().getAddress(), -1);
+
+        for (long digit : (long[])trapOID.getValue())
+        {
+            for (int shift = 0; shift < 64; shift += 8)
+                hash = (hash ^ ((digit >>> shift) & 0xFF)) * FNV_PRIME;
+        }
+
+        if (!keyVarBindPrefixes.isEmpty())
+        {
+            byte[] varBinds = datagram.getEncodedVarBinds();
+
+            try
+            {
+                int position = 0;
+
+                while ((varBinds != null) && (position < varBinds.length))
+                {
+                    SNMPTLV binding = SNMPBERCodec.extractNextTLV(varBinds, position);
+                    position += binding.totalLength;
+
+                    SNMPTLV name = SNMPBERCodec.extractNextTLV(binding.value, 0);
+
+                    if (this.isKeyVarBind(name.value))
+                    {
+                        SNMPTLV value = SNMPBERCodec.extractNextTLV(binding.value, name.totalLength);
+                        hash = hashBytes(hash, name.value, -1);
+                        hash = hashBytes(hash, value.value, value.tag.ordinal());
+                    }
+                }
+            }
+            catch (SNMPBadValueException e)
+            {
+                // malformed bindings; key on what was found before them
+            }
+        }
+
+        // finalizer from MurmurHash3
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return (hash != 0) ? hash : 1;
+    }
+
+
+    /**
+     *  Folds the bytes into the hash, preceded by their length and the supplied type tag (if not
+     *  negative), so that adjacent fields can't run into each other.
+     */
+    private static long hashBytes(long hash, byte[] bytes, int typeTag)
+    {
+        if (typeTag >= 0)
+            hash = (hash ^ typeTag) * FNV_PRIME;
+
+        hash = (hash ^ bytes.length) * FNV_PRIME;
+
+        for (byte b : bytes)
+            hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+
+        return hash;
+    }
+
+
+    private boolean isKeyVarBind(byte[] name)
+    {
+        for (byte[] prefix : keyVarBindPrefixes)
+        {
+            if (startsWith(name, prefix))
+                return true;
+        }
+
+        return false;
+    }
+
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix)
+    {
+        if (prefix.length > bytes.length)
+            return false;
+
+        for (int i = 0; i < prefix.length; i++)
+        {
+            if (bytes[i] != prefix[i])
+                return false;
+        }
+
+        return true;
+    }
+
+
+    /**
+     *  Counts the trap towards the current summary interval, first ending the interval - and passing its
+     *  summary to the storm listeners, if there were duplicates - if it's over.
+     */
+    private void trackStorm(InetAddress sourceAddress, SNMPObjectIdentifier trapOID, boolean duplicate, long now)
+    {
+        SNMPTrapStormSummary summary = null;
+
+        synchronized(stormTracking)
+        {
+            if (now - intervalStart >= summaryInterval)
+            {
+                if (intervalSuppressedCount > 0)
+                    summary = new SNMPTrapStormSummary(intervalStart, now, intervalTrapCount, intervalSuppressedCount, sourceCounts.top(topCount), trapOIDCounts.top(topCount));
+
+                sourceCounts.clear();
+                trapOIDCounts.clear();
+                intervalStart = now;
+                intervalTrapCount = 0;
+                intervalSuppressedCount = 0;
+            }
+
+            sourceCounts.add(sourceAddress);
+            trapOIDCounts.add(trapOID);
+            intervalTrapCount++;
+
+            if (duplicate)
+                intervalSuppressedCount++;
+        }
+
+        // deliver outside the lock, so a slow listener holds up only this thread
+        if (summary != null)
+        {
+            for (SNMPTrapStormListener listener : stormListeners)
+                listener.processTrapStorm(summary);
+        }
+    }
+
+}
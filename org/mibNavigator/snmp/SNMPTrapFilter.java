@@ -0,0 +1,467 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+
+/**
+ *  The class SNMPTrapFilter decides which received traps are worth decoding. Set one on an SNMPTrapReceiver
+ *  (see setTrapFilter) and it is consulted as each datagram comes off the network; datagrams it rejects are
+ *  discarded before they are queued or decoded, so noise from unwanted sources, communities or enterprises
+ *  costs little more than receiving it.
+ *
+ *  The filter holds an ordered list of SNMPTrapFilterRules. The first rule whose conditions a trap meets
+ *  decides whether it is accepted; traps meeting no rule get the default action, acceptance unless changed
+ *  with setDefaultAccept. Rules are compiled as they're added into byte comparisons - OID prefixes into
+ *  their encoded forms, communities into their bytes, networks into address masks - and the fields are
+ *  located in the datagram with a single pass over its encoding, without decoding the message; a
+ *  datagram whose fields can't be located meets only those rules with no conditions beyond the source
+ *  address.
+ */
+public class SNMPTrapFilter
+{
+    // the encoded contents of 1.3.6.1.6.3.1.1.5 (snmpTraps)
+    private static final byte[] SNMP_TRAPS = {0x2B, 6, 1, 6, 3, 1, 1, 5};
+
+
+    /*
+     *  A rule turned into the forms compared against the raw datagram.
+     */
+    private static class CompiledRule
+    {
+        SNMPTrapFilterRule rule;
+        boolean accept;
+        byte[] sourceAddress;
+        byte[] sourceMask;
+        byte[] communityName;
+        int pduTag = -1;
+        byte[] enterprise;
+        byte[] trapOID;
+        long genericTrap = -1;
+        long specificTrap = -1;
+
+        // true if any condition beyond the source address must be checked
+        boolean needsFields;
+    }
+
+
+    /*
+     *  The fields of a datagram which rules can test, as positions within the encoded message.
+     */
+    private static class Fields
+    {
+        byte[] message;
+        int communityStart;
+        int communityLength;
+        int pduTag;
+
+        // SNMPv1 traps
+        int enterpriseStart;
+        int enterpriseLength;
+        long genericTrap = -1;
+        long specificTrap = -1;
+
+        // SNMPv2 traps and inform requests
+        int trapOIDStart;
+        int trapOIDLength;
+
+        // the encoded trap OID of an SNMPv1 trap, built when first needed
+        byte[] v1TrapOID;
+    }
+
+
+    private CopyOnWriteArrayList<CompiledRule> rules = new CopyOnWriteArrayList<CompiledRule>();
+    private volatile boolean defaultAccept = true;
+
+
+
+    /**
+     *  Create a filter with no rules, which accepts every trap until rules are added.
+     */
+    public SNMPTrapFilter()
+    {
+    }
+
+
+
+    /**
+     *  Compiles the rule and adds it to the end of the list.
+     */
+    public void addRule(SNMPTrapFilterRule rule)
+    {
+        rules.add(compile(rule));
+    }
+
+
+    /**
+     *  Removes the rule from the list.
+     */
+    public void removeRule(SNMPTrapFilterRule rule)
+    {
+        for (CompiledRule compiledRule : rules)
+        {
+            if (compiledRule.rule == rule)
+                rules.remove(compiledRule);
+        }
+    }
+
+
+    /**
+     *  Removes all the rules.
+     */
+    public void clearRules()
+    {
+        rules.clear();
+    }
+
+
+    /**
+     *  Sets whether traps matching no rule are accepted; the default is true.
+     */
+    public void setDefaultAccept(boolean defaultAccept)
+    {
+        this.defaultAccept = defaultAccept;
+    }
+
+
+    /**
+     *  Returns whether traps matching no rule are accepted.
+     */
+    public boolean isDefaultAccept()
+    {
+        return defaultAccept;
+    }
+
+
+
+    /**
+     *  Returns true if the datagram should be decoded and passed on to listeners, as decided by the first
+     *  rule it matches or the default action.
+     */
+    public boolean accepts(SNMPTrapDatagram datagram)
+    {
+        byte[] sourceAddress = null;
+        Fields fields = null;
+        boolean fieldsLocated = false;
+
+        for (CompiledRule rule : rules)
+        {
+            if (rule.sourceAddress != null)
+            {
+                if (sourceAddress == null)
+                    sourceAddress = datagram.getSourceAddress().getAddress();
+
+                if (!matchesNetwork(sourceAddress, rule))
+                    continue;
+            }
+
+            if (rule.needsFields)
+            {
+                if (!fieldsLocated)
+                {
+                    fields = locateFields(datagram.getEncodedMessage());
+                    fieldsLocated = true;
+                }
+
+                if ((fields == null) || !matchesFields(fields, rule))
+                    continue;
+            }
+
+            return rule.accept;
+        }
+
+        return defaultAccept;
+    }
+
+
+    private static boolean matchesNetwork(byte[] address, CompiledRule rule)
+    {
+        if (address.length != rule.sourceAddress.length)
+            return false;
+
+        for (int i = 0; i < address.length; i++)
+        {
+            if (((address[i] ^ rule.sourceAddress[i]) & rule.sourceMask[i]) != 0)
+                return false;
+        }
+
+        return true;
+    }
+
+
+    private static boolean matchesFields(Fields fields, CompiledRule rule)
+    {
+        byte[] message = fields.message;
+
+        if ((rule.pduTag >= 0) && (fields.pduTag != rule.pduTag))
+            return false;
+
+        if ((rule.communityName != null) && ((fields.communityLength != rule.communityName.length) || !startsWith(message, fields.communityStart, fields.communityLength, rule.communityName)))
+            return false;
+
+        boolean v1Trap = (fields.pduTag == (SNMPBERType.SNMP_TRAP.getByte() & 0xFF));
+
+        if (rule.enterprise != null)
+        {
+            if (!v1Trap || !startsWith(message, fields.enterpriseStart, fields.enterpriseLength, rule.enterprise))
+                return false;
+        }
+
+        if ((rule.genericTrap >= 0) && (!v1Trap || (fields.genericTrap != rule.genericTrap)))
+            return false;
+
+        if ((rule.specificTrap >= 0) && (!v1Trap || (fields.specificTrap != rule.specificTrap)))
+            return false;
+
+        if (rule.trapOID != null)
+        {
+            if (v1Trap)
+            {
+                if (fields.v1TrapOID == null)
+                    fields.v1TrapOID = buildV1TrapOID(fields);
+
+                if (!startsWith(fields.v1TrapOID, 0, fields.v1TrapOID.length, rule.trapOID))
+                    return false;
+            }
+            else if ((fields.trapOIDLength == 0) || !startsWith(message, fields.trapOIDStart, fields.trapOIDLength, rule.trapOID))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     *  Returns true if the bytes in the given range of the array start with the supplied prefix. For
+     *  encoded OIDs, this is true exactly when the OID starts with the prefix OID, since each component
+     *  is encoded separately and no component's encoding is a prefix of another's.
+     */
+    private static boolean startsWith(byte[] bytes, int start, int length, byte[] prefix)
+    {
+        if (prefix.length > length)
+            return false;
+
+        for (int i = 0; i < prefix.length; i++)
+        {
+            if (bytes[start + i] != prefix[i])
+                return false;
+        }
+
+        return true;
+    }
+
+
+    /**
+     *  Builds the encoded RFC 3584 trap OID of an SNMPv1 trap, as SNMPTrapDatagram.getTrapOID does.
+     */
+    private static byte[] buildV1TrapOID(Fields fields)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32);
+
+        if (fields.genericTrap == 6)
+        {
+            // enterprise.0.specific
+            out.write(fields.message, fields.enterpriseStart, fields.enterpriseLength);
+            out.write(0);
+            writeSubidentifier(out, fields.specificTrap);
+        }
+        else
+        {
+            // snmpTraps.(generic + 1)
+            out.write(SNMP_TRAPS, 0, SNMP_TRAPS.length);
+            writeSubidentifier(out, fields.genericTrap + 1);
+        }
+
+        return out.toByteArray();
+    }
+
+
+    private static void writeSubidentifier(ByteArrayOutputStream out, long value)
+    {
+        // base 128, most significant group first, high bit set on all but the last
+        int groups = 1;
+        while ((groups < 10) && ((value >>> (7 * groups)) != 0))
+            groups++;
+
+        for (int i = groups - 1; i > 0; i--)
+            out.write((int)(((value >>> (7 * i)) & 0x7F) | 0x80));
+
+        out.write((int)(value & 0x7F));
+    }
+
+
+
+    /**
+     *  Locates the fields rules can test, stepping through the encoding without decoding it. Returns null
+     *  if the datagram isn't a well-formed trap or inform request.
+     */
+    private static Fields locateFields(byte[] message)
+    {
+        Fields fields = new Fields();
+        fields.message = message;
+
+        SNMPRawElement element = new SNMPRawElement();
+
+        // message: version, community, PDU
+        if (!element.read(message, 0, message.length) || (element.tag != 0x30))
+            return null;
+
+        int messageEnd = element.end;
+
+        if (!element.read(message, element.start, messageEnd) || (element.tag != 0x02))
+            return null;
+
+        if (!element.read(message, element.end, messageEnd) || (element.tag != 0x04))
+            return null;
+
+        fields.communityStart = element.start;
+        fields.communityLength = element.length;
+
+        if (!element.read(message, element.end, messageEnd))
+            return null;
+
+        fields.pduTag = element.tag;
+        int pduEnd = element.end;
+
+        if (fields.pduTag == (SNMPBERType.SNMP_TRAP.getByte() & 0xFF))
+        {
+            // enterprise, agent address, generic trap, specific trap
+            if (!element.read(message, element.start, pduEnd) || (element.tag != 0x06))
+                return null;
+
+            fields.enterpriseStart = element.start;
+            fields.enterpriseLength = element.length;
+
+            if (!element.read(message, element.end, pduEnd))
+                return null;
+
+            if (!element.read(message, element.end, pduEnd) || (element.tag != 0x02) || (element.length > 8))
+                return null;
+
+            fields.genericTrap = element.readInteger(message);
+
+            if (!element.read(message, element.end, pduEnd) || (element.tag != 0x02) || (element.length > 8))
+                return null;
+
+            fields.specificTrap = element.readInteger(message);
+        }
+        else if ((fields.pduTag == (SNMPBERType.SNMPv2_TRAP.getByte() & 0xFF)) || (fields.pduTag == (SNMPBERType.SNMPv2_INFORM_REQUEST.getByte() & 0xFF)))
+        {
+            // request ID, error status, error index, variable bindings
+            int position = element.start;
+
+            for (int i = 0; i < 3; i++)
+            {
+                if (!element.read(message, position, pduEnd))
+                    return null;
+
+                position = element.end;
+            }
+
+            if (!element.read(message, position, pduEnd) || (element.tag != 0x30))
+                return null;
+
+            int bindingsEnd = element.end;
+
+            // the second binding is (snmpTrapOID.0, trap OID); a trap without one has no trap OID
+            if (element.read(message, element.start, bindingsEnd)
+                && element.read(message, element.end, bindingsEnd) && (element.tag == 0x30))
+            {
+                int bindingEnd = element.end;
+
+                if (element.read(message, element.start, bindingEnd)
+                    && element.read(message, element.end, bindingEnd) && (element.tag == 0x06))
+                {
+                    fields.trapOIDStart = element.start;
+                    fields.trapOIDLength = element.length;
+                }
+            }
+        }
+
+        return fields;
+    }
+
+
+    /**
+     *  Turns the rule into the byte forms compared against datagrams.
+     */
+    private static CompiledRule compile(SNMPTrapFilterRule rule)
+    {
+        CompiledRule compiledRule = new CompiledRule();
+        compiledRule.rule = rule;
+        compiledRule.accept = rule.isAccept();
+
+        if (rule.getSourceAddress() != null)
+        {
+            compiledRule.sourceAddress = rule.getSourceAddress().getAddress();
+            compiledRule.sourceMask = new byte[compiledRule.sourceAddress.length];
+
+            int bits = rule.getSourcePrefixLength();
+            for (int i = 0; i < compiledRule.sourceMask.length; i++)
+            {
+                int byteBits = Math.max(0, Math.min(8, bits - 8 * i));
+                compiledRule.sourceMask[i] = (byte)(0xFF00 >> byteBits);
+            }
+        }
+
+        if (rule.getCommunityName() != null)
+            compiledRule.communityName = rule.getCommunityName().getBytes();
+
+        if (rule.getPDUType() != null)
+            compiledRule.pduTag = rule.getPDUType().getByte() & 0xFF;
+
+        if (rule.getEnterprise() != null)
+            compiledRule.enterprise = encodedContents(rule.getEnterprise());
+
+        if (rule.getTrapOID() != null)
+            compiledRule.trapOID = encodedContents(rule.getTrapOID());
+
+        compiledRule.genericTrap = rule.getGenericTrap();
+        compiledRule.specificTrap = rule.getSpecificTrap();
+
+        compiledRule.needsFields = (compiledRule.communityName != null) || (compiledRule.pduTag >= 0) || (compiledRule.enterprise != null)
+            || (compiledRule.trapOID != null) || (compiledRule.genericTrap >= 0) || (compiledRule.specificTrap >= 0);
+
+        return compiledRule;
+    }
+
+
+    private static byte[] encodedContents(SNMPObjectIdentifier oid)
+    {
+        try
+        {
+            return SNMPBERCodec.extractNextTLV(oid.getBEREncoding(), 0).value;
+        }
+        catch (SNMPBadValueException e)
+        {
+            // can't happen! the identifier's own encoding is well-formed
+            return new byte[0];
+        }
+    }
+
+}
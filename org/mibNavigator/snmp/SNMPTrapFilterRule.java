@@ -0,0 +1,247 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.net.*;
+
+
+
+/**
+ *  The class SNMPTrapFilterRule is one rule of an SNMPTrapFilter: a set of conditions on the fields of a
+ *  received trap, and whether traps meeting all of them are accepted or rejected. Each condition is
+ *  optional; a rule with none matches every trap. A rule is compiled when it's added to a filter, so
+ *  changes made to it afterwards have no effect on that filter.
+ *
+ *  <pre>
+ *      // reject anything from the lab network, except cold starts
+ *      SNMPTrapFilterRule coldStart = new SNMPTrapFilterRule(true);
+ *      coldStart.setSourceAddress(InetAddress.getByName("10.99.0.0"), 16);
+ *      coldStart.setTrapOID(new SNMPObjectIdentifier("1.3.6.1.6.3.1.1.5.1"));
+ *      filter.addRule(coldStart);
+ *
+ *      SNMPTrapFilterRule lab = new SNMPTrapFilterRule(false);
+ *      lab.setSourceAddress(InetAddress.getByName("10.99.0.0"), 16);
+ *      filter.addRule(lab);
+ *  </pre>
+ */
+public class SNMPTrapFilterRule
+{
+    private boolean accept;
+
+    private InetAddress sourceAddress;
+    private int sourcePrefixLength;
+    private String communityName;
+    private SNMPBERType pduType;
+    private SNMPObjectIdentifier enterprise;
+    private SNMPObjectIdentifier trapOID;
+    private int genericTrap = -1;
+    private int specificTrap = -1;
+
+
+    /**
+     *  Create a rule with no conditions, which accepts matching traps if accept is true and rejects them
+     *  otherwise.
+     */
+    public SNMPTrapFilterRule(boolean accept)
+    {
+        this.accept = accept;
+    }
+
+
+    /**
+     *  Returns true if matching traps are accepted, false if they're rejected.
+     */
+    public boolean isAccept()
+    {
+        return accept;
+    }
+
+
+    /**
+     *  Matches traps sent from the supplied network: addresses whose first prefixLength bits are those of
+     *  the supplied address (e.g., 10.1.0.0 with 16 for 10.1.0.0/16; the full address length for a single
+     *  host).
+     *
+     *  @throws IllegalArgumentException if the prefix length is longer than the address
+     */
+    public void setSourceAddress(InetAddress address, int prefixLength)
+    {
+        if ((prefixLength < 0) || (prefixLength > address.getAddress().length * 8))
+            throw new IllegalArgumentException("Prefix length " + prefixLength + " out of range for " + address);
+
+        this.sourceAddress = address;
+        this.sourcePrefixLength = prefixLength;
+    }
+
+
+    /**
+     *  Matches traps sent from exactly the supplied address.
+     */
+    public void setSourceAddress(InetAddress address)
+    {
+        this.setSourceAddress(address, address.getAddress().length * 8);
+    }
+
+
+    /**
+     *  Returns the address of the network matched, or null if any source matches.
+     */
+    public InetAddress getSourceAddress()
+    {
+        return sourceAddress;
+    }
+
+
+    /**
+     *  Returns the length in bits of the network prefix matched.
+     */
+    public int getSourcePrefixLength()
+    {
+        return sourcePrefixLength;
+    }
+
+
+    /**
+     *  Matches traps with the supplied community name.
+     */
+    public void setCommunityName(String communityName)
+    {
+        this.communityName = communityName;
+    }
+
+
+    /**
+     *  Returns the community name matched, or null if any matches.
+     */
+    public String getCommunityName()
+    {
+        return communityName;
+    }
+
+
+    /**
+     *  Matches messages with the supplied PDU type: SNMP_TRAP for SNMPv1 traps, SNMPv2_TRAP or
+     *  SNMPv2_INFORM_REQUEST.
+     */
+    public void setPDUType(SNMPBERType pduType)
+    {
+        this.pduType = pduType;
+    }
+
+
+    /**
+     *  Returns the PDU type matched, or null if any matches.
+     */
+    public SNMPBERType getPDUType()
+    {
+        return pduType;
+    }
+
+
+    /**
+     *  Matches SNMPv1 traps whose enterprise OID starts with the supplied one, which must have at least two
+     *  components.
+     *
+     *  @throws IllegalArgumentException if the OID has fewer than two components
+     */
+    public void setEnterprise(SNMPObjectIdentifier enterprise)
+    {
+        checkPrefix(enterprise);
+        this.enterprise = enterprise;
+    }
+
+
+    /**
+     *  Returns the enterprise OID prefix matched, or null if any matches.
+     */
+    public SNMPObjectIdentifier getEnterprise()
+    {
+        return enterprise;
+    }
+
+
+    /**
+     *  Matches traps whose trap OID starts with the supplied one, which must have at least two components.
+     *  For SNMPv1 traps, the trap OID is that given by SNMPTrapDatagram.getTrapOID.
+     *
+     *  @throws IllegalArgumentException if the OID has fewer than two components
+     */
+    public void setTrapOID(SNMPObjectIdentifier trapOID)
+    {
+        checkPrefix(trapOID);
+        this.trapOID = trapOID;
+    }
+
+
+    /**
+     *  Returns the trap OID prefix matched, or null if any matches.
+     */
+    public SNMPObjectIdentifier getTrapOID()
+    {
+        return trapOID;
+    }
+
+
+    /**
+     *  Matches SNMPv1 traps with the supplied generic trap type (0 to 6); -1 matches any.
+     */
+    public void setGenericTrap(int genericTrap)
+    {
+        this.genericTrap = genericTrap;
+    }
+
+
+    /**
+     *  Returns the generic trap type matched, or -1 if any matches.
+     */
+    public int getGenericTrap()
+    {
+        return genericTrap;
+    }
+
+
+    /**
+     *  Matches SNMPv1 traps with the supplied specific trap type; -1 matches any.
+     */
+    public void setSpecificTrap(int specificTrap)
+    {
+        this.specificTrap = specificTrap;
+    }
+
+
+    /**
+     *  Returns the specific trap type matched, or -1 if any matches.
+     */
+    public int getSpecificTrap()
+    {
+        return specificTrap;
+    }
+
+
+    private static void checkPrefix(SNMPObjectIdentifier prefix)
+    {
+        // the first two components share a byte in the encoding, which the compiled filter compares
+        if (((long[])prefix.getValue()).length < 2)
+            throw new IllegalArgumentException("OID prefix " + prefix + " must have at least two components");
+    }
+
+}
@@ -0,0 +1,345 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+
+
+/**
+ *  The class SNMPTrapGenerator sends traps to a destination at a steady target rate, for load testing trap
+ *  receivers. It sends a weighted mix of SNMPTrapTemplates - SNMPv1 traps, SNMPv2 traps, or both - each
+ *  filled in with the current sysUpTime, a fresh request ID and, for the patched bindings, a sequence
+ *  number counting the traps sent, so the receiving end can tell which were lost.
+ *
+ *  Traps are sent by the thread calling run, through a non-blocking channel; the generator keeps track of
+ *  the traps due since it started, sending as many as it falls behind by and pausing briefly when it's
+ *  ahead, so short stalls are made up and the average rate holds. A single thread filling in templates
+ *  can send well over 100,000 traps a second; for higher rates use several generators.
+ *
+ *  The main method runs a generator from the command line.
+ */
+public class SNMPTrapGenerator
+{
+    // longest pause while ahead of schedule, in nanoseconds
+    private static final long MAXIMUM_PAUSE = 1000000;
+
+    private InetSocketAddress destination;
+    private List<SNMPTrapTemplate> templates = new ArrayList<SNMPTrapTemplate>();
+    private List<Integer> weights = new ArrayList<Integer>();
+    private int totalWeight = 0;
+    private double rate = 1000;
+
+    private volatile boolean stopped;
+    private volatile long sentCount;
+    private volatile long blockedCount;
+
+
+
+    /**
+     *  Create a generator sending to the supplied destination.
+     */
+    public SNMPTrapGenerator(InetSocketAddress destination)
+    {
+        this.destination = destination;
+    }
+
+
+    /**
+     *  Add a template to the mix of traps sent; each trap is made from a template chosen at random, in
+     *  proportion to the templates' weights.
+     */
+    public synchronized void addTemplate(SNMPTrapTemplate template, int weight)
+    {
+        if (weight <= 0)
+            throw new IllegalArgumentException("Template weight must be positive");
+
+        templates.add(template);
+        weights.add(weight);
+        totalWeight += weight;
+    }
+
+
+    /**
+     *  Set the number of traps to send per second; the default is 1000.
+     */
+    public synchronized void setRate(double trapsPerSecond)
+    {
+        if (trapsPerSecond <= 0)
+            throw new IllegalArgumentException("Trap rate must be positive");
+
+        this.rate = trapsPerSecond;
+    }
+
+
+    /**
+     *  Returns the number of traps sent by the current or last run.
+     */
+    public long getSentCount()
+    {
+        return sentCount;
+    }
+
+
+    /**
+     *  Returns the number of times the current or last run found the socket's send buffer full and had to
+     *  wait for it to drain; a count that keeps rising means the local network stack can't keep up with
+     *  the rate.
+     */
+    public long getBlockedCount()
+    {
+        return blockedCount;
+    }
+
+
+    /**
+     *  Stop the current run, from another thread.
+     */
+    public void stop()
+    {
+        stopped = true;
+    }
+
+
+    /**
+     *  Send traps at the set rate for the supplied number of milliseconds, or until stopped; returns the
+     *  number sent.
+     *
+     *  @throws IOException Thrown when the channel can't be opened or a send fails.
+     */
+    public long run(long durationMillis)
+        throws IOException
+    {
+        SNMPTrapTemplate[] mix;
+        int[] cumulativeWeights;
+        double trapsPerNano;
+
+        synchronized(this)
+        {
+            if (templates.isEmpty())
+                throw new IllegalStateException("No trap templates added");
+
+            mix = templates.toArray(new SNMPTrapTemplate[templates.size()]);
+            cumulativeWeights = new int[mix.length];
+
+            int cumulative = 0;
+            for (int i = 0; i < mix.length; i++)
+            {
+                cumulative += weights.get(i);
+                cumulativeWeights[i] = cumulative;
+            }
+
+            trapsPerNano = rate / 1e9;
+        }
+
+        int maximumLength = 0;
+        for (SNMPTrapTemplate template : mix)
+            maximumLength = Math.max(maximumLength, template.getMaximumLength());
+
+        int patchedVarBinds = 0;
+        for (SNMPTrapTemplate template : mix)
+            patchedVarBinds = Math.max(patchedVarBinds, template.getPatchedVarBindCount());
+
+        byte[] message = new byte[maximumLength];
+        long[] values = new long[patchedVarBinds];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(maximumLength);
+        Random random = new Random();
+
+        stopped = false;
+        sentCount = 0;
+        blockedCount = 0;
+
+        DatagramChannel channel = DatagramChannel.open();
+
+        try
+        {
+            channel.configureBlocking(false);
+            channel.connect(destination);
+
+            long start = System.nanoTime();
+            long end = start + durationMillis * 1000000L;
+            long sent = 0;
+            long blocked = 0;
+            int requestID = 1;
+
+            while (!stopped)
+            {
+                long now = System.nanoTime();
+                if (now - end >= 0)
+                    break;
+
+                long due = (long)((now - start) * trapsPerNano) + 1;
+
+                if (sent >= due)
+                {
+                    // ahead of schedule; pause until the next trap is due
+                    long pause = (long)((sent + 1 - due) / trapsPerNano);
+                    LockSupport.parkNanos(Math.min(pause, MAXIMUM_PAUSE));
+                    continue;
+                }
+
+                long sysUpTime = (now - start) / 10000000L;
+
+                while (sent < due)
+                {
+                    SNMPTrapTemplate template = mix[0];
+                    if (mix.length > 1)
+                    {
+                        int choice = random.nextInt(cumulativeWeights[mix.length - 1]);
+                        int i = 0;
+                        while (cumulativeWeights[i] <= choice)
+                            i++;
+                        template = mix[i];
+                    }
+
+                    Arrays.fill(values, sent);
+                    int length = template.fillIn(message, 0, sysUpTime, requestID++, values);
+
+                    buffer.clear();
+                    buffer.put(message, 0, length);
+                    buffer.flip();
+
+                    while (channel.write(buffer) == 0)
+                    {
+                        // send buffer full; give it a moment to drain
+                        blocked++;
+                        LockSupport.parkNanos(10000);
+                    }
+
+                    sent++;
+
+                    if ((sent & 0xFF) == 0)
+                    {
+                        sentCount = sent;
+                        blockedCount = blocked;
+
+                        if (stopped)
+                            break;
+                    }
+                }
+            }
+
+            sentCount = sent;
+            blockedCount = blocked;
+            return sent;
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+
+
+    /**
+     *  Returns an SNMPv1 enterprise-specific trap template, with the value of its single ifIndex binding
+     *  patched.
+     */
+    private static SNMPTrapTemplate createV1Template(String community)
+        throws SNMPBadValueException
+    {
+        SNMPSequence varList = new SNMPSequence();
+        varList.addSNMPObject(new SNMPVariablePair(new SNMPObjectIdentifier("1.3.6.1.2.1.2.2.1.1.1"), new SNMPInteger(0)));
+
+        SNMPv1TrapPDU pdu = new SNMPv1TrapPDU(new SNMPObjectIdentifier("1.3.6.1.4.1.99999"), new SNMPIPAddress("127.0.0.1"), 6, 1, new SNMPTimeTicks(0), varList);
+        return new SNMPTrapTemplate(0, community, pdu, 0);
+    }
+
+
+    /**
+     *  Returns an SNMPv2 linkDown trap template, with the value of its ifIndex binding patched.
+     */
+    private static SNMPTrapTemplate createV2Template(String community)
+        throws SNMPBadValueException
+    {
+        SNMPSequence varList = new SNMPSequence();
+        varList.addSNMPObject(new SNMPVariablePair(new SNMPObjectIdentifier("1.3.6.1.2.1.2.2.1.1.1"), new SNMPInteger(0)));
+        varList.addSNMPObject(new SNMPVariablePair(new SNMPObjectIdentifier("1.3.6.1.2.1.2.2.1.7.1"), new SNMPInteger(2)));
+        varList.addSNMPObject(new SNMPVariablePair(new SNMPObjectIdentifier("1.3.6.1.2.1.2.2.1.8.1"), new SNMPInteger(2)));
+
+        SNMPv2TrapPDU pdu = new SNMPv2TrapPDU(new SNMPTimeTicks(0), new SNMPObjectIdentifier("1.3.6.1.6.3.1.1.5.3"), varList);
+        return new SNMPTrapTemplate(1, community, pdu, 2);
+    }
+
+
+    /**
+     *  Sends traps from the command line:
+     *
+     *  <pre>
+     *      SNMPTrapGenerator host[:port] trapsPerSecond seconds [v1Percent [community]]
+     *  </pre>
+     *
+     *  The traps are a mix of SNMPv1 enterprise-specific traps and SNMPv2 linkDown traps, half of each
+     *  unless a percentage of SNMPv1 traps is given, each with an ifIndex binding counting the traps sent.
+     */
+    public static void main(String[] args)
+    {
+        if (args.length < 3)
+        {
+            System.err.println("Usage: SNMPTrapGenerator host[:port] trapsPerSecond seconds [v1Percent [community]]");
+            System.exit(1);
+        }
+
+        try
+        {
+            String host = args[0];
+            int port = SNMPTrapSender.SNMP_TRAP_PORT;
+
+            int colon = host.lastIndexOf(':');
+            if ((colon > 0) && (host.indexOf(':') == colon))
+            {
+                port = Integer.parseInt(host.substring(colon + 1));
+                host = host.substring(0, colon);
+            }
+
+            double rate = Double.parseDouble(args[1]);
+            long seconds = Long.parseLong(args[2]);
+            int v1Percent = (args.length > 3) ? Integer.parseInt(args[3]) : 50;
+            String community = (args.length > 4) ? args[4] : "public";
+
+            SNMPTrapGenerator generator = new SNMPTrapGenerator(new InetSocketAddress(host, port));
+            generator.setRate(rate);
+
+            if (v1Percent > 0)
+                generator.addTemplate(createV1Template(community), v1Percent);
+            if (v1Percent < 100)
+                generator.addTemplate(createV2Template(community), 100 - v1Percent);
+
+            long start = System.nanoTime();
+            long sent = generator.run(seconds * 1000);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+
+            System.out.println("Sent " + sent + " traps in " + String.format("%.2f", elapsed) + " s (" + Math.round(sent / elapsed) + " traps/s); send buffer full " + generator.getBlockedCount() + " times");
+        }
+        catch (Exception e)
+        {
+            System.err.println("Trap generation failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+}
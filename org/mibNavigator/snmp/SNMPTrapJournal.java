@@ -0,0 +1,978 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+
+/**
+ *  The class SNMPTrapJournal keeps a durable record of received traps and inform requests, and replays them
+ *  on demand; e.g., to rebuild downstream state after a crash, or to answer "traps from this device between
+ *  these times". Set it as an SNMPTrapReceiver's journal, so every datagram received is recorded as it
+ *  comes off the socket, before the receiver filters, deduplicates, sheds or decodes anything:
+ *
+ *  <pre>
+ *      SNMPTrapJournal journal = new SNMPTrapJournal(new File("traps"), errorLogger);
+ *      receiver.setTrapJournal(journal);
+ *  </pre>
+ *
+ *  It can also be added as a batch listener, or a trap datagram listener, to record only the traps those
+ *  listeners are given: the ones that passed the filter and deduplicator, and for a batch listener, were
+ *  decoded successfully.
+ *
+ *  Each trap is appended as it came off the network, in its raw BER form, behind a small header holding the
+ *  receive time, the source address and port, and the trap OID. Records are framed by their length alone,
+ *  so datagrams that were truncated or aren't SNMP messages at all are kept like any other, and skipped when
+ *  the journal is replayed. The journal is a directory of fixed-size segment files, each memory-mapped while
+ *  it is being written, so appending is a plain memory copy; there is no fsync per trap. A record becomes
+ *  part of the journal only once its length word is written, after the rest of it, so a process crash loses
+ *  at most the record being written; traps since the last call to force (made whenever a segment fills up,
+ *  and on close) may be lost if the whole machine goes down. A full segment is forced and its indexes saved
+ *  on a background thread, so appending - on the receiver's socket threads, for a receiver's journal -
+ *  isn't held up while it's written out.
+ *
+ *  Each segment carries two sparse indexes over blocks of consecutive records: the range of receive times
+ *  in each block, and which blocks hold each trap OID. These are kept in memory while the segment is
+ *  written and saved alongside it once it is full, so replaying a time range or a trap OID only reads the
+ *  blocks that can hold matching traps. Indexes lost in a crash are rebuilt from the segment itself when the
+ *  journal is next opened.
+ */
+public class SNMPTrapJournal implements SNMPBatchTrapListener, SNMPTrapDatagramListener
+{
+    /**
+     *  The default size of each segment file, 64 MB.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int SEGMENT_MAGIC = 0x534E544A;      // "SNTJ"
+    private static final int INDEX_MAGIC = 0x534E5449;        // "SNTI"
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_LENGTH = 8;
+    private static final int RECORDS_PER_BLOCK = 64;
+
+    // the largest UDP payload, with the record header
+    private static final int MAXIMUM_RECORD_LENGTH = 4 + 8 + 1 + 16 + 2 + 2 + 65535 + 65535;
+    private static final int MINIMUM_SEGMENT_SIZE = 1024 * 1024;
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String INDEX_SUFFIX = ".index";
+
+
+    /*
+     *  A block of consecutive records in a segment, with the range of their receive times.
+     */
+    private static class Block
+    {
+        int offset;
+        int recordCount;
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+
+        Block copy()
+        {
+            Block copy = new Block();
+            copy.offset = offset;
+            copy.recordCount = recordCount;
+            copy.minTime = minTime;
+            copy.maxTime = maxTime;
+            return copy;
+        }
+    }
+
+
+    /*
+     *  A segment file and its indexes; the buffer is only held for the segment being written.
+     */
+    private static class Segment
+    {
+        int number;
+        File file;
+        File indexFile;
+        int end = SEGMENT_HEADER_LENGTH;
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        ArrayList<Block> blocks = new ArrayList<Block>();
+        HashMap<SNMPObjectIdentifier,BitSet> trapOIDBlocks = new HashMap<SNMPObjectIdentifier,BitSet>();
+        MappedByteBuffer buffer;
+
+        void addToIndex(int offset, long receiveTime, SNMPObjectIdentifier trapOID)
+        {
+            Block block = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+
+            if ((block == null) || (block.recordCount >= RECORDS_PER_BLOCK))
+            {
+                block = new Block();
+                block.offset = offset;
+                blocks.add(block);
+            }
+
+            block.recordCount++;
+            block.minTime = Math.min(block.minTime, receiveTime);
+            block.maxTime = Math.max(block.maxTime, receiveTime);
+            minTime = Math.min(minTime, receiveTime);
+            maxTime = Math.max(maxTime, receiveTime);
+
+            if (trapOID != null)
+            {
+                BitSet blockSet = trapOIDBlocks.get(trapOID);
+                if (blockSet == null)
+                {
+                    blockSet = new BitSet();
+                    trapOIDBlocks.put(trapOID, blockSet);
+                }
+
+                blockSet.set(blocks.size() - 1);
+            }
+        }
+    }
+
+
+    /*
+     *  A record read back from a segment.
+     */
+    private static class Record
+    {
+        SNMPTrapDatagram datagram;
+        SNMPObjectIdentifier trapOID;
+        int next;
+    }
+
+
+    /*
+     *  The blocks of one segment a replay must read, and the buffer to read them from if the segment is
+     *  still being written.
+     */
+    private static class ReplayPlan
+    {
+        File file;
+        ByteBuffer buffer;
+        List<Block> blocks = new ArrayList<Block>();
+    }
+
+
+    /*
+     *  Receives the records selected by a replay.
+     */
+    private interface RecordHandler
+    {
+        void handle(Record record);
+    }
+
+
+    private File directory;
+    private int segmentSize;
+    private PrintWriter errorLogger;
+
+    // all segments, oldest first; the last is the one being written
+    private ArrayList<Segment> segments = new ArrayList<Segment>();
+    private FileChannel activeChannel;
+    private boolean closed = false;
+
+    // seals full segments, so writing them out doesn't hold up appends; a daemon thread, so an idle
+    // journal doesn't keep the application running
+    private ExecutorService sealer = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+
+
+    /**
+     *  Open the journal in the supplied directory, creating it if needed, with the default segment size.
+     *  Errors appending traps delivered as a batch listener are reported to the supplied PrintWriter.
+     *
+     *  @throws IOException Indicates the directory or its segment files couldn't be opened.
+     */
+    public SNMPTrapJournal(File directory, PrintWriter errorLogger)
+        throws IOException
+    {
+        this(directory, DEFAULT_SEGMENT_SIZE, errorLogger);
+    }
+
+
+    /**
+     *  Open the journal in the supplied directory, creating it if needed, with new segments of the supplied
+     *  size (at least 1 MB). Existing segments are kept at whatever size they were created with; appending
+     *  resumes after the last complete record of the newest one.
+     *
+     *  @throws IOException Indicates the directory or its segment files couldn't be opened.
+     */
+    public SNMPTrapJournal(File directory, int segmentSize, PrintWriter errorLogger)
+        throws IOException
+    {
+        this.directory = directory;
+        this.segmentSize = Math.max(segmentSize, MINIMUM_SEGMENT_SIZE);
+        this.errorLogger = errorLogger;
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Can't create journal directory " + directory);
+
+        this.openSegments();
+    }
+
+
+
+    /**
+     *  Appends each trap of the batch to the journal, reporting any error to the error logger.
+     */
+    public void processTrapBatch(List<SNMPReceivedTrap> traps)
+    {
+        try
+        {
+            synchronized(this)
+            {
+                for (SNMPReceivedTrap trap : traps)
+                    this.append(trap.getDatagram());
+            }
+        }
+        catch (IOException e)
+        {
+            errorLogger.println("IOException writing trap journal: " + e.toString());
+            errorLogger.flush();
+        }
+    }
+
+
+    /**
+     *  Appends the datagram to the journal, reporting any error to the error logger.
+     */
+    public void processTrapDatagram(SNMPTrapDatagram datagram)
+    {
+        try
+        {
+            this.append(datagram);
+        }
+        catch (IOException e)
+        {
+            errorLogger.println("IOException writing trap journal: " + e.toString());
+            errorLogger.flush();
+        }
+    }
+
+
+    /**
+     *  Appends the datagram to the journal, starting a new segment if the current one is full.
+     *
+     *  @throws IOException Indicates the journal is closed or a new segment couldn't be created.
+     */
+    public synchronized void append(SNMPTrapDatagram datagram)
+        throws IOException
+    {
+        if (closed)
+            throw new IOException("Trap journal closed");
+
+        byte[] address = datagram.getSourceAddress().getAddress();
+        SNMPObjectIdentifier trapOID = datagram.getTrapOID();
+        byte[] trapOIDEncoding = (trapOID != null) ? trapOID.getBEREncoding() : new byte[0];
+        byte[] message = datagram.getEncodedMessage();
+
+        // receive time, address length and address, port, trap OID length and OID, message
+        int recordLength = 8 + 1 + address.length + 2 + 2 + trapOIDEncoding.length + message.length;
+
+        Segment segment = segments.get(segments.size() - 1);
+
+        if (segment.end + 4 + recordLength > segment.buffer.capacity())
+        {
+            final Callable<Void> sealing = this.detachActiveSegment();
+            sealer.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        sealing.call();
+                    }
+                    catch (Exception e)
+                    {
+                        errorLogger.println("Exception sealing trap journal segment: " + e.toString());
+                        errorLogger.flush();
+                    }
+                }
+            });
+
+            segment = this.createSegment(segment.number + 1);
+
+            if (segment.end + 4 + recordLength > segment.buffer.capacity())
+                throw new IOException("Trap of " + message.length + " bytes too large for journal segment");
+        }
+
+        // write the record body, then publish it by writing its length
+        ByteBuffer buffer = segment.buffer;
+        int position = segment.end + 4;
+
+        buffer.putLong(position, datagram.getReceiveTime());
+        position += 8;
+        buffer.put(position, (byte)address.length);
+        position += 1;
+        putBytes(buffer, position, address);
+        position += address.length;
+        buffer.putChar(position, (char)datagram.getSourcePort());
+        position += 2;
+        buffer.putShort(position, (short)trapOIDEncoding.length);
+        position += 2;
+        putBytes(buffer, position, trapOIDEncoding);
+        position += trapOIDEncoding.length;
+        putBytes(buffer, position, message);
+
+        buffer.putInt(segment.end, recordLength);
+
+        segment.addToIndex(segment.end, datagram.getReceiveTime(), trapOID);
+        segment.end += 4 + recordLength;
+    }
+
+
+    /**
+     *  Writes appended traps through to the disk.
+     */
+    public void force()
+    {
+        MappedByteBuffer buffer;
+
+        synchronized(this)
+        {
+            if (closed)
+                return;
+
+            buffer = segments.get(segments.size() - 1).buffer;
+        }
+
+        // outside the lock, so appends carry on while the pages are written
+        buffer.force();
+    }
+
+
+    /**
+     *  Forces the journal to disk, saves the indexes of the segment being written, and closes it, once any
+     *  full segments still being sealed in the background are done. Further appends fail; replays remain
+     *  possible.
+     *
+     *  @throws IOException Indicates the indexes couldn't be saved.
+     */
+    public void close()
+        throws IOException
+    {
+        Future<Void> sealed;
+
+        synchronized(this)
+        {
+            if (closed)
+                return;
+
+            closed = true;
+            sealed = sealer.submit(this.detachActiveSegment());
+        }
+
+        sealer.shutdown();
+
+        try
+        {
+            sealed.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted closing trap journal");
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+                throw (IOException)e.getCause();
+
+            throw new IOException(e.getCause().toString());
+        }
+    }
+
+
+
+    /**
+     *  Replays the journaled traps received between the supplied times (in milliseconds since the epoch,
+     *  inclusive), in the order they were journaled, to the supplied listeners; either listener may be null.
+     *  Inform requests are skipped.
+     *
+     *  @throws IOException Indicates a segment couldn't be read.
+     */
+    public void replay(long fromTime, long toTime, SNMPv1TrapListener v1Listener, SNMPv2TrapListener v2Listener)
+        throws IOException
+    {
+        this.replay(fromTime, toTime, null, null, v1Listener, v2Listener);
+    }
+
+
+    /**
+     *  Replays the journaled traps received between the supplied times (in milliseconds since the epoch,
+     *  inclusive) from the supplied source address, whose trap OIDs start with the supplied prefix, in the
+     *  order they were journaled, to the supplied listeners. The address and prefix may be null, to replay
+     *  traps from any source or with any trap OID, as may either listener. SNMPv1 traps have the trap OIDs
+     *  given by SNMPTrapDatagram.getTrapOID. Inform requests are skipped.
+     *
+     *  @throws IOException Indicates a segment couldn't be read.
+     */
+    public void replay(long fromTime, long toTime, InetAddress sourceAddress, SNMPObjectIdentifier trapOIDPrefix, final SNMPv1TrapListener v1Listener, final SNMPv2TrapListener v2Listener)
+        throws IOException
+    {
+        this.replay(fromTime, toTime, sourceAddress, trapOIDPrefix, new RecordHandler()
+        {
+            public void handle(Record record)
+            {
+                SNMPReceivedTrap trap = decode(record);
+                if (trap == null)
+                    return;
+
+                Object pdu = trap.getPDU();
+
+                if ((pdu instanceof SNMPv1TrapPDU) && (v1Listener != null))
+                    v1Listener.processv1Trap((SNMPv1TrapPDU)pdu);
+                else if ((pdu instanceof SNMPv2TrapPDU) && (v2Listener != null))
+                    v2Listener.processv2Trap((SNMPv2TrapPDU)pdu);
+            }
+        });
+    }
+
+
+    /**
+     *  Replays the journaled traps and inform requests selected as for the other replay methods to the
+     *  supplied batch listener, in batches of at most the supplied size.
+     *
+     *  @throws IOException Indicates a segment couldn't be read.
+     */
+    public void replay(long fromTime, long toTime, InetAddress sourceAddress, SNMPObjectIdentifier trapOIDPrefix, final SNMPBatchTrapListener listener, final int maxBatchSize)
+        throws IOException
+    {
+        final List<SNMPReceivedTrap> batch = new ArrayList<SNMPReceivedTrap>();
+
+        this.replay(fromTime, toTime, sourceAddress, trapOIDPrefix, new RecordHandler()
+        {
+            public void handle(Record record)
+            {
+                SNMPReceivedTrap trap = decode(record);
+                if (trap == null)
+                    return;
+
+                batch.add(trap);
+
+                if (batch.size() >= maxBatchSize)
+                {
+                    listener.processTrapBatch(new ArrayList<SNMPReceivedTrap>(batch));
+                    batch.clear();
+                }
+            }
+        });
+
+        if (!batch.isEmpty())
+            listener.processTrapBatch(batch);
+    }
+
+
+    /**
+     *  Decodes the record's trap, or returns null if it doesn't decode to a trap or inform request; the
+     *  journal keeps every datagram received, including truncated ones and ones that aren't SNMP messages,
+     *  and replays skip them.
+     */
+    private static SNMPReceivedTrap decode(Record record)
+    {
+        try
+        {
+            return new SNMPReceivedTrap(record.datagram, record.datagram.decode());
+        }
+        catch (SNMPBadValueException e)
+        {
+            return null;
+        }
+        catch (RuntimeException e)
+        {
+            // a truncated message can run off the end of its encoding
+            return null;
+        }
+    }
+
+
+    /**
+     *  Reads the records matching the query, using the indexes to pick the blocks to read.
+     */
+    private void replay(long fromTime, long toTime, InetAddress sourceAddress, SNMPObjectIdentifier trapOIDPrefix, RecordHandler handler)
+        throws IOException
+    {
+        for (ReplayPlan plan : this.planReplay(fromTime, toTime, trapOIDPrefix))
+        {
+            ByteBuffer buffer = plan.buffer;
+
+            if (buffer == null)
+            {
+                try (FileChannel channel = FileChannel.open(plan.file.toPath()))
+                {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+
+            for (Block block : plan.blocks)
+            {
+                int position = block.offset;
+
+                for (int i = 0; i < block.recordCount; i++)
+                {
+                    Record record = readRecord(buffer, position);
+                    if (record == null)
+                        throw new IOException("Corrupt record in trap journal segment " + plan.file);
+
+                    position = record.next;
+
+                    long receiveTime = record.datagram.getReceiveTime();
+                    if ((receiveTime < fromTime) || (receiveTime > toTime))
+                        continue;
+
+                    if ((sourceAddress != null) && !sourceAddress.equals(record.datagram.getSourceAddress()))
+                        continue;
+
+                    if ((trapOIDPrefix != null) && ((record.trapOID == null) || !record.trapOID.startsWith(trapOIDPrefix)))
+                        continue;
+
+                    handler.handle(record);
+                }
+            }
+        }
+    }
+
+
+    /**
+     *  Picks out the blocks of each segment that may hold matching traps. The blocks of the segment being
+     *  written are copied, so the replay can then proceed without holding the lock.
+     */
+    private synchronized List<ReplayPlan> planReplay(long fromTime, long toTime, SNMPObjectIdentifier trapOIDPrefix)
+    {
+        List<ReplayPlan> plans = new ArrayList<ReplayPlan>();
+
+        for (Segment segment : segments)
+        {
+            if ((segment.maxTime < fromTime) || (segment.minTime > toTime))
+                continue;
+
+            BitSet trapOIDBlocks = null;
+
+            if (trapOIDPrefix != null)
+            {
+                trapOIDBlocks = new BitSet();
+
+                for (Map.Entry<SNMPObjectIdentifier,BitSet> entry : segment.trapOIDBlocks.entrySet())
+                {
+                    if (entry.getKey().startsWith(trapOIDPrefix))
+                        trapOIDBlocks.or(entry.getValue());
+                }
+            }
+
+            ReplayPlan plan = new ReplayPlan();
+            plan.file = segment.file;
+
+            if (segment.buffer != null)
+                plan.buffer = segment.buffer.duplicate();
+
+            for (int i = 0; i < segment.blocks.size(); i++)
+            {
+                Block block = segment.blocks.get(i);
+
+                if ((block.maxTime < fromTime) || (block.minTime > toTime))
+                    continue;
+
+                if ((trapOIDBlocks != null) && !trapOIDBlocks.get(i))
+                    continue;
+
+                plan.blocks.add(block.copy());
+            }
+
+            if (!plan.blocks.isEmpty())
+                plans.add(plan);
+        }
+
+        return plans;
+    }
+
+
+
+    /**
+     *  Reads the indexes of the existing segments, rebuilding any that are missing, and opens the newest
+     *  segment (or a new one) for appending.
+     */
+    private void openSegments()
+        throws IOException
+    {
+        File[] files = directory.listFiles();
+        if (files == null)
+            throw new IOException("Can't list journal directory " + directory);
+
+        TreeMap<Integer,File> segmentFiles = new TreeMap<Integer,File>();
+
+        for (File file : files)
+        {
+            String name = file.getName();
+
+            if (name.endsWith(SEGMENT_SUFFIX))
+            {
+                try
+                {
+                    segmentFiles.put(Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+                }
+                catch (NumberFormatException e)
+                {
+                    // not one of ours; ignore it
+                }
+            }
+        }
+
+        if (segmentFiles.isEmpty())
+        {
+            this.createSegment(0);
+            return;
+        }
+
+        int lastNumber = segmentFiles.lastKey();
+
+        for (Map.Entry<Integer,File> entry : segmentFiles.entrySet())
+        {
+            Segment segment = new Segment();
+            segment.number = entry.getKey();
+            segment.file = entry.getValue();
+            segment.indexFile = new File(directory, segmentName(segment.number) + INDEX_SUFFIX);
+
+            if (segment.number == lastNumber)
+            {
+                // the newest segment is always rescanned, since its index may not have been saved
+                segment.indexFile.delete();
+                activeChannel = FileChannel.open(segment.file.toPath(), java.nio.file.StandardOpenOption.READ, java.nio.file.StandardOpenOption.WRITE);
+                segment.buffer = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, activeChannel.size());
+                this.scanSegment(segment, segment.buffer);
+
+                // clear any torn record after the last complete one, so it can't be mistaken for data later
+                int tornEnd = Math.min(segment.end + MAXIMUM_RECORD_LENGTH, segment.buffer.capacity());
+                for (int position = segment.end; position < tornEnd; position++)
+                {
+                    if (segment.buffer.get(position) != 0)
+                        segment.buffer.put(position, (byte)0);
+                }
+            }
+            else if (!this.loadIndex(segment))
+            {
+                try (FileChannel channel = FileChannel.open(segment.file.toPath()))
+                {
+                    this.scanSegment(segment, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+
+                this.saveIndex(segment);
+            }
+
+            segments.add(segment);
+        }
+    }
+
+
+    /**
+     *  Creates, maps and adds a new segment with the supplied number, to be appended to.
+     */
+    private Segment createSegment(int number)
+        throws IOException
+    {
+        Segment segment = new Segment();
+        segment.number = number;
+        segment.file = new File(directory, segmentName(number) + SEGMENT_SUFFIX);
+        segment.indexFile = new File(directory, segmentName(number) + INDEX_SUFFIX);
+
+        try (RandomAccessFile file = new RandomAccessFile(segment.file, "rw"))
+        {
+            file.setLength(segmentSize);
+        }
+
+        activeChannel = FileChannel.open(segment.file.toPath(), java.nio.file.StandardOpenOption.READ, java.nio.file.StandardOpenOption.WRITE);
+        segment.buffer = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.buffer.putInt(0, SEGMENT_MAGIC);
+        segment.buffer.putInt(4, FORMAT_VERSION);
+
+        segments.add(segment);
+        return segment;
+    }
+
+
+    /**
+     *  Stops appending to the segment being written, returning the task that forces it to disk, saves its
+     *  indexes and releases it; it will only be read from then on. Nothing more is added to the segment, so
+     *  the task can run on the sealing thread without holding the lock until it releases the buffer.
+     */
+    private Callable<Void> detachActiveSegment()
+    {
+        final Segment segment = segments.get(segments.size() - 1);
+        final FileChannel channel = activeChannel;
+        activeChannel = null;
+
+        return new Callable<Void>()
+        {
+            public Void call()
+                throws IOException
+            {
+                segment.buffer.force();
+                channel.close();
+                saveIndex(segment);
+
+                // replays read it from the file from now on
+                synchronized(SNMPTrapJournal.this)
+                {
+                    segment.buffer = null;
+                }
+
+                return null;
+            }
+        };
+    }
+
+
+    /**
+     *  Rebuilds the indexes of the segment by reading its records, and finds where they end.
+     *
+     *  @throws IOException Indicates the file isn't a journal segment.
+     */
+    private void scanSegment(Segment segment, ByteBuffer buffer)
+        throws IOException
+    {
+        if ((buffer.capacity() < SEGMENT_HEADER_LENGTH) || (buffer.getInt(0) != SEGMENT_MAGIC) || (buffer.getInt(4) != FORMAT_VERSION))
+            throw new IOException("Not a trap journal segment: " + segment.file);
+
+        int position = SEGMENT_HEADER_LENGTH;
+        Record record;
+
+        while ((record = readRecord(buffer, position)) != null)
+        {
+            segment.addToIndex(position, record.datagram.getReceiveTime(), record.trapOID);
+            position = record.next;
+        }
+
+        segment.end = position;
+    }
+
+
+    /**
+     *  Reads the record at the supplied position, or returns null if there's no complete record there. A
+     *  record is framed by its length word alone; its message isn't checked, since every datagram received
+     *  is journaled, whether or not it's a well-formed SNMP message.
+     */
+    private static Record readRecord(ByteBuffer buffer, int position)
+    {
+        try
+        {
+            if (position + 4 > buffer.capacity())
+                return null;
+
+            int recordLength = buffer.getInt(position);
+            int end = position + 4 + recordLength;
+
+            if ((recordLength <= 0) || (end > buffer.capacity()) || (end < 0))
+                return null;
+
+            position += 4;
+            long receiveTime = buffer.getLong(position);
+            position += 8;
+
+            byte[] address = new byte[buffer.get(position)];
+            position += 1;
+            getBytes(buffer, position, address);
+            position += address.length;
+
+            int sourcePort = buffer.getChar(position);
+            position += 2;
+
+            byte[] trapOIDEncoding = new byte[buffer.getShort(position)];
+            position += 2;
+            getBytes(buffer, position, trapOIDEncoding);
+            position += trapOIDEncoding.length;
+
+            byte[] message = new byte[end - position];
+            getBytes(buffer, position, message);
+
+            Record record = new Record();
+            record.datagram = new SNMPTrapDatagram(message, InetAddress.getByAddress(address), sourcePort, receiveTime);
+            record.next = end;
+
+            if (trapOIDEncoding.length > 0)
+                record.trapOID = new SNMPObjectIdentifier(SNMPBERCodec.extractNextTLV(trapOIDEncoding, 0).value);
+
+            return record;
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            return null;
+        }
+        catch (NegativeArraySizeException e)
+        {
+            return null;
+        }
+        catch (UnknownHostException e)
+        {
+            // address of the wrong length
+            return null;
+        }
+        catch (SNMPBadValueException e)
+        {
+            return null;
+        }
+    }
+
+
+    /**
+     *  Saves the indexes of the segment alongside it.
+     */
+    private void saveIndex(Segment segment)
+        throws IOException
+    {
+        File temporaryFile = new File(directory, segmentName(segment.number) + INDEX_SUFFIX + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile))))
+        {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(segment.end);
+
+            out.writeInt(segment.blocks.size());
+            for (Block block : segment.blocks)
+            {
+                out.writeInt(block.offset);
+                out.writeInt(block.recordCount);
+                out.writeLong(block.minTime);
+                out.writeLong(block.maxTime);
+            }
+
+            out.writeInt(segment.trapOIDBlocks.size());
+            for (Map.Entry<SNMPObjectIdentifier,BitSet> entry : segment.trapOIDBlocks.entrySet())
+            {
+                byte[] trapOIDEncoding = entry.getKey().getBEREncoding();
+                out.writeShort(trapOIDEncoding.length);
+                out.write(trapOIDEncoding);
+
+                long[] blockBits = entry.getValue().toLongArray();
+                out.writeInt(blockBits.length);
+                for (long bits : blockBits)
+                    out.writeLong(bits);
+            }
+        }
+
+        if (!temporaryFile.renameTo(segment.indexFile))
+        {
+            // rename won't replace an existing file on some platforms
+            segment.indexFile.delete();
+            if (!temporaryFile.renameTo(segment.indexFile))
+                throw new IOException("Can't save trap journal index " + segment.indexFile);
+        }
+    }
+
+
+    /**
+     *  Reads the saved indexes of the segment, returning false if there are none or they can't be read.
+     */
+    private boolean loadIndex(Segment segment)
+    {
+        if (!segment.indexFile.isFile())
+            return false;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.indexFile))))
+        {
+            if ((in.readInt() != INDEX_MAGIC) || (in.readInt() != FORMAT_VERSION))
+                return false;
+
+            segment.end = in.readInt();
+
+            int blockCount = in.readInt();
+            for (int i = 0; i < blockCount; i++)
+            {
+                Block block = new Block();
+                block.offset = in.readInt();
+                block.recordCount = in.readInt();
+                block.minTime = in.readLong();
+                block.maxTime = in.readLong();
+                segment.blocks.add(block);
+
+                segment.minTime = Math.min(segment.minTime, block.minTime);
+                segment.maxTime = Math.max(segment.maxTime, block.maxTime);
+            }
+
+            int trapOIDCount = in.readInt();
+            for (int i = 0; i < trapOIDCount; i++)
+            {
+                byte[] trapOIDEncoding = new byte[in.readShort()];
+                in.readFully(trapOIDEncoding);
+                SNMPObjectIdentifier trapOID = new SNMPObjectIdentifier(SNMPBERCodec.extractNextTLV(trapOIDEncoding, 0).value);
+
+                long[] blockBits = new long[in.readInt()];
+                for (int j = 0; j < blockBits.length; j++)
+                    blockBits[j] = in.readLong();
+
+                segment.trapOIDBlocks.put(trapOID, BitSet.valueOf(blockBits));
+            }
+
+            return true;
+        }
+        catch (Exception e)
+        {
+            // unreadable; discard what was read, and the segment will be rescanned
+            segment.end = SEGMENT_HEADER_LENGTH;
+            segment.minTime = Long.MAX_VALUE;
+            segment.maxTime = Long.MIN_VALUE;
+            segment.blocks.clear();
+            segment.trapOIDBlocks.clear();
+            return false;
+        }
+    }
+
+
+    private static String segmentName(int number)
+    {
+        return String.format("%010d", number);
+    }
+
+
+
+    /**
+     *  Copies the bytes into the buffer at the supplied position, leaving the buffer's own position alone.
+     */
+    private static void putBytes(ByteBuffer buffer, int position, byte[] bytes)
+    {
+        ByteBuffer target = buffer.duplicate();
+        target.position(position);
+        target.put(bytes);
+    }
+
+
+    /**
+     *  Fills the array from the buffer at the supplied position, leaving the buffer's own position alone.
+     */
+    private static void getBytes(ByteBuffer buffer, int position, byte[] bytes)
+    {
+        ByteBuffer source = buffer.duplicate();
+        source.position(position);
+        source.get(bytes);
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.util.concurrent.locks.*;
+
+
+
+/**
+ *  The class SNMPTrapQueue holds the datagrams waiting for one dispatch thread of an SNMPTrapReceiver. It
+ *  has a separate SNMPTrapRing for each priority class, so a flood of traps of one class can't crowd out
+ *  another's, and the dispatch thread always takes from the most urgent class first.
+ *
+ *  Any number of threads may offer; only the dispatch thread may take or poll with a timeout.
+ */
+class SNMPTrapQueue
+{
+    private SNMPTrapRing[] rings;
+
+    // the dispatch thread, while it is parked waiting for a datagram
+    private volatile Thread waitingConsumer;
+
+
+    /**
+     *  Create a queue for the supplied number of priority classes, each holding at least the given number
+     *  of datagrams.
+     */
+    SNMPTrapQueue(int priorityClasses, int capacity)
+    {
+        rings = new SNMPTrapRing[priorityClasses];
+
+        for (int i = 0; i < rings.length; i++)
+            rings[i] = new SNMPTrapRing(capacity);
+    }
+
+
+    /**
+     *  Returns the number of datagrams the queue can hold for the supplied priority class.
+     */
+    int capacity(int priorityClass)
+    {
+        return rings[priorityClass].capacity();
+    }
+
+
+    /**
+     *  Returns the number of datagrams of the supplied priority class in the queue.
+     */
+    int size(int priorityClass)
+    {
+        return rings[priorityClass].size();
+    }
+
+
+    /**
+     *  Adds the datagram to the queue for its priority class, returning false if there's no room for it.
+     */
+    boolean offer(SNMPTrapDatagram datagram, int priorityClass)
+    {
+        if (!rings[priorityClass].offer(datagram))
+            return false;
+
+        Thread consumer = waitingConsumer;
+        if (consumer != null)
+            LockSupport.unpark(consumer);
+
+        return true;
+    }
+
+
+    /**
+     *  Removes and returns the oldest datagram of the supplied priority class, or null if there is none.
+     */
+    SNMPTrapDatagram pollOldest(int priorityClass)
+    {
+        return rings[priorityClass].poll();
+    }
+
+
+    /**
+     *  Removes and returns the oldest datagram of the most urgent priority class with any waiting, or null
+     *  if the queue is empty.
+     */
+    SNMPTrapDatagram poll()
+    {
+        for (SNMPTrapRing ring : rings)
+        {
+            SNMPTrapDatagram datagram = ring.poll();
+            if (datagram != null)
+                return datagram;
+        }
+
+        return null;
+    }
+
+
+    /**
+     *  As poll, but waiting for a datagram if the queue is empty.
+     *
+     *  @throws InterruptedException Indicates the thread was interrupted while waiting.
+     */
+    SNMPTrapDatagram take()
+        throws InterruptedException
+    {
+        return this.poll(Long.MAX_VALUE);
+    }
+
+
+    /**
+     *  As poll, but waiting up to the supplied time for a datagram if the queue is empty; returns null if
+     *  none arrived in time.
+     *
+     *  @throws InterruptedException Indicates the thread was interrupted while waiting.
+     */
+    SNMPTrapDatagram poll(long timeoutNanos)
+        throws InterruptedException
+    {
+        long start = System.nanoTime();
+
+        while (true)
+        {
+            SNMPTrapDatagram datagram = this.poll();
+            if (datagram != null)
+                return datagram;
+
+            long remaining = timeoutNanos - (System.nanoTime() - start);
+            if (remaining <= 0)
+                return null;
+
+            // Announce the wait before checking again, so a datagram offered in between either is seen by
+            // the check or unparks this thread.
+            waitingConsumer = Thread.currentThread();
+
+            datagram = this.poll();
+            if (datagram == null)
+                LockSupport.parkNanos(this, remaining);
+
+            waitingConsumer = null;
+
+            if (datagram != null)
+                return datagram;
+
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+    }
+
+}
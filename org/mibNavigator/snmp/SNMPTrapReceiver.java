@@ -24,6 +24,8 @@ package org.mibNavigator.snmp;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 
 
@@ -37,7 +39,36 @@ import java.util.*;
  *  SNMPv2InformRequestListener interfaces. These must provide a processTrap, processv2Trap, or processInformRequest 
  * 	method, and are registered/unregistered with this class through its addv1TrapListener/removev1TrapListener,
  *  addv2TrapListener/removev2TrapListener, or addv2InformRequestListener/removev2InformRequestListener
- *  methods.
+ *  methods. Listeners implementing SNMPBatchTrapListener receive all three kinds of message in batches,
+ *  through addBatchTrapListener/removeBatchTrapListener. Listeners implementing SNMPTrapDatagramListener
+ *  receive the undecoded datagrams, through addTrapDatagramListener/removeTrapDatagramListener; when there
+ *  are only these, nothing is decoded.
+ *
+ *  Receiving and dispatching are done on separate threads, so slow listeners don't hold up the socket.
+ *  The receive thread only copies each datagram into an SNMPTrapDatagram and hands it to one of the
+ *  dispatch threads through a bounded lock-free ring (see SNMPTrapRing); the dispatch threads decode the
+ *  messages and call the listeners. All datagrams from one source address go to the same dispatch thread,
+ *  so each source's traps of the same priority class reach the listeners in the order they arrived. With
+ *  more than one dispatch thread, listeners may be called concurrently and must be thread-safe.
+ *
+ *  When the listeners can't keep up, traps are shed according to the overload policy (see
+ *  SNMPOverloadPolicy and setOverloadPolicy). Each dispatch thread has a separate ring for each of the
+ *  priority classes PRIORITY_CRITICAL, PRIORITY_NORMAL and PRIORITY_LOW, and takes the most urgent traps
+ *  first, so a storm of ordinary traps can't displace critical ones. Traps are classed by trap OID, read
+ *  from the datagram before decoding (see SNMPTrapDatagram.getTrapOID and setTrapPriority); SNMPv1 generic
+ *  traps have the standard OIDs of their SNMPv2 equivalents, so can be classed by generic trap type too.
+ *  Counts of the traps received, accepted, dropped and sampled out are kept for each class.
+ *
+ *  Unwanted traps can be discarded as they arrive, before they are queued or decoded, by setting an
+ *  SNMPTrapFilter (see setTrapFilter); repeats of the same trap can be discarded before decoding by setting
+ *  an SNMPTrapDeduplicator (see setTrapDeduplicator). An SNMPTrapJournal set with setTrapJournal records
+ *  every datagram received, before any of them are filtered, deduplicated or shed.
+ *
+ *  A single receive thread can become the limit on how many traps per second are accepted. On platforms
+ *  supporting SO_REUSEPORT (such as Linux), the receiver can be constructed with several sockets bound to
+ *  the same port; the kernel spreads incoming datagrams across them, and each socket gets its own receive
+ *  thread feeding the dispatch threads. The kernel sends all datagrams from one sender to the same socket,
+ *  so traps from each source are still dispatched in order.
  */
 public class SNMPTrapReceiver implements Runnable
 {    
@@ -45,14 +76,80 @@ public class SNMPTrapReceiver implements Runnable
     // RFC 1157, need to handle messages of at least 484 bytes
     private int receiveBufferSize = 512;
     
-    private DatagramSocket dSocket;
-    private Thread receiveThread;
+    // normally just one; several bound to the same port with SO_REUSEPORT if requested
+    private DatagramSocket[] sockets;
+    private Thread[] receiveThreads;
+    
+    /**
+     *  Priority class for traps which must get through even during storms.
+     */
+    public static final int PRIORITY_CRITICAL = 0;
+    
+    /**
+     *  Priority class for traps with no priority set.
+     */
+    public static final int PRIORITY_NORMAL = 1;
+    
+    /**
+     *  Priority class for traps which are the first to go when the receiver is overloaded.
+     */
+    public static final int PRIORITY_LOW = 2;
+    
+    private static final int PRIORITY_CLASSES = 3;
+    private static final int MAX_SAMPLED_SOURCES = 65536;
     
-    private Vector<SNMPv1TrapListener> v1TrapListeners;
-    private Vector<SNMPv2TrapListener> v2TrapListeners;
-    private Vector<SNMPv2InformRequestListener> v2InformRequestListeners;
+    // received datagrams are handed to the dispatch threads through these queues, one per thread
+    private SNMPTrapQueue[] queues;
+    private Thread[] dispatchThreads;
+    private int dispatchThreadCount = 1;
+    private int ringCapacity = 8192;
+    
+    private volatile boolean acknowledgeInformRequests = true;
+    private volatile SNMPTrapFilter trapFilter;
+    private AtomicLong filteredCount = new AtomicLong();
+    private volatile SNMPTrapDeduplicator trapDeduplicator;
+    private volatile SNMPTrapJournal trapJournal;
+    
+    // overload handling
+    private volatile SNMPOverloadPolicy overloadPolicy = SNMPOverloadPolicy.DROP_NEWEST;
+    private volatile int sampleRate = 10;
+    private ConcurrentHashMap<InetAddress,AtomicLong> sampleCounters = new ConcurrentHashMap<InetAddress,AtomicLong>();
+    private ConcurrentSkipListMap<SNMPObjectIdentifier,Integer> trapPriorities = new ConcurrentSkipListMap<SNMPObjectIdentifier,Integer>();
+    
+    // received = accepted + dropped + sampled, per priority class
+    private AtomicLongArray receivedCounts = new AtomicLongArray(PRIORITY_CLASSES);
+    private AtomicLongArray acceptedCounts = new AtomicLongArray(PRIORITY_CLASSES);
+    private AtomicLongArray droppedCounts = new AtomicLongArray(PRIORITY_CLASSES);
+    private AtomicLongArray sampledCounts = new AtomicLongArray(PRIORITY_CLASSES);
+    
+    private CopyOnWriteArrayList<SNMPv1TrapListener> v1TrapListeners;
+    private CopyOnWriteArrayList<SNMPv2TrapListener> v2TrapListeners;
+    private CopyOnWriteArrayList<SNMPv2InformRequestListener> v2InformRequestListeners;
+    private CopyOnWriteArrayList<BatchListenerRegistration> batchTrapListeners;
+    private CopyOnWriteArrayList<SNMPTrapDatagramListener> trapDatagramListeners;
     private PrintWriter errorLogger;
     
+    
+    /**
+     *  A batch listener together with the limits of its batches.
+     */
+    private static class BatchListenerRegistration
+    {
+        SNMPBatchTrapListener listener;
+        int maxBatchSize;
+        long maxLatency;    // milliseconds
+    }
+    
+    
+    /**
+     *  A batch being collected by one dispatch thread for one batch listener.
+     */
+    private static class PendingBatch
+    {
+        ArrayList<SNMPReceivedTrap> traps = new ArrayList<SNMPReceivedTrap>();
+        long deadline;      // System.nanoTime by which the batch must be delivered
+    }
+    
 
     /**
      *  Construct a new trap receiver object to receive traps from remote SNMP hosts.
@@ -74,13 +171,30 @@ public class SNMPTrapReceiver implements Runnable
     public SNMPTrapReceiver(PrintWriter errorReceiver)
         throws SocketException
     {
-        dSocket = new DatagramSocket(SNMPTrapSender.SNMP_TRAP_PORT);
+        this(SNMPTrapSender.SNMP_TRAP_PORT, 1, errorReceiver);
+    }
+    
+    
+    /**
+     *  Construct a new trap receiver object to receive traps from remote SNMP hosts on the supplied port,
+     *  reading the port through the given number of sockets, each with its own receive thread. More than
+     *  one socket needs SO_REUSEPORT; where it isn't supported, a single socket is used. This version will 
+     *  accept messages from all hosts using any community name. Uses the specified Writer to deliver error
+     *  messages.
+     */
+    public SNMPTrapReceiver(int localPort, int socketCount, PrintWriter errorReceiver)
+        throws SocketException
+    {
+        sockets = SNMPReusePortSockets.open(localPort, socketCount);
         
-        v1TrapListeners = new Vector<SNMPv1TrapListener>();
-        v2TrapListeners = new Vector<SNMPv2TrapListener>();
-        v2InformRequestListeners = new Vector<SNMPv2InformRequestListener>();
+        v1TrapListeners = new CopyOnWriteArrayList<SNMPv1TrapListener>();
+        v2TrapListeners = new CopyOnWriteArrayList<SNMPv2TrapListener>();
+        v2InformRequestListeners = new CopyOnWriteArrayList<SNMPv2InformRequestListener>();
+        batchTrapListeners = new CopyOnWriteArrayList<BatchListenerRegistration>();
+        trapDatagramListeners = new CopyOnWriteArrayList<SNMPTrapDatagramListener>();
         
-        receiveThread = new Thread(this);
+        receiveThreads = new Thread[0];
+        dispatchThreads = new Thread[0];
         
         errorLogger = errorReceiver;  
     }
@@ -95,7 +209,7 @@ public class SNMPTrapReceiver implements Runnable
     }
     
     
-    public void addv1TrapListener(SNMPv1TrapListener listener)
+    public synchronized void addv1TrapListener(SNMPv1TrapListener listener)
     {
         // see if listener already added; if so, ignore
         //for (int i = 0; i < v1TrapListeners.size(); i++)
@@ -110,7 +224,7 @@ public class SNMPTrapReceiver implements Runnable
     }
     
     
-    public void removev1TrapListener(SNMPv1TrapListener listener)
+    public synchronized void removev1TrapListener(SNMPv1TrapListener listener)
     {
         // see if listener in list; if so, remove, if not, ignore
         for (int i = 0; i < v1TrapListeners.size(); i++)
@@ -125,7 +239,7 @@ public class SNMPTrapReceiver implements Runnable
     }
     
     
-    public void addv2TrapListener(SNMPv2TrapListener listener)
+    public synchronized void addv2TrapListener(SNMPv2TrapListener listener)
     {
         // see if listener already added; if so, ignore
         //for (int i = 0; i < v2TrapListeners.size(); i++)
@@ -140,7 +254,7 @@ public class SNMPTrapReceiver implements Runnable
     }
     
     
-    public void removev2TrapListener(SNMPv2TrapListener listener)
+    public synchronized void removev2TrapListener(SNMPv2TrapListener listener)
     {
         // see if listener in list; if so, remove, if not, ignore
         for (int i = 0; i < v2TrapListeners.size(); i++)
@@ -155,7 +269,7 @@ public class SNMPTrapReceiver implements Runnable
     }
     
     
-    public void addv2InformRequestListener(SNMPv2InformRequestListener listener)
+    public synchronized void addv2InformRequestListener(SNMPv2InformRequestListener listener)
     {
         // see if listener already added; if so, ignore
         //for (int i = 0; i < v2InformRequestListeners.size(); i++)
@@ -170,7 +284,7 @@ public class SNMPTrapReceiver implements Runnable
     }
     
     
-    public void removev2InformRequestListener(SNMPv2InformRequestListener listener)
+    public synchronized void removev2InformRequestListener(SNMPv2InformRequestListener listener)
     {
         // see if listener in list; if so, remove, if not, ignore
         for (int i = 0; i < v2InformRequestListeners.size(); i++)
@@ -185,16 +299,97 @@ public class SNMPTrapReceiver implements Runnable
     }
 
     
+    /**
+     *  Adds a listener to receive traps and inform requests in batches. A batch is delivered once it holds
+     *  maxBatchSize traps, or once its first trap has waited maxLatency milliseconds.
+     */
+    public synchronized void addBatchTrapListener(SNMPBatchTrapListener listener, int maxBatchSize, long maxLatency)
+    {
+        // see if listener already added; if so, ignore
+        for (BatchListenerRegistration registration : batchTrapListeners)
+        {
+            if (listener == registration.listener)
+                return;
+        }
+        
+        // if got here, it's not in the list; add it
+        BatchListenerRegistration registration = new BatchListenerRegistration();
+        registration.listener = listener;
+        registration.maxBatchSize = Math.max(maxBatchSize, 1);
+        registration.maxLatency = Math.max(maxLatency, 0);
+        batchTrapListeners.add(registration);
+    }
+    
+    
+    public synchronized void removeBatchTrapListener(SNMPBatchTrapListener listener)
+    {
+        // see if listener in list; if so, remove, if not, ignore
+        for (BatchListenerRegistration registration : batchTrapListeners)
+        {
+            if (listener == registration.listener)
+            {
+                batchTrapListeners.remove(registration);
+                break;
+            }
+        }
+        
+    }
+
+    
+    public synchronized void addTrapDatagramListener(SNMPTrapDatagramListener listener)
+    {
+        // see if listener already added; if so, ignore
+        if (!trapDatagramListeners.contains(listener))
+            trapDatagramListeners.add(listener);
+    }
+    
+    
+    public synchronized void removeTrapDatagramListener(SNMPTrapDatagramListener listener)
+    {
+        trapDatagramListeners.remove(listener);
+    }
+    
+    
     /**
      *  Start listening for trap and inform messages.
      */
-    public void startReceiving()
+    public synchronized void startReceiving()
     {
-        // if receiveThread not already running, start it
-        if (!receiveThread.isAlive())
+        // if receive threads not already running, start them along with the dispatch threads
+        if (!this.isReceiving())
         {
-            receiveThread = new Thread(this);
-            receiveThread.start();
+            queues = new SNMPTrapQueue[dispatchThreadCount];
+            dispatchThreads = new Thread[dispatchThreadCount];
+            
+            for (int i = 0; i < dispatchThreads.length; i++)
+            {
+                final SNMPTrapQueue queue = new SNMPTrapQueue(PRIORITY_CLASSES, ringCapacity);
+                queues[i] = queue;
+                
+                dispatchThreads[i] = new Thread(new Runnable()
+                {
+                    public void run()
+                    {
+                        dispatch(queue);
+                    }
+                });
+                dispatchThreads[i].start();
+            }
+            
+            receiveThreads = new Thread[sockets.length];
+            for (int i = 0; i < receiveThreads.length; i++)
+            {
+                final DatagramSocket socket = sockets[i];
+                
+                receiveThreads[i] = new Thread(new Runnable()
+                {
+                    public void run()
+                    {
+                        receive(socket);
+                    }
+                });
+                receiveThreads[i].start();
+            }
         }
     }
     
@@ -202,52 +397,94 @@ public class SNMPTrapReceiver implements Runnable
     /**
      *  Stop listening for trap and inform messages.
      */
-    public void stopReceiving()
+    public synchronized void stopReceiving()
         throws SocketException
     {
-        // interrupt receive thread so it will die a natural death
-        receiveThread.interrupt();
+        // interrupt receive and dispatch threads so they will die a natural death
+        for (Thread receiveThread : receiveThreads)
+            receiveThread.interrupt();
+        
+        for (Thread dispatchThread : dispatchThreads)
+            dispatchThread.interrupt();
+    }
+
+    
+    /**
+     *  Returns true if any receive thread is still running.
+     */
+    private boolean isReceiving()
+    {
+        for (Thread receiveThread : receiveThreads)
+        {
+            if (receiveThread.isAlive())
+                return true;
+        }
+        
+        return false;
     }
 
     
     /**
      *  The run() method for the trap interface's listener. Just waits for trap or inform messages to
      *  come in on port 162, then dispatches the recieved PDUs to each of the registered 
-     *  listeners by calling their processTrap() or processInform() methods.
+     *  listeners by calling their processTrap() or processInform() methods. When called directly rather 
+     *  than through startReceiving, only the first socket is read.
      */
     public void run()
     {
-        while (!receiveThread.isInterrupted())
+        this.receive(sockets[0]);
+    }
+    
+    
+    /**
+     *  Waits for trap or inform messages to come in on the supplied socket, and hands each datagram to the
+     *  dispatch thread for its source address. Each receive thread started by startReceiving runs this loop.
+     */
+    private void receive(DatagramSocket socket)
+    {
+        // capture the queues used for this run, since a later start may replace the field
+        SNMPTrapQueue[] targetQueues = queues;
+        byte[] buffer = new byte[receiveBufferSize];
+        
+        while (!Thread.currentThread().isInterrupted())
         {
             try
             {
-                DatagramPacket inPacket = new DatagramPacket(new byte[receiveBufferSize], receiveBufferSize);
-                dSocket.receive(inPacket);
+                if (buffer.length != receiveBufferSize)
+                    buffer = new byte[receiveBufferSize];
                 
-                byte[] encodedMessage = inPacket.getData();
-                SNMPMessage receivedMessage = new SNMPMessage(SNMPBERCodec.extractNextTLV(encodedMessage,0).value);
-                Object receivedPDU = receivedMessage.getPDUAsObject();
+                DatagramPacket inPacket = new DatagramPacket(buffer, buffer.length);
+                socket.receive(inPacket);
                 
-                if ( !(receivedPDU instanceof SNMPv1TrapPDU) && !(receivedPDU instanceof SNMPv2TrapPDU) && !(receivedPDU instanceof SNMPv2InformRequestPDU) )
-                    throw new SNMPBadValueException("PDU received that's not a v1 or v2 trap or inform request; message payload of type " + receivedPDU.getClass().toString());
+                // copy just the payload, so the buffer can be reused at once
+                byte[] encodedMessage = Arrays.copyOfRange(buffer, inPacket.getOffset(), inPacket.getOffset() + inPacket.getLength());
+                SNMPTrapDatagram datagram = new SNMPTrapDatagram(encodedMessage, inPacket.getAddress(), inPacket.getPort(), System.currentTimeMillis());
                 
-                // pass the received trap PDU to the processTrap or procesv2Trap method of any listeners
-                if (receivedPDU instanceof SNMPv1TrapPDU)
+                // the journal records everything that arrives
+                SNMPTrapJournal journal = trapJournal;
+                if (journal != null)
+                    journal.processTrapDatagram(datagram);
+                
+                // unwanted traps go no further
+                SNMPTrapFilter filter = trapFilter;
+                if ((filter != null) && !filter.accepts(datagram))
                 {
-                    for (SNMPv1TrapListener listener : v1TrapListeners)
-                        listener.processv1Trap((SNMPv1TrapPDU)receivedPDU);
-                }
-                else if (receivedPDU instanceof SNMPv2TrapPDU)
-                {                 
-                    for (SNMPv2TrapListener listener : v2TrapListeners)
-                        listener.processv2Trap((SNMPv2TrapPDU)receivedPDU);
+                    filteredCount.incrementAndGet();
+                    continue;
                 }
-                else if (receivedPDU instanceof SNMPv2InformRequestPDU)
-                {                  
-                    for (SNMPv2InformRequestListener listener : v2InformRequestListeners)
-                        listener.processv2InformRequest((SNMPv2InformRequestPDU)receivedPDU);
+                
+                if (targetQueues == null)
+                {
+                    // run() called directly rather than through startReceiving; no dispatch threads to hand off to
+                    receivedCounts.incrementAndGet(PRIORITY_NORMAL);
+                    acceptedCounts.incrementAndGet(PRIORITY_NORMAL);
+                    this.processDatagram(datagram);
+                    continue;
                 }
                 
+                // all datagrams from one source go through the same queue, so they're dispatched in order
+                int queueIndex = (datagram.getSourceAddress().hashCode() & Integer.MAX_VALUE) % targetQueues.length;
+                this.enqueue(datagram, targetQueues[queueIndex]);
             }
             catch (IOException e)
             {
@@ -255,21 +492,338 @@ public class SNMPTrapReceiver implements Runnable
                 errorLogger.println("IOException during request processing: " + e.toString());
                 errorLogger.flush();
             }
-            catch (SNMPBadValueException e)
+            catch (Exception e)
             {
                 // just report the problem
-                errorLogger.println("SNMPBadValueException during request processing: " + e.toString());
+                errorLogger.println("Exception during request processing: " + e.toString());
                 errorLogger.flush();
             }
+            
+        }
+                
+    }
+    
+    
+    /**
+     *  Adds the datagram to the queue for its priority class, shedding traps according to the overload
+     *  policy if the queue is full, and counting the outcome.
+     */
+    private void enqueue(SNMPTrapDatagram datagram, SNMPTrapQueue queue)
+    {
+        int priorityClass = this.getPriorityClass(datagram);
+        SNMPOverloadPolicy policy = overloadPolicy;
+        
+        receivedCounts.incrementAndGet(priorityClass);
+        
+        if ((policy == SNMPOverloadPolicy.SAMPLE_PER_SOURCE) && (queue.size(priorityClass) >= queue.capacity(priorityClass) / 2))
+        {
+            if (!this.isSampled(datagram.getSourceAddress()))
+            {
+                sampledCounts.incrementAndGet(priorityClass);
+                return;
+            }
+        }
+        else if (!sampleCounters.isEmpty())
+        {
+            // not overloaded (any more); start sampling afresh next time
+            sampleCounters.clear();
+        }
+        
+        while (!queue.offer(datagram, priorityClass))
+        {
+            if (policy != SNMPOverloadPolicy.DROP_OLDEST)
+            {
+                droppedCounts.incrementAndGet(priorityClass);
+                return;
+            }
+            
+            // make room by evicting the oldest waiting datagram of the class, unless the dispatch
+            // thread took it first
+            if (queue.pollOldest(priorityClass) != null)
+            {
+                acceptedCounts.decrementAndGet(priorityClass);
+                droppedCounts.incrementAndGet(priorityClass);
+            }
+        }
+        
+        acceptedCounts.incrementAndGet(priorityClass);
+    }
+    
+    
+    /**
+     *  Returns true if the next trap from the source is one to keep when sampling: the first, and then
+     *  every sampleRate-th one.
+     */
+    private boolean isSampled(InetAddress sourceAddress)
+    {
+        AtomicLong counter = sampleCounters.get(sourceAddress);
+        
+        if (counter == null)
+        {
+            // a storm from a great many sources; start afresh rather than grow without bound
+            if (sampleCounters.size() >= MAX_SAMPLED_SOURCES)
+                sampleCounters.clear();
+            
+            AtomicLong newCounter = new AtomicLong();
+            counter = sampleCounters.putIfAbsent(sourceAddress, newCounter);
+            if (counter == null)
+                counter = newCounter;
+        }
+        
+        return (counter.getAndIncrement() % sampleRate) == 0;
+    }
+    
+    
+    /**
+     *  Returns the priority class of the datagram: that set for the longest prefix of its trap OID, or
+     *  PRIORITY_NORMAL if none is set (or the datagram isn't a trap).
+     */
+    private int getPriorityClass(SNMPTrapDatagram datagram)
+    {
+        // avoid looking at the datagram at all if no priorities are set
+        if (trapPriorities.isEmpty())
+            return PRIORITY_NORMAL;
+        
+        SNMPObjectIdentifier trapOID = datagram.getTrapOID();
+        if (trapOID == null)
+            return PRIORITY_NORMAL;
+        
+        // only a handful of priorities are expected, so just check them all
+        int priorityClass = PRIORITY_NORMAL;
+        int longestPrefix = -1;
+        
+        for (Map.Entry<SNMPObjectIdentifier,Integer> entry : trapPriorities.entrySet())
+        {
+            int prefixLength = ((long[])entry.getKey().getValue()).length;
+            
+            if ((prefixLength > longestPrefix) && trapOID.startsWith(entry.getKey()))
+            {
+                priorityClass = entry.getValue();
+                longestPrefix = prefixLength;
+            }
+        }
+        
+        return priorityClass;
+    }
+    
+    
+    /**
+     *  Takes datagrams from the supplied queue and processes them, until interrupted. Each dispatch thread
+     *  started by startReceiving runs this loop.
+     */
+    private void dispatch(SNMPTrapQueue queue)
+    {
+        // batches being collected by this thread, one for each batch listener with traps waiting
+        Map<BatchListenerRegistration,PendingBatch> pendingBatches = new IdentityHashMap<BatchListenerRegistration,PendingBatch>();
+        
+        while (!Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                // don't wait past the time the next batch is due
+                SNMPTrapDatagram datagram;
+                if (pendingBatches.isEmpty())
+                    datagram = queue.take();
+                else
+                    datagram = queue.poll(this.nextDeadline(pendingBatches) - System.nanoTime());
+                
+                if (datagram != null)
+                {
+                    SNMPReceivedTrap trap = this.processDatagram(datagram);
+                    
+                    if (trap != null)
+                        this.addToBatches(trap, pendingBatches);
+                }
+                
+                this.deliverBatches(pendingBatches, false);
+            }
+            catch (InterruptedException e)
+            {
+                // receiver is being stopped
+                break;
+            }
+        }
+        
+        // hand over whatever has been collected
+        this.deliverBatches(pendingBatches, true);
+    }
+    
+    
+    /**
+     *  Decodes a received datagram, unless the deduplicator finds it a duplicate, and passes the trap or
+     *  inform request PDU it contains to the registered listeners. Returns the decoded trap, for the batch listeners, or null if the datagram
+     *  isn't a valid trap or inform request.
+     */
+    private SNMPReceivedTrap processDatagram(SNMPTrapDatagram datagram)
+    {
+        // acknowledge inform requests before deduplicating, so resent ones are acknowledged too
+        if (acknowledgeInformRequests)
+            this.acknowledgeInformRequest(datagram);
+        
+        SNMPTrapDeduplicator deduplicator = trapDeduplicator;
+        if ((deduplicator != null) && deduplicator.isDuplicate(datagram))
+            return null;
+        
+        for (SNMPTrapDatagramListener listener : trapDatagramListeners)
+            listener.processTrapDatagram(datagram);
+        
+        // when only relaying, there's no need to decode
+        if (v1TrapListeners.isEmpty() && v2TrapListeners.isEmpty() && v2InformRequestListeners.isEmpty() && batchTrapListeners.isEmpty())
+            return null;
+        
+        try
+        {
+            SNMPReceivedTrap trap = new SNMPReceivedTrap(datagram, datagram.decode());
+            Object receivedPDU = trap.getPDU();
+            
+            // pass the received trap PDU to the processTrap or procesv2Trap method of any listeners
+            if (receivedPDU instanceof SNMPv1TrapPDU)
+            {
+                for (SNMPv1TrapListener listener : v1TrapListeners)
+                    listener.processv1Trap((SNMPv1TrapPDU)receivedPDU);
+            }
+            else if (receivedPDU instanceof SNMPv2TrapPDU)
+            {                 
+                for (SNMPv2TrapListener listener : v2TrapListeners)
+                    listener.processv2Trap((SNMPv2TrapPDU)receivedPDU);
+            }
+            else if (receivedPDU instanceof SNMPv2InformRequestPDU)
+            {                  
+                for (SNMPv2InformRequestListener listener : v2InformRequestListeners)
+                    listener.processv2InformRequest((SNMPv2InformRequestPDU)receivedPDU);
+            }
+            
+            return trap;
+        }
+        catch (SNMPBadValueException e)
+        {
+            // just report the problem
+            errorLogger.println("SNMPBadValueException during request processing: " + e.toString());
+            errorLogger.flush();
+        }
+        catch (Exception e)
+        {
+            // just report the problem
+            errorLogger.println("Exception during request processing: " + e.toString());
+            errorLogger.flush();
+        }
+        
+        return null;
+    }
+    
+    
+    /**
+     *  If the datagram is an inform request, sends the response acknowledging it to its source. The
+     *  response has the same request ID and variable bindings, and no error (RFC 3416), so it's made from
+     *  the request's own bytes by changing just the PDU type.
+     */
+    private void acknowledgeInformRequest(SNMPTrapDatagram datagram)
+    {
+        byte[] message = datagram.getEncodedMessage();
+        SNMPRawElement element = new SNMPRawElement();
+        
+        // message: version, community, PDU
+        if (!element.read(message, 0, message.length) || (element.tag != 0x30))
+            return;
+        
+        int messageEnd = element.end;
+        
+        if (!element.read(message, element.start, messageEnd)
+            || !element.read(message, element.end, messageEnd)
+            || !element.read(message, element.end, messageEnd)
+            || (element.tag != (SNMPBERType.SNMPv2_INFORM_REQUEST.getByte() & 0xFF)))
+            return;
+        
+        byte[] response = message.clone();
+        response[element.headerStart] = SNMPBERType.SNMP_GET_RESPONSE.getByte();
+        
+        try
+        {
+            sockets[0].send(new DatagramPacket(response, response.length, datagram.getSourceAddress(), datagram.getSourcePort()));
+        }
+        catch (IOException e)
+        {
+            // just report the problem; the sender will try again
+            errorLogger.println("IOException acknowledging inform request: " + e.toString());
+            errorLogger.flush();
+        }
+    }
+    
+    
+    /**
+     *  Adds the trap to this thread's batch for each batch listener, starting a new batch where needed.
+     */
+    private void addToBatches(SNMPReceivedTrap trap, Map<BatchListenerRegistration,PendingBatch> pendingBatches)
+    {
+        for (BatchListenerRegistration registration : batchTrapListeners)
+        {
+            PendingBatch batch = pendingBatches.get(registration);
+            
+            if (batch == null)
+            {
+                batch = new PendingBatch();
+                batch.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(registration.maxLatency);
+                pendingBatches.put(registration, batch);
+            }
+            
+            batch.traps.add(trap);
+        }
+    }
+    
+    
+    /**
+     *  Delivers the batches which are full or due, or all of them if requested.
+     */
+    private void deliverBatches(Map<BatchListenerRegistration,PendingBatch> pendingBatches, boolean deliverAll)
+    {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<BatchListenerRegistration,PendingBatch>> entries = pendingBatches.entrySet().iterator();
+        
+        while (entries.hasNext())
+        {
+            Map.Entry<BatchListenerRegistration,PendingBatch> entry = entries.next();
+            BatchListenerRegistration registration = entry.getKey();
+            PendingBatch batch = entry.getValue();
+            
+            if (!deliverAll && (batch.traps.size() < registration.maxBatchSize) && (now - batch.deadline < 0))
+                continue;
+            
+            entries.remove();
+            
+            // the listener may have been removed since the batch was started
+            if (!batchTrapListeners.contains(registration))
+                continue;
+            
+            try
+            {
+                registration.listener.processTrapBatch(Collections.unmodifiableList(batch.traps));
+            }
             catch (Exception e)
             {
                 // just report the problem
-                errorLogger.println("Exception during request processing: " + e.toString());
+                errorLogger.println("Exception during batch processing: " + e.toString());
                 errorLogger.flush();
             }
-            
         }
-                
+    }
+    
+    
+    /**
+     *  Returns the earliest time, as given by System.nanoTime, at which one of the batches is due.
+     */
+    private long nextDeadline(Map<BatchListenerRegistration,PendingBatch> pendingBatches)
+    {
+        Iterator<PendingBatch> batches = pendingBatches.values().iterator();
+        long deadline = batches.next().deadline;
+        
+        while (batches.hasNext())
+        {
+            long batchDeadline = batches.next().deadline;
+            if (batchDeadline - deadline < 0)
+                deadline = batchDeadline;
+        }
+        
+        return deadline;
     }
     
     
@@ -327,4 +881,291 @@ public class SNMPTrapReceiver implements Runnable
         return this.receiveBufferSize;
     }
     
+    
+    /**
+     *  Sets the number of threads decoding datagrams and calling the listeners; takes effect the next time
+     *  startReceiving is called. The default is 1, so listeners are never called concurrently.
+     */
+    public void setDispatchThreadCount(int dispatchThreadCount)
+    {
+        this.dispatchThreadCount = Math.max(dispatchThreadCount, 1);
+    }
+    
+    
+    /**
+     *  Returns the number of threads decoding datagrams and calling the listeners.
+     */
+    public int getDispatchThreadCount()
+    {
+        return this.dispatchThreadCount;
+    }
+    
+    
+    /**
+     *  Sets how many received datagrams of each priority class may wait for each dispatch thread before
+     *  the overload policy applies; rounded up to a power of two. Takes effect the next time startReceiving
+     *  is called. The default is 8192.
+     */
+    public void setRingCapacity(int ringCapacity)
+    {
+        this.ringCapacity = Math.max(ringCapacity, 2);
+    }
+    
+    
+    /**
+     *  Returns how many received datagrams of each priority class may wait for each dispatch thread.
+     */
+    public int getRingCapacity()
+    {
+        return this.ringCapacity;
+    }
+    
+    
+    /**
+     *  Returns the number of sockets the receiver reads its port through.
+     */
+    public int getSocketCount()
+    {
+        return sockets.length;
+    }
+    
+    
+    /**
+     *  Sets whether inform requests are acknowledged with a response as they are dispatched; the default
+     *  is true. Inform requests rejected by the filter, or discarded when the receiver is overloaded, aren't
+     *  acknowledged, so their senders will try again; duplicates are.
+     */
+    public void setAcknowledgeInformRequests(boolean acknowledgeInformRequests)
+    {
+        this.acknowledgeInformRequests = acknowledgeInformRequests;
+    }
+    
+    
+    /**
+     *  Returns whether inform requests are acknowledged with a response.
+     */
+    public boolean getAcknowledgeInformRequests()
+    {
+        return this.acknowledgeInformRequests;
+    }
+    
+    
+    /**
+     *  Sets the filter consulted as each datagram is received; datagrams it rejects are discarded at once,
+     *  without being queued or decoded, and counted (see getFilteredCount). Null (the default) accepts
+     *  everything.
+     */
+    public void setTrapFilter(SNMPTrapFilter trapFilter)
+    {
+        this.trapFilter = trapFilter;
+    }
+    
+    
+    /**
+     *  Returns the filter consulted as each datagram is received, or null if there is none.
+     */
+    public SNMPTrapFilter getTrapFilter()
+    {
+        return this.trapFilter;
+    }
+    
+    
+    /**
+     *  Returns the number of datagrams rejected by the filter since the receiver was created. These aren't
+     *  included in the received count.
+     */
+    public long getFilteredCount()
+    {
+        return filteredCount.get();
+    }
+    
+    
+    /**
+     *  Sets the deduplicator consulted before each trap is decoded; traps it finds to be duplicates are
+     *  discarded without being decoded or passed to any listener. Null (the default) disables
+     *  deduplication.
+     */
+    public void setTrapDeduplicator(SNMPTrapDeduplicator trapDeduplicator)
+    {
+        this.trapDeduplicator = trapDeduplicator;
+    }
+    
+    
+    /**
+     *  Returns the deduplicator consulted before each trap is decoded, or null if there is none.
+     */
+    public SNMPTrapDeduplicator getTrapDeduplicator()
+    {
+        return this.trapDeduplicator;
+    }
+    
+    
+    /**
+     *  Sets the journal every received datagram is appended to, as it comes off the socket and before it is
+     *  filtered, deduplicated, queued or decoded. Null (the default) records nothing.
+     */
+    public void setTrapJournal(SNMPTrapJournal trapJournal)
+    {
+        this.trapJournal = trapJournal;
+    }
+    
+    
+    /**
+     *  Returns the journal every received datagram is appended to, or null if there is none.
+     */
+    public SNMPTrapJournal getTrapJournal()
+    {
+        return this.trapJournal;
+    }
+    
+    
+    /**
+     *  Sets the policy for shedding traps when a queue is full; the default is DROP_NEWEST.
+     */
+    public void setOverloadPolicy(SNMPOverloadPolicy overloadPolicy)
+    {
+        this.overloadPolicy = overloadPolicy;
+    }
+    
+    
+    /**
+     *  Returns the policy for shedding traps when a queue is full.
+     */
+    public SNMPOverloadPolicy getOverloadPolicy()
+    {
+        return this.overloadPolicy;
+    }
+    
+    
+    /**
+     *  Sets how many traps from each source are discarded for every one kept, plus one, when sampling
+     *  under the SAMPLE_PER_SOURCE policy; i.e., one in every sampleRate traps is kept. The default is 10.
+     */
+    public void setSampleRate(int sampleRate)
+    {
+        this.sampleRate = Math.max(sampleRate, 1);
+    }
+    
+    
+    /**
+     *  Returns the rate at which traps from each source are kept when sampling.
+     */
+    public int getSampleRate()
+    {
+        return this.sampleRate;
+    }
+    
+    
+    /**
+     *  Sets the priority class (PRIORITY_CRITICAL, PRIORITY_NORMAL or PRIORITY_LOW) of traps whose trap OID
+     *  starts with the supplied prefix. Where prefixes overlap, the longest one applies. For SNMPv1 traps,
+     *  use the OIDs of RFC 3584: 1.3.6.1.6.3.1.1.5.(generic trap + 1) for generic traps - e.g.,
+     *  1.3.6.1.6.3.1.1.5.3 for linkDown - or enterprise.0.(specific trap).
+     *
+     *  @throws IllegalArgumentException if the priority class isn't one of the three
+     */
+    public void setTrapPriority(SNMPObjectIdentifier trapOIDPrefix, int priorityClass)
+    {
+        if ((priorityClass < 0) || (priorityClass >= PRIORITY_CLASSES))
+            throw new IllegalArgumentException("Unknown priority class " + priorityClass);
+        
+        trapPriorities.put(trapOIDPrefix, priorityClass);
+    }
+    
+    
+    /**
+     *  Removes the priority class set for the supplied trap OID prefix, if any.
+     */
+    public void removeTrapPriority(SNMPObjectIdentifier trapOIDPrefix)
+    {
+        trapPriorities.remove(trapOIDPrefix);
+    }
+    
+    
+    /**
+     *  Returns the number of datagrams received since the receiver was created and passed by the filter,
+     *  if any. This is always the sum of the accepted, dropped and sampled counts.
+     */
+    public long getReceivedCount()
+    {
+        return sum(receivedCounts);
+    }
+    
+    
+    /**
+     *  Returns the number of datagrams of the supplied priority class received since the receiver was
+     *  created.
+     */
+    public long getReceivedCount(int priorityClass)
+    {
+        return receivedCounts.get(priorityClass);
+    }
+    
+    
+    /**
+     *  Returns the number of datagrams that have been, or are waiting to be, passed to the listeners.
+     */
+    public long getAcceptedCount()
+    {
+        return sum(acceptedCounts);
+    }
+    
+    
+    /**
+     *  Returns the number of datagrams of the supplied priority class that have been, or are waiting to
+     *  be, passed to the listeners.
+     */
+    public long getAcceptedCount(int priorityClass)
+    {
+        return acceptedCounts.get(priorityClass);
+    }
+    
+    
+    /**
+     *  Returns the number of datagrams discarded because their queue was full: on arrival, or evicted by
+     *  later ones under the DROP_OLDEST policy.
+     */
+    public long getDroppedCount()
+    {
+        return sum(droppedCounts);
+    }
+    
+    
+    /**
+     *  Returns the number of datagrams of the supplied priority class discarded because their queue was
+     *  full.
+     */
+    public long getDroppedCount(int priorityClass)
+    {
+        return droppedCounts.get(priorityClass);
+    }
+    
+    
+    /**
+     *  Returns the number of datagrams discarded by sampling under the SAMPLE_PER_SOURCE policy.
+     */
+    public long getSampledCount()
+    {
+        return sum(sampledCounts);
+    }
+    
+    
+    /**
+     *  Returns the number of datagrams of the supplied priority class discarded by sampling.
+     */
+    public long getSampledCount(int priorityClass)
+    {
+        return sampledCounts.get(priorityClass);
+    }
+    
+    
+    private static long sum(AtomicLongArray counts)
+    {
+        long sum = 0;
+        for (int i = 0; i < counts.length(); i++)
+            sum += counts.get(i);
+        
+        return sum;
+    }
+    
 }
\ No newline at end of file
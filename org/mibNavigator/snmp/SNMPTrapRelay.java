@@ -0,0 +1,444 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+
+/**
+ *  The class SNMPTrapRelay forwards traps and inform requests received by an SNMPTrapReceiver to any number
+ *  of destinations, such as central trap collectors, as the original datagram bytes; nothing is decoded or
+ *  re-encoded, so the cost of relaying a trap hardly depends on its contents. Add it to a receiver as a
+ *  datagram listener, and start it:
+ *
+ *  <pre>
+ *      SNMPTrapRelay relay = new SNMPTrapRelay(errorLogger);
+ *      relay.addDestination(new InetSocketAddress("collector1", 162));
+ *      relay.addDestination(new InetSocketAddress("collector2", 162));
+ *      relay.startRelaying();
+ *      receiver.addTrapDatagramListener(relay);
+ *  </pre>
+ *
+ *  The relay can rewrite the community name, and the agent address of SNMPv1 traps (since the destinations
+ *  see the relay as the datagrams' source); this patches just those bytes, with the message and community
+ *  length fields adjusted if the community name's length changes.
+ *
+ *  Datagrams are queued by the receiver's dispatch threads and sent by a single send thread through one
+ *  non-blocking channel, which takes all those waiting at once and sends each to every destination in
+ *  turn. If the queue fills up because the network can't keep up, further datagrams are discarded and
+ *  counted.
+ */
+public class SNMPTrapRelay implements SNMPTrapDatagramListener
+{
+    private static final int MAXIMUM_BATCH_SIZE = 256;
+
+    private CopyOnWriteArrayList<InetSocketAddress> destinations = new CopyOnWriteArrayList<InetSocketAddress>();
+    private volatile byte[] communityName;
+    private volatile byte[] agentAddress;
+
+    private ArrayBlockingQueue<byte[]> outgoing;
+    private DatagramChannel channel;
+    private Selector selector;
+    private SelectionKey channelKey;
+    private Thread sendThread;
+    private PrintWriter errorLogger;
+
+    // datagrams a stopped send thread had taken from the queue but not yet sent, which the next one sends
+    // first; the first of them may already have reached some destinations, so only the rest are kept
+    private List<byte[]> unsent = new ArrayList<byte[]>();
+    private List<InetSocketAddress> unsentDestinations = new ArrayList<InetSocketAddress>();
+
+    private AtomicLong relayedCount = new AtomicLong();
+    private AtomicLong sentCount = new AtomicLong();
+    private AtomicLong droppedCount = new AtomicLong();
+
+
+
+    /**
+     *  Create a relay able to queue up to 8192 datagrams, with errors reported to the supplied
+     *  PrintWriter.
+     *
+     *  @throws IOException Indicates the channel couldn't be opened.
+     */
+    public SNMPTrapRelay(PrintWriter errorLogger)
+        throws IOException
+    {
+        this(8192, errorLogger);
+    }
+
+
+    /**
+     *  Create a relay able to queue up to the supplied number of datagrams, with errors reported to the
+     *  supplied PrintWriter.
+     *
+     *  @throws IOException Indicates the channel couldn't be opened.
+     */
+    public SNMPTrapRelay(int queueCapacity, PrintWriter errorLogger)
+        throws IOException
+    {
+        this.outgoing = new ArrayBlockingQueue<byte[]>(queueCapacity);
+        this.errorLogger = errorLogger;
+
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channelKey = channel.register(selector, 0);
+
+        sendThread = new Thread();
+    }
+
+
+
+    public synchronized void addDestination(InetSocketAddress destination)
+    {
+        // see if destination already added; if so, ignore
+        if (!destinations.contains(destination))
+            destinations.add(destination);
+    }
+
+
+    public synchronized void removeDestination(InetSocketAddress destination)
+    {
+        destinations.remove(destination);
+    }
+
+
+    /**
+     *  Sets the community name to put in forwarded messages in place of the original one; null (the
+     *  default) leaves it unchanged.
+     */
+    public void setCommunityName(String communityName)
+    {
+        this.communityName = (communityName != null) ? communityName.getBytes() : null;
+    }
+
+
+    /**
+     *  Sets the agent address to put in forwarded SNMPv1 traps in place of the original one; null (the
+     *  default) leaves it unchanged. SNMPv2 messages have no agent address, and are forwarded unchanged.
+     *
+     *  @throws IllegalArgumentException if the address isn't an IPv4 address
+     */
+    public void setAgentAddress(InetAddress agentAddress)
+    {
+        if ((agentAddress != null) && !(agentAddress instanceof Inet4Address))
+            throw new IllegalArgumentException("Agent address must be an IPv4 address: " + agentAddress);
+
+        this.agentAddress = (agentAddress != null) ? agentAddress.getAddress() : null;
+    }
+
+
+    /**
+     *  Starts the thread which sends the queued datagrams.
+     */
+    public synchronized void startRelaying()
+    {
+        if (!sendThread.isAlive())
+        {
+            sendThread = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    send();
+                }
+            });
+            sendThread.start();
+        }
+    }
+
+
+    /**
+     *  Stops the send thread; datagrams still queued are sent if it is started again.
+     */
+    public synchronized void stopRelaying()
+    {
+        sendThread.interrupt();
+    }
+
+
+    /**
+     *  Stops the send thread and closes the channel.
+     *
+     *  @throws IOException Indicates the channel couldn't be closed.
+     */
+    public synchronized void close()
+        throws IOException
+    {
+        this.stopRelaying();
+        selector.close();
+        channel.close();
+    }
+
+
+    /**
+     *  Returns the number of datagrams queued for forwarding since the relay was created.
+     */
+    public long getRelayedCount()
+    {
+        return relayedCount.get();
+    }
+
+
+    /**
+     *  Returns the number of datagrams sent since the relay was created, counting each destination
+     *  separately.
+     */
+    public long getSentCount()
+    {
+        return sentCount.get();
+    }
+
+
+    /**
+     *  Returns the number of datagrams discarded because the queue was full.
+     */
+    public long getDroppedCount()
+    {
+        return droppedCount.get();
+    }
+
+
+
+    /**
+     *  Queues the datagram's bytes, rewritten as configured, for sending to the destinations.
+     */
+    public void processTrapDatagram(SNMPTrapDatagram datagram)
+    {
+        if (destinations.isEmpty())
+            return;
+
+        byte[] message = rewrite(datagram.getEncodedMessage(), communityName, agentAddress);
+
+        if (outgoing.offer(message))
+            relayedCount.incrementAndGet();
+        else
+            droppedCount.incrementAndGet();
+    }
+
+
+    /**
+     *  Takes the queued datagrams in batches and sends each to every destination, until interrupted. Any
+     *  datagrams left unsent by the previous send thread are sent first.
+     */
+    private void send()
+    {
+        List<byte[]> batch = new ArrayList<byte[]>(MAXIMUM_BATCH_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(65536);
+
+        try
+        {
+            if (!unsent.isEmpty())
+            {
+                batch.addAll(unsent);
+                unsent.clear();
+                this.sendBatch(batch, buffer, unsentDestinations);
+            }
+
+            while (!Thread.currentThread().isInterrupted())
+            {
+                batch.add(outgoing.take());
+                outgoing.drainTo(batch, MAXIMUM_BATCH_SIZE - 1);
+
+                this.sendBatch(batch, buffer, null);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // relay is being stopped
+        }
+    }
+
+
+    /**
+     *  Sends each datagram of the batch to every destination, then clears the batch; the first datagram
+     *  goes only to the supplied destinations if they're not null. If the thread is interrupted, the
+     *  datagrams not yet sent everywhere are kept in unsent, for the next send thread, before the
+     *  InterruptedException is rethrown.
+     */
+    private void sendBatch(List<byte[]> batch, ByteBuffer buffer, List<InetSocketAddress> firstDestinations)
+        throws InterruptedException
+    {
+        List<InetSocketAddress> batchDestinations = new ArrayList<InetSocketAddress>(destinations);
+
+        for (int i = 0; i < batch.size(); i++)
+        {
+            buffer.clear();
+            buffer.put(batch.get(i));
+            buffer.flip();
+
+            List<InetSocketAddress> messageDestinations = ((i == 0) && (firstDestinations != null)) ? firstDestinations : batchDestinations;
+
+            for (int j = 0; j < messageDestinations.size(); j++)
+            {
+                InetSocketAddress destination = messageDestinations.get(j);
+                buffer.rewind();
+
+                try
+                {
+                    this.sendTo(buffer, destination);
+                    sentCount.incrementAndGet();
+                }
+                catch (IOException e)
+                {
+                    // just report the problem, and go on to the next destination
+                    errorLogger.println("IOException relaying trap to " + destination + ": " + e.toString());
+                    errorLogger.flush();
+                }
+                catch (InterruptedException e)
+                {
+                    // keep the rest of the batch, starting with the destinations this datagram hasn't reached
+                    unsent = new ArrayList<byte[]>(batch.subList(i, batch.size()));
+                    unsentDestinations = new ArrayList<InetSocketAddress>(messageDestinations.subList(j, messageDestinations.size()));
+                    batch.clear();
+                    throw e;
+                }
+            }
+        }
+
+        batch.clear();
+    }
+
+
+    /**
+     *  Sends the buffer's contents to the destination, waiting for room in the socket's send buffer if
+     *  necessary.
+     *
+     *  @throws InterruptedException Indicates the thread was interrupted while waiting.
+     */
+    private void sendTo(ByteBuffer buffer, InetSocketAddress destination)
+        throws IOException, InterruptedException
+    {
+        while (channel.send(buffer, destination) == 0)
+        {
+            // send buffer full; wait until the channel is writable again
+            channelKey.interestOps(SelectionKey.OP_WRITE);
+            selector.select(100);
+            selector.selectedKeys().clear();
+            channelKey.interestOps(0);
+
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+    }
+
+
+
+    /**
+     *  Returns the message with its community name and (SNMPv1) agent address replaced by those supplied,
+     *  either of which may be null to leave it unchanged. The original array is returned if there's
+     *  nothing to change, or the message can't be parsed far enough to change it.
+     */
+    static byte[] rewrite(byte[] message, byte[] communityName, byte[] agentAddress)
+    {
+        if ((communityName == null) && (agentAddress == null))
+            return message;
+
+        SNMPRawElement element = new SNMPRawElement();
+
+        // message: version, community, PDU
+        if (!element.read(message, 0, message.length) || (element.tag != 0x30) || (element.end != message.length))
+            return message;
+
+        int contentsStart = element.start;
+
+        if (!element.read(message, element.start, message.length))
+            return message;
+
+        if (!element.read(message, element.end, message.length) || (element.tag != 0x04))
+            return message;
+
+        int communityHeaderStart = element.headerStart;
+        int communityStart = element.start;
+        int communityEnd = element.end;
+
+        byte[] rewritten = message;
+
+        if (agentAddress != null)
+        {
+            // v1 trap PDU: enterprise, agent address, ...
+            if (element.read(message, communityEnd, message.length) && (element.tag == (SNMPBERType.SNMP_TRAP.getByte() & 0xFF))
+                && element.read(message, element.start, message.length)
+                && element.read(message, element.end, message.length) && (element.tag == 0x40) && (element.length == 4))
+            {
+                rewritten = message.clone();
+                System.arraycopy(agentAddress, 0, rewritten, element.start, 4);
+            }
+        }
+
+        if ((communityName != null) && !rangeEquals(message, communityStart, communityEnd, communityName))
+        {
+            if (communityName.length == communityEnd - communityStart)
+            {
+                // same length; just overwrite it
+                if (rewritten == message)
+                    rewritten = message.clone();
+
+                System.arraycopy(communityName, 0, rewritten, communityStart, communityName.length);
+            }
+            else
+            {
+                // splice in the new community, with new community and message lengths
+                byte[] communityLength = SNMPBERCodec.encodeLength(communityName.length);
+                int newContentsLength = (communityHeaderStart - contentsStart) + 1 + communityLength.length + communityName.length + (message.length - communityEnd);
+                byte[] contentsLength = SNMPBERCodec.encodeLength(newContentsLength);
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream(1 + contentsLength.length + newContentsLength);
+                out.write(0x30);
+                out.write(contentsLength, 0, contentsLength.length);
+                out.write(rewritten, contentsStart, communityHeaderStart - contentsStart);
+                out.write(SNMPBERType.SNMP_OCTETSTRING.getByte());
+                out.write(communityLength, 0, communityLength.length);
+                out.write(communityName, 0, communityName.length);
+                out.write(rewritten, communityEnd, message.length - communityEnd);
+                rewritten = out.toByteArray();
+            }
+        }
+
+        return rewritten;
+    }
+
+
+    /**
+     *  Returns true if the bytes from start to end in the array are the same as the supplied bytes.
+     */
+    private static boolean rangeEquals(byte[] bytes, int start, int end, byte[] other)
+    {
+        if (end - start != other.length)
+            return false;
+
+        for (int i = 0; i < other.length; i++)
+        {
+            if (bytes[start + i] != other[i])
+                return false;
+        }
+
+        return true;
+    }
+
+}
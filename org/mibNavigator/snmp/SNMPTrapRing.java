@@ -0,0 +1,164 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.util.concurrent.atomic.*;
+
+
+
+/**
+ *  The class SNMPTrapRing is the bounded hand-off between the receive threads of an SNMPTrapReceiver and
+ *  one of its dispatch threads, for one priority class (see SNMPTrapQueue). It is a fixed array of slots
+ *  used as a circular buffer, each slot carrying a sequence number that tells producers when it is free
+ *  and consumers when it is filled, so datagrams are added and removed with a compare-and-set rather than
+ *  a lock, and a receive thread is never held up by a dispatch thread. When the ring is full, offer fails
+ *  immediately instead of waiting.
+ *
+ *  Any number of threads may offer and poll.
+ */
+class SNMPTrapRing
+{
+    private AtomicReferenceArray<SNMPTrapDatagram> slots;
+    private AtomicLongArray sequences;
+    private int mask;
+
+    private AtomicLong enqueuePosition = new AtomicLong();
+    private AtomicLong dequeuePosition = new AtomicLong();
+
+
+    /**
+     *  Create a ring holding at least the supplied number of datagrams; the capacity is rounded up to a
+     *  power of two.
+     */
+    SNMPTrapRing(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+        slots = new AtomicReferenceArray<SNMPTrapDatagram>(size);
+        sequences = new AtomicLongArray(size);
+        mask = size - 1;
+
+        for (int i = 0; i < size; i++)
+            sequences.set(i, i);
+    }
+
+
+    /**
+     *  Returns the number of datagrams the ring can hold.
+     */
+    int capacity()
+    {
+        return mask + 1;
+    }
+
+
+    /**
+     *  Returns the number of datagrams currently in the ring; only an estimate while other threads use it.
+     */
+    int size()
+    {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        return (int)Math.max(0, Math.min(size, mask + 1));
+    }
+
+
+    /**
+     *  Adds the datagram to the ring, returning false without waiting if the ring is full.
+     */
+    boolean offer(SNMPTrapDatagram datagram)
+    {
+        long position = enqueuePosition.get();
+
+        while (true)
+        {
+            int index = (int)(position & mask);
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0)
+            {
+                // slot is free for this position; claim it
+                if (enqueuePosition.compareAndSet(position, position + 1))
+                {
+                    slots.set(index, datagram);
+                    sequences.set(index, position + 1);
+                    break;
+                }
+
+                position = enqueuePosition.get();
+            }
+            else if (difference < 0)
+            {
+                // slot still holds the datagram from one lap ago
+                return false;
+            }
+            else
+            {
+                // another producer claimed this position first
+                position = enqueuePosition.get();
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     *  Removes and returns the oldest datagram in the ring, or null if the ring is empty.
+     */
+    SNMPTrapDatagram poll()
+    {
+        long position = dequeuePosition.get();
+
+        while (true)
+        {
+            int index = (int)(position & mask);
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0)
+            {
+                // slot is filled for this position; claim it
+                if (dequeuePosition.compareAndSet(position, position + 1))
+                {
+                    SNMPTrapDatagram datagram = slots.get(index);
+                    slots.set(index, null);
+
+                    // free the slot for the producer one lap ahead
+                    sequences.set(index, position + mask + 1);
+                    return datagram;
+                }
+
+                position = dequeuePosition.get();
+            }
+            else if (difference < 0)
+            {
+                // not filled yet; ring is empty
+                return null;
+            }
+            else
+            {
+                // another consumer claimed this position first
+                position = dequeuePosition.get();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.net.*;
+import java.util.*;
+
+
+
+/**
+ *  The class SNMPTrapStormSummary describes the traps seen by an SNMPTrapDeduplicator during one summary
+ *  interval in which it suppressed duplicates: how many traps arrived and were suppressed, and the sources
+ *  and trap OIDs that sent the most. The counts for the top sources and OIDs are estimates, which may
+ *  overstate but never understate the true counts, since only a limited number of sources and OIDs are
+ *  counted at once.
+ */
+public class SNMPTrapStormSummary
+{
+    private long startTime;
+    private long endTime;
+    private long trapCount;
+    private long suppressedCount;
+    private Map<InetAddress,Long> topSources;
+    private Map<SNMPObjectIdentifier,Long> topTrapOIDs;
+
+
+    /**
+     *  Create a summary of the interval between the supplied times (in milliseconds since the epoch).
+     */
+    public SNMPTrapStormSummary(long startTime, long endTime, long trapCount, long suppressedCount, Map<InetAddress,Long> topSources, Map<SNMPObjectIdentifier,Long> topTrapOIDs)
+    {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.trapCount = trapCount;
+        this.suppressedCount = suppressedCount;
+        this.topSources = Collections.unmodifiableMap(topSources);
+        this.topTrapOIDs = Collections.unmodifiableMap(topTrapOIDs);
+    }
+
+
+    /**
+     *  Returns the start of the interval, in milliseconds since the epoch.
+     */
+    public long getStartTime()
+    {
+        return startTime;
+    }
+
+
+    /**
+     *  Returns the end of the interval, in milliseconds since the epoch.
+     */
+    public long getEndTime()
+    {
+        return endTime;
+    }
+
+
+    /**
+     *  Returns the number of traps seen during the interval, suppressed or not.
+     */
+    public long getTrapCount()
+    {
+        return trapCount;
+    }
+
+
+    /**
+     *  Returns the number of duplicate traps suppressed during the interval.
+     */
+    public long getSuppressedCount()
+    {
+        return suppressedCount;
+    }
+
+
+    /**
+     *  Returns the sources that sent the most traps during the interval, with their estimated trap counts,
+     *  busiest first.
+     */
+    public Map<InetAddress,Long> getTopSources()
+    {
+        return topSources;
+    }
+
+
+    /**
+     *  Returns the trap OIDs seen most often during the interval, with their estimated counts, most
+     *  frequent first.
+     */
+    public Map<SNMPObjectIdentifier,Long> getTopTrapOIDs()
+    {
+        return topTrapOIDs;
+    }
+
+
+    /**
+     *  Returns a one-line description of the interval, suitable for logging.
+     */
+    public String toString()
+    {
+        return "Trap storm: " + trapCount + " traps, " + suppressedCount + " suppressed, between " + new Date(startTime) + " and " + new Date(endTime) + "; top sources " + topSources + "; top trap OIDs " + topTrapOIDs;
+    }
+
+}
@@ -0,0 +1,428 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.io.*;
+import java.util.*;
+
+
+
+/**
+ *  The class SNMPTrapTemplate holds a trap message encoded once, ready to be sent over and over with just a
+ *  few fields changed: the sysUpTime (or SNMPv1 timestamp), the request ID (SNMPv2) and the values of chosen
+ *  variable bindings. Filling in a template copies the encoded bytes with the new values spliced in, which
+ *  costs a small fraction of encoding the message from its objects; it's intended for senders of high trap
+ *  rates, such as SNMPTrapGenerator.
+ *
+ *  Only bindings with integer-valued types - INTEGER, Counter32, Gauge32, TimeTicks, UInteger32 and
+ *  Counter64 - can be patched. Since the patched values change length, the lengths of the enclosing
+ *  sequences are kept in the template in three-byte long form, which BER allows, and fixed up as each trap
+ *  is filled in; everything else is as SNMPMessage would encode it.
+ */
+public class SNMPTrapTemplate
+{
+    private static final int SEQUENCE_LENGTH_BYTES = 3;
+
+    // integer types whose values are unsigned
+    private static final int UNSIGNED_TYPES_MASK = 0x40;
+
+    private byte[] template;
+    private int version;
+
+    // the fields patched, in order of position
+    private int[] patchStart;
+    private int[] patchEnd;
+    private int[] patchTag;
+    private int[] patchKind;
+
+    private static final int SYS_UP_TIME = 0;
+    private static final int REQUEST_ID = 1;
+    private static final int VAR_BIND_VALUE = 2;
+
+    // the sequences enclosing patched fields: where their length bytes are, and their contents
+    private int[] sequenceLengthAt;
+    private int[] sequenceStart;
+    private int[] sequenceEnd;
+
+
+
+    /**
+     *  Create a template from the supplied SNMPv1 trap, with the timestamp and the values of the bindings at
+     *  the supplied indexes in its variable binding list patchable.
+     *
+     *  @throws SNMPBadValueException Indicates a binding chosen for patching doesn't exist or doesn't have an
+     *  integer-valued type.
+     */
+    public SNMPTrapTemplate(int version, String community, SNMPv1TrapPDU pdu, int... patchedVarBinds)
+        throws SNMPBadValueException
+    {
+        this(version, new SNMPMessage(version, community, pdu).getBEREncoding(), patchedVarBinds);
+    }
+
+
+    /**
+     *  Create a template from the supplied SNMPv2 trap, with the sysUpTime, the request ID and the values of
+     *  the bindings at the supplied indexes in its variable binding list patchable. Index 0 is the
+     *  sysUpTime binding and 1 the snmpTrapOID binding, so the trap's own bindings start at index 2.
+     *
+     *  @throws SNMPBadValueException Indicates a binding chosen for patching doesn't exist or doesn't have an
+     *  integer-valued type.
+     */
+    public SNMPTrapTemplate(int version, String community, SNMPv2TrapPDU pdu, int... patchedVarBinds)
+        throws SNMPBadValueException
+    {
+        this(version, new SNMPMessage(version, community, pdu).getBEREncoding(), patchedVarBinds);
+    }
+
+
+    private SNMPTrapTemplate(int version, byte[] encoding, int[] patchedVarBinds)
+        throws SNMPBadValueException
+    {
+        this.version = version;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(encoding.length + 64);
+        List<int[]> sequences = new ArrayList<int[]>();
+        List<int[]> patches = new ArrayList<int[]>();
+
+        Arrays.sort(patchedVarBinds);
+        this.build(encoding, out, sequences, patches, patchedVarBinds);
+
+        template = out.toByteArray();
+
+        patchStart = new int[patches.size()];
+        patchEnd = new int[patches.size()];
+        patchTag = new int[patches.size()];
+        patchKind = new int[patches.size()];
+
+        for (int i = 0; i < patches.size(); i++)
+        {
+            int[] patch = patches.get(i);
+            patchStart[i] = patch[0];
+            patchEnd[i] = patch[1];
+            patchTag[i] = patch[2];
+            patchKind[i] = patch[3];
+        }
+
+        sequenceLengthAt = new int[sequences.size()];
+        sequenceStart = new int[sequences.size()];
+        sequenceEnd = new int[sequences.size()];
+
+        for (int i = 0; i < sequences.size(); i++)
+        {
+            int[] sequence = sequences.get(i);
+            sequenceLengthAt[i] = sequence[0];
+            sequenceStart[i] = sequence[1];
+            sequenceEnd[i] = sequence[2];
+        }
+    }
+
+
+    /**
+     *  Copies the message into the template, with long-form lengths for the sequences, noting where the
+     *  sequences and patched fields are.
+     */
+    private void build(byte[] encoding, ByteArrayOutputStream out, List<int[]> sequences, List<int[]> patches, int[] patchedVarBinds)
+        throws SNMPBadValueException
+    {
+        SNMPRawElement message = new SNMPRawElement();
+        SNMPRawElement element = new SNMPRawElement();
+
+        // message: version, community, PDU
+        if (!message.read(encoding, 0, encoding.length))
+            throw new SNMPBadValueException("Can't parse encoded trap");
+
+        int messageLengthAt = this.openSequence(out, message.tag);
+
+        element.read(encoding, message.start, message.end);
+        element.read(encoding, element.end, message.end);
+        out.write(encoding, message.start, element.end - message.start);
+
+        SNMPRawElement pdu = new SNMPRawElement();
+        if (!pdu.read(encoding, element.end, message.end))
+            throw new SNMPBadValueException("Can't parse encoded trap");
+
+        int pduLengthAt = this.openSequence(out, pdu.tag);
+        int position = pdu.start;
+
+        if (pdu.tag == (SNMPBERType.SNMP_TRAP.getByte() & 0xFF))
+        {
+            // enterprise, agent address, generic trap, specific trap copied; then the timestamp
+            for (int i = 0; i < 4; i++)
+            {
+                element.read(encoding, position, pdu.end);
+                position = element.end;
+            }
+
+            out.write(encoding, pdu.start, position - pdu.start);
+
+            element.read(encoding, position, pdu.end);
+            this.copyPatch(encoding, element, out, patches, SYS_UP_TIME);
+            position = element.end;
+        }
+        else
+        {
+            // request ID patched; error status and index copied
+            element.read(encoding, position, pdu.end);
+            this.copyPatch(encoding, element, out, patches, REQUEST_ID);
+            position = element.end;
+
+            int copyStart = position;
+            for (int i = 0; i < 2; i++)
+            {
+                element.read(encoding, position, pdu.end);
+                position = element.end;
+            }
+
+            out.write(encoding, copyStart, position - copyStart);
+        }
+
+        // variable bindings
+        SNMPRawElement varBinds = new SNMPRawElement();
+        if (!varBinds.read(encoding, position, pdu.end))
+            throw new SNMPBadValueException("Can't parse encoded trap");
+
+        int varBindsLengthAt = this.openSequence(out, varBinds.tag);
+        position = varBinds.start;
+        int index = 0;
+
+        SNMPRawElement binding = new SNMPRawElement();
+
+        while (position < varBinds.end)
+        {
+            binding.read(encoding, position, varBinds.end);
+
+            boolean sysUpTime = (index == 0) && (pdu.tag != (SNMPBERType.SNMP_TRAP.getByte() & 0xFF));
+            boolean patched = (Arrays.binarySearch(patchedVarBinds, index) >= 0);
+
+            if (sysUpTime || patched)
+            {
+                int bindingLengthAt = this.openSequence(out, binding.tag);
+
+                // name copied, value patched
+                element.read(encoding, binding.start, binding.end);
+                out.write(encoding, binding.start, element.end - binding.start);
+                element.read(encoding, element.end, binding.end);
+                this.copyPatch(encoding, element, out, patches, sysUpTime ? SYS_UP_TIME : VAR_BIND_VALUE);
+
+                this.closeSequence(out, bindingLengthAt, sequences);
+            }
+            else
+            {
+                out.write(encoding, binding.headerStart, binding.end - binding.headerStart);
+            }
+
+            position = binding.end;
+            index++;
+        }
+
+        if ((patchedVarBinds.length > 0) && (patchedVarBinds[patchedVarBinds.length - 1] >= index))
+            throw new SNMPBadValueException("No variable binding " + patchedVarBinds[patchedVarBinds.length - 1] + " to patch");
+
+        this.closeSequence(out, varBindsLengthAt, sequences);
+        this.closeSequence(out, pduLengthAt, sequences);
+        this.closeSequence(out, messageLengthAt, sequences);
+    }
+
+
+    /**
+     *  Writes the tag of a sequence and room for its length, returning where the length goes.
+     */
+    private int openSequence(ByteArrayOutputStream out, int tag)
+    {
+        out.write(tag);
+        out.write(0x80 | (SEQUENCE_LENGTH_BYTES - 1));
+
+        int lengthAt = out.size();
+        for (int i = 1; i < SEQUENCE_LENGTH_BYTES; i++)
+            out.write(0);
+
+        return lengthAt;
+    }
+
+
+    /**
+     *  Records the sequence whose length goes at the supplied position, now all its contents are written.
+     *  The length itself is filled in each time the template is.
+     */
+    private void closeSequence(ByteArrayOutputStream out, int lengthAt, List<int[]> sequences)
+    {
+        sequences.add(new int[] {lengthAt, lengthAt + SEQUENCE_LENGTH_BYTES - 1, out.size()});
+    }
+
+
+    /**
+     *  Copies the element, recording it as a patched field.
+     */
+    private void copyPatch(byte[] encoding, SNMPRawElement element, ByteArrayOutputStream out, List<int[]> patches, int kind)
+        throws SNMPBadValueException
+    {
+        boolean integer = (element.tag == 0x02) || ((element.tag >= 0x41) && (element.tag <= 0x43)) || (element.tag == 0x46) || (element.tag == 0x47);
+        if (!integer)
+            throw new SNMPBadValueException("Can't patch a value with tag " + element.tag + "; only integer types can be patched");
+
+        patches.add(new int[] {out.size(), out.size() + (element.end - element.headerStart), element.tag, kind});
+        out.write(encoding, element.headerStart, element.end - element.headerStart);
+    }
+
+
+
+    /**
+     *  Returns the SNMP version of the template's message.
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+
+    /**
+     *  Returns the number of variable binding values patched by fillIn.
+     */
+    public int getPatchedVarBindCount()
+    {
+        int count = 0;
+        for (int kind : patchKind)
+        {
+            if (kind == VAR_BIND_VALUE)
+                count++;
+        }
+
+        return count;
+    }
+
+
+    /**
+     *  Returns the largest number of bytes fillIn can write.
+     */
+    public int getMaximumLength()
+    {
+        // each patched field may grow to a 9-byte integer
+        return template.length + 11 * patchStart.length;
+    }
+
+
+    /**
+     *  Writes the message into the buffer at the supplied offset, with the supplied sysUpTime (in hundredths
+     *  of a second), request ID (ignored for SNMPv1 traps) and values for the patched bindings, in order of
+     *  their indexes; missing values are taken as 0. Returns the number of bytes written, at most
+     *  getMaximumLength.
+     */
+    public int fillIn(byte[] buffer, int offset, long sysUpTime, int requestID, long... varBindValues)
+    {
+        int out = offset;
+        int copied = 0;
+        int valueIndex = 0;
+        int[] delta = new int[patchStart.length];
+
+        for (int i = 0; i < patchStart.length; i++)
+        {
+            System.arraycopy(template, copied, buffer, out, patchStart[i] - copied);
+            out += patchStart[i] - copied;
+
+            long value;
+            if (patchKind[i] == SYS_UP_TIME)
+                value = sysUpTime;
+            else if (patchKind[i] == REQUEST_ID)
+                value = requestID;
+            else
+                value = (valueIndex < varBindValues.length) ? varBindValues[valueIndex++] : 0;
+
+            int written = writeInteger(buffer, out, patchTag[i], value);
+            delta[i] = written - (patchEnd[i] - patchStart[i]);
+            out += written;
+            copied = patchEnd[i];
+        }
+
+        System.arraycopy(template, copied, buffer, out, template.length - copied);
+        out += template.length - copied;
+
+        // fix up the sequence lengths: each grows by the changes within it, and moves by those before it
+        for (int i = 0; i < sequenceLengthAt.length; i++)
+        {
+            int length = sequenceEnd[i] - sequenceStart[i];
+            int shift = 0;
+
+            for (int j = 0; j < patchStart.length; j++)
+            {
+                if (patchStart[j] < sequenceStart[i])
+                    shift += delta[j];
+                else if (patchStart[j] < sequenceEnd[i])
+                    length += delta[j];
+            }
+
+            int lengthAt = offset + sequenceLengthAt[i] + shift;
+            for (int k = SEQUENCE_LENGTH_BYTES - 2; k >= 0; k--)
+            {
+                buffer[lengthAt + k] = (byte)length;
+                length >>>= 8;
+            }
+        }
+
+        return out - offset;
+    }
+
+
+    /**
+     *  Returns a newly-allocated copy of the message, with the supplied values filled in as for the other
+     *  form of this method.
+     */
+    public byte[] fillIn(long sysUpTime, int requestID, long... varBindValues)
+    {
+        byte[] buffer = new byte[this.getMaximumLength()];
+        int length = this.fillIn(buffer, 0, sysUpTime, requestID, varBindValues);
+        return Arrays.copyOf(buffer, length);
+    }
+
+
+    /**
+     *  Writes the value as a BER integer with the supplied tag, in as few bytes as possible; values of the
+     *  unsigned application types are treated as unsigned, and truncated to 32 bits except for Counter64.
+     *  Returns the number of bytes written.
+     */
+    private static int writeInteger(byte[] buffer, int position, int tag, long value)
+    {
+        boolean unsigned = (tag & UNSIGNED_TYPES_MASK) != 0;
+
+        if (unsigned && (tag != 0x46))
+            value &= 0xFFFFFFFFL;
+
+        // count the bytes needed for the value in two's complement, plus a leading zero byte for unsigned
+        // values with the top bit set
+        int length = 8;
+        while ((length > 1) && (((value >> (8 * (length - 1) - 1)) == 0) || ((value >> (8 * (length - 1) - 1)) == -1)))
+            length--;
+
+        boolean leadingZero = unsigned && (value < 0);
+
+        buffer[position++] = (byte)tag;
+        buffer[position++] = (byte)(leadingZero ? length + 1 : length);
+
+        if (leadingZero)
+            buffer[position++] = 0;
+
+        for (int i = length - 1; i >= 0; i--)
+            buffer[position++] = (byte)(value >> (8 * i));
+
+        return (leadingZero ? 3 : 2) + length;
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+
+
+/**
+ *  The class SNMPValueStore is an SNMPSubtreeHandler serving values held in memory, for MIB data that is
+ *  static or updated by the application rather than computed per request. Values are kept in a sorted map
+ *  keyed by OID, so gets and get-nexts are logarithmic in the number of stored values. The store may be
+ *  updated while the agent is serving requests from it.
+ *
+ *  By default the store is read-only to managers: a set-request for a stored OID fails with a read-only
+ *  error. Use setWritable to accept sets, which then replace the stored value.
+ */
+public class SNMPValueStore implements SNMPSubtreeHandler
+{
+    private ConcurrentSkipListMap<SNMPObjectIdentifier,SNMPObject> values;
+    private boolean writable = false;
+
+
+    /**
+     *  Create a new, empty value store.
+     */
+    public SNMPValueStore()
+    {
+        values = new ConcurrentSkipListMap<SNMPObjectIdentifier,SNMPObject>();
+    }
+
+
+    /**
+     *  Stores the value for the supplied OID, replacing any previous value.
+     */
+    public void put(SNMPObjectIdentifier oid, SNMPObject value)
+    {
+        values.put(oid, value);
+    }
+
+
+    /**
+     *  Stores the value for the OID given as a dot-separated string, replacing any previous value.
+     *
+     *  @throws SNMPBadValueException Indicates incorrectly-formatted OID string supplied.
+     */
+    public void put(String oid, SNMPObject value)
+        throws SNMPBadValueException
+    {
+        values.put(new SNMPObjectIdentifier(oid), value);
+    }
+
+
+    /**
+     *  Removes the value stored for the supplied OID, if any.
+     */
+    public void remove(SNMPObjectIdentifier oid)
+    {
+        values.remove(oid);
+    }
+
+
+    /**
+     *  Removes all stored values.
+     */
+    public void clear()
+    {
+        values.clear();
+    }
+
+
+    /**
+     *  Returns the number of stored values.
+     */
+    public int size()
+    {
+        return values.size();
+    }
+
+
+    /**
+     *  Sets whether set-requests from managers may replace stored values.
+     */
+    public void setWritable(boolean writable)
+    {
+        this.writable = writable;
+    }
+
+
+    /**
+     *  Returns true if set-requests from managers may replace stored values.
+     */
+    public boolean isWritable()
+    {
+        return writable;
+    }
+
+
+    /**
+     *  Returns the stored value of the supplied OID, or null if none is stored.
+     */
+    public SNMPObject get(SNMPObjectIdentifier oid, String communityName)
+    {
+        return values.get(oid);
+    }
+
+
+    /**
+     *  Returns the stored pair with the smallest OID greater than the supplied one, or null if none.
+     */
+    public SNMPVariablePair getNext(SNMPObjectIdentifier oid, String communityName)
+    {
+        Map.Entry<SNMPObjectIdentifier,SNMPObject> next = values.higherEntry(oid);
+
+        if (next == null)
+            return null;
+
+        try
+        {
+            return new SNMPVariablePair(next.getKey(), next.getValue());
+        }
+        catch (SNMPBadValueException e)
+        {
+            // can't happen! both components are SNMPObjects
+            return null;
+        }
+    }
+
+
+    /**
+     *  Replaces the stored value of the supplied OID if the store is writable. Only OIDs already in the
+     *  store can be set, and the new value must be of the same SNMP type as the stored one.
+     */
+    public boolean set(SNMPObjectIdentifier oid, SNMPObject newValue, String communityName)
+        throws SNMPSetException
+    {
+        SNMPObject oldValue = values.get(oid);
+
+        if (oldValue == null)
+            return false;
+
+        if (!writable)
+            throw new SNMPSetException("OID " + oid + " is read-only", 0, SNMPRequestException.VALUE_READ_ONLY);
+
+        if (!oldValue.getClass().equals(newValue.getClass()))
+            throw new SNMPSetException("Wrong type supplied for OID " + oid, 0, SNMPRequestException.BAD_VALUE);
+
+        values.put(oid, newValue);
+        return true;
+    }
+
+}
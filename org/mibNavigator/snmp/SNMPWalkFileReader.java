@@ -0,0 +1,275 @@
+/*
+ * SNMP Package
+ *
+ * Copyright (C) 2004, Jonathan Sevy <jsevy@mcs.drexel.edu>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.mibNavigator.snmp;
+
+import java.io.*;
+import java.math.*;
+import java.util.regex.*;
+
+
+
+/**
+ *  The class SNMPWalkFileReader loads a recorded walk of a device into an SNMPValueStore, from which an
+ *  SNMPSimulatedDevice can replay it. The file format is the output of the net-snmp snmpwalk command with
+ *  numeric OIDs (snmpwalk -On), one binding per line:
+ *
+ *  <pre>
+ *      .1.3.6.1.2.1.1.1.0 = STRING: "Linux router 2.6.32"
+ *      .1.3.6.1.2.1.1.3.0 = Timeticks: (8654321) 1 day, 0:02:23.21
+ *      .1.3.6.1.2.1.2.2.1.10.1 = Counter32: 1623547
+ *  </pre>
+ *
+ *  OIDs may also start with iso instead of .1. Strings and hex strings may continue over several lines.
+ *  Bindings of types that can't be represented (e.g., Opaque), and lines that aren't bindings at all,
+ *  such as "No more variables left in this MIB View", are skipped.
+ */
+public class SNMPWalkFileReader
+{
+    // an OID, "=", and the rest of the binding
+    private static final Pattern BINDING = Pattern.compile("^\\s*((?:iso|\\.?[0-9]+)(?:\\.[0-9]+)*)\\s+=\\s*(.*)$");
+
+    // the type and value parts of the rest
+    private static final Pattern TYPED_VALUE = Pattern.compile("^([A-Za-z][A-Za-z0-9 -]*?):\\s*(.*)$", Pattern.DOTALL);
+
+    // the number in an enumerated integer like "up(1)", or in timeticks like "(8654321) 1 day, 0:02:23.21"
+    private static final Pattern PARENTHESIZED_NUMBER = Pattern.compile("\\((-?[0-9]+)\\)");
+
+
+    /**
+     *  Reads the walk file with the supplied name into a new value store.
+     *
+     *  @throws IOException Indicates the file couldn't be read.
+     */
+    public static SNMPValueStore read(String fileName)
+        throws IOException
+    {
+        Reader reader = new FileReader(fileName);
+
+        try
+        {
+            return read(reader);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+
+    /**
+     *  Reads a walk from the supplied reader into a new value store.
+     *
+     *  @throws IOException Indicates the reader failed.
+     */
+    public static SNMPValueStore read(Reader reader)
+        throws IOException
+    {
+        SNMPValueStore values = new SNMPValueStore();
+        BufferedReader in = new BufferedReader(reader);
+
+        String oid = null;
+        StringBuilder valueText = new StringBuilder();
+
+        String line;
+        while ((line = in.readLine()) != null)
+        {
+            Matcher binding = BINDING.matcher(line);
+
+            if (binding.matches())
+            {
+                addBinding(values, oid, valueText.toString());
+
+                oid = binding.group(1);
+                valueText.setLength(0);
+                valueText.append(binding.group(2));
+            }
+            else if (oid != null)
+            {
+                // continuation of a multi-line string value
+                valueText.append('\n').append(line);
+            }
+        }
+
+        addBinding(values, oid, valueText.toString());
+
+        return values;
+    }
+
+
+    /**
+     *  Adds the binding to the store, if it has a value that can be represented.
+     */
+    private static void addBinding(SNMPValueStore values, String oid, String valueText)
+    {
+        if (oid == null)
+            return;
+
+        try
+        {
+            SNMPObject value = parseValue(valueText.trim());
+
+            if (value != null)
+                values.put(parseOID(oid), value);
+        }
+        catch (SNMPBadValueException e)
+        {
+            // malformed binding; skip it
+        }
+        catch (NumberFormatException e)
+        {
+            // malformed binding; skip it
+        }
+    }
+
+
+    /**
+     *  Converts an OID as printed by snmpwalk to a dot-separated string of numbers.
+     */
+    private static SNMPObjectIdentifier parseOID(String oid)
+        throws SNMPBadValueException
+    {
+        if (oid.startsWith("."))
+            oid = oid.substring(1);
+        else if (oid.startsWith("iso"))
+            oid = "1" + oid.substring(3);
+
+        return new SNMPObjectIdentifier(oid);
+    }
+
+
+    /**
+     *  Returns the SNMP value described by the text following the "=", or null if it can't be represented.
+     */
+    private static SNMPObject parseValue(String text)
+        throws SNMPBadValueException
+    {
+        // a zero-length string is printed without a type
+        if (text.equals("\"\""))
+            return new SNMPOctetString("");
+
+        if (text.equals("NULL"))
+            return new SNMPNull();
+
+        Matcher typedValue = TYPED_VALUE.matcher(text);
+        if (!typedValue.matches())
+            return null;
+
+        String type = typedValue.group(1);
+        String value = typedValue.group(2).trim();
+
+        if (type.equals("STRING"))
+            return new SNMPOctetString(unquote(value));
+
+        if (type.equals("Hex-STRING") || type.equals("BITS"))
+            return new SNMPOctetString(parseHex(value));
+
+        if (type.equals("INTEGER"))
+            return new SNMPInteger(Long.parseLong(firstNumber(value)));
+
+        if (type.equals("Counter32"))
+        {
+            SNMPCounter32 counter = new SNMPCounter32();
+            counter.setValue(new BigInteger(firstNumber(value)));
+            return counter;
+        }
+
+        if (type.equals("Counter64"))
+        {
+            SNMPCounter64 counter = new SNMPCounter64();
+            counter.setValue(new BigInteger(firstNumber(value)));
+            return counter;
+        }
+
+        if (type.equals("Gauge32"))
+            return new SNMPGauge32(Long.parseLong(firstNumber(value)));
+
+        if (type.equals("UInteger32") || type.equals("Unsigned32"))
+            return new SNMPUInteger32(Long.parseLong(firstNumber(value)));
+
+        if (type.equals("Timeticks"))
+            return new SNMPTimeTicks(Long.parseLong(firstNumber(value)));
+
+        if (type.equals("OID"))
+            return parseOID(value);
+
+        if (type.equals("IpAddress"))
+            return new SNMPIPAddress(value);
+
+        if (type.equals("Network Address"))
+            return new SNMPIPAddress(parseHex(value.replace(':', ' ')));
+
+        // Opaque, NsapAddress, and anything else unknown
+        return null;
+    }
+
+
+    /**
+     *  Returns the number in parentheses if there is one, as in "up(1)", or else the text up to the first space.
+     */
+    private static String firstNumber(String value)
+    {
+        Matcher number = PARENTHESIZED_NUMBER.matcher(value);
+        if (number.find())
+            return number.group(1);
+
+        int space = value.indexOf(' ');
+        if (space >= 0)
+            value = value.substring(0, space);
+
+        return value;
+    }
+
+
+    /**
+     *  Strips the surrounding quotes from a string value, and the escaping backslashes from the quotes
+     *  and backslashes it contains.
+     */
+    private static String unquote(String value)
+    {
+        if ((value.length() < 2) || !value.startsWith("\"") || !value.endsWith("\""))
+            return value;
+
+        value = value.substring(1, value.length() - 1);
+        return value.replace("\\\"", "\"").replace("\\\\", "\\");
+    }
+
+
+    /**
+     *  Converts whitespace-separated hex bytes, e.g. "00 1A 2B", to a byte array. Anything following the
+     *  bytes, like the bit names printed after BITS values, is ignored.
+     */
+    private static byte[] parseHex(String value)
+    {
+        String[] hexBytes = value.trim().split("\\s+");
+
+        int length = 0;
+        while ((length < hexBytes.length) && hexBytes[length].matches("[0-9A-Fa-f]{1,2}"))
+            length++;
+
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = (byte)Integer.parseInt(hexBytes[i], 16);
+
+        return bytes;
+    }
+
+}
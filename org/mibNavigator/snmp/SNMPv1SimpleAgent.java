@@ -24,6 +24,7 @@ package org.mibNavigator.snmp;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 
 
@@ -34,6 +35,24 @@ import java.util.*;
  *  and return this to the agent interface for inclusion in a response to the manager. 
  *  The approach is that from version 1 of SNMP, using no encryption of data. Communication occurs
  *  via UDP.
+ *
+ *  Subtrees of the MIB can also be served by SNMPSubtreeHandlers registered with registerSubtree. These are
+ *  kept in an SNMPSubtreeRegistry sorted by OID, so each requested OID is routed only to the handler owning
+ *  it, and get-next successors are found in logarithmic time rather than by asking every listener. Listeners
+ *  and handlers may be used together; listeners are only consulted for OIDs the handlers don't resolve, and
+ *  for get-next requests, where the nearest successor offered by either is returned.
+ *
+ *  Version 2c get-bulk requests are answered as well, using the same sorted successor lookup, with as many 
+ *  repetitions as fit within the maximum response size (see setMaxResponseSize).
+ *
+ *  Requests are received and decoded on one or more receive threads, and each is then handed, together
+ *  with its own SNMPRequestContext, to a pool of worker threads which consult the listeners and send the
+ *  response. With more than one worker thread, listeners may be called concurrently and must be
+ *  thread-safe.
+ *
+ *  On platforms supporting SO_REUSEPORT (such as Linux), the agent can be constructed with several sockets
+ *  bound to the same port, so the kernel spreads incoming requests across them; each socket then has its
+ *  own receive threads, and responses are sent through the socket the request arrived on.
  */
 public class SNMPv1SimpleAgent implements Runnable
 {
@@ -41,19 +60,25 @@ public class SNMPv1SimpleAgent implements Runnable
     // RFC 1157, need to handle messages of at least 484 bytes
     public int receiveBufferSize = 512;
     
+    // largest response the agent will build for a get-bulk request; responses are cut short
+    // to stay within it. The default fits in a single Ethernet frame.
+    private int maxResponseSize = 1472;
+    
     private int version = 0;
     
-    private DatagramSocket dSocket;
-    private Thread receiveThread;
-    private Vector<SNMPRequestListener> requestListeners;
+    // normally just one; several bound to the same port with SO_REUSEPORT if requested
+    private DatagramSocket[] sockets;
+    private Thread[] receiveThreads;
+    private int receiveThreadCount = 1;
     
-    private PrintWriter errorLogger;
+    // received requests are handed off to these workers, so a slow listener doesn't hold up the socket
+    private ExecutorService workerPool;
+    private int workerThreadCount = 1;
+    
+    private CopyOnWriteArrayList<SNMPRequestListener> requestListeners;
+    private SNMPSubtreeRegistry subtreeRegistry;
     
-    private SNMPSequence requestedVarList;
-    private SNMPSequence responseVarList;
-    private Hashtable<SNMPObjectIdentifier,SNMPObject> variablePairs;
-    private int errorIndex = 0;
-    private int errorStatus = SNMPRequestException.NO_ERROR;
+    private PrintWriter errorLogger;
     
     /**
      *  Construct a new agent object to listen for requests from remote SNMP managers. The agent listens
@@ -94,11 +119,41 @@ public class SNMPv1SimpleAgent implements Runnable
      */
     public SNMPv1SimpleAgent(int newVersion, int localPort, PrintWriter errorReceiver)
         throws SocketException
+    {
+        this(newVersion, localPort, 1, errorReceiver);
+    }
+    
+    
+    /**
+     *  Construct a new agent object to listen for requests from remote SNMP managers. The agent listens
+     *  on the supplied port through the given number of sockets, and sends error messages to the specified
+     *  PrintWriter. More than one socket needs SO_REUSEPORT; where it isn't supported, a single socket is 
+     *  used.
+     */
+    public SNMPv1SimpleAgent(int newVersion, int localPort, int socketCount, PrintWriter errorReceiver)
+        throws SocketException
+    {
+        version = newVersion;
+        sockets = SNMPReusePortSockets.open(localPort, socketCount);
+        requestListeners = new CopyOnWriteArrayList<SNMPRequestListener>(); 
+        subtreeRegistry = new SNMPSubtreeRegistry();
+        receiveThreads = new Thread[0];
+        errorLogger = errorReceiver;
+    }
+    
+    
+    /**
+     *  Construct an agent without a socket of its own, serving the values of the supplied registry. Such an
+     *  agent can't be started or run - both throw an IllegalStateException; it only answers requests 
+     *  received elsewhere and passed to answerRequest, as done by SNMPAgentSimulator.
+     */
+    SNMPv1SimpleAgent(int newVersion, SNMPSubtreeRegistry registry, PrintWriter errorReceiver)
     {
         version = newVersion;
-        dSocket = new DatagramSocket(localPort);
-        requestListeners = new Vector<SNMPRequestListener>(); 
-        receiveThread = new Thread(this);
+        sockets = new DatagramSocket[0];
+        requestListeners = new CopyOnWriteArrayList<SNMPRequestListener>(); 
+        subtreeRegistry = registry;
+        receiveThreads = new Thread[0];
         errorLogger = errorReceiver;
     }
     
@@ -112,7 +167,7 @@ public class SNMPv1SimpleAgent implements Runnable
     }
     
     
-    public void addRequestListener(SNMPRequestListener listener)
+    public synchronized void addRequestListener(SNMPRequestListener listener)
     {
         // see if listener already added; if so, ignore
         for (int i = 0; i < requestListeners.size(); i++)
@@ -126,7 +181,7 @@ public class SNMPv1SimpleAgent implements Runnable
     }
     
     
-    public void removeRequestListener(SNMPRequestListener listener)
+    public synchronized void removeRequestListener(SNMPRequestListener listener)
     {
         // see if listener in list; if so, remove, if not, ignore
         for (int i = 0; i < requestListeners.size(); i++)
@@ -141,16 +196,62 @@ public class SNMPv1SimpleAgent implements Runnable
     }
 
     
+    /**
+     *  Registers a handler as the source of all values in the subtree rooted at the supplied OID,
+     *  replacing any handler previously registered under the same root.
+     */
+    public void registerSubtree(SNMPObjectIdentifier subtreeRoot, SNMPSubtreeHandler handler)
+    {
+        subtreeRegistry.register(subtreeRoot, handler);
+    }
+    
+    
+    /**
+     *  Removes the handler registered under the supplied root OID, if any.
+     */
+    public void unregisterSubtree(SNMPObjectIdentifier subtreeRoot)
+    {
+        subtreeRegistry.unregister(subtreeRoot);
+    }
+    
+    
+    /**
+     *  Returns the registry holding the subtree handlers of this agent.
+     */
+    public SNMPSubtreeRegistry getSubtreeRegistry()
+    {
+        return subtreeRegistry;
+    }
+
+    
     /**
      *  Start listening for requests from remote managers.
      */
-    public void startReceiving()
+    public synchronized void startReceiving()
     {
-        // if receiveThread not already running, start it
-        if (!receiveThread.isAlive())
+        if (sockets.length == 0)
+            throw new IllegalStateException("Agent has no socket to receive requests on.");
+        
+        // if receive threads not already running, start them
+        if (!this.isReceiving())
         {
-            receiveThread = new Thread(this);
-            receiveThread.start();
+            workerPool = Executors.newFixedThreadPool(workerThreadCount);
+            
+            // receiveThreadCount threads for each socket
+            receiveThreads = new Thread[receiveThreadCount * sockets.length];
+            for (int i = 0; i < receiveThreads.length; i++)
+            {
+                final DatagramSocket socket = sockets[i % sockets.length];
+                
+                receiveThreads[i] = new Thread(new Runnable()
+                {
+                    public void run()
+                    {
+                        receive(socket);
+                    }
+                });
+                receiveThreads[i].start();
+            }
         }
     }
     
@@ -158,97 +259,88 @@ public class SNMPv1SimpleAgent implements Runnable
     /**
      *  Stop listening for requests from remote managers.
      */
-    public void stopReceiving()
+    public synchronized void stopReceiving()
         throws SocketException
     {
-        // interrupt receive thread so it will die a natural death
-        receiveThread.interrupt();
+        // interrupt receive threads so they will die a natural death
+        for (Thread receiveThread : receiveThreads)
+            receiveThread.interrupt();
+        
+        // let the workers finish the requests already handed to them
+        if (workerPool != null)
+            workerPool.shutdown();
+    }
+    
+    
+    /**
+     *  Returns true if any receive thread is still running.
+     */
+    private boolean isReceiving()
+    {
+        for (Thread receiveThread : receiveThreads)
+        {
+            if (receiveThread.isAlive())
+                return true;
+        }
+        
+        return false;
     }
 
     
     /**
      *  Waits for SNMP request messages to come in on port 161 (or the port supplied in the constructor), 
-     *  then dispatches the retrieved SNMPPDU and community name to each of the registered SNMPRequestListeners 
-     *  by calling their processRequest methods.
+     *  decodes each into its own SNMPRequestContext and hands it to the worker pool, which dispatches the
+     *  retrieved SNMPPDU and community name to each of the registered SNMPRequestListeners by calling their 
+     *  processRequest methods. When called directly rather than through startReceiving, only the first 
+     *  socket is read.
+     *
+     *  @throws IllegalStateException Indicates the agent was constructed without a socket.
      */
     public void run()
     {
-        while (!receiveThread.isInterrupted())
+        if (sockets.length == 0)
+            throw new IllegalStateException("Agent has no socket to receive requests on.");
+        
+        this.receive(sockets[0]);
+    }
+    
+    
+    /**
+     *  Waits for requests on the supplied socket, handing each to the worker pool to be answered through
+     *  the same socket. Each receive thread started by startReceiving runs this loop.
+     */
+    private void receive(final DatagramSocket socket)
+    {
+        // capture the pool used for this run, since a later start may replace the field
+        ExecutorService workers = workerPool;
+        
+        while (!Thread.currentThread().isInterrupted())
         {   
             try
             {
                 DatagramPacket inPacket = new DatagramPacket(new byte[receiveBufferSize], receiveBufferSize);
-                dSocket.receive(inPacket);
+                socket.receive(inPacket);
                 
-                // Extract remote sender information.
-                InetAddress requesterAddress = inPacket.getAddress();
-                int requesterPort = inPacket.getPort();
+                // Extract remote sender information and request data.
+                final SNMPRequestContext context = new SNMPRequestContext(inPacket.getData(), inPacket.getAddress(), inPacket.getPort());
                 
-                // Extract request data.
-                byte[] encodedMessage = inPacket.getData();
-                SNMPMessage receivedMessage = new SNMPMessage(SNMPBERCodec.extractNextTLV(encodedMessage,0).value);
-                String communityName = receivedMessage.getCommunityName();
-                SNMPPDU receivedPDU = receivedMessage.getPDU();
-                SNMPBERType requestPDUType = receivedPDU.getPDUType();
+                if (!isAnswerable(context))
+                    continue;  // some other PDU type; silently ignore and skip the rest of this loop iteration
                 
-                requestedVarList = receivedPDU.getVarBindList();
-                variablePairs = new Hashtable<SNMPObjectIdentifier,SNMPObject>();
-                responseVarList = new SNMPSequence();
-                errorIndex = 0;
-                errorStatus = SNMPRequestException.NO_ERROR;
-                int requestID = receivedPDU.getRequestID();
+                if (workers == null)
+                {
+                    // run() called directly rather than through startReceiving; no pool to hand off to
+                    this.processRequest(context, socket);
+                    continue;
+                }
                 
-                try
+                workers.execute(new Runnable()
                 {
-                    switch (requestPDUType)
+                    public void run()
                     {
-                        case SNMP_GET_REQUEST:
-                        case SNMP_SET_REQUEST:
-                        case SNMP_GET_NEXT_REQUEST:
-                            this.handleRequest(receivedPDU, communityName, requestPDUType);
-                            break;
-                        
-                        default:
-                            continue;  // some other PDU type; silently ignore and skip the rest of this loop iteration
+                        processRequest(context, socket);
                     }
-                    
-                    /*if ( (requestPDUType == SNMPBERType.SNMP_GET_REQUEST) || (requestPDUType == SNMPBERType.SNMP_SET_REQUEST)
-                            || (requestPDUType == SNMPBERType.SNMP_GET_NEXT_REQUEST) )
-                        this.handleRequest(receivedPDU, communityName, requestPDUType);
-                    else
-                        continue;   // some other PDU type; silently ignore
-                    */
-                }
-                catch (SNMPRequestException e)
-                {
-                    // exception should contain the index and cause of error; return this in message
-                    errorIndex = e.errorIndex;
-                    errorStatus = e.errorStatus;
-
-                    // just return request variable list as response variable list
-                    responseVarList = requestedVarList;
-                }
-                catch (Exception e)
-                {
-                    // don't have a specific index and cause of error; return message as general error, index 0
-                    errorIndex = 0;
-                    errorStatus = SNMPRequestException.FAILED;
-                    
-                    // just return request variable list as response variable list
-                    responseVarList = requestedVarList;
-                    
-                    // also report the exception locally
-                    errorLogger.println("Exception while processing request: " + e.toString());
-                    errorLogger.flush();
-                }
-                
-                // Construct and send response.
-                SNMPPDU pdu = new SNMPPDU(SNMPBERType.SNMP_GET_RESPONSE, requestID, errorStatus, errorIndex, responseVarList);
-                SNMPMessage message = new SNMPMessage(version, communityName, pdu);
-                byte[] messageEncoding = message.getBEREncoding();
-                
-                DatagramPacket outPacket = new DatagramPacket(messageEncoding, messageEncoding.length, requesterAddress, requesterPort);
-                dSocket.send(outPacket);
+                });
             }
             catch (IOException e)
             {
@@ -262,6 +354,11 @@ public class SNMPv1SimpleAgent implements Runnable
                 errorLogger.println("SNMPBadValueException during request processing: " + e.getMessage());
                 errorLogger.flush();
             }
+            catch (RejectedExecutionException e)
+            {
+                // the agent is being stopped; nothing left to hand the request to
+                break;
+            }
             catch (Exception e)
             {
                 // just report the problem
@@ -275,47 +372,190 @@ public class SNMPv1SimpleAgent implements Runnable
     
     
     /**
-     * Pass the received PDU and community name to the processRequest method of any listeners;
-     * handles slightly differently depending on whether the request is a get-next, or a get or set.
+     *  Returns true if the context holds a request the agent answers: a get, get-next or set request, or
+     *  a get-bulk request in version 2c. Anything else is to be silently ignored.
      */
-    private void handleRequest(SNMPPDU receivedPDU, String communityName, SNMPBERType requestPDUType)
-        throws SNMPBadValueException, SNMPGetException, SNMPSetException
+    static boolean isAnswerable(SNMPRequestContext context)
     {
-        // Pass the received PDU and community name to any registered listeners.
-        for (SNMPRequestListener listener : requestListeners)
+        switch (context.getRequestPDUType())
         {
-            // Return value is a sequence of nested variable pairs for those OIDs handled by the listener:
-            // consists of (supplied OID, (following OID, value)) nested variable pairs.
-            SNMPSequence handledVarList;
-            if (requestPDUType == SNMPBERType.SNMP_GET_NEXT_REQUEST)
-                handledVarList = listener.processGetNextRequest(receivedPDU, communityName);
+            case SNMPv2_BULK_REQUEST:
+                // get-bulk doesn't exist in version 1
+                return (context.getVersion() != 0);
+            
+            case SNMP_GET_REQUEST:
+            case SNMP_SET_REQUEST:
+            case SNMP_GET_NEXT_REQUEST:
+                return true;
+            
+            default:
+                return false;
+        }
+    }
+    
+    
+    /**
+     *  Processes a single decoded request and sends the response to the requester through the supplied
+     *  socket. Called on a worker thread; all state for the request is held in the supplied context.
+     */
+    private void processRequest(SNMPRequestContext context, DatagramSocket socket)
+    {
+        try
+        {
+            byte[] messageEncoding = this.answerRequest(context);
+            
+            DatagramPacket outPacket = new DatagramPacket(messageEncoding, messageEncoding.length, context.getRequesterAddress(), context.getRequesterPort());
+            socket.send(outPacket);
+        }
+        catch (IOException e)
+        {
+            // just report the problem
+            errorLogger.println("IOException during request processing: " + e.getMessage());
+            errorLogger.flush();
+        }
+        catch (SNMPBadValueException e)
+        {
+            // just report the problem
+            errorLogger.println("SNMPBadValueException during request processing: " + e.getMessage());
+            errorLogger.flush();
+        }
+    }
+    
+    
+    /**
+     *  Processes a single decoded request, returning the encoded response message; errors raised by the
+     *  handlers and listeners are reported in the response.
+     *
+     *  @throws SNMPBadValueException Indicates the response couldn't be encoded.
+     */
+    byte[] answerRequest(SNMPRequestContext context)
+        throws SNMPBadValueException
+    {
+        // get-bulk is version 2c only, so answer in the requester's version rather than the agent's
+        int responseVersion = version;
+        
+        try
+        {
+            if (context.getRequestPDUType() == SNMPBERType.SNMPv2_BULK_REQUEST)
+            {
+                responseVersion = context.getVersion();
+                this.handleBulkRequest(context);
+            }
             else
-                handledVarList = listener.processRequest(receivedPDU, communityName);
-
-            // Add variable pair to table of handled OIDs, if it's not already there.
-            for (int j = 0; j < handledVarList.size(); j++)
+                this.handleRequest(context);
+        }
+        catch (SNMPRequestException e)
+        {
+            // exception should contain the index and cause of error; return this in message
+            context.setError(e.errorStatus, e.errorIndex);
+        }
+        catch (Exception e)
+        {
+            // don't have a specific index and cause of error; return message as general error, index 0
+            context.setError(SNMPRequestException.FAILED, 0);
+            
+            // also report the exception locally
+            errorLogger.println("Exception while processing request: " + e.toString());
+            errorLogger.flush();
+        }
+        
+        return context.getResponseMessage(responseVersion).getBEREncoding();
+    }
+    
+    
+    /**
+     * Resolve each requested OID through the subtree handlers owning it, and pass the received PDU and 
+     * community name to the processRequest method of any listeners if needed; handles slightly differently 
+     * depending on whether the request is a get-next, or a get or set.
+     */
+    private void handleRequest(SNMPRequestContext context)
+        throws SNMPBadValueException, SNMPGetException, SNMPSetException
+    {
+        String communityName = context.getCommunityName();
+        SNMPBERType requestPDUType = context.getRequestPDUType();
+        SNMPSequence requestedVarList = context.getRequestedVarList();
+        
+        // Route each OID to the handler owning it.
+        SNMPVariablePair[] handledPairs = new SNMPVariablePair[requestedVarList.size()];
+        boolean allHandled = true;
+        
+        for (int j = 0; j < requestedVarList.size(); j++)
+        {
+            SNMPSequence requestPair = (SNMPSequence)requestedVarList.getSNMPObjectAt(j);
+            SNMPObjectIdentifier snmpOID = (SNMPObjectIdentifier)requestPair.getSNMPObjectAt(0);
+            
+            try
             {
-                SNMPSequence handledPair = (SNMPSequence)handledVarList.getSNMPObjectAt(j);
-                SNMPObjectIdentifier snmpOID = (SNMPObjectIdentifier)handledPair.getSNMPObjectAt(0);
-                SNMPObject snmpObject = (SNMPObject)handledPair.getSNMPObjectAt(1);
-
-                if (!variablePairs.containsKey(snmpOID))
-                    variablePairs.put(snmpOID, snmpObject);
+                switch (requestPDUType)
+                {
+                    case SNMP_GET_NEXT_REQUEST:
+                        handledPairs[j] = subtreeRegistry.getNext(snmpOID, communityName);
+                        break;
+                    
+                    case SNMP_SET_REQUEST:
+                        SNMPObject newValue = requestPair.getSNMPObjectAt(1);
+                        if (subtreeRegistry.set(snmpOID, newValue, communityName))
+                            handledPairs[j] = new SNMPVariablePair(snmpOID, newValue);
+                        break;
+                    
+                    default:
+                        SNMPObject snmpObject = subtreeRegistry.get(snmpOID, communityName);
+                        if (snmpObject != null)
+                            handledPairs[j] = new SNMPVariablePair(snmpOID, snmpObject);
+                        break;
+                }
+            }
+            catch (SNMPRequestException e)
+            {
+                // handlers don't know the position of the OID in the request
+                e.errorIndex = j + 1;
+                throw e;
             }
+            
+            if (handledPairs[j] == null)
+                allHandled = false;
         }
+        
+        // Pass the received PDU and community name to any registered listeners, unless the handlers have 
+        // already answered everything; a listener may offer a nearer get-next successor, though.
+        Hashtable<SNMPObjectIdentifier,SNMPObject> variablePairs = context.getVariablePairs();
+        
+        if (!allHandled || (requestPDUType == SNMPBERType.SNMP_GET_NEXT_REQUEST))
+            this.callListeners(context.getRequestPDU(), communityName, requestPDUType, variablePairs);
 
 
         // Construct response containing the handled OIDs; if any OID not handled, throw exception.
+        SNMPSequence responseVarList = context.getResponseVarList();
+        
         for (int j = 0; j < requestedVarList.size(); j++)
         {
             SNMPSequence requestPair = (SNMPSequence)requestedVarList.getSNMPObjectAt(j);
             SNMPObjectIdentifier snmpOID = (SNMPObjectIdentifier)requestPair.getSNMPObjectAt(0);
+            SNMPVariablePair responsePair = handledPairs[j];
 
             // Find corresponding SNMP object in hashtable.
-            if (!variablePairs.containsKey(snmpOID))
+            if (variablePairs.containsKey(snmpOID))
+            {
+                if (requestPDUType == SNMPBERType.SNMP_GET_NEXT_REQUEST)
+                {
+                    // value in hashtable is complete variable pair; use it if it comes before the handlers' answer
+                    SNMPVariablePair listenerPair = (SNMPVariablePair)variablePairs.get(snmpOID);
+                    SNMPObjectIdentifier listenerOID = (SNMPObjectIdentifier)listenerPair.getSNMPObjectAt(0);
+                    
+                    if ((responsePair == null) || (listenerOID.compareTo((SNMPObjectIdentifier)responsePair.getSNMPObjectAt(0)) < 0))
+                        responsePair = listenerPair;
+                }
+                else if (responsePair == null)
+                {
+                    SNMPObject snmpObject = variablePairs.get(snmpOID);
+                    responsePair = new SNMPVariablePair(snmpOID, snmpObject);
+                }
+            }
+            
+            if (responsePair == null)
             {
-                errorIndex = j + 1;
-                errorStatus = SNMPRequestException.VALUE_NOT_AVAILABLE;
+                int errorIndex = j + 1;
+                int errorStatus = SNMPRequestException.VALUE_NOT_AVAILABLE;
 
                 if (requestPDUType == SNMPBERType.SNMP_SET_REQUEST)
                     throw new SNMPSetException("OID " + snmpOID + " not handled", errorIndex, errorStatus);
@@ -323,19 +563,186 @@ public class SNMPv1SimpleAgent implements Runnable
                     throw new SNMPGetException("OID " + snmpOID + " not handled", errorIndex, errorStatus);
             }
 
-            SNMPVariablePair responsePair;
-            if (requestPDUType == SNMPBERType.SNMP_GET_NEXT_REQUEST)
+            responseVarList.addSNMPObject(responsePair);
+        }
+    }
+    
+    
+    /**
+     * Answer a get-bulk request: a single get-next for each of the first non-repeaters OIDs, then up to 
+     * max-repetitions successive get-nexts for each of the remaining OIDs. OIDs with no successor are 
+     * answered with endOfMibView. The response stops early once every repeating OID has reached the end 
+     * of the MIB view, or when the next binding would take it over the maximum response size.
+     */
+    private void handleBulkRequest(SNMPRequestContext context)
+        throws SNMPBadValueException, SNMPGetException, SNMPSetException
+    {
+        SNMPv2BulkRequestPDU bulkPDU = context.getBulkRequestPDU();
+        SNMPSequence requestedVarList = context.getRequestedVarList();
+        SNMPSequence responseVarList = context.getResponseVarList();
+        int numRequested = requestedVarList.size();
+        
+        int nonRepeaters = Math.min(Math.max(bulkPDU.getNonRepeaters(), 0), numRequested);
+        int maxRepetitions = Math.max(bulkPDU.getMaxRepetitions(), 0);
+        int numRepeaters = numRequested - nonRepeaters;
+        
+        // Room left for variable bindings once the rest of the response message is accounted for; allow 
+        // for the length fields of the three enclosing sequences growing as bindings are added.
+        int remainingSize = maxResponseSize - context.getResponseMessage(context.getVersion()).getBEREncoding().length - 12;
+        
+        // Non-repeaters: one successor each.
+        SNMPObjectIdentifier[] oids = new SNMPObjectIdentifier[nonRepeaters];
+        for (int i = 0; i < nonRepeaters; i++)
+            oids[i] = (SNMPObjectIdentifier)((SNMPSequence)requestedVarList.getSNMPObjectAt(i)).getSNMPObjectAt(0);
+        
+        SNMPVariablePair[] pairs = this.resolveNext(context, oids, new boolean[nonRepeaters], 0);
+        for (SNMPVariablePair pair : pairs)
+        {
+            remainingSize -= pair.getBEREncoding().length;
+            if (remainingSize < 0)
+                return;
+            
+            responseVarList.addSNMPObject(pair);
+        }
+        
+        // Repeaters: each round continues from the previous round's answers.
+        oids = new SNMPObjectIdentifier[numRepeaters];
+        boolean[] ended = new boolean[numRepeaters];
+        for (int k = 0; k < numRepeaters; k++)
+            oids[k] = (SNMPObjectIdentifier)((SNMPSequence)requestedVarList.getSNMPObjectAt(nonRepeaters + k)).getSNMPObjectAt(0);
+        
+        for (int r = 0; (r < maxRepetitions) && (numRepeaters > 0); r++)
+        {
+            pairs = this.resolveNext(context, oids, ended, nonRepeaters);
+            boolean allEnded = true;
+            
+            for (int k = 0; k < numRepeaters; k++)
+            {
+                remainingSize -= pairs[k].getBEREncoding().length;
+                if (remainingSize < 0)
+                    return;
+                
+                responseVarList.addSNMPObject(pairs[k]);
+                
+                oids[k] = (SNMPObjectIdentifier)pairs[k].getSNMPObjectAt(0);
+                ended[k] = (pairs[k].getSNMPObjectAt(1) instanceof SNMPEndOfMibView);
+                allEnded = allEnded && ended[k];
+            }
+            
+            if (allEnded)
+                break;
+        }
+    }
+    
+    
+    /**
+     * Find the successor of each supplied OID, from the subtree handlers and, if there are any, from a
+     * single get-next request passed to the listeners. OIDs marked as ended, and OIDs without a successor, 
+     * are answered with endOfMibView. The index offset gives the position of the first OID in the request, 
+     * for reporting errors.
+     */
+    private SNMPVariablePair[] resolveNext(SNMPRequestContext context, SNMPObjectIdentifier[] oids, boolean[] ended, int indexOffset)
+        throws SNMPBadValueException, SNMPGetException, SNMPSetException
+    {
+        String communityName = context.getCommunityName();
+        SNMPVariablePair[] pairs = new SNMPVariablePair[oids.length];
+        
+        for (int k = 0; k < oids.length; k++)
+        {
+            if (ended[k])
+                continue;
+            
+            try
             {
-                // value in hashtable is complete variable pair
-                responsePair = (SNMPVariablePair)variablePairs.get(snmpOID);
+                pairs[k] = subtreeRegistry.getNext(oids[k], communityName);
             }
-            else
+            catch (SNMPRequestException e)
+            {
+                e.errorIndex = indexOffset + k + 1;
+                throw e;
+            }
+        }
+        
+        if (!requestListeners.isEmpty())
+        {
+            // Listeners only understand get-next PDUs; ask them about all the OIDs at once.
+            SNMPSequence varList = new SNMPSequence();
+            int[] positions = new int[oids.length];
+            for (int k = 0; k < oids.length; k++)
+            {
+                if (!ended[k])
+                {
+                    positions[varList.size()] = k;
+                    varList.addSNMPObject(new SNMPVariablePair(oids[k], new SNMPNull()));
+                }
+            }
+            
+            SNMPPDU getNextPDU = new SNMPPDU(SNMPBERType.SNMP_GET_NEXT_REQUEST, context.getRequestID(), 
+                    SNMPRequestException.NO_ERROR, 0, varList);
+            Hashtable<SNMPObjectIdentifier,SNMPObject> listenerPairs = new Hashtable<SNMPObjectIdentifier,SNMPObject>();
+            
+            try
+            {
+                this.callListeners(getNextPDU, communityName, SNMPBERType.SNMP_GET_NEXT_REQUEST, listenerPairs);
+            }
+            catch (SNMPRequestException e)
             {
-                SNMPObject snmpObject = variablePairs.get(snmpOID);
-                responsePair = new SNMPVariablePair(snmpOID, snmpObject);
+                // translate the index in the get-next PDU to the index in the original request
+                if ((e.errorIndex > 0) && (e.errorIndex <= varList.size()))
+                    e.errorIndex = indexOffset + positions[e.errorIndex - 1] + 1;
+                throw e;
             }
+            
+            for (int k = 0; k < oids.length; k++)
+            {
+                SNMPVariablePair listenerPair = (SNMPVariablePair)listenerPairs.get(oids[k]);
+                if (ended[k] || (listenerPair == null))
+                    continue;
+                
+                SNMPObjectIdentifier listenerOID = (SNMPObjectIdentifier)listenerPair.getSNMPObjectAt(0);
+                if ((pairs[k] == null) || (listenerOID.compareTo((SNMPObjectIdentifier)pairs[k].getSNMPObjectAt(0)) < 0))
+                    pairs[k] = listenerPair;
+            }
+        }
+        
+        for (int k = 0; k < oids.length; k++)
+        {
+            if (pairs[k] == null)
+                pairs[k] = new SNMPVariablePair(oids[k], new SNMPEndOfMibView());
+        }
+        
+        return pairs;
+    }
+    
+    
+    /**
+     * Pass the PDU and community name to the processRequest method of any listeners, collecting
+     * their answers in the supplied table of handled OIDs.
+     */
+    private void callListeners(SNMPPDU receivedPDU, String communityName, SNMPBERType requestPDUType, 
+            Hashtable<SNMPObjectIdentifier,SNMPObject> variablePairs)
+        throws SNMPGetException, SNMPSetException
+    {
+        for (SNMPRequestListener listener : requestListeners)
+        {
+            // Return value is a sequence of nested variable pairs for those OIDs handled by the listener:
+            // consists of (supplied OID, (following OID, value)) nested variable pairs.
+            SNMPSequence handledVarList;
+            if (requestPDUType == SNMPBERType.SNMP_GET_NEXT_REQUEST)
+                handledVarList = listener.processGetNextRequest(receivedPDU, communityName);
+            else
+                handledVarList = listener.processRequest(receivedPDU, communityName);
 
-            responseVarList.addSNMPObject(responsePair);
+            // Add variable pair to table of handled OIDs, if it's not already there.
+            for (int j = 0; j < handledVarList.size(); j++)
+            {
+                SNMPSequence handledPair = (SNMPSequence)handledVarList.getSNMPObjectAt(j);
+                SNMPObjectIdentifier snmpOID = (SNMPObjectIdentifier)handledPair.getSNMPObjectAt(0);
+                SNMPObject snmpObject = (SNMPObject)handledPair.getSNMPObjectAt(1);
+
+                if (!variablePairs.containsKey(snmpOID))
+                    variablePairs.put(snmpOID, snmpObject);
+            }
         }
     }
     
@@ -364,5 +771,84 @@ public class SNMPv1SimpleAgent implements Runnable
     {
         return this.receiveBufferSize;
     }
+    
+    
+    /**
+     *  Sets the number of threads receiving and decoding requests from each socket. Takes effect the next
+     *  time startReceiving is called. The value must be at least 1; the default is 1.
+     */
+    public void setReceiveThreadCount(int receiveThreadCount)
+    {
+        if (receiveThreadCount < 1)
+            throw new IllegalArgumentException("At least one receive thread is required.");
+        
+        this.receiveThreadCount = receiveThreadCount;
+    }
+    
+    
+    /**
+     *  Returns the number of threads receiving and decoding requests from each socket.
+     */
+    public int getReceiveThreadCount()
+    {
+        return this.receiveThreadCount;
+    }
+    
+    
+    /**
+     *  Returns the number of sockets the agent reads its port through.
+     */
+    public int getSocketCount()
+    {
+        return sockets.length;
+    }
+    
+    
+    /**
+     *  Sets the number of worker threads that call the listeners and send responses. Takes effect the next
+     *  time startReceiving is called. The value must be at least 1; the default is 1, which preserves the
+     *  one-request-at-a-time behavior that listeners written for earlier versions expect. Raise it to the
+     *  number of available cores once all registered listeners are thread-safe.
+     */
+    public void setWorkerThreadCount(int workerThreadCount)
+    {
+        if (workerThreadCount < 1)
+            throw new IllegalArgumentException("At least one worker thread is required.");
+        
+        this.workerThreadCount = workerThreadCount;
+    }
+    
+    
+    /**
+     *  Returns the number of worker threads processing requests.
+     */
+    public int getWorkerThreadCount()
+    {
+        return this.workerThreadCount;
+    }
+    
+    
+    /**
+     *  Sets the largest response, in bytes, that the agent will build for a get-bulk request; repetitions 
+     *  that would make the response larger are left out. The value must be at least 484, the smallest message 
+     *  size every SNMP implementation must accept, and should not exceed what the managers' receive buffers 
+     *  allow. The default is 1472 bytes, which avoids IP fragmentation on Ethernet.
+     */
+    public void setMaxResponseSize(int maxResponseSize)
+    {
+        if (maxResponseSize >= 484)
+            this.maxResponseSize = maxResponseSize;
+        else
+            this.maxResponseSize = 484;
+    }
+    
+    
+    /**
+     *  Returns the largest response the agent will build for a get-bulk request.
+     */
+    public int getMaxResponseSize()
+    {
+        return this.maxResponseSize;
+    }
 
 }
\ No newline at end of file